@@ -169,6 +169,11 @@ public class AndroidGame extends LGame {
 		return System.currentTimeMillis();
 	}
 
+	@Override
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
 	@Override
 	public int tick() {
 		return (int) ((System.nanoTime() - start) / 1000000L);
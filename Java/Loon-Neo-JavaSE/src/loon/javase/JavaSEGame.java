@@ -239,6 +239,11 @@ public class JavaSEGame extends LGame {
 		return System.currentTimeMillis();
 	}
 
+	@Override
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
 	@Override
 	public Type type() {
 		return Type.JAVASE;
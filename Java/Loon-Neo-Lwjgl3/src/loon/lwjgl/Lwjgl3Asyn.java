@@ -1,12 +1,14 @@
 package loon.lwjgl;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import loon.Asyn;
 import loon.Log;
 import loon.utils.reply.Act;
 
-public class Lwjgl3Asyn extends Asyn.Default {
+public class Lwjgl3Asyn extends Asyn.Parallel<ForkJoinTask<?>> {
 
 	private ExecutorService pool;
 
@@ -24,4 +26,19 @@ public class Lwjgl3Asyn extends Asyn.Default {
 	public void invokeAsync(Runnable action) {
 		pool.execute(action);
 	}
+
+	@Override
+	public boolean isParallelSupported() {
+		return ForkJoinPool.getCommonPoolParallelism() > 1;
+	}
+
+	@Override
+	protected ForkJoinTask<?> fork(Runnable action) {
+		return ForkJoinPool.commonPool().submit(action);
+	}
+
+	@Override
+	protected void join(ForkJoinTask<?> task) {
+		task.join();
+	}
 }
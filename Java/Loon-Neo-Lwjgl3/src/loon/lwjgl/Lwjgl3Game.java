@@ -313,6 +313,11 @@ public class Lwjgl3Game extends LGame {
 		return System.currentTimeMillis();
 	}
 
+	@Override
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
 	@Override
 	public Type type() {
 		return Type.JAVASE;
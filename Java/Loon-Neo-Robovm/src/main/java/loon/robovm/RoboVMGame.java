@@ -130,6 +130,11 @@ public class RoboVMGame extends LGame {
 		return System.currentTimeMillis();
 	}
 
+	@Override
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
 	@Override
 	public int tick() {
 		return (int) ((System.nanoTime() - gameStart) / 1000000);
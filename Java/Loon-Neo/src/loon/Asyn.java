@@ -86,6 +86,78 @@ public abstract class Asyn {
 		}
 	}
 
+	/**
+	 * 支持多线程的平台共用的invokeAll实现,第一个任务在当前线程执行,其余任务交给fork分配到其它线程,
+	 * 保存已分配任务的数组在调用之间重复使用(嵌套或并发调用时才临时分配)
+	 */
+	public static abstract class Parallel<T> extends Default {
+
+		private Object[] forked;
+
+		private boolean forking;
+
+		public Parallel(Log log, Act<? extends Object> frame) {
+			super(log, frame);
+		}
+
+		/**
+		 * 把任务分配到其它线程执行
+		 *
+		 * @param action
+		 * @return
+		 */
+		protected abstract T fork(Runnable action);
+
+		/**
+		 * 等待fork分配的任务完成
+		 *
+		 * @param task
+		 */
+		protected abstract void join(T task);
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void invokeAll(Runnable[] actions, int count) {
+			if (count <= 1 || !isParallelSupported()) {
+				super.invokeAll(actions, count);
+				return;
+			}
+			final int size = count - 1;
+			final Object[] tasks = obtainForked(size);
+			try {
+				for (int i = 0; i < size; i++) {
+					tasks[i] = fork(actions[i + 1]);
+				}
+				actions[0].run();
+				for (int i = 0; i < size; i++) {
+					join((T) tasks[i]);
+				}
+			} finally {
+				freeForked(tasks, size);
+			}
+		}
+
+		private synchronized Object[] obtainForked(int size) {
+			if (forking) {
+				return new Object[size];
+			}
+			if (forked == null || forked.length < size) {
+				forked = new Object[size];
+			}
+			forking = true;
+			return forked;
+		}
+
+		private synchronized void freeForked(Object[] tasks, int size) {
+			for (int i = 0; i < size; i++) {
+				tasks[i] = null;
+			}
+			if (tasks == forked) {
+				forking = false;
+			}
+		}
+	}
+
 	public abstract void invokeLater(Runnable action);
 
 	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
@@ -150,4 +222,25 @@ public abstract class Asyn {
 	public void invokeAsync(Runnable action) {
 		throw new UnsupportedOperationException();
 	}
+
+	/**
+	 * 当前平台能否把一组任务分配到多个线程上同时执行
+	 * 
+	 * @return
+	 */
+	public boolean isParallelSupported() {
+		return false;
+	}
+
+	/**
+	 * 执行一组互不依赖的任务,全部任务完成后才返回.默认在当前线程中依次执行,支持多线程的平台可以改为并行执行
+	 * 
+	 * @param actions
+	 * @param count
+	 */
+	public void invokeAll(Runnable[] actions, int count) {
+		for (int i = 0; i < count; i++) {
+			actions[i].run();
+		}
+	}
 }
@@ -23,20 +23,21 @@ package loon;
 import java.io.OutputStream;
 
 import loon.action.ActionControl;
-import loon.canvas.Image;
 import loon.canvas.LColor;
+import loon.event.Updateable;
 import loon.font.IFont;
 import loon.opengl.GL20;
 import loon.opengl.GLEx;
 import loon.utils.ArrayByte;
 import loon.utils.ArrayByteOutput;
-import loon.utils.GLUtils;
 import loon.utils.GifEncoder;
+import loon.utils.GifRecorder;
 import loon.utils.MathUtils;
 import loon.utils.StringUtils;
 import loon.utils.TimeUtils;
 import loon.utils.processes.RealtimeProcessManager;
 import loon.utils.reply.Port;
+import loon.utils.timer.FrameProfiler;
 import loon.utils.timer.LTimer;
 import loon.utils.timer.LTimerContext;
 
@@ -44,6 +45,8 @@ public class Display extends LSystemView {
 
 	private GifEncoder gifEncoder;
 
+	private GifRecorder gifRecorder;
+
 	private boolean videoScreenToGif;
 
 	private ArrayByteOutput videoCache;
@@ -51,11 +54,14 @@ public class Display extends LSystemView {
 	private final LTimer videoDelay = new LTimer();
 
 	/**
-	 * 返回video的缓存结果(不设置out对象时才会有效)
+	 * 返回video的缓存结果(不设置out对象时才会有效),录像在后台完全写入之前返回null,可使用stopVideo(Updateable)在完成时获取
 	 * 
 	 * @return
 	 */
 	public ArrayByte getVideoCache() {
+		if (videoCache == null || (gifRecorder != null && !gifRecorder.isFinished())) {
+			return null;
+		}
 		return videoCache.getArrayByte();
 	}
 
@@ -91,23 +97,45 @@ public class Display extends LSystemView {
 		gifEncoder = new GifEncoder();
 		gifEncoder.start(output);
 		gifEncoder.setDelay((int) delay);
+		gifRecorder = new GifRecorder(gifEncoder);
 		videoScreenToGif = true;
 		return gifEncoder;
 	}
 
 	/**
-	 * 结束录像
+	 * 结束录像(已拍摄的帧在后台编码完毕后才会写入结束标记,可通过getVideoRecorder().isFinished()判断)
 	 * 
 	 * @return
 	 */
 	public GifEncoder stopVideo() {
-		if (gifEncoder != null) {
-			gifEncoder.finish();
+		return stopVideo(null);
+	}
+
+	/**
+	 * 结束录像,录像完全写入输出流后在游戏线程中调用listener(此后getVideoCache才会返回完整结果)
+	 * 
+	 * @param listener
+	 * @return
+	 */
+	public GifEncoder stopVideo(Updateable listener) {
+		if (gifRecorder != null) {
+			gifRecorder.stop(listener);
+		} else if (listener != null) {
+			listener.action(null);
 		}
 		videoScreenToGif = false;
 		return gifEncoder;
 	}
 
+	/**
+	 * 返回当前录像使用的录像器(可获得队列深度与丢帧数量)
+	 * 
+	 * @return
+	 */
+	public GifRecorder getVideoRecorder() {
+		return gifRecorder;
+	}
+
 	// 为了方便直接转码到C#和C++，无法使用匿名内部类(也就是在构造内直接构造实现的方式)，只能都写出具体类来……
 	// PS:别提delegate，委托那玩意写出来太不优雅了(对于凭空实现某接口或抽象，而非局部重载来说)，而且大多数J2C#的工具也不能直接转换过去……
 	private final class PaintPort extends Port<LTimerContext> {
@@ -122,8 +150,12 @@ public class Display extends LSystemView {
 		public void onEmit(LTimerContext clock) {
 			synchronized (clock) {
 				if (!LSystem.PAUSED) {
+					final long frame = FrameProfiler.begin();
+					long profile = FrameProfiler.begin();
 					RealtimeProcessManager.get().tick(clock);
+					FrameProfiler.end(FrameProfiler.PROCESS_TICK, profile);
 					_display.draw(clock);
+					FrameProfiler.endFrame(frame);
 				}
 			}
 		}
@@ -142,9 +174,15 @@ public class Display extends LSystemView {
 		public void onEmit(LTimerContext clock) {
 			synchronized (clock) {
 				if (!LSystem.PAUSED) {
+					final long frame = FrameProfiler.begin();
+					long profile = FrameProfiler.begin();
 					RealtimeProcessManager.get().tick(clock);
+					FrameProfiler.end(FrameProfiler.PROCESS_TICK, profile);
+					profile = FrameProfiler.begin();
 					ActionControl.get().call(clock.timeSinceLastUpdate);
+					FrameProfiler.end(FrameProfiler.ACTION_CALL, profile);
 					_display.draw(clock);
+					FrameProfiler.endFrame(frame);
 				}
 			}
 		}
@@ -160,7 +198,9 @@ public class Display extends LSystemView {
 		public void onEmit(LTimerContext clock) {
 			synchronized (clock) {
 				if (!LSystem.PAUSED) {
+					final long profile = FrameProfiler.begin();
 					ActionControl.get().call(clock.timeSinceLastUpdate);
+					FrameProfiler.end(FrameProfiler.ACTION_CALL, profile);
 				}
 			}
 		}
@@ -269,6 +309,9 @@ public class Display extends LSystemView {
 		GL20 gl = game.graphics().gl;
 		_glEx = new GLEx(game.graphics(), game.graphics().defaultRenderTarget, gl);
 		_glEx.update();
+		if (_setting.isProfiler) {
+			FrameProfiler.setEnabled(true);
+		}
 		updateSyncTween(_setting.isSyncTween);
 		if (!_setting.isLogo) {
 			_process.start();
@@ -337,7 +380,8 @@ public class Display extends LSystemView {
 		// fix渲染时机，避免调用渲染在纹理构造前
 		if (!initDrawConfig) {
 			newDefView(
-					_setting.isFPS || _setting.isLogo || _setting.isMemory || _setting.isSprites || _setting.isDebug);
+					_setting.isFPS || _setting.isLogo || _setting.isMemory || _setting.isSprites || _setting.isDebug
+							|| _setting.isProfiler);
 			initDrawConfig = true;
 		}
 
@@ -375,8 +419,12 @@ public class Display extends LSystemView {
 			_glEx.reset(cred, cgreen, cblue, calpha);
 
 			_process.load();
+			long profile = FrameProfiler.begin();
 			_process.runTimer(clock);
+			FrameProfiler.end(FrameProfiler.RUN_TIMER, profile);
+			profile = FrameProfiler.begin();
 			_process.draw(_glEx);
+			FrameProfiler.end(FrameProfiler.PROCESS_DRAW, profile);
 
 			final boolean debug = _setting.isDebug;
 			// 显示fps速度
@@ -400,34 +448,28 @@ public class Display extends LSystemView {
 						"SPRITE:" + getGame().allSpritesCount() + "," + " DESKTOP:" + getGame().allDesktopCount(), 5,
 						45, 0, LColor.white);
 			}
+			// 显示上一帧的分段耗时与绘制调用数量
+			final boolean profiler = _setting.isProfiler && FrameProfiler.isEnabled();
+			if (profiler) {
+				final FrameProfiler frameProfiler = FrameProfiler.get();
+				fpsFont.drawString(_glEx,
+						"FRAME:" + toMillis(frameProfiler.getLast(FrameProfiler.FRAME)) + "ms" + " DRAW:"
+								+ toMillis(frameProfiler.getLast(FrameProfiler.PROCESS_DRAW)) + "ms" + " CALLS:"
+								+ frameProfiler.getLastCounter(FrameProfiler.DRAW_CALLS) + " BINDS:"
+								+ frameProfiler.getLastCounter(FrameProfiler.TEXTURE_BINDS),
+						5, 65, 0, LColor.white);
+			}
 			// 若打印日志到界面,很可能挡住游戏界面内容,所以isDisplayLog为true并且debug才显示
 			if (debug && _setting.isDisplayLog) {
-				_process.paintLog(_glEx, 5, 65);
+				_process.paintLog(_glEx, 5, profiler ? 85 : 65);
 			}
 			_process.drawEmulator(_glEx);
 			_process.unload();
 
-			// 如果存在屏幕录像设置
-			if (videoScreenToGif && !LSystem.PAUSED && gifEncoder != null) {
+			// 如果存在屏幕录像设置(渲染线程只读取像素,编码在后台进行)
+			if (videoScreenToGif && !LSystem.PAUSED && gifRecorder != null) {
 				if (videoDelay.action(clock)) {
-					Image tmp = GLUtils.getScreenshot();
-					Image image = null;
-					if (LSystem.isDesktop()) {
-						image = tmp;
-					} else {
-						// 因为内存和速度关系,考虑到全平台录制,因此默认只录屏幕大小的一半(否则在手机上绝对抗不了5分钟以上……)
-						image = Image.getResize(tmp, (int) (_process.getWidth() * 0.5f),
-								(int) (_process.getHeight() * 0.5f));
-					}
-					gifEncoder.addFrame(image);
-					if (tmp != null) {
-						tmp.close();
-						tmp = null;
-					}
-					if (image != null) {
-						image.close();
-						image = null;
-					}
+					gifRecorder.capture();
 				}
 			}
 
@@ -444,6 +486,19 @@ public class Display extends LSystemView {
 		return this;
 	}
 
+	private static float toMillis(long nanos) {
+		return (float) ((nanos / 10000L) / 100d);
+	}
+
+	/**
+	 * 返回逐帧性能统计器(需要LSetting.isProfiler为true或手动调用FrameProfiler.setEnabled(true)才会记录数据)
+	 * 
+	 * @return
+	 */
+	public FrameProfiler getProfiler() {
+		return FrameProfiler.get();
+	}
+
 	private void tickFrames() {
 		final long time = TimeUtils.millis();
 		if (time - frameCount > 1000L) {
@@ -40,6 +40,7 @@ import loon.utils.IntMap;
 import loon.utils.ObjectMap;
 import loon.utils.StringUtils;
 import loon.utils.TArray;
+import loon.utils.TimeUtils;
 import loon.utils.json.JsonImpl;
 import loon.utils.reply.Act;
 
@@ -101,7 +102,7 @@ public abstract class LGame {
 	private final ObjectMap<String, Mesh> _texture_mesh_pools;
 
 	// 纹理惰性加载缓存
-	private final ObjectMap<String, LTexture> _texture_lazys;
+	private final LTextureCache _texture_lazys;
 
 	// 全部纹理数据
 	private final TArray<LTexture> _texture_all_list;
@@ -140,7 +141,6 @@ public abstract class LGame {
 		this._framebuffer_all_pools = new TArray<GLFrameBuffer>(12);
 		this._texture_batch_pools = new IntMap<LTextureBatch>(12);
 		this._texture_mesh_pools = new ObjectMap<String, Mesh>(12);
-		this._texture_lazys = new ObjectMap<String, LTexture>(128);
 		this._texture_all_list = new TArray<LTexture>(128);
 		this._sprites_pools = new TArray<Sprites>(12);
 		this._desktop_pools = new TArray<Desktop>(12);
@@ -149,6 +149,7 @@ public abstract class LGame {
 			config = new LSetting();
 		}
 		this.setting = config;
+		this._texture_lazys = new LTextureCache(config.textureCacheMaxBytes);
 		String appName = config.appName;
 		if (StringUtils.isEmpty(appName)) {
 			setting.appName = APP_NAME;
@@ -672,11 +673,11 @@ public abstract class LGame {
 		if (StringUtils.isEmpty(fileName)) {
 			return 0;
 		}
-		String key = fileName.trim();
-		LTexture texture = _texture_lazys.get(key);
+		LTexture texture = _texture_lazys.peek(LTextureCache.normalize(fileName));
 		if (texture != null) {
 			return texture.refCount;
 		}
+		String key = fileName.trim();
 		for (int i = 0, size = _texture_all_list.size; i < size; i++) {
 			LTexture tex2d = _texture_all_list.get(i);
 			String source = tex2d.getSource();
@@ -701,7 +702,7 @@ public abstract class LGame {
 			return 0;
 		}
 		int refCount = -1;
-		LTexture texture = _texture_lazys.get(name);
+		LTexture texture = _texture_lazys.peek(LTextureCache.normalize(name));
 		if (texture != null) {
 			refCount = texture.refCount--;
 		} else {
@@ -825,24 +826,19 @@ public abstract class LGame {
 		if (StringUtils.isEmpty(fileName)) {
 			return null;
 		}
+		String key = LTextureCache.normalize(fileName + "#" + (repeat == null ? "" : repeat) + "," + x + "," + y
+				+ "," + w + "," + h);
+		LTexture texture = _texture_lazys.get(key);
+		if (texture != null) {
+			return texture;
+		}
 		synchronized (_texture_lazys) {
-			String key = fileName.trim().toLowerCase() + (repeat == null ? "" : repeat);
-			ObjectMap<String, LTexture> texs = new ObjectMap<String, LTexture>(_texture_lazys);
-			LTexture texture = texs.get(key);
-			if (texture == null) {
-				for (LTexture tex : texs.values()) {
-					if (tex.tmpLazy != null && tex.tmpLazy.toLowerCase().equals(key.toLowerCase())) {
-						texture = tex;
-						break;
-					}
-				}
-			}
-			if (texture != null && !texture.disposed()) {
-				texture.refCount++;
+			texture = _texture_lazys.get(key);
+			if (texture != null) {
 				return texture;
 			}
 			texture = Image.createImageNicePatch(fileName, x, y, w, h).onHaveToClose(true).createTexture(config);
-			texture.tmpLazy = fileName;
+			texture.tmpLazy = key;
 			_texture_lazys.put(key, texture);
 			log().debug("Texture : " + fileName + " Loaded");
 			return texture;
@@ -860,20 +856,14 @@ public abstract class LGame {
 		if (StringUtils.isEmpty(fileName)) {
 			return null;
 		}
+		String key = LTextureCache.normalize(fileName);
+		LTexture texture = _texture_lazys.get(key);
+		if (texture != null) {
+			return texture;
+		}
 		synchronized (_texture_lazys) {
-			String key = fileName.trim().toLowerCase();
-			ObjectMap<String, LTexture> texs = new ObjectMap<String, LTexture>(_texture_lazys);
-			LTexture texture = texs.get(key);
-			if (texture == null) {
-				for (LTexture tex : texs.values()) {
-					if (tex.tmpLazy != null && tex.tmpLazy.toLowerCase().equals(key.toLowerCase())) {
-						texture = tex;
-						break;
-					}
-				}
-			}
-			if (texture != null && !texture.disposed()) {
-				texture.refCount++;
+			texture = _texture_lazys.get(key);
+			if (texture != null) {
 				return texture;
 			}
 			texture = BaseIO.loadImage(fileName).onHaveToClose(true).createTexture(config);
@@ -904,20 +894,34 @@ public abstract class LGame {
 		if (tex == null) {
 			return null;
 		}
-		String key = tex.src().trim().toLowerCase();
-		LTexture tex2d = _texture_lazys.remove(key);
-		if (tex2d == null) {
-			tex2d = _texture_lazys.remove(tex.tmpLazy);
-		}
-		return tex2d;
+		return _texture_lazys.remove(tex) ? tex : null;
+	}
+
+	/**
+	 * 引用计数归零的缓存纹理在缓存预算允许时继续保留,以便再次加载时直接复用
+	 * 
+	 * @param tex
+	 * @return
+	 */
+	protected boolean retainTexture(LTexture tex) {
+		return _texture_lazys.retain(tex);
+	}
+
+	/**
+	 * 获得纹理缓存(可查看命中,未命中,淘汰次数以及占用字节数,或修改字节预算)
+	 * 
+	 * @return
+	 */
+	public LTextureCache getTextureCache() {
+		return _texture_lazys;
 	}
 
 	/**
 	 * 删除所有从路径加载的纹理图片并强制销毁纹理(但是手动生成的纹理此处不销毁,仅删除)
 	 */
 	public void destroySourceAllCache() {
-		if (_texture_lazys.size > 0) {
-			TArray<LTexture> textures = new TArray<LTexture>(_texture_lazys.values());
+		if (_texture_lazys.size() > 0) {
+			TArray<LTexture> textures = _texture_lazys.clear();
 			for (int i = 0; i < textures.size; i++) {
 				LTexture tex2d = textures.get(i);
 				if (tex2d != null && !tex2d.isClosed() && tex2d.getSource() != null
@@ -935,8 +939,8 @@ public abstract class LGame {
 	 * 强制销毁全部缓存的纹理图片(所有都不放过)
 	 */
 	public void destroyAllCache() {
-		if (_texture_lazys.size > 0) {
-			TArray<LTexture> textures = new TArray<LTexture>(_texture_lazys.values());
+		if (_texture_lazys.size() > 0) {
+			TArray<LTexture> textures = _texture_lazys.clear();
 			for (int i = 0; i < textures.size; i++) {
 				LTexture tex2d = textures.get(i);
 				if (tex2d != null && !tex2d.isClosed()) {
@@ -1125,6 +1129,15 @@ public abstract class LGame {
 
 	public abstract int tick();
 
+	/**
+	 * 返回用于计算时间间隔的纳秒值(默认精度为毫秒,支持高精度计时的平台会重载此函数)
+	 * 
+	 * @return
+	 */
+	public long nanoTime() {
+		return TimeUtils.nanoTime();
+	}
+
 	public abstract void openURL(String url);
 
 	public abstract Assets assets();
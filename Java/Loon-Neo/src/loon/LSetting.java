@@ -103,6 +103,11 @@ public class LSetting {
 	 */
 	public boolean isSprites = false;
 
+	/**
+	 * 是否启用逐帧性能统计(启用后通过Display.getProfiler获得数据,并在画面中显示上一帧的耗时与绘制调用数量)
+	 */
+	public boolean isProfiler = false;
+
 	/**
 	 * 是否显示logo（替换logo使用logoPath指定地址）
 	 */
@@ -185,6 +190,11 @@ public class LSetting {
 	 */
 	public boolean saveTexturePixels = true;
 
+	/**
+	 * 纹理缓存的字节预算,超出时销毁最久未使用且不再被引用的缓存纹理(默认0,即纹理引用归零后立即销毁,与旧版行为相同)
+	 */
+	public long textureCacheMaxBytes = 0;
+
 	/**
 	 * 此项为true时,drag与move事件全游戏无效
 	 */
@@ -222,6 +232,8 @@ public class LSetting {
 		this.activationKey = setting.activationKey;
 		this.convertImagesOnLoad = setting.convertImagesOnLoad;
 		this.saveTexturePixels = setting.saveTexturePixels;
+		this.textureCacheMaxBytes = setting.textureCacheMaxBytes;
+		this.isProfiler = setting.isProfiler;
 		this.appName = setting.appName;
 		this.gameType = setting.gameType;
 		this.logoPath = setting.logoPath;
@@ -810,6 +810,13 @@ public class LSystem {
 		return 0;
 	}
 
+	public static final LTextureCache getTextureCache() {
+		if (base() != null) {
+			return base().getTextureCache();
+		}
+		return null;
+	}
+
 	public static final void closeAllTexture() {
 		if (base() != null) {
 			base().closeAllTexture();
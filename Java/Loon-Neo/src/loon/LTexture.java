@@ -1221,7 +1221,7 @@ public class LTexture extends Painter implements LRelease {
 		} else if (refCount <= 0 && gfx.game.getRefTextureCount(getSource()) <= 0) {
 			if (parent != null && parent.isChildAllClose()) {
 				parent.close();
-			} else {
+			} else if (!gfx.game.retainTexture(this)) {
 				_closed = true;
 				_countTexture--;
 				free();
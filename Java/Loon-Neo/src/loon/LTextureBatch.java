@@ -33,6 +33,7 @@ import loon.opengl.TrilateralBatch;
 import loon.utils.GLUtils;
 import loon.utils.MathUtils;
 import loon.utils.NumberUtils;
+import loon.utils.timer.FrameProfiler;
 
 /**
  * 这是一个针对单独纹理的批量渲染类,默认绑定在特定Texture上运行（texture.geTexturetBatch即可获得）,<br>
@@ -373,6 +374,7 @@ public class LTextureBatch implements LRelease {
 		if (vertexIdx == 0) {
 			return;
 		}
+		final long profile = FrameProfiler.begin();
 		if (!isCacheLocked) {
 			int spritesInBatch = vertexIdx / 20;
 			if (spritesInBatch > maxSpritesInBatch) {
@@ -409,6 +411,7 @@ public class LTextureBatch implements LRelease {
 				mesh.reset(name, expandVertices.length());
 			}
 			GLUtils.setBlendMode(gl, old);
+			FrameProfiler.flush(profile);
 		}
 
 	}
@@ -0,0 +1,554 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import loon.utils.StringUtils;
+import loon.utils.TArray;
+
+/**
+ * LGame.loadTexture使用的纹理缓存.
+ * 
+ * 索引按键的哈希值分为多个段,每段是一张链式哈希表,写入时锁定所在的段并以复制节点的方式修改哈希链,
+ * 查询正在使用中(引用计数大于0)的纹理时完全不加锁,只有重新启用空闲纹理或未命中时才锁定所在的段.
+ * 键为规范化后的文件路径(去空格,小写,统一分隔符),不再需要逐个比较纹理.
+ * 
+ * 引用计数降为0的纹理不会立即销毁,而是进入所在段的空闲队列,以便再次加载时直接复用,
+ * 当缓存纹理占用的字节数(加入时记录的LTexture.getMemSize,增量统计)超过预算时,按最近最少使用的顺序销毁空闲纹理.
+ */
+public class LTextureCache {
+
+	private static class Entry {
+
+		final String key;
+
+		final int hash;
+
+		final LTexture texture;
+
+		int bytes;
+
+		// 全局访问序号,不加锁的读取路径也会写入
+		volatile long lastAccess;
+
+		volatile boolean removed;
+
+		// 空闲队列(引用计数为0的纹理),最近使用的在前
+		Entry before, after;
+
+		volatile boolean idle;
+
+		Entry(String key, int hash, LTexture texture) {
+			this.key = key;
+			this.hash = hash;
+			this.texture = texture;
+		}
+	}
+
+	/**
+	 * 哈希链节点,字段都是final,链表只在持有段锁时以复制节点的方式修改,不加锁的读取总能看到一条完整的链
+	 */
+	private static class Node {
+
+		final Entry entry;
+
+		final Node next;
+
+		Node(Entry entry, Node next) {
+			this.entry = entry;
+			this.next = next;
+		}
+	}
+
+	private static class Segment {
+
+		private volatile Node[] table = new Node[16];
+
+		private final Entry head = new Entry(null, 0, null);
+
+		volatile int size;
+
+		volatile long residentBytes;
+
+		final AtomicInteger hits = new AtomicInteger();
+
+		int misses, evictions;
+
+		Segment() {
+			head.before = head.after = head;
+		}
+
+		/**
+		 * 可以不加锁调用,未加锁时可能看不到刚刚加入的纹理,此时应加锁再查一次
+		 */
+		Entry find(String key, int hash) {
+			final Node[] tab = table;
+			for (Node n = tab[hash & (tab.length - 1)]; n != null; n = n.next) {
+				Entry e = n.entry;
+				if (e.hash == hash && e.key.equals(key)) {
+					return e;
+				}
+			}
+			return null;
+		}
+
+		Entry find(LTexture texture) {
+			final Node[] tab = table;
+			for (int i = 0; i < tab.length; i++) {
+				for (Node n = tab[i]; n != null; n = n.next) {
+					if (n.entry.texture == texture) {
+						return n.entry;
+					}
+				}
+			}
+			return null;
+		}
+
+		void insert(Entry e) {
+			Node[] tab = table;
+			if (size >= (tab.length >> 1) + (tab.length >> 2)) {
+				tab = resize(tab);
+			}
+			int idx = e.hash & (tab.length - 1);
+			tab[idx] = new Node(e, tab[idx]);
+			residentBytes += e.bytes;
+			size++;
+		}
+
+		private Node[] resize(Node[] old) {
+			Node[] tab = new Node[old.length << 1];
+			final int mask = tab.length - 1;
+			for (int i = 0; i < old.length; i++) {
+				for (Node n = old[i]; n != null; n = n.next) {
+					int idx = n.entry.hash & mask;
+					tab[idx] = new Node(n.entry, tab[idx]);
+				}
+			}
+			table = tab;
+			return tab;
+		}
+
+		void remove(Entry e) {
+			final Node[] tab = table;
+			final int idx = e.hash & (tab.length - 1);
+			final Node first = tab[idx];
+			for (Node n = first; n != null; n = n.next) {
+				if (n.entry == e) {
+					// 复制被删除节点之前的节点,原有的链保持不变
+					Node rest = n.next;
+					for (Node c = first; c != n; c = c.next) {
+						rest = new Node(c.entry, rest);
+					}
+					tab[idx] = rest;
+					residentBytes -= e.bytes;
+					size--;
+					break;
+				}
+			}
+			e.removed = true;
+			unlinkIdle(e);
+		}
+
+		void linkIdle(Entry e) {
+			unlinkIdle(e);
+			e.after = head.after;
+			e.before = head;
+			head.after.before = e;
+			head.after = e;
+			e.idle = true;
+		}
+
+		void unlinkIdle(Entry e) {
+			if (e.idle) {
+				e.before.after = e.after;
+				e.after.before = e.before;
+				e.before = e.after = null;
+				e.idle = false;
+			}
+		}
+
+		Entry oldestIdle() {
+			return head.before == head ? null : head.before;
+		}
+
+		void clear(TArray<LTexture> textures) {
+			final Node[] tab = table;
+			for (int i = 0; i < tab.length; i++) {
+				for (Node n = tab[i]; n != null; n = n.next) {
+					n.entry.removed = true;
+					textures.add(n.entry.texture);
+				}
+			}
+			table = new Node[16];
+			head.before = head.after = head;
+			size = 0;
+			residentBytes = 0;
+		}
+
+	}
+
+	private final static int SEGMENT_COUNT = 16;
+
+	private final Segment[] segments;
+
+	// 全局递增的访问序号,不同段的纹理可以直接比较先后
+	private final AtomicLong stamp = new AtomicLong();
+
+	private long maxBytes;
+
+	public LTextureCache() {
+		this(0);
+	}
+
+	/**
+	 * @param maxBytes
+	 *            缓存纹理的字节预算,小于等于0时不保留引用计数为0的纹理(与旧版行为相同)
+	 */
+	public LTextureCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		this.segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * 规范化纹理路径作为缓存键
+	 * 
+	 * @param path
+	 * @return
+	 */
+	public static String normalize(String path) {
+		if (path == null) {
+			return null;
+		}
+		String key = path.trim().toLowerCase();
+		if (key.indexOf('\\') != -1) {
+			key = key.replace('\\', '/');
+		}
+		while (key.indexOf("//") != -1) {
+			key = StringUtils.replace(key, "//", "/");
+		}
+		while (key.startsWith("./")) {
+			key = key.substring(2);
+		}
+		return key;
+	}
+
+	private static int hash(String key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private final Segment segmentFor(int hash) {
+		return segments[(hash >>> 8) & (SEGMENT_COUNT - 1)];
+	}
+
+	/**
+	 * 查询缓存中可用的纹理,找到时增加它的引用计数(未命中次数在put时统计,即实际加载纹理的次数).
+	 * 
+	 * 正在使用中的纹理不加锁直接返回,空闲纹理需要移出空闲队列,所以锁定键所在的段.
+	 * 
+	 * @param key
+	 *            规范化后的键
+	 * @return
+	 */
+	public LTexture get(String key) {
+		final int hash = hash(key);
+		final Segment seg = segmentFor(hash);
+		final Entry live = seg.find(key, hash);
+		if (live != null && !live.removed && !live.idle) {
+			final LTexture texture = live.texture;
+			// 引用计数大于0的纹理不会进入空闲队列,也不会被trim淘汰
+			if (texture.refCount > 0 && !texture.isClosed()) {
+				texture.refCount++;
+				live.lastAccess = stamp.incrementAndGet();
+				seg.hits.incrementAndGet();
+				return texture;
+			}
+		}
+		synchronized (seg) {
+			Entry e = seg.find(key, hash);
+			if (e == null) {
+				return null;
+			}
+			LTexture texture = e.texture;
+			if (texture.isClosed()) {
+				seg.remove(e);
+				return null;
+			}
+			seg.unlinkIdle(e);
+			texture.refCount++;
+			e.lastAccess = stamp.incrementAndGet();
+			seg.hits.incrementAndGet();
+			return texture;
+		}
+	}
+
+	/**
+	 * 不增加引用计数地查看缓存中的纹理
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public LTexture peek(String key) {
+		if (key == null) {
+			return null;
+		}
+		final int hash = hash(key);
+		final Segment seg = segmentFor(hash);
+		Entry e = seg.find(key, hash);
+		if (e != null && !e.removed) {
+			return e.texture;
+		}
+		synchronized (seg) {
+			e = seg.find(key, hash);
+			return e == null ? null : e.texture;
+		}
+	}
+
+	/**
+	 * 加入新加载的纹理(引用计数为1),超出预算时淘汰不再使用的纹理
+	 * 
+	 * @param key
+	 * @param texture
+	 */
+	public void put(String key, LTexture texture) {
+		final int hash = hash(key);
+		final Segment seg = segmentFor(hash);
+		synchronized (seg) {
+			Entry old = seg.find(key, hash);
+			if (old != null) {
+				seg.remove(old);
+			}
+			Entry e = new Entry(key, hash, texture);
+			e.bytes = texture.getMemSize();
+			e.lastAccess = stamp.incrementAndGet();
+			texture.refCount = texture.refCount < 1 ? 1 : texture.refCount;
+			seg.insert(e);
+			seg.misses++;
+		}
+		trim();
+	}
+
+	/**
+	 * 从缓存中删除指定纹理(不销毁纹理)
+	 * 
+	 * @param texture
+	 * @return
+	 */
+	public boolean remove(LTexture texture) {
+		if (texture == null) {
+			return false;
+		}
+		if (texture.tmpLazy != null) {
+			final String key = normalize(texture.tmpLazy);
+			final int hash = hash(key);
+			final Segment seg = segmentFor(hash);
+			synchronized (seg) {
+				Entry e = seg.find(key, hash);
+				if (e != null && e.texture == texture) {
+					seg.remove(e);
+					return true;
+				}
+			}
+		}
+		// 以组合键(如重复平铺纹理)缓存的纹理没有对应的文件路径,只能逐段查找
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			final Segment seg = segments[i];
+			synchronized (seg) {
+				Entry e = seg.find(texture);
+				if (e != null) {
+					seg.remove(e);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 引用计数归零的缓存纹理在预算允许时继续保留,返回true表示纹理已被缓存保留而无需销毁
+	 * 
+	 * @param texture
+	 * @return
+	 */
+	public boolean retain(LTexture texture) {
+		if (maxBytes <= 0 || texture == null || texture.tmpLazy == null) {
+			return false;
+		}
+		final String key = normalize(texture.tmpLazy);
+		final int hash = hash(key);
+		final Segment seg = segmentFor(hash);
+		synchronized (seg) {
+			Entry e = seg.find(key, hash);
+			if (e == null || e.texture != texture) {
+				return false;
+			}
+			if (texture.refCount > 0) {
+				// 已被其他线程重新引用,仍在使用中
+				return true;
+			}
+			texture.refCount = 0;
+			e.lastAccess = stamp.incrementAndGet();
+			if (!texture.isDisabledTexture()) {
+				seg.linkIdle(e);
+			}
+		}
+		trim();
+		return true;
+	}
+
+	/**
+	 * 缓存纹理当前占用的字节数
+	 * 
+	 * @return
+	 */
+	public long getResidentBytes() {
+		long bytes = 0;
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			bytes += segments[i].residentBytes;
+		}
+		return bytes;
+	}
+
+	/**
+	 * 超出预算时,按最近最少使用的顺序销毁引用计数为0的纹理
+	 */
+	public void trim() {
+		if (maxBytes <= 0) {
+			return;
+		}
+		while (getResidentBytes() > maxBytes) {
+			Segment target = null;
+			long oldest = Long.MAX_VALUE;
+			for (int i = 0; i < SEGMENT_COUNT; i++) {
+				final Segment seg = segments[i];
+				synchronized (seg) {
+					Entry e = seg.oldestIdle();
+					if (e != null && e.lastAccess < oldest) {
+						oldest = e.lastAccess;
+						target = seg;
+					}
+				}
+			}
+			if (target == null) {
+				return;
+			}
+			LTexture texture = null;
+			synchronized (target) {
+				Entry e = target.oldestIdle();
+				if (e != null) {
+					if (e.texture.refCount > 0) {
+						// 已被重新引用的纹理只移出空闲队列
+						target.unlinkIdle(e);
+					} else {
+						target.remove(e);
+						if (!e.texture.isClosed()) {
+							texture = e.texture;
+							target.evictions++;
+						}
+					}
+				}
+			}
+			if (texture != null) {
+				texture.close(true);
+			}
+		}
+	}
+
+	/**
+	 * 删除全部缓存并返回其中的纹理(不销毁纹理)
+	 * 
+	 * @return
+	 */
+	public TArray<LTexture> clear() {
+		TArray<LTexture> textures = new TArray<LTexture>(size());
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			final Segment seg = segments[i];
+			synchronized (seg) {
+				seg.clear(textures);
+			}
+		}
+		return textures;
+	}
+
+	public int size() {
+		int count = 0;
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			count += segments[i].size;
+		}
+		return count;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		trim();
+	}
+
+	public int getHitCount() {
+		int count = 0;
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			count += segments[i].hits.get();
+		}
+		return count;
+	}
+
+	public int getMissCount() {
+		int count = 0;
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			count += segments[i].misses;
+		}
+		return count;
+	}
+
+	public int getEvictionCount() {
+		int count = 0;
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			count += segments[i].evictions;
+		}
+		return count;
+	}
+
+	public void resetCounters() {
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			final Segment seg = segments[i];
+			synchronized (seg) {
+				seg.hits.set(0);
+				seg.misses = seg.evictions = 0;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "LTextureCache [size=" + size() + ", residentBytes=" + getResidentBytes() + ", maxBytes=" + maxBytes
+				+ ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+				+ "]";
+	}
+
+}
@@ -33,6 +33,22 @@ public class LTextures {
 		return LSystem.getTextureMemSize();
 	}
 
+	/**
+	 * 获得纹理缓存(可查看命中,未命中,淘汰次数,缓存占用字节数,或修改字节预算)
+	 * 
+	 * @return
+	 */
+	public static LTextureCache getCache() {
+		return LSystem.getTextureCache();
+	}
+
+	public static void setCacheMaxBytes(long maxBytes) {
+		LTextureCache cache = LSystem.getTextureCache();
+		if (cache != null) {
+			cache.setMaxBytes(maxBytes);
+		}
+	}
+
 	public static LTexture createTexture(int width, int height, Format config) {
 		return LSystem.createTexture(width, height, config);
 	}
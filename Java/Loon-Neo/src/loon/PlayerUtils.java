@@ -76,7 +76,7 @@ public class PlayerUtils extends Director {
 				}
 				update.action(time);
 			}
-		});
+		}.setParkable(true));
 	}
 
 	/**
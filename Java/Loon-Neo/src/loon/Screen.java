@@ -4293,7 +4293,7 @@ public abstract class Screen extends PlayerUtils implements SysInput, LRelease,
 	}
 
 	/**
-	 * 返回video的缓存结果(不设置out对象时才会有效)
+	 * 返回video的缓存结果(不设置out对象时才会有效),录像在后台完全写入之前返回null
 	 * 
 	 * @return
 	 */
@@ -4350,7 +4350,20 @@ public abstract class Screen extends PlayerUtils implements SysInput, LRelease,
 	 */
 	public Screen stopVideo() {
 		if (LSystem.base() != null && LSystem.base().display() != null) {
-			LSystem.base().display().startVideo();
+			LSystem.base().display().stopVideo();
+		}
+		return this;
+	}
+
+	/**
+	 * 结束录像,录像完全写入后在游戏线程中调用listener(此时getVideoCache可获得完整结果)
+	 * 
+	 * @param listener
+	 * @return
+	 */
+	public Screen stopVideo(Updateable listener) {
+		if (LSystem.base() != null && LSystem.base().display() != null) {
+			LSystem.base().display().stopVideo(listener);
 		}
 		return this;
 	}
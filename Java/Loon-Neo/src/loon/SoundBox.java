@@ -44,6 +44,37 @@ public abstract class SoundBox extends BaseIO {
 		sound.play();
 	}
 
+	/**
+	 * 预先载入指定音频到缓存,但不播放
+	 * 
+	 * @param path
+	 * @return
+	 */
+	public Sound preloadSound(String path) {
+		Sound sound = SOUND_CACHE.get(path);
+		if (sound == null) {
+			sound = LSystem.base().assets().getSound(path);
+			SOUND_CACHE.put(path, sound);
+		}
+		return sound;
+	}
+
+	/**
+	 * 释放缓存中的指定音频
+	 * 
+	 * @param path
+	 */
+	public void releaseSound(String path) {
+		Sound sound = SOUND_CACHE.remove(path);
+		if (sound != null) {
+			sound.release();
+		}
+	}
+
+	public boolean containsSound(String path) {
+		return SOUND_CACHE.containsKey(path);
+	}
+
 	public void volume(String path, float volume) {
 		Sound sound = SOUND_CACHE.get(path);
 		if (sound != null) {
@@ -0,0 +1,612 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action;
+
+import loon.LRelease;
+import loon.utils.CollectionUtils;
+import loon.utils.Easing;
+import loon.utils.Easing.EasingMode;
+import loon.utils.MathUtils;
+import loon.utils.ObjectMap;
+import loon.utils.ObjectSet;
+import loon.utils.TArray;
+
+/**
+ * 批量缓动动画.
+ * 
+ * 只处理最常用的属性缓动(位置,透明度,缩放,旋转),所有缓动的时间,起止值与缓动模式都保存在基本类型数组中(结构数组),
+ * 每帧在一个循环中按Easing计算进度并直接写回ActionBind,不创建ActionEvent,不加锁,结束的缓动槽位在本次刷新结束后复用,运行中不产生新的对象.
+ * 适合同时驱动成千上万个粒子或界面元素,复杂的动作(路径,跳跃,闪烁等)仍然使用ActionEvent.
+ * 
+ * 添加缓动时返回一个int句柄,可以用来查询或取消缓动,槽位复用后旧句柄自动失效.
+ * 同一对象的缓动以链表串联并按对象索引,按对象查询,取消与暂停只访问该对象自己的缓动.
+ * 暂停状态按对象单独保存,对象暂时没有缓动时也会保留,之后添加的缓动同样处于暂停状态,直到调用paused(false,bind)或clear.
+ */
+public class ActionBulkTween implements LRelease {
+
+	/**
+	 * 同一缓动对象的全部缓动(以句柄id串联的双向链表)
+	 */
+	private static class TweenTarget {
+
+		ActionBind bind;
+
+		int head = -1;
+
+		int size;
+
+		// pausedTargets中该对象状态的副本,避免每个缓动每帧查询一次集合
+		boolean paused;
+
+	}
+
+	public static final int X = 1;
+
+	public static final int Y = 2;
+
+	public static final int ALPHA = 4;
+
+	public static final int SCALE_X = 8;
+
+	public static final int SCALE_Y = 16;
+
+	public static final int ROTATION = 32;
+
+	private static final int STARTED = 1 << 16;
+
+	private static final int REMOVED = 1 << 17;
+
+	private static final int STRIDE = 12;
+
+	private static final int ID_BITS = 20;
+
+	private static final int ID_MASK = (1 << ID_BITS) - 1;
+
+	private ActionBind[] targets;
+
+	private TweenTarget[] owners;
+
+	private EasingMode[] modes;
+
+	private ActionListener[] listeners;
+
+	private float[] times;
+
+	private float[] delays;
+
+	private float[] durations;
+
+	private float[] values;
+
+	private int[] flags;
+
+	private int[] slotIds;
+
+	private int[] idSlots;
+
+	private int[] idGenerations;
+
+	private int[] freeIds;
+
+	private int[] idNext;
+
+	private int[] idPrev;
+
+	private final ObjectMap<ActionBind, TweenTarget> targetIndex = new ObjectMap<ActionBind, TweenTarget>();
+
+	private final TArray<TweenTarget> freeTargets = new TArray<TweenTarget>();
+
+	private final ObjectSet<ActionBind> pausedTargets = new ObjectSet<ActionBind>();
+
+	private boolean updating;
+
+	private int numRemoved;
+
+	private int numFreeIds;
+
+	private int nextId;
+
+	private int count;
+
+	public ActionBulkTween() {
+		this(CollectionUtils.INITIAL_CAPACITY * 4);
+	}
+
+	public ActionBulkTween(int capacity) {
+		capacity = MathUtils.max(8, capacity);
+		this.targets = new ActionBind[capacity];
+		this.owners = new TweenTarget[capacity];
+		this.modes = new EasingMode[capacity];
+		this.listeners = new ActionListener[capacity];
+		this.times = new float[capacity];
+		this.delays = new float[capacity];
+		this.durations = new float[capacity];
+		this.values = new float[capacity * STRIDE];
+		this.flags = new int[capacity];
+		this.slotIds = new int[capacity];
+		this.idSlots = new int[capacity];
+		this.idGenerations = new int[capacity];
+		this.freeIds = new int[capacity];
+		this.idNext = new int[capacity];
+		this.idPrev = new int[capacity];
+	}
+
+	private void relength(int newlength) {
+		ActionBind[] newTargets = new ActionBind[newlength];
+		System.arraycopy(targets, 0, newTargets, 0, count);
+		targets = newTargets;
+		TweenTarget[] newOwners = new TweenTarget[newlength];
+		System.arraycopy(owners, 0, newOwners, 0, count);
+		owners = newOwners;
+		EasingMode[] newModes = new EasingMode[newlength];
+		System.arraycopy(modes, 0, newModes, 0, count);
+		modes = newModes;
+		ActionListener[] newListeners = new ActionListener[newlength];
+		System.arraycopy(listeners, 0, newListeners, 0, count);
+		listeners = newListeners;
+		times = CollectionUtils.copyOf(times, newlength);
+		delays = CollectionUtils.copyOf(delays, newlength);
+		durations = CollectionUtils.copyOf(durations, newlength);
+		values = CollectionUtils.copyOf(values, newlength * STRIDE);
+		flags = CollectionUtils.copyOf(flags, newlength);
+		slotIds = CollectionUtils.copyOf(slotIds, newlength);
+	}
+
+	private int obtainId() {
+		if (numFreeIds > 0) {
+			return freeIds[--numFreeIds];
+		}
+		if (nextId == idSlots.length) {
+			idSlots = CollectionUtils.copyOf(idSlots, nextId * 2);
+			idGenerations = CollectionUtils.copyOf(idGenerations, nextId * 2);
+			freeIds = CollectionUtils.copyOf(freeIds, nextId * 2);
+			idNext = CollectionUtils.copyOf(idNext, nextId * 2);
+			idPrev = CollectionUtils.copyOf(idPrev, nextId * 2);
+		}
+		return nextId++;
+	}
+
+	private TweenTarget obtainTarget(ActionBind bind) {
+		TweenTarget target = targetIndex.get(bind);
+		if (target == null) {
+			target = freeTargets.size > 0 ? freeTargets.pop() : new TweenTarget();
+			target.bind = bind;
+			target.paused = pausedTargets.size() > 0 && pausedTargets.contains(bind);
+			targetIndex.put(bind, target);
+		}
+		return target;
+	}
+
+	private void link(TweenTarget target, int id) {
+		idPrev[id] = -1;
+		idNext[id] = target.head;
+		if (target.head != -1) {
+			idPrev[target.head] = id;
+		}
+		target.head = id;
+		target.size++;
+	}
+
+	private void unlink(TweenTarget target, int id) {
+		final int prev = idPrev[id];
+		final int next = idNext[id];
+		if (prev != -1) {
+			idNext[prev] = next;
+		} else {
+			target.head = next;
+		}
+		if (next != -1) {
+			idPrev[next] = prev;
+		}
+		if (--target.size == 0) {
+			targetIndex.remove(target.bind);
+			freeTarget(target);
+		}
+	}
+
+	private void freeTarget(TweenTarget target) {
+		target.bind = null;
+		target.head = -1;
+		target.size = 0;
+		target.paused = false;
+		freeTargets.add(target);
+	}
+
+	/**
+	 * 添加一个属性缓动
+	 * 
+	 * @param bind
+	 *            缓动对象
+	 * @param mask
+	 *            缓动的属性(X,Y,ALPHA,SCALE_X,SCALE_Y,ROTATION的组合)
+	 * @param x
+	 * @param y
+	 * @param alpha
+	 * @param scaleX
+	 * @param scaleY
+	 * @param rotation
+	 * @param duration
+	 *            持续时间(秒)
+	 * @param delay
+	 *            延迟开始的时间(秒),起始值在延迟结束时读取
+	 * @param mode
+	 * @param listener
+	 *            可以为null
+	 * @return 缓动句柄
+	 */
+	public int to(ActionBind bind, int mask, float x, float y, float alpha, float scaleX, float scaleY,
+			float rotation, float duration, float delay, EasingMode mode, ActionListener listener) {
+		if (bind == null || (mask & (X | Y | ALPHA | SCALE_X | SCALE_Y | ROTATION)) == 0) {
+			return -1;
+		}
+		if (count == targets.length) {
+			relength(count * 2);
+		}
+		final int slot = count++;
+		final int id = obtainId();
+		idSlots[id] = slot;
+		slotIds[slot] = id;
+		targets[slot] = bind;
+		final TweenTarget owner = obtainTarget(bind);
+		owners[slot] = owner;
+		link(owner, id);
+		modes[slot] = mode == null ? EasingMode.Linear : mode;
+		listeners[slot] = listener;
+		times[slot] = 0f;
+		delays[slot] = MathUtils.max(0f, delay);
+		durations[slot] = MathUtils.max(0f, duration);
+		flags[slot] = mask & (X | Y | ALPHA | SCALE_X | SCALE_Y | ROTATION);
+		final int base = slot * STRIDE;
+		values[base + 1] = x;
+		values[base + 3] = y;
+		values[base + 5] = alpha;
+		values[base + 7] = scaleX;
+		values[base + 9] = scaleY;
+		values[base + 11] = rotation;
+		return (idGenerations[id] << ID_BITS) | id;
+	}
+
+	public int moveTo(ActionBind bind, float x, float y, float duration, EasingMode mode) {
+		return to(bind, X | Y, x, y, 0f, 0f, 0f, 0f, duration, 0f, mode, null);
+	}
+
+	public int fadeTo(ActionBind bind, float alpha, float duration, EasingMode mode) {
+		return to(bind, ALPHA, 0f, 0f, alpha, 0f, 0f, 0f, duration, 0f, mode, null);
+	}
+
+	public int scaleTo(ActionBind bind, float scaleX, float scaleY, float duration, EasingMode mode) {
+		return to(bind, SCALE_X | SCALE_Y, 0f, 0f, 0f, scaleX, scaleY, 0f, duration, 0f, mode, null);
+	}
+
+	public int rotateTo(ActionBind bind, float rotation, float duration, EasingMode mode) {
+		return to(bind, ROTATION, 0f, 0f, 0f, 0f, 0f, rotation, duration, 0f, mode, null);
+	}
+
+	private int slotOf(int handle) {
+		if (handle < 0) {
+			return -1;
+		}
+		int id = handle & ID_MASK;
+		if (id >= nextId || idGenerations[id] != (handle >>> ID_BITS)) {
+			return -1;
+		}
+		return idSlots[id];
+	}
+
+	/**
+	 * 检查指定句柄的缓动是否仍在运行
+	 * 
+	 * @param handle
+	 * @return
+	 */
+	public boolean isRunning(int handle) {
+		return slotOf(handle) >= 0;
+	}
+
+	/**
+	 * 取消指定句柄的缓动(属性停留在当前值)
+	 * 
+	 * @param handle
+	 * @return
+	 */
+	public boolean cancel(int handle) {
+		int slot = slotOf(handle);
+		if (slot < 0) {
+			return false;
+		}
+		removeSlot(slot);
+		return true;
+	}
+
+	/**
+	 * 取消指定对象的全部缓动
+	 * 
+	 * @param bind
+	 * @return
+	 */
+	public int cancel(ActionBind bind) {
+		final TweenTarget target = bind == null ? null : targetIndex.get(bind);
+		if (target == null) {
+			return 0;
+		}
+		// 最后一个缓动移除时target会被回收,所以先取出数量
+		final int removed = target.size;
+		for (int i = 0; i < removed; i++) {
+			removeSlot(idSlots[target.head]);
+		}
+		return removed;
+	}
+
+	/**
+	 * 检查指定对象是否还有运行中的缓动
+	 * 
+	 * @param bind
+	 * @return
+	 */
+	public boolean contains(ActionBind bind) {
+		return bind != null && targetIndex.containsKey(bind);
+	}
+
+	/**
+	 * 暂停或继续指定对象的全部缓动(暂停期间缓动时间不再增加)
+	 * 
+	 * @param pause
+	 * @param bind
+	 */
+	public void paused(boolean pause, ActionBind bind) {
+		if (bind == null) {
+			return;
+		}
+		if (pause) {
+			pausedTargets.add(bind);
+		} else {
+			pausedTargets.remove(bind);
+		}
+		final TweenTarget target = targetIndex.get(bind);
+		if (target != null) {
+			target.paused = pause;
+		}
+	}
+
+	public boolean isPaused(ActionBind bind) {
+		return bind != null && pausedTargets.contains(bind);
+	}
+
+	private void removeSlot(int slot) {
+		final int id = slotIds[slot];
+		idSlots[id] = -1;
+		idGenerations[id] = (idGenerations[id] + 1) & ((1 << (31 - ID_BITS)) - 1);
+		freeIds[numFreeIds++] = id;
+		unlink(owners[slot], id);
+		if (updating) {
+			// 刷新过程中只做标记,槽位在本轮刷新结束后统一压缩,避免其他缓动被换入尚未刷新的槽位而在同一帧刷新两次
+			flags[slot] = REMOVED;
+			targets[slot] = null;
+			owners[slot] = null;
+			modes[slot] = null;
+			listeners[slot] = null;
+			numRemoved++;
+			return;
+		}
+		final int last = --count;
+		if (slot != last) {
+			targets[slot] = targets[last];
+			owners[slot] = owners[last];
+			modes[slot] = modes[last];
+			listeners[slot] = listeners[last];
+			times[slot] = times[last];
+			delays[slot] = delays[last];
+			durations[slot] = durations[last];
+			flags[slot] = flags[last];
+			System.arraycopy(values, last * STRIDE, values, slot * STRIDE, STRIDE);
+			int lastId = slotIds[last];
+			slotIds[slot] = lastId;
+			idSlots[lastId] = slot;
+		}
+		targets[last] = null;
+		owners[last] = null;
+		modes[last] = null;
+		listeners[last] = null;
+	}
+
+	/**
+	 * 移除刷新过程中标记删除的槽位,保持其余缓动的顺序
+	 */
+	private void compactSlots() {
+		int w = 0;
+		for (int r = 0; r < count; r++) {
+			if (flags[r] == REMOVED) {
+				continue;
+			}
+			if (w != r) {
+				targets[w] = targets[r];
+				owners[w] = owners[r];
+				modes[w] = modes[r];
+				listeners[w] = listeners[r];
+				times[w] = times[r];
+				delays[w] = delays[r];
+				durations[w] = durations[r];
+				flags[w] = flags[r];
+				System.arraycopy(values, r * STRIDE, values, w * STRIDE, STRIDE);
+				int id = slotIds[r];
+				slotIds[w] = id;
+				idSlots[id] = w;
+			}
+			w++;
+		}
+		for (int i = w; i < count; i++) {
+			targets[i] = null;
+			owners[i] = null;
+			modes[i] = null;
+			listeners[i] = null;
+		}
+		count = w;
+		numRemoved = 0;
+	}
+
+	private void begin(int slot) {
+		final ActionBind bind = targets[slot];
+		final int flag = flags[slot];
+		final int base = slot * STRIDE;
+		values[base] = bind.getX();
+		values[base + 2] = bind.getY();
+		values[base + 4] = bind.getAlpha();
+		values[base + 6] = bind.getScaleX();
+		values[base + 8] = bind.getScaleY();
+		values[base + 10] = bind.getRotation();
+		flags[slot] = flag | STARTED;
+		if (listeners[slot] != null) {
+			listeners[slot].start(bind);
+		}
+	}
+
+	/**
+	 * 刷新全部缓动
+	 * 
+	 * @param elapsedTime
+	 */
+	public void update(long elapsedTime) {
+		if (count == 0) {
+			return;
+		}
+		final float delta = MathUtils.min(elapsedTime / 1000f, 0.1f);
+		updating = true;
+		try {
+			for (int i = count - 1; i >= 0; i--) {
+				step(i, delta);
+			}
+		} finally {
+			updating = false;
+			if (numRemoved > 0) {
+				compactSlots();
+			}
+		}
+	}
+
+	private void step(int i, float delta) {
+		// 回调中可能调用clear,或取消缓动(只标记为REMOVED),也可能添加新缓动使数组扩容,所以每次都从字段读取
+		if (i >= count || flags[i] == REMOVED || owners[i].paused) {
+			return;
+		}
+		final int id = slotIds[i];
+		final int handle = (idGenerations[id] << ID_BITS) | id;
+		final float time = times[i] + delta;
+		times[i] = time;
+		final float delay = delays[i];
+		if (time < delay) {
+			return;
+		}
+		if ((flags[i] & STARTED) == 0) {
+			begin(i);
+			if (slotOf(handle) != i) {
+				return;
+			}
+		}
+		final float duration = durations[i];
+		float local = time - delay;
+		final boolean completed = local >= duration;
+		if (completed) {
+			local = duration;
+		}
+		final EasingMode mode = modes[i];
+		final float progress;
+		if (duration <= 0f) {
+			progress = 1f;
+		} else if (mode == EasingMode.Linear) {
+			progress = local / duration;
+		} else {
+			progress = Easing.ease(mode, local, duration, 1f, 0f);
+		}
+		final ActionBind bind = targets[i];
+		final int flag = flags[i];
+		final int base = i * STRIDE;
+		if ((flag & (X | Y)) != 0) {
+			float x = (flag & X) != 0 ? values[base] + (values[base + 1] - values[base]) * progress : bind.getX();
+			float y = (flag & Y) != 0 ? values[base + 2] + (values[base + 3] - values[base + 2]) * progress
+					: bind.getY();
+			bind.setLocation(x, y);
+		}
+		if ((flag & ALPHA) != 0) {
+			bind.setAlpha(values[base + 4] + (values[base + 5] - values[base + 4]) * progress);
+		}
+		if ((flag & (SCALE_X | SCALE_Y)) != 0) {
+			float sx = (flag & SCALE_X) != 0 ? values[base + 6] + (values[base + 7] - values[base + 6]) * progress
+					: bind.getScaleX();
+			float sy = (flag & SCALE_Y) != 0 ? values[base + 8] + (values[base + 9] - values[base + 8]) * progress
+					: bind.getScaleY();
+			bind.setScale(sx, sy);
+		}
+		if ((flag & ROTATION) != 0) {
+			bind.setRotation(values[base + 10] + (values[base + 11] - values[base + 10]) * progress);
+		}
+		final ActionListener listener = listeners[i];
+		if (listener != null) {
+			listener.process(bind);
+		}
+		if (completed) {
+			// process回调可能已取消了该缓动,只删除仍属于该句柄的槽位
+			final int slot = slotOf(handle);
+			if (slot >= 0) {
+				removeSlot(slot);
+				if (listener != null) {
+					listener.stop(bind);
+				}
+			}
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	public void clear() {
+		for (int i = 0; i < count; i++) {
+			if (flags[i] == REMOVED) {
+				continue;
+			}
+			int id = slotIds[i];
+			idSlots[id] = -1;
+			idGenerations[id] = (idGenerations[id] + 1) & ((1 << (31 - ID_BITS)) - 1);
+			freeIds[numFreeIds++] = id;
+			targets[i] = null;
+			owners[i] = null;
+			modes[i] = null;
+			listeners[i] = null;
+		}
+		for (TweenTarget target : targetIndex.values()) {
+			freeTarget(target);
+		}
+		targetIndex.clear();
+		pausedTargets.clear();
+		count = 0;
+		numRemoved = 0;
+	}
+
+	@Override
+	public void close() {
+		clear();
+	}
+
+}
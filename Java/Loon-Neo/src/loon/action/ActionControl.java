@@ -38,6 +38,8 @@ public class ActionControl implements LRelease {
 
 	private final Actions actions;
 
+	private final ActionBulkTween bulkTweens;
+
 	private final LTimer delayTimer;
 
 	private boolean pause;
@@ -69,11 +71,12 @@ public class ActionControl implements LRelease {
 	 * 调用缓动动画事件循环
 	 */
 	public final void call(long elapsedTime) {
-		if (pause || actions.getCount() == 0) {
+		if (pause || (actions.getCount() == 0 && bulkTweens.isEmpty())) {
 			return;
 		}
 		if (delayTimer.action(elapsedTime)) {
 			actions.update(elapsedTime);
+			bulkTweens.update(elapsedTime);
 		}
 	}
 
@@ -203,6 +206,7 @@ public class ActionControl implements LRelease {
 
 	private ActionControl() {
 		actions = new Actions();
+		bulkTweens = new ActionBulkTween();
 		delayTimer = new LTimer(0);
 		bindDatas = new Array<ActionBindData>();
 		pause = false;
@@ -218,16 +222,29 @@ public class ActionControl implements LRelease {
 
 	public void removeAllActions(ActionBind actObject) {
 		actions.removeAllActions(actObject);
+		bulkTweens.cancel(actObject);
+	}
+
+	/**
+	 * 获得批量缓动动画控制器(适合同时驱动大量对象的位置,透明度,缩放,旋转缓动)
+	 * 
+	 * @return
+	 */
+	public ActionBulkTween getBulkTween() {
+		return bulkTweens;
 	}
 
 	public boolean containsKey(ActionBind actObject) {
-		return actions.containsKey(actObject);
+		return actions.containsKey(actObject) || bulkTweens.contains(actObject);
 	}
 
 	public boolean isCompleted(ActionBind actObject) {
 		if (actObject == null) {
 			return true;
 		}
+		if (bulkTweens.contains(actObject)) {
+			return false;
+		}
 		return actions.isCompleted(actObject);
 	}
 
@@ -257,14 +274,17 @@ public class ActionControl implements LRelease {
 
 	public void stop(ActionBind actObject) {
 		actions.stop(actObject);
+		bulkTweens.paused(true, actObject);
 	}
 
 	public void start(ActionBind actObject) {
 		actions.start(actObject);
+		bulkTweens.paused(false, actObject);
 	}
 
 	public void paused(boolean pause, ActionBind actObject) {
 		actions.paused(pause, actObject);
+		bulkTweens.paused(pause, actObject);
 	}
 
 	public boolean isPause() {
@@ -277,6 +297,7 @@ public class ActionControl implements LRelease {
 
 	public void clear() {
 		actions.clear();
+		bulkTweens.clear();
 	}
 
 	public void stop() {
@@ -291,6 +312,7 @@ public class ActionControl implements LRelease {
 	@Override
 	public void close() {
 		actions.clear();
+		bulkTweens.clear();
 		bindDatas.clear();
 	}
 
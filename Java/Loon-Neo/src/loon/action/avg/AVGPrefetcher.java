@@ -0,0 +1,385 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.avg;
+
+import loon.LRelease;
+import loon.LSystem;
+import loon.LTexture;
+import loon.LTextureCache;
+import loon.LTextures;
+import loon.SoundBox;
+import loon.action.avg.drama.CommandProgram;
+import loon.utils.ArrayMap;
+import loon.utils.ObjectMap;
+import loon.utils.StringUtils;
+import loon.utils.TArray;
+
+/**
+ * AVG脚本资源预读器,沿预编译的CommandProgram向后查看若干行,把即将使用的背景,角色纹理与音频提前载入缓存,
+ * 每帧只载入有限数量的资源以分摊加载耗时,纹理占用受内存预算限制,离开预读窗口的资源会被释放.
+ * 
+ * (音频无法获知占用大小,不计入内存预算,只受预读行数限制,预读后未被使用就离开窗口的音频会从SoundBox中释放)
+ * 
+ * (纹理上传必须在游戏线程进行,所以预读以逐帧分片的方式在游戏线程完成)
+ */
+public class AVGPrefetcher implements LRelease {
+
+	private static class Entry {
+
+		String path;
+
+		boolean sound;
+
+		boolean loaded;
+
+		boolean failed;
+
+		boolean used;
+
+		boolean preloaded;
+
+		LTexture texture;
+
+		int bytes;
+
+		int order;
+
+		int mark;
+
+	}
+
+	private final SoundBox soundBox;
+
+	private final ObjectMap<String, Entry> textures = new ObjectMap<String, Entry>();
+
+	private final ObjectMap<String, Entry> sounds = new ObjectMap<String, Entry>();
+
+	private final TArray<Entry> entries = new TArray<Entry>();
+
+	private CommandProgram program;
+
+	private int index = -1;
+
+	private int mark;
+
+	private int lookahead = 32;
+
+	private int loadsPerFrame = 1;
+
+	private long maxBytes = 16 * 1024 * 1024;
+
+	private long residentBytes;
+
+	private int hits, misses, prefetched, dropped;
+
+	private boolean enabled = true;
+
+	public AVGPrefetcher(SoundBox box) {
+		this.soundBox = box;
+	}
+
+	/**
+	 * 以指定脚本的当前行为起点刷新预读窗口,脚本与行号都未变化时直接返回
+	 * 
+	 * @param program
+	 * @param index
+	 * @param vars
+	 */
+	public void prefetch(CommandProgram program, int index, ArrayMap vars) {
+		if (!enabled || program == null) {
+			return;
+		}
+		if (this.program == program && this.index == index) {
+			return;
+		}
+		this.program = program;
+		this.index = index;
+		this.mark++;
+		final int size = program.size();
+		int pos = index;
+		int order = 0;
+		for (int steps = 0; pos < size && steps < lookahead; steps++) {
+			int type = program.getType(pos);
+			// 代码段只在call时执行,跳过定义部分
+			if (type == CommandProgram.OP_BEGIN) {
+				for (pos++; pos < size && program.getType(pos) != CommandProgram.OP_END;) {
+					pos++;
+				}
+				pos++;
+				continue;
+			}
+			if (type == CommandProgram.OP_INCLUDE || type == CommandProgram.OP_EXIT) {
+				break;
+			}
+			String path = program.getAsset(pos, vars);
+			if (path != null) {
+				want(path, program.isSound(pos), order++);
+			}
+			if (type == CommandProgram.OP_GOTO) {
+				int jump = program.getJump(pos);
+				if (jump != -1) {
+					pos = jump + 1;
+					continue;
+				}
+			}
+			pos++;
+		}
+		for (int i = entries.size - 1; i > -1; i--) {
+			Entry e = entries.get(i);
+			if (e.mark != mark) {
+				free(e);
+				entries.removeIndex(i);
+			}
+		}
+	}
+
+	private void want(String path, boolean sound, int order) {
+		ObjectMap<String, Entry> list = sound ? sounds : textures;
+		Entry e = list.get(path);
+		if (e == null) {
+			e = new Entry();
+			e.path = path;
+			e.sound = sound;
+			list.put(path, e);
+			entries.add(e);
+		}
+		if (e.mark != mark) {
+			e.mark = mark;
+			e.order = order;
+		}
+	}
+
+	private void free(Entry e) {
+		if (e.sound) {
+			sounds.remove(e.path);
+		} else {
+			textures.remove(e.path);
+		}
+		if (e.loaded && !e.used) {
+			dropped++;
+			if (e.preloaded) {
+				soundBox.releaseSound(e.path);
+			}
+		}
+		if (e.texture != null) {
+			residentBytes -= e.bytes;
+			// 只归还预读器自己持有的那一份引用,场景通过纹理缓存获得的引用另外计数,不会因此被关闭
+			e.texture.close();
+			e.texture = null;
+		}
+	}
+
+	/**
+	 * 载入预读窗口中尚未载入的资源,每次调用最多载入loadsPerFrame个
+	 */
+	public void update() {
+		if (!enabled) {
+			return;
+		}
+		for (int count = 0; count < loadsPerFrame; count++) {
+			Entry next = null;
+			for (int i = 0; i < entries.size; i++) {
+				Entry e = entries.get(i);
+				if (e.loaded || e.failed || e.used) {
+					continue;
+				}
+				if (!e.sound && residentBytes >= maxBytes) {
+					continue;
+				}
+				if (next == null || e.order < next.order) {
+					next = e;
+				}
+			}
+			if (next == null) {
+				return;
+			}
+			load(next);
+		}
+	}
+
+	private void load(Entry e) {
+		try {
+			if (e.sound) {
+				if (!soundBox.containsSound(e.path)) {
+					soundBox.preloadSound(e.path);
+					e.preloaded = true;
+					prefetched++;
+				}
+			} else {
+				// 已在纹理缓存中的图片无需预读,也不额外持有其引用
+				LTexture cached = LTextures.getCache().peek(LTextureCache.normalize(e.path));
+				if (cached != null && !cached.isClosed()) {
+					e.loaded = true;
+					return;
+				}
+				LTexture texture = LSystem.loadTexture(e.path);
+				if (texture == null) {
+					e.failed = true;
+					return;
+				}
+				e.texture = texture;
+				e.bytes = texture.getMemSize();
+				residentBytes += e.bytes;
+				prefetched++;
+			}
+			e.loaded = true;
+		} catch (Throwable ex) {
+			e.failed = true;
+			LSystem.error("AVGPrefetcher load " + e.path + " error !", ex);
+		}
+	}
+
+	/**
+	 * 脚本实际使用资源时调用,统计预读命中情况
+	 * 
+	 * @param path
+	 * @param sound
+	 * @return
+	 */
+	public boolean use(String path, boolean sound) {
+		if (!enabled || path == null) {
+			return false;
+		}
+		if (!sound) {
+			if (StringUtils.startsWith(path, '"')) {
+				path = StringUtils.replace(path, "\"", LSystem.EMPTY);
+			}
+			if (path.endsWith(".an")) {
+				return false;
+			}
+		}
+		Entry e = sound ? sounds.get(path) : textures.get(path);
+		if (e == null) {
+			misses++;
+			return false;
+		}
+		if (e.used) {
+			return e.loaded;
+		}
+		e.used = true;
+		if (e.loaded) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return e.loaded;
+	}
+
+	public float getHitRate() {
+		int total = hits + misses;
+		return total == 0 ? 0f : (float) hits / total;
+	}
+
+	public int getHitCount() {
+		return hits;
+	}
+
+	public int getMissCount() {
+		return misses;
+	}
+
+	public int getPrefetchedCount() {
+		return prefetched;
+	}
+
+	/**
+	 * 预读后未被使用就离开窗口的资源数量
+	 * 
+	 * @return
+	 */
+	public int getDroppedCount() {
+		return dropped;
+	}
+
+	public long getResidentBytes() {
+		return residentBytes;
+	}
+
+	public void resetCounters() {
+		hits = misses = prefetched = dropped = 0;
+	}
+
+	public int getLookahead() {
+		return lookahead;
+	}
+
+	public AVGPrefetcher setLookahead(int lookahead) {
+		this.lookahead = lookahead;
+		this.index = -1;
+		return this;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public AVGPrefetcher setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		return this;
+	}
+
+	public int getLoadsPerFrame() {
+		return loadsPerFrame;
+	}
+
+	public AVGPrefetcher setLoadsPerFrame(int loads) {
+		this.loadsPerFrame = loads;
+		return this;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public AVGPrefetcher setEnabled(boolean enabled) {
+		if (this.enabled && !enabled) {
+			clear();
+		}
+		this.enabled = enabled;
+		return this;
+	}
+
+	/**
+	 * 释放全部预读中的资源
+	 */
+	public void clear() {
+		for (int i = 0; i < entries.size; i++) {
+			free(entries.get(i));
+		}
+		entries.clear();
+		textures.clear();
+		sounds.clear();
+		program = null;
+		index = -1;
+	}
+
+	@Override
+	public String toString() {
+		return "AVGPrefetcher [hits=" + hits + ", misses=" + misses + ", hitRate=" + getHitRate() + ", prefetched="
+				+ prefetched + ", dropped=" + dropped + ", residentBytes=" + residentBytes + "]";
+	}
+
+	@Override
+	public void close() {
+		clear();
+	}
+
+}
@@ -120,6 +120,8 @@ public abstract class AVGScreen extends Screen implements FontSet<AVGScreen> {
 
 	protected AVGCG scrCG;
 
+	private final AVGPrefetcher _prefetcher = new AVGPrefetcher(this);
+
 	protected LSelect selectUI;
 
 	protected LMessage messageUI;
@@ -1172,10 +1174,12 @@ public abstract class AVGScreen extends Screen implements FontSet<AVGScreen> {
 					continue;
 				}
 				if (cmdFlag.equalsIgnoreCase(CommandType.L_PLAY)) {
+					_prefetcher.use(mesFlag, true);
 					playSound(mesFlag, false);
 					continue;
 				}
 				if (cmdFlag.equalsIgnoreCase(CommandType.L_PLAYLOOP)) {
+					_prefetcher.use(mesFlag, true);
 					playSound(mesFlag, true);
 					continue;
 				}
@@ -1368,6 +1372,7 @@ public abstract class AVGScreen extends Screen implements FontSet<AVGScreen> {
 					if (mesFlag.equalsIgnoreCase("none")) {
 						scrCG.noneBackgroundCG();
 					} else {
+						_prefetcher.use(mesFlag, false);
 						scrCG.setBackgroundCG(mesFlag);
 					}
 					continue;
@@ -1387,6 +1392,7 @@ public abstract class AVGScreen extends Screen implements FontSet<AVGScreen> {
 							scrCG.close();
 						}
 					} else if (lastFlag != null && CommandType.L_TO.equalsIgnoreCase(orderFlag)) {
+						_prefetcher.use(lastFlag, false);
 						scrCG.replace(mesFlag, lastFlag);
 					} else {
 						int x = 0, y = 0;
@@ -1399,6 +1405,7 @@ public abstract class AVGScreen extends Screen implements FontSet<AVGScreen> {
 						final int tx = x;
 						final int ty = y;
 						final String name = mesFlag;
+						_prefetcher.use(name, false);
 						scrCG.add(name, tx, ty, getWidth(), getHeight());
 					}
 					continue;
@@ -1495,6 +1502,26 @@ public abstract class AVGScreen extends Screen implements FontSet<AVGScreen> {
 		return this;
 	}
 
+	/**
+	 * 获得脚本资源预读器
+	 * 
+	 * @return
+	 */
+	public AVGPrefetcher getPrefetcher() {
+		return _prefetcher;
+	}
+
+	/**
+	 * 设置是否提前预读脚本后续行使用的资源
+	 * 
+	 * @param prefetch
+	 * @return
+	 */
+	public AVGScreen setPrefetch(boolean prefetch) {
+		_prefetcher.setEnabled(prefetch);
+		return this;
+	}
+
 	public boolean isScrFlag() {
 		return scrFlag;
 	}
@@ -1673,6 +1700,10 @@ public abstract class AVGScreen extends Screen implements FontSet<AVGScreen> {
 		if (scrCG != null) {
 			scrCG.update(timer);
 		}
+		if (command != null && isGameRunning) {
+			_prefetcher.prefetch(command.getProgram(), command.getIndex(), command.getVariables());
+			_prefetcher.update();
+		}
 	}
 
 	@Override
@@ -1871,6 +1902,7 @@ public abstract class AVGScreen extends Screen implements FontSet<AVGScreen> {
 		if (command != null) {
 			command = null;
 		}
+		_prefetcher.close();
 		if (messageUI != null) {
 			messageUI.close();
 			messageUI = null;
@@ -116,6 +116,9 @@ public class Command extends Conversion implements LRelease {
 	// 脚本名
 	private String scriptName;
 
+	// 预编译的脚本
+	private CommandProgram program;
+
 	/**
 	 * 构造函数，载入指定脚本文件
 	 * 
@@ -207,6 +210,7 @@ public class Command extends Conversion implements LRelease {
 		this.scriptName = name;
 		this.scriptList = res;
 		this.scriptSize = res.length;
+		this.program = CommandProgram.compile(name, res);
 		this.offsetPos = 0;
 		this.flaging = false;
 		this.ifing = false;
@@ -540,16 +544,15 @@ public class Command extends Conversion implements LRelease {
 	 * @return
 	 */
 	public boolean gotoIndex(final String gotoFlag) {
-		int idx = -1;
-		for (int i = 0; i < scriptSize; i++) {
-			String line = scriptList[i];
-			Object varName = setEnvironmentList.get(line);
-			if (line.equals(gotoFlag)) {
-				idx = i;
-				break;
-			} else if (varName != null && gotoFlag.equals((String) varName)) {
-				idx = i;
-				break;
+		int idx = program.indexOf(gotoFlag);
+		// 变量值与标记相同时,以该变量名所在行作为跳转位置
+		for (int i = 0; i < setEnvironmentList.size(); i++) {
+			if (gotoFlag.equals(setEnvironmentList.get(i))) {
+				Object key = setEnvironmentList.getKey(i);
+				int pos = key == null ? -1 : program.indexOf(key.toString());
+				if (pos != -1 && (idx == -1 || pos < idx)) {
+					idx = pos;
+				}
 			}
 		}
 		if (idx != -1) {
@@ -563,6 +566,15 @@ public class Command extends Conversion implements LRelease {
 		return offsetPos;
 	}
 
+	/**
+	 * 获得当前脚本的预编译结果
+	 * 
+	 * @return
+	 */
+	public CommandProgram getProgram() {
+		return program;
+	}
+
 	/**
 	 * 批处理执行脚本，并返回可用list结果
 	 * 
@@ -923,7 +935,12 @@ public class Command extends Conversion implements LRelease {
 
 			// 替换脚本字符串内容
 			if (executeCommand != null) {
-				printTags = Command.getNameTags(executeCommand, PRINT_TAG + BRACKET_LEFT_TAG, BRACKET_RIGHT_TAG);
+				// 预编译时已确认不含print标记的原始行无需再扫描
+				if (executeCommand == cmd && !program.hasPrint(offsetPos)) {
+					printTags = null;
+				} else {
+					printTags = Command.getNameTags(executeCommand, PRINT_TAG + BRACKET_LEFT_TAG, BRACKET_RIGHT_TAG);
+				}
 				if (printTags != null) {
 					for (int i = 0; i < printTags.size; i++) {
 						String key = printTags.get(i);
@@ -1206,6 +1223,7 @@ public class Command extends Conversion implements LRelease {
 			scriptLazy.clear();
 			scriptLazy = null;
 		}
+		CommandProgram.clearCache();
 
 	}
 
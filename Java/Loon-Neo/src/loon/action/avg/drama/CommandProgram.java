@@ -0,0 +1,312 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.avg.drama;
+
+import loon.LSystem;
+import loon.utils.ArrayMap;
+import loon.utils.MathUtils;
+import loon.utils.ObjectMap;
+import loon.utils.StringUtils;
+import loon.utils.TArray;
+
+/**
+ * Command脚本的预编译结果,在脚本首次载入时扫描一次,记录每行的指令类型,静态可确定的跳转目标,
+ * 以及背景,角色与音频等资源路径,供Command按行号直接跳转与AVGPrefetcher提前预读资源.
+ */
+public class CommandProgram implements Expression {
+
+	public final static int OP_NONE = 0;
+
+	public final static int OP_TEXT = 1;
+
+	public final static int OP_GB = 2;
+
+	public final static int OP_CG = 3;
+
+	public final static int OP_PLAY = 4;
+
+	public final static int OP_PLAYLOOP = 5;
+
+	public final static int OP_GOTO = 6;
+
+	public final static int OP_BEGIN = 7;
+
+	public final static int OP_END = 8;
+
+	public final static int OP_INCLUDE = 9;
+
+	public final static int OP_EXIT = 10;
+
+	private final static String PRINT_FLAG = PRINT_TAG + BRACKET_LEFT_TAG;
+
+	private static ObjectMap<String, CommandProgram> programLazy;
+
+	private final String name;
+
+	private final String[] lines;
+
+	private final int[] types;
+
+	private final int[] jumps;
+
+	private final String[] assets;
+
+	private final boolean[] prints;
+
+	private final ObjectMap<String, Integer> labels;
+
+	/**
+	 * 编译指定脚本,同名且内容相同的脚本只编译一次
+	 * 
+	 * @param name
+	 * @param lines
+	 * @return
+	 */
+	public final static CommandProgram compile(String name, String[] lines) {
+		if (programLazy == null) {
+			programLazy = new ObjectMap<String, CommandProgram>(32);
+		} else if (programLazy.size > LSystem.DEFAULT_MAX_CACHE_SIZE * 10) {
+			programLazy.clear();
+		}
+		CommandProgram program = programLazy.get(name);
+		if (program == null || !program.same(lines)) {
+			program = new CommandProgram(name, lines);
+			programLazy.put(name, program);
+		}
+		return program;
+	}
+
+	public final static void clearCache() {
+		if (programLazy != null) {
+			programLazy.clear();
+			programLazy = null;
+		}
+	}
+
+	public CommandProgram(String name, String[] lines) {
+		final int size = lines.length;
+		this.name = name;
+		this.lines = lines;
+		this.types = new int[size];
+		this.jumps = new int[size];
+		this.assets = new String[size];
+		this.prints = new boolean[size];
+		this.labels = new ObjectMap<String, Integer>(size);
+		boolean comment = false;
+		for (int i = 0; i < size; i++) {
+			String line = lines[i];
+			if (!labels.containsKey(line)) {
+				labels.put(line, Integer.valueOf(i));
+			}
+			jumps[i] = -1;
+			if (comment) {
+				comment = !(line.startsWith(FLAG_LS_E_TAG) || line.endsWith(FLAG_LS_E_TAG));
+				continue;
+			}
+			if (line.startsWith(FLAG_LS_B_TAG)) {
+				comment = !line.endsWith(FLAG_LS_E_TAG);
+				continue;
+			}
+			prints[i] = line.indexOf(PRINT_FLAG) != -1;
+			types[i] = typeOf(line);
+			if (!prints[i]) {
+				assets[i] = assetOf(line, types[i]);
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			if (types[i] == OP_GOTO) {
+				TArray<String> temps = Command.commandSplit(lines[i]);
+				if (temps.size == 2) {
+					String flag = temps.get(1);
+					if (MathUtils.isNan(flag)) {
+						int index = (int) Double.parseDouble(flag);
+						jumps[i] = (index < size && index > -1) ? index : -1;
+					} else {
+						jumps[i] = indexOf(flag);
+					}
+				}
+			}
+		}
+	}
+
+	private final boolean same(String[] list) {
+		if (lines == list) {
+			return true;
+		}
+		if (list == null || lines.length != list.length) {
+			return false;
+		}
+		for (int i = 0; i < list.length; i++) {
+			if (!lines[i].equals(list[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private final static int typeOf(String line) {
+		if (line.endsWith(END_TAG)) {
+			return OP_END;
+		}
+		if (line.startsWith(BEGIN_TAG) && Command.commandSplit(line).size == 2) {
+			return OP_BEGIN;
+		}
+		if (line.startsWith(GOTO_TAG)) {
+			return OP_GOTO;
+		}
+		if (line.startsWith(INCLUDE_TAG)) {
+			return OP_INCLUDE;
+		}
+		int idx = line.indexOf(' ');
+		String cmd = idx == -1 ? line : line.substring(0, idx);
+		if (cmd.equalsIgnoreCase(CommandType.L_GB)) {
+			return OP_GB;
+		} else if (cmd.equalsIgnoreCase(CommandType.L_CG)) {
+			return OP_CG;
+		} else if (cmd.equalsIgnoreCase(CommandType.L_PLAY)) {
+			return OP_PLAY;
+		} else if (cmd.equalsIgnoreCase(CommandType.L_PLAYLOOP)) {
+			return OP_PLAYLOOP;
+		} else if (cmd.equalsIgnoreCase(CommandType.L_EXIT)) {
+			return OP_EXIT;
+		}
+		return OP_TEXT;
+	}
+
+	/**
+	 * 按AVGScreen解析命令的方式取出该行将要加载的资源路径,无资源时返回null
+	 * 
+	 * @param line
+	 * @param type
+	 * @return
+	 */
+	private final static String assetOf(String line, int type) {
+		if (type != OP_GB && type != OP_CG && type != OP_PLAY && type != OP_PLAYLOOP) {
+			return null;
+		}
+		String[] commands = StringUtils.split(line, ' ');
+		int size = commands.length;
+		if (size < 2 || size > 4) {
+			return null;
+		}
+		String mesFlag = commands[1];
+		switch (type) {
+		case OP_GB:
+			if (mesFlag.equalsIgnoreCase("none")) {
+				return null;
+			}
+			return unquote(mesFlag);
+		case OP_CG:
+			if (mesFlag.equalsIgnoreCase(CommandType.L_DEL)) {
+				return null;
+			}
+			if (size == 4 && CommandType.L_TO.equalsIgnoreCase(commands[2])) {
+				mesFlag = commands[3];
+			}
+			mesFlag = unquote(mesFlag);
+			// an动画文件由AVGAnm自行解析,不在预读范围
+			return mesFlag.endsWith(".an") ? null : mesFlag;
+		default:
+			return mesFlag;
+		}
+	}
+
+	private final static String unquote(String path) {
+		if (StringUtils.startsWith(path, '"')) {
+			return StringUtils.replace(path, "\"", LSystem.EMPTY);
+		}
+		return path;
+	}
+
+	/**
+	 * 查找与指定内容完全一致的首个脚本行
+	 * 
+	 * @param line
+	 * @return
+	 */
+	public int indexOf(String line) {
+		Integer index = labels.get(line);
+		return index == null ? -1 : index.intValue();
+	}
+
+	/**
+	 * 获得指定行使用的资源路径,含有print标记的行以当前变量替换后解析
+	 * 
+	 * @param index
+	 * @param vars
+	 * @return
+	 */
+	public String getAsset(int index, ArrayMap vars) {
+		if (!prints[index]) {
+			return assets[index];
+		}
+		int type = types[index];
+		if (type != OP_GB && type != OP_CG && type != OP_PLAY && type != OP_PLAYLOOP) {
+			return null;
+		}
+		String line = lines[index];
+		TArray<String> printTags = Command.getNameTags(line, PRINT_FLAG, BRACKET_RIGHT_TAG);
+		if (printTags != null) {
+			for (int i = 0; i < printTags.size; i++) {
+				String key = printTags.get(i);
+				Object value = vars == null ? null : vars.get(key);
+				line = StringUtils.replaceMatch(line, PRINT_FLAG + key + BRACKET_RIGHT_TAG,
+						value == null ? key : value.toString());
+			}
+		}
+		return assetOf(line, type);
+	}
+
+	public boolean isSound(int index) {
+		return types[index] == OP_PLAY || types[index] == OP_PLAYLOOP;
+	}
+
+	public boolean hasPrint(int index) {
+		return prints[index];
+	}
+
+	public int getType(int index) {
+		return types[index];
+	}
+
+	/**
+	 * 获得跳转行的目标行号,无法静态确定时返回-1
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public int getJump(int index) {
+		return jumps[index];
+	}
+
+	public String getLine(int index) {
+		return lines[index];
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int size() {
+		return lines.length;
+	}
+
+}
@@ -0,0 +1,926 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.avg.drama;
+
+import loon.LSysException;
+import loon.LSystem;
+import loon.utils.CollectionUtils;
+import loon.utils.IntArray;
+import loon.utils.IntMap;
+import loon.utils.MathUtils;
+import loon.utils.ObjectMap;
+import loon.utils.ObjectSet;
+import loon.utils.StringUtils;
+import loon.utils.TArray;
+
+/**
+ * RocScript的编译器,把过滤后的脚本文本一次性编译为RocProgram(指令数组,常量池与变量下标),编译结果按脚本文本的哈希值缓存.
+ * 
+ * 编译器只接受结构完整的脚本,遇到无法确定语义的写法时返回编译失败的RocProgram,此时RocScript仍使用原有的逐行解释方式执行.
+ */
+public class RocCompiler {
+
+	private final static int DEFAULT_CACHE_SIZE = 64;
+
+	private final static IntMap<RocProgram> _programs = new IntMap<RocProgram>();
+
+	private static int _maxCacheSize = DEFAULT_CACHE_SIZE;
+
+	/**
+	 * 编译脚本,相同的脚本文本直接返回缓存中的结果
+	 * 
+	 * @param source
+	 * @return
+	 */
+	public synchronized static RocProgram compile(String source) {
+		if (source == null) {
+			source = LSystem.EMPTY;
+		}
+		int hash = source.hashCode();
+		RocProgram program = _programs.get(hash);
+		if (program != null && program.source.equals(source)) {
+			return program;
+		}
+		program = new RocCompiler(source, hash).build();
+		if (_programs.size >= _maxCacheSize) {
+			_programs.clear();
+		}
+		_programs.put(hash, program);
+		return program;
+	}
+
+	public synchronized static void setCacheSize(int size) {
+		_maxCacheSize = MathUtils.max(1, size);
+		if (_programs.size > _maxCacheSize) {
+			_programs.clear();
+		}
+	}
+
+	public synchronized static int getCacheCount() {
+		return _programs.size;
+	}
+
+	public synchronized static void clearCache() {
+		_programs.clear();
+	}
+
+	private final static int T_EOL = 0;
+	private final static int T_EOP = 1;
+	private final static int T_DELIM = 2;
+	private final static int T_STRING = 3;
+	private final static int T_NUMBER = 4;
+	private final static int T_BOOLEAN = 5;
+	private final static int T_WORD = 6;
+	private final static int T_WAIT = 7;
+	private final static int T_MACRO = 8;
+	private final static int T_BOOLOP = 9;
+
+	private final static int B_IF = 0;
+	private final static int B_FOR = 1;
+	private final static int B_WHILE = 2;
+	private final static int B_FUNCTION = 3;
+
+	// 与RocScript中的<=,>=,==相同的内部标记
+	private final static String LE = String.valueOf((char) 0);
+	private final static String GE = String.valueOf((char) 1);
+	private final static String EQ = String.valueOf((char) 4);
+
+	private final static String[] COMMANDS = { "print", "input", "return", "then", "end", "begin", "else", "if",
+			"for", "while", "function", "wait", "println" };
+
+	private final static String[] BOOLOPS = { "and", "or", "not", "xor", "xand" };
+
+	private static class Block {
+
+		int kind, line, falseJump = -1, skipJump = -1, loopStart, condPos, stepPos, slot;
+
+		boolean elseSeen;
+
+		final IntArray endJumps = new IntArray();
+
+		Block(int kind, int line) {
+			this.kind = kind;
+			this.line = line;
+		}
+	}
+
+	private final String source;
+
+	private final int hash;
+
+	private final IntArray types = new IntArray();
+
+	private final TArray<String> texts = new TArray<String>();
+
+	private final IntArray lines = new IntArray();
+
+	private final IntArray code = new IntArray();
+
+	private final TArray<Object> constants = new TArray<Object>();
+
+	private final TArray<String> names = new TArray<String>();
+
+	private final ObjectMap<String, Integer> slots = new ObjectMap<String, Integer>();
+
+	private final ObjectSet<String> userFunctions = new ObjectSet<String>();
+
+	private final IntArray siteNames = new IntArray();
+
+	private final IntArray siteArgs = new IntArray();
+
+	private final TArray<String> siteRaws = new TArray<String>();
+
+	private final IntArray functionEntries = new IntArray();
+
+	private final TArray<int[]> functionParams = new TArray<int[]>();
+
+	private final TArray<Block> blocks = new TArray<Block>();
+
+	private double[] numbers = new double[16];
+
+	private int numberCount;
+
+	private int pos;
+
+	private int stack, maxStack;
+
+	private RocCompiler(String source, int hash) {
+		this.source = source;
+		this.hash = hash;
+	}
+
+	private RocProgram build() {
+		try {
+			tokenize(source.toCharArray());
+			for (int i = 0; i + 1 < types.length; i++) {
+				if (types.get(i) == T_WORD && "function".equals(texts.get(i)) && types.get(i + 1) == T_WORD) {
+					userFunctions.add(texts.get(i + 1));
+				}
+			}
+			while (type(pos) != T_EOP) {
+				statement();
+			}
+			if (blocks.size > 0) {
+				fail("End expected", blocks.peek().line);
+			}
+			// 脚本结束前同样检查等待与停止
+			op(RocProgram.LINE, line(pos), 0);
+			op(RocProgram.HALT, 0);
+		} catch (LSysException ex) {
+			return new RocProgram(source, hash, ex.getMessage());
+		}
+		return new RocProgram(source, hash, null, CollectionUtils.copyOf(code.items, code.length),
+				CollectionUtils.copyOf(numbers, numberCount), constants.toArray(), names.toArray(new String[names.size]),
+				CollectionUtils.copyOf(siteNames.items, siteNames.length), CollectionUtils.copyOf(siteArgs.items,
+						siteArgs.length), siteRaws.toArray(new String[siteRaws.size]),
+				CollectionUtils.copyOf(functionEntries.items, functionEntries.length),
+				functionParams.toArray(new int[functionParams.size][]), maxStack);
+	}
+
+	private static void fail(String message, int line) {
+		throw new LSysException(message + " (line " + line + ")");
+	}
+
+	private static boolean isDelim(char c) {
+		return " \r,<>+-/*%^=();#".indexOf(c) != -1;
+	}
+
+	private static boolean contains(String[] list, String str) {
+		for (int i = 0; i < list.length; i++) {
+			if (list[i].equals(str)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void token(int type, String text, int line) {
+		types.add(type);
+		texts.add(text);
+		lines.add(line);
+	}
+
+	/**
+	 * 按RocScript.nextCommand的规则切分脚本
+	 */
+	private void tokenize(char[] src) {
+		final int len = src.length;
+		int idx = 0;
+		int line = 1;
+		for (;;) {
+			while (idx < len && (src[idx] == ' ' || src[idx] == '\t')) {
+				idx++;
+			}
+			if (idx >= len) {
+				token(T_EOP, " ", line);
+				return;
+			}
+			char ch = src[idx];
+			if (ch == '\r') {
+				idx += 2;
+				token(T_EOL, " ", line++);
+				continue;
+			}
+			if (ch == '#' || (ch == '/' && idx + 1 < len && src[idx + 1] == '/')) {
+				while (idx < len && src[idx] != '\r') {
+					idx++;
+				}
+				idx += 2;
+				token(T_EOL, " ", line++);
+				continue;
+			}
+			if (ch == '<' || ch == '>' || ch == '=') {
+				if (idx + 1 < len && src[idx + 1] == '=') {
+					token(T_DELIM, ch == '<' ? LE : (ch == '>' ? GE : EQ), line);
+					idx += 2;
+				} else {
+					token(T_DELIM, String.valueOf(ch), line);
+					idx++;
+				}
+				continue;
+			}
+			if (isDelim(ch)) {
+				token(T_DELIM, String.valueOf(ch), line);
+				idx++;
+				continue;
+			}
+			StringBuilder sbr = new StringBuilder();
+			if (ch == '"') {
+				idx++;
+				while (idx < len && src[idx] != '"' && src[idx] != '\r') {
+					sbr.append(src[idx++]);
+				}
+				if (idx >= len || src[idx] == '\r') {
+					fail("Strings missing a quote", line);
+				}
+				idx++;
+				token(T_STRING, sbr.toString(), line);
+				continue;
+			}
+			while (idx < len && !isDelim(src[idx])) {
+				sbr.append(src[idx++]);
+			}
+			String item = sbr.toString();
+			if (MathUtils.isNan(item)) {
+				token(T_NUMBER, item, line);
+			} else if (StringUtils.isBoolean(item)) {
+				token(T_BOOLEAN, item, line);
+			} else if (contains(BOOLOPS, item)) {
+				token(T_BOOLOP, item, line);
+			} else if ("wait".equals(item)) {
+				sbr.setLength(0);
+				int count = 0;
+				while (idx < len) {
+					ch = src[idx];
+					if (ch == ' ' || ch == '\n' || ch == '\t' || ch == '\r') {
+						count++;
+					}
+					if (count > 1) {
+						break;
+					}
+					if (ch != ' ') {
+						sbr.append(ch);
+					}
+					idx++;
+				}
+				token(T_WAIT, sbr.toString(), line);
+			} else if ("{".equals(item)) {
+				sbr.setLength(0);
+				while (idx < len) {
+					ch = src[idx++];
+					if (ch == '}') {
+						break;
+					}
+					sbr.append(ch);
+				}
+				token(T_MACRO, sbr.toString(), line);
+			} else if ("}".equals(item)) {
+				token(T_EOL, " ", line);
+			} else {
+				token(T_WORD, item, line);
+			}
+		}
+	}
+
+	private int type(int i) {
+		return i < types.length ? types.get(i) : T_EOP;
+	}
+
+	private String text(int i) {
+		return i < texts.size ? texts.get(i) : " ";
+	}
+
+	private int line(int i) {
+		return i < lines.length ? lines.get(i) : (lines.length == 0 ? 1 : lines.get(lines.length - 1));
+	}
+
+	private boolean isDelim(int i, String str) {
+		return type(i) == T_DELIM && text(i).equals(str);
+	}
+
+	private boolean isWord(int i, String str) {
+		return type(i) == T_WORD && text(i).equals(str);
+	}
+
+	private boolean isEnd(int i) {
+		int type = type(i);
+		return type == T_EOL || type == T_EOP;
+	}
+
+	private void expectDelim(String str) {
+		if (!isDelim(pos, str)) {
+			fail("Syntax Error", line(pos));
+		}
+		pos++;
+	}
+
+	private void expectWord(String str) {
+		if (!isWord(pos, str)) {
+			fail("'" + str + "' expected", line(pos));
+		}
+		pos++;
+	}
+
+	private void expectEnd() {
+		if (!isEnd(pos)) {
+			fail("Unexpeced Item", line(pos));
+		}
+	}
+
+	private String expectName() {
+		if (type(pos) != T_WORD || !Character.isLetter(text(pos).charAt(0)) || contains(COMMANDS, text(pos))) {
+			fail("For vars that have no value: assignments,loops", line(pos));
+		}
+		return text(pos++);
+	}
+
+	private int slot(String name) {
+		Integer slot = slots.get(name);
+		if (slot == null) {
+			slot = names.size;
+			names.add(name);
+			slots.put(name, slot);
+		}
+		return slot.intValue();
+	}
+
+	private int number(double value) {
+		if (numberCount == numbers.length) {
+			numbers = CollectionUtils.copyOf(numbers, numberCount * 2);
+		}
+		numbers[numberCount] = value;
+		return numberCount++;
+	}
+
+	private int constant(Object value) {
+		int idx = constants.indexOf(value);
+		if (idx == -1) {
+			idx = constants.size;
+			constants.add(value);
+		}
+		return idx;
+	}
+
+	private void op(int op, int effect) {
+		code.add(op);
+		stack(effect);
+	}
+
+	private void op(int op, int arg, int effect) {
+		code.add(op);
+		code.add(arg);
+		stack(effect);
+	}
+
+	private void stack(int effect) {
+		stack += effect;
+		if (stack > maxStack) {
+			maxStack = stack;
+		}
+	}
+
+	private int jump(int op, int effect) {
+		code.add(op);
+		code.add(-1);
+		stack(effect);
+		return code.length - 1;
+	}
+
+	private void jumpTo(int op, int target, int effect) {
+		op(op, target, effect);
+	}
+
+	private void patch(int at) {
+		code.set(at, code.length);
+	}
+
+	private void statement() {
+		final int type = type(pos);
+		final String text = text(pos);
+		final int line = line(pos);
+		switch (type) {
+		case T_EOL:
+			pos++;
+			return;
+		case T_MACRO:
+			pos++;
+			op(RocProgram.LINE, line, 0);
+			op(RocProgram.MACRO, constant(text), 0);
+			return;
+		case T_WAIT:
+			pos++;
+			op(RocProgram.LINE, line, 0);
+			waitStatement(text, line);
+			expectEnd();
+			return;
+		case T_WORD:
+			break;
+		default:
+			fail("Unexpeced Item", line);
+		}
+		pos++;
+		if ("print".equals(text)) {
+			printStatement(RocProgram.PRINT, line);
+		} else if ("println".equals(text)) {
+			printStatement(RocProgram.PRINTLN, line);
+		} else if ("if".equals(text)) {
+			ifStatement(line);
+		} else if ("else".equals(text)) {
+			elseStatement(line);
+		} else if ("end".equals(text)) {
+			endStatement(line);
+		} else if ("for".equals(text)) {
+			forStatement(line);
+		} else if ("while".equals(text)) {
+			whileStatement(line);
+		} else if ("function".equals(text)) {
+			functionStatement(line);
+		} else if ("return".equals(text)) {
+			returnStatement(line);
+		} else if (contains(COMMANDS, text)) {
+			fail("Syntax Error", line);
+		} else if (isDelim(pos, "(")) {
+			op(RocProgram.LINE, line, 0);
+			call(text, line);
+			op(RocProgram.POP, -1);
+			expectEnd();
+		} else if (isDelim(pos, "=")) {
+			if (!Character.isLetter(text.charAt(0))) {
+				fail("For vars that have no value: assignments,loops", line);
+			}
+			pos++;
+			op(RocProgram.LINE, line, 0);
+			expression();
+			op(RocProgram.STORE, slot(text), -1);
+			expectEnd();
+		} else {
+			fail("Equal Expected", line);
+		}
+	}
+
+	private void waitStatement(String item, int line) {
+		long sleep;
+		if (MathUtils.isNan(item)) {
+			try {
+				sleep = (long) Double.parseDouble(item);
+			} catch (NumberFormatException ex) {
+				fail("Not a number", line);
+				return;
+			}
+		} else {
+			String name = item.toLowerCase();
+			if ("mesc".equals(name)) {
+				sleep = LSystem.MSEC;
+			} else if ("second".equals(name)) {
+				sleep = LSystem.SECOND;
+			} else if ("minute".equals(name)) {
+				sleep = LSystem.MINUTE;
+			} else if ("hour".equals(name)) {
+				sleep = LSystem.HOUR;
+			} else if ("day".equals(name)) {
+				sleep = LSystem.DAY;
+			} else {
+				fail("Unknown wait time", line);
+				return;
+			}
+		}
+		if (sleep <= 0) {
+			sleep = 1;
+		}
+		op(RocProgram.WAIT, number(sleep), 0);
+	}
+
+	private void printStatement(int kind, int line) {
+		op(RocProgram.LINE, line, 0);
+		while (!isEnd(pos)) {
+			expression();
+			op(kind, -1);
+			if (isDelim(pos, ",")) {
+				pos++;
+				op(RocProgram.PRINT_SEP, constant(" "), 0);
+			} else if (isDelim(pos, ";")) {
+				pos++;
+				op(RocProgram.PRINT_SEP, constant("\t"), 0);
+			} else if (!isEnd(pos)) {
+				fail("Syntax Error", line(pos));
+			}
+		}
+	}
+
+	private void ifStatement(int line) {
+		op(RocProgram.LINE, line, 0);
+		expression();
+		expectWord("then");
+		expectEnd();
+		op(RocProgram.PUSH_SCOPE, 0);
+		Block block = new Block(B_IF, line);
+		block.falseJump = jump(RocProgram.JFALSE, -1);
+		blocks.add(block);
+	}
+
+	private void elseStatement(int line) {
+		Block block = blocks.size > 0 ? blocks.peek() : null;
+		if (block == null || block.kind != B_IF || block.elseSeen) {
+			fail("Syntax Error", line);
+			return;
+		}
+		block.endJumps.add(jump(RocProgram.JMP, 0));
+		patch(block.falseJump);
+		block.falseJump = -1;
+		if (isWord(pos, "if")) {
+			int elseLine = line(pos++);
+			op(RocProgram.LINE, elseLine, 0);
+			expression();
+			expectWord("then");
+			expectEnd();
+			block.falseJump = jump(RocProgram.JFALSE, -1);
+		} else {
+			expectEnd();
+			block.elseSeen = true;
+		}
+	}
+
+	private void forStatement(int line) {
+		op(RocProgram.LINE, line, 0);
+		int slot = slot(expectName());
+		if (isDelim(pos, "=")) {
+			pos++;
+			expression();
+			op(RocProgram.STORE, slot, -1);
+		}
+		expectDelim(",");
+		Block block = new Block(B_FOR, line);
+		block.slot = slot;
+		block.condPos = pos;
+		expression();
+		expectDelim(",");
+		block.skipJump = jump(RocProgram.JFALSE, -1);
+		// 与解释执行时相同,进入循环前先计算一次步进表达式(结果丢弃)
+		block.stepPos = pos;
+		expression();
+		op(RocProgram.POP, -1);
+		expectWord("begin");
+		expectEnd();
+		op(RocProgram.PUSH_SCOPE, 0);
+		block.loopStart = code.length;
+		blocks.add(block);
+	}
+
+	private void whileStatement(int line) {
+		op(RocProgram.LINE, line, 0);
+		Block block = new Block(B_WHILE, line);
+		block.condPos = pos;
+		expression();
+		block.skipJump = jump(RocProgram.JFALSE, -1);
+		expectWord("begin");
+		expectEnd();
+		op(RocProgram.PUSH_SCOPE, 0);
+		block.loopStart = code.length;
+		blocks.add(block);
+	}
+
+	private void functionStatement(int line) {
+		op(RocProgram.LINE, line, 0);
+		String name = expectName();
+		expectDelim("(");
+		IntArray params = new IntArray();
+		if (!isDelim(pos, ")")) {
+			params.add(slot(expectName()));
+			while (isDelim(pos, ",")) {
+				pos++;
+				params.add(slot(expectName()));
+			}
+		}
+		expectDelim(")");
+		expectWord("begin");
+		expectEnd();
+		int index = functionEntries.length;
+		code.add(RocProgram.DEFUN);
+		code.add(slot(name));
+		code.add(index);
+		Block block = new Block(B_FUNCTION, line);
+		block.skipJump = jump(RocProgram.JMP, 0);
+		functionEntries.add(code.length);
+		functionParams.add(CollectionUtils.copyOf(params.items, params.length));
+		blocks.add(block);
+	}
+
+	private void returnStatement(int line) {
+		boolean inFunction = false;
+		for (int i = blocks.size - 1; i >= 0; i--) {
+			if (blocks.get(i).kind == B_FUNCTION) {
+				inFunction = true;
+				break;
+			}
+		}
+		if (!inFunction) {
+			fail("Syntax Error", line);
+		}
+		op(RocProgram.LINE, line, 0);
+		if (isEnd(pos)) {
+			op(RocProgram.CONST, constant(RocProgram.NIL), 1);
+		} else {
+			expression();
+		}
+		op(RocProgram.RET, -1);
+		expectEnd();
+	}
+
+	private void endStatement(int line) {
+		if (blocks.size == 0) {
+			fail("Syntax Error", line);
+		}
+		expectEnd();
+		Block block = blocks.pop();
+		int save = pos;
+		switch (block.kind) {
+		case B_IF:
+			if (block.falseJump != -1) {
+				patch(block.falseJump);
+			}
+			for (int i = 0; i < block.endJumps.length; i++) {
+				patch(block.endJumps.get(i));
+			}
+			op(RocProgram.POP_SCOPE, 0);
+			break;
+		case B_FOR:
+			// 每次循环都经过一次语句边界,以便在循环中响应停止与单步执行
+			op(RocProgram.LINE, line, 0);
+			pos = block.stepPos;
+			expression();
+			op(RocProgram.STORE, block.slot, -1);
+			pos = block.condPos;
+			expression();
+			jumpTo(RocProgram.JTRUE, block.loopStart, -1);
+			op(RocProgram.POP_SCOPE, 0);
+			patch(block.skipJump);
+			break;
+		case B_WHILE:
+			op(RocProgram.LINE, line, 0);
+			pos = block.condPos;
+			expression();
+			jumpTo(RocProgram.JTRUE, block.loopStart, -1);
+			op(RocProgram.POP_SCOPE, 0);
+			patch(block.skipJump);
+			break;
+		case B_FUNCTION:
+			op(RocProgram.END_FN, 0);
+			patch(block.skipJump);
+			break;
+		}
+		pos = save;
+	}
+
+	/**
+	 * 编译函数调用,同时记录解释执行时传给系统函数的原始参数文本(括号内各项直接拼接)
+	 */
+	private void call(String name, int line) {
+		expectDelim("(");
+		StringBuilder raw = new StringBuilder();
+		int end = pos;
+		if (!isDelim(end, ")")) {
+			while (text(end).indexOf(')') == -1) {
+				if (isEnd(end)) {
+					fail("(... or ...)", line);
+				}
+				raw.append(text(end++));
+			}
+			if (!isDelim(end, ")")) {
+				fail("(... or ...)", line);
+			}
+		}
+		int argc = 0;
+		if (userFunctions.contains(name)) {
+			if (!isDelim(pos, ")")) {
+				expression();
+				argc++;
+				while (isDelim(pos, ",")) {
+					pos++;
+					expression();
+					argc++;
+				}
+			}
+			expectDelim(")");
+		} else {
+			pos = end + 1;
+		}
+		siteNames.add(slot(name));
+		siteArgs.add(argc);
+		siteRaws.add(raw.toString());
+		op(RocProgram.CALL, siteNames.length - 1, 1 - argc);
+	}
+
+	private void expression() {
+		logic();
+	}
+
+	private static int relation(String op) {
+		if ("<".equals(op)) {
+			return RocProgram.LT;
+		} else if (LE.equals(op)) {
+			return RocProgram.LE;
+		} else if (">".equals(op)) {
+			return RocProgram.GT;
+		} else if (GE.equals(op)) {
+			return RocProgram.GE;
+		} else if (EQ.equals(op)) {
+			return RocProgram.EQ;
+		}
+		return -1;
+	}
+
+	private void logic() {
+		additive();
+		for (;;) {
+			int type = type(pos);
+			String text = text(pos);
+			if (type == T_DELIM && relation(text) != -1) {
+				pos++;
+				additive();
+				op(relation(text), -1);
+			} else if (type == T_BOOLOP && !"not".equals(text)) {
+				pos++;
+				logic();
+				if ("and".equals(text)) {
+					op(RocProgram.AND, -1);
+				} else if ("or".equals(text)) {
+					op(RocProgram.OR, -1);
+				} else if ("xor".equals(text)) {
+					op(RocProgram.XOR, -1);
+				} else {
+					op(RocProgram.XAND, -1);
+				}
+			} else {
+				break;
+			}
+		}
+	}
+
+	private void additive() {
+		multiplicative();
+		for (;;) {
+			if (isDelim(pos, "+")) {
+				pos++;
+				multiplicative();
+				op(RocProgram.ADD, -1);
+			} else if (isDelim(pos, "-")) {
+				pos++;
+				multiplicative();
+				op(RocProgram.SUB, -1);
+			} else {
+				break;
+			}
+		}
+	}
+
+	private void multiplicative() {
+		power();
+		for (;;) {
+			if (isDelim(pos, "*")) {
+				pos++;
+				power();
+				op(RocProgram.MUL, -1);
+			} else if (isDelim(pos, "/")) {
+				pos++;
+				power();
+				op(RocProgram.DIV, -1);
+			} else if (isDelim(pos, "%")) {
+				pos++;
+				power();
+				op(RocProgram.MOD, -1);
+			} else {
+				break;
+			}
+		}
+	}
+
+	private void power() {
+		unary();
+		if (isDelim(pos, "^")) {
+			pos++;
+			power();
+			op(RocProgram.POW, -1);
+		}
+	}
+
+	private void unary() {
+		if (isDelim(pos, "-")) {
+			pos++;
+			primary();
+			op(RocProgram.NEG, 0);
+		} else if (type(pos) == T_BOOLOP && "not".equals(text(pos))) {
+			pos++;
+			primary();
+			op(RocProgram.NOT, 0);
+		} else {
+			primary();
+		}
+	}
+
+	private void primary() {
+		if (isDelim(pos, "(")) {
+			pos++;
+			logic();
+			expectDelim(")");
+			return;
+		}
+		final int type = type(pos);
+		final String text = text(pos);
+		final int line = line(pos);
+		switch (type) {
+		case T_NUMBER:
+			pos++;
+			try {
+				op(RocProgram.NUM, number(Double.parseDouble(text)), 1);
+			} catch (NumberFormatException ex) {
+				fail("Not a number", line);
+			}
+			return;
+		case T_BOOLEAN:
+			pos++;
+			op(RocProgram.CONST, constant(StringUtils.toBoolean(text) ? Boolean.TRUE : Boolean.FALSE), 1);
+			return;
+		case T_STRING:
+			pos++;
+			op(RocProgram.CONST, constant(text), 1);
+			return;
+		case T_WORD:
+			if (contains(COMMANDS, text)) {
+				fail("Invalid Expression", line);
+			}
+			pos++;
+			if (isDelim(pos, "(")) {
+				call(text, line);
+			} else if (text.charAt(0) == '\'' || text.charAt(0) == '"') {
+				literal(text);
+			} else if (!Character.isLetter(text.charAt(0))) {
+				fail("For vars that have no value: assignments,loops", line);
+			} else if (text.indexOf('.') != -1) {
+				op(RocProgram.LOAD_PATH, slot(text), 1);
+			} else {
+				op(RocProgram.LOAD, slot(text), 1);
+			}
+			return;
+		default:
+			fail("Invalid Expression", line);
+		}
+	}
+
+	/**
+	 * 以引号开头的单词在解释执行时按变量取值(去掉两侧引号),然后再尝试转为数字或布尔值,此处在编译时完成
+	 */
+	private void literal(String text) {
+		String value = text.length() > 2 ? text.substring(1, text.length() - 1) : text;
+		if (MathUtils.isNan(value)) {
+			try {
+				op(RocProgram.NUM, number(Double.parseDouble(value)), 1);
+				return;
+			} catch (NumberFormatException ex) {
+			}
+		}
+		if (StringUtils.isBoolean(value)) {
+			op(RocProgram.CONST, constant(StringUtils.toBoolean(value) ? Boolean.TRUE : Boolean.FALSE), 1);
+		} else {
+			op(RocProgram.CONST, constant(value), 1);
+		}
+	}
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.avg.drama;
+
+import loon.utils.ObjectMap;
+
+/**
+ * RocScript编译后的指令序列,包含指令数组,数值与对象常量池,变量名表(变量在运行时以下标访问),函数调用点与函数入口.
+ * 
+ * 同样的脚本文本只会编译一次,编译结果不可修改,所以可以被多个RocScript同时使用.
+ */
+public class RocProgram {
+
+	final static int LINE = 0;
+	final static int NUM = 1;
+	final static int CONST = 2;
+	final static int LOAD = 3;
+	final static int LOAD_PATH = 4;
+	final static int STORE = 5;
+	final static int POP = 6;
+	final static int ADD = 7;
+	final static int SUB = 8;
+	final static int MUL = 9;
+	final static int DIV = 10;
+	final static int MOD = 11;
+	final static int POW = 12;
+	final static int NEG = 13;
+	final static int NOT = 14;
+	final static int LT = 15;
+	final static int LE = 16;
+	final static int GT = 17;
+	final static int GE = 18;
+	final static int EQ = 19;
+	final static int AND = 20;
+	final static int OR = 21;
+	final static int XOR = 22;
+	final static int XAND = 23;
+	final static int JMP = 24;
+	final static int JFALSE = 25;
+	final static int JTRUE = 26;
+	final static int PUSH_SCOPE = 27;
+	final static int POP_SCOPE = 28;
+	final static int PRINT = 29;
+	final static int PRINTLN = 30;
+	final static int PRINT_SEP = 31;
+	final static int WAIT = 32;
+	final static int MACRO = 33;
+	final static int DEFUN = 34;
+	final static int CALL = 35;
+	final static int RET = 36;
+	final static int END_FN = 37;
+	final static int HALT = 38;
+
+	/**
+	 * 变量值为null时在常量池与运行栈中的占位对象
+	 */
+	final static Object NIL = new Object();
+
+	final String source;
+
+	final int hash;
+
+	final String error;
+
+	final int[] code;
+
+	final double[] numbers;
+
+	final Object[] constants;
+
+	final String[] names;
+
+	final int[] siteNames;
+
+	final int[] siteArgs;
+
+	final String[] siteRaws;
+
+	final int[] functionEntries;
+
+	final int[][] functionParams;
+
+	final int maxStack;
+
+	private final ObjectMap<String, Integer> slots;
+
+	RocProgram(String source, int hash, String error) {
+		this(source, hash, error, null, null, null, null, null, null, null, null, null, 0);
+	}
+
+	RocProgram(String source, int hash, String error, int[] code, double[] numbers, Object[] constants,
+			String[] names, int[] siteNames, int[] siteArgs, String[] siteRaws, int[] functionEntries,
+			int[][] functionParams, int maxStack) {
+		this.source = source;
+		this.hash = hash;
+		this.error = error;
+		this.code = code;
+		this.numbers = numbers;
+		this.constants = constants;
+		this.names = names;
+		this.siteNames = siteNames;
+		this.siteArgs = siteArgs;
+		this.siteRaws = siteRaws;
+		this.functionEntries = functionEntries;
+		this.functionParams = functionParams;
+		this.maxStack = maxStack;
+		this.slots = new ObjectMap<String, Integer>();
+		if (names != null) {
+			for (int i = 0; i < names.length; i++) {
+				slots.put(names[i], i);
+			}
+		}
+	}
+
+	/**
+	 * 返回指定变量名在程序中的下标,不存在时返回-1
+	 * 
+	 * @param name
+	 * @return
+	 */
+	int slotOf(String name) {
+		Integer slot = slots.get(name);
+		return slot == null ? -1 : slot.intValue();
+	}
+
+	/**
+	 * 脚本是否编译成功(编译失败的脚本由RocScript逐行解释执行)
+	 * 
+	 * @return
+	 */
+	public boolean isCompiled() {
+		return code != null;
+	}
+
+	/**
+	 * 编译失败的原因
+	 * 
+	 * @return
+	 */
+	public String getError() {
+		return error;
+	}
+
+	public int getCodeLength() {
+		return code == null ? 0 : code.length;
+	}
+
+	public int getNameCount() {
+		return names == null ? 0 : names.length;
+	}
+
+	public int getFunctionCount() {
+		return functionEntries == null ? 0 : functionEntries.length;
+	}
+
+	@Override
+	public String toString() {
+		return "RocProgram [compiled=" + isCompiled() + ", code=" + getCodeLength() + ", names=" + getNameCount()
+				+ ", functions=" + getFunctionCount() + (error == null ? "" : ", error=" + error) + "]";
+	}
+
+}
@@ -75,8 +75,16 @@ public class RocScript {
 		throw new ScriptException(err);
 	}
 
+	void handleError(int error, int line) throws ScriptException {
+		this.textLine = line;
+		handleError(error);
+	}
+
 	private final static int MAX_TEXT_SIZE = 65535;
 
+	// 脚本解析时以\r\n作为行尾(与运行平台无关)
+	private final static String LINE_END = "\r\n";
+
 	private RocFunctions _rocFunctions = null;
 
 	// 参数类型
@@ -114,33 +122,33 @@ public class RocScript {
 	private final int PRINTLN = 13;
 
 	// 错误
-	private final int SYNTAX = 0;
-	private final int UNBALPARENS = 1;
-	private final int DIVBYZERO = 2;
-	private final int EQUALEXPECTED = 3;
-	private final int UNKOWN = 4;
-	private final int NOTABOOL = 5;
-	private final int NOTANUMB = 6;
-	private final int NOTASTR = 7;
-	private final int DUPFUNCTION = 8;
-	private final int ENDEXPECTED = 9;
-	private final int THENEXPECTED = 10;
-	private final int MISSQUOTE = 11;
-	private final int DOEXPECTED = 12;
-	private final int UNKFUNCTION = 13;
-	private final int INVALIDEXP = 14;
-	private final int UNEXPITEM = 15;
-	private final int TOOMANYPARAMS = 16;
-
-	private final int FILENOTFOUND = 17;
-	private final int INPUTIOERROR = 18;
-	private final int EXPERR = 19;
-	private final int FILEIOERROR = 20;
+	final static int SYNTAX = 0;
+	final static int UNBALPARENS = 1;
+	final static int DIVBYZERO = 2;
+	final static int EQUALEXPECTED = 3;
+	final static int UNKOWN = 4;
+	final static int NOTABOOL = 5;
+	final static int NOTANUMB = 6;
+	final static int NOTASTR = 7;
+	final static int DUPFUNCTION = 8;
+	final static int ENDEXPECTED = 9;
+	final static int THENEXPECTED = 10;
+	final static int MISSQUOTE = 11;
+	final static int DOEXPECTED = 12;
+	final static int UNKFUNCTION = 13;
+	final static int INVALIDEXP = 14;
+	final static int UNEXPITEM = 15;
+	final static int TOOMANYPARAMS = 16;
+
+	final static int FILENOTFOUND = 17;
+	final static int INPUTIOERROR = 18;
+	final static int EXPERR = 19;
+	final static int FILEIOERROR = 20;
 
 	// 宏
-	private final int MACROS = 21;
+	final static int MACROS = 21;
 	// 未知区域
-	private final int UNKNOWN = 22;
+	final static int UNKNOWN = 22;
 
 	// 宏指令设置
 
@@ -156,7 +164,13 @@ public class RocScript {
 	private char[] _temp_contexts;
 	protected long _sleep = -1;
 
-	private boolean _stop = false;
+	boolean _stop = false;
+
+	private RocProgram _program;
+
+	private RocVM _vm;
+
+	private boolean _useCompiler = true;
 
 	private int textIdx;
 	private int textLine;
@@ -287,7 +301,7 @@ public class RocScript {
 			if (ch == flag) {
 				out.append(flag);
 				if (i + 1 < chars.length && chars[i + 1] != '\n') {
-					out.append(LSystem.LS);
+					out.append(LINE_END);
 				}
 			} else {
 				out.append(ch);
@@ -305,7 +319,7 @@ public class RocScript {
 				tflag = !tflag;
 			}
 			if (tflag) {
-				sbr.append(CharUtils.toLowerAscii(ch));
+				sbr.append((char) CharUtils.toLowerAscii(ch));
 			} else {
 				sbr.append(ch);
 			}
@@ -344,7 +358,7 @@ public class RocScript {
 			} else {
 				out.append(cmd);
 			}
-			out.append(LSystem.LS);
+			out.append(LINE_END);
 		}
 		return out.toString();
 	}
@@ -398,6 +412,7 @@ public class RocScript {
 			_temp_contexts = new char[size];
 			System.arraycopy(charlist, 0, _temp_contexts, 0, size);
 		}
+		_program = RocCompiler.compile(new String(_temp_contexts));
 	}
 
 	private void debug(String s) {
@@ -443,6 +458,11 @@ public class RocScript {
 		itemType = 0;
 		commType = 0;
 		macroType = -1;
+		if (_useCompiler && _program != null && _program.isCompiled()) {
+			_vm = new RocVM(this, _program);
+		} else {
+			_vm = null;
+		}
 	}
 
 	/**
@@ -465,6 +485,27 @@ public class RocScript {
 		_stop = true;
 	}
 
+	/**
+	 * 是否使用编译后的指令执行脚本(默认为true,编译失败的脚本总是逐行解释执行),在下次call时生效
+	 * 
+	 * @param c
+	 */
+	public void setCompiled(boolean c) {
+		this._useCompiler = c;
+	}
+
+	public boolean isCompiled() {
+		return _useCompiler && _program != null && _program.isCompiled();
+	}
+
+	public RocProgram getProgram() {
+		return _program;
+	}
+
+	public IScriptLog getScriptLog() {
+		return scriptLog;
+	}
+
 	/**
 	 * 执行脚本命令
 	 * 
@@ -472,6 +513,12 @@ public class RocScript {
 	 * @throws ScriptException
 	 */
 	public Object next() throws ScriptException {
+		if (_vm != null) {
+			if (_sleep != -1) {
+				return null;
+			}
+			return _vm.run(false);
+		}
 		try {
 			debug("Starting script...");
 			if (_sleep != -1) {
@@ -564,6 +611,9 @@ public class RocScript {
 	}
 
 	public Object running() throws ScriptException {
+		if (_vm != null) {
+			return _vm.run(true);
+		}
 		try {
 			debug("Starting script...");
 
@@ -692,8 +742,23 @@ public class RocScript {
 	}
 
 	private void macrosCommand(String context, int id) {
+		ArrayMap result = execMacros(context, id, vars);
+		if (result != null) {
+			vars.add(result);
+		}
+	}
+
+	/**
+	 * 执行宏命令,返回宏命令执行后的变量
+	 * 
+	 * @param context
+	 * @param id
+	 * @param scopes
+	 * @return
+	 */
+	ArrayMap execMacros(String context, int id, Array<ArrayMap> scopes) {
 		if (!initNextMacros) {
-			return;
+			return null;
 		}
 		Command.resetCache();
 		String[] res = StringUtils.split(context, '\n');
@@ -702,8 +767,8 @@ public class RocScript {
 		} else {
 			macros_executer.formatCommand("script" + id, res);
 		}
-		for (int i = 0; i < vars.size(); i++) {
-			ArrayMap maps = vars.get(i);
+		for (int i = 0; i < scopes.size(); i++) {
+			ArrayMap maps = scopes.get(i);
 			macros_executer.setVariables(maps);
 		}
 		if (scriptLog != null) {
@@ -723,7 +788,7 @@ public class RocScript {
 		if (scriptLog != null) {
 			scriptLog.info("Synchro is completed.");
 		}
-		vars.add(macros_executer.getVariables());
+		return macros_executer.getVariables();
 	}
 
 	private void println() throws ScriptException {
@@ -1029,37 +1094,7 @@ public class RocScript {
 				}
 			}
 
-			if (value.length() > 0 && value.indexOf(",") == -1) {
-				if (value.indexOf("\"") == -1 && value.indexOf("/") == -1 && !isNumber(value)) {
-					String tmp = getVarVal(value).toString();
-					if (!LSystem.UNKOWN.equalsIgnoreCase(tmp)) {
-						value = tmp;
-					}
-				}
-			} else if (value.indexOf(",") != -1) {
-				String[] split = StringUtils.split(value, ',');
-				StringBuilder sbr = new StringBuilder();
-				for (String s : split) {
-					if (s.indexOf("\"") == -1 && value.indexOf("/") == -1 && !isNumber(s)) {
-						String tmp = getVarVal(s).toString();
-						if (!LSystem.UNKOWN.equalsIgnoreCase(tmp)) {
-							sbr.append(tmp.toString());
-						} else {
-							sbr.append(s);
-						}
-					} else {
-						sbr.append(s);
-					}
-					sbr.append(',');
-				}
-				value = sbr.toString();
-				if (value.endsWith(",")) {
-					value = value.substring(0, value.length() - 1);
-				}
-
-			}
-			Object reuslt = _rocFunctions.getValue(this, key, value);
-			return reuslt == null ? LSystem.UNKOWN : reuslt;
+			return callFunction(key, value);
 		}
 
 		Function f = (Function) functs.get(item.toLowerCase());
@@ -1102,6 +1137,48 @@ public class RocScript {
 		return next();
 	}
 
+	/**
+	 * 调用系统函数,参数为脚本中括号内的原始文本
+	 * 
+	 * @param key
+	 * @param value
+	 * @return
+	 * @throws ScriptException
+	 */
+	Object callFunction(String key, String value) throws ScriptException {
+		if (value.length() > 0 && value.indexOf(",") == -1) {
+			if (value.indexOf("\"") == -1 && value.indexOf("/") == -1 && !isNumber(value)) {
+				String tmp = getVarVal(value).toString();
+				if (!LSystem.UNKOWN.equalsIgnoreCase(tmp)) {
+					value = tmp;
+				}
+			}
+		} else if (value.indexOf(",") != -1) {
+			String[] split = StringUtils.split(value, ',');
+			StringBuilder sbr = new StringBuilder();
+			for (String s : split) {
+				if (s.indexOf("\"") == -1 && value.indexOf("/") == -1 && !isNumber(s)) {
+					String tmp = getVarVal(s).toString();
+					if (!LSystem.UNKOWN.equalsIgnoreCase(tmp)) {
+						sbr.append(tmp.toString());
+					} else {
+						sbr.append(s);
+					}
+				} else {
+					sbr.append(s);
+				}
+				sbr.append(',');
+			}
+			value = sbr.toString();
+			if (value.endsWith(",")) {
+				value = value.substring(0, value.length() - 1);
+			}
+
+		}
+		Object reuslt = _rocFunctions.getValue(this, key, value);
+		return reuslt == null ? LSystem.UNKOWN : reuslt;
+	}
+
 	private boolean endCommand(boolean force) throws ScriptException {
 		debug("End LoonFun");
 
@@ -1216,6 +1293,9 @@ public class RocScript {
 	 * @return
 	 */
 	public boolean isCompleted() {
+		if (_vm != null) {
+			return _vm.isCompleted();
+		}
 		return this.itemType == EOP;
 	}
 
@@ -1922,7 +2002,7 @@ public class RocScript {
 	 * @param method
 	 * @return
 	 */
-	private Object queryJson(Object value, String vname, String method) {
+	Object queryJson(Object value, String vname, String method) {
 		int start = 0;
 		int end = 0;
 		Object o = null;
@@ -2107,6 +2187,9 @@ public class RocScript {
 	}
 
 	private Object getVarVal(String vname) throws ScriptException {
+		if (_vm != null) {
+			return _vm.getVarVal(vname);
+		}
 		if (vname.indexOf('\'') == 0 || vname.indexOf('\"') == 0) {
 			if (vname.length() > 2) {
 				return vname.substring(1, vname.length() - 1);
@@ -2162,7 +2245,9 @@ public class RocScript {
 	 * @param obj
 	 */
 	public void addVar(String name, Object obj) {
-		if (vars != null) {
+		if (_vm != null) {
+			_vm.set(name, obj);
+		} else if (vars != null) {
 			vars.last().put(name, obj);
 		}
 	}
@@ -2174,6 +2259,9 @@ public class RocScript {
 	 * @return
 	 */
 	public Object getLastVar(String name) {
+		if (_vm != null) {
+			return _vm.getCurrent(name);
+		}
 		if (vars != null) {
 			return vars.last().get(name);
 		}
@@ -2187,6 +2275,9 @@ public class RocScript {
 	 * @return
 	 */
 	public Object getFirstVar(String name) {
+		if (_vm != null) {
+			return _vm.getGlobal(name);
+		}
 		if (vars != null) {
 			return vars.first().get(name);
 		}
@@ -2200,6 +2291,9 @@ public class RocScript {
 	 * @return
 	 */
 	public Object getVar(String name) {
+		if (_vm != null) {
+			return _vm.getOuter(name);
+		}
 		if (vars != null) {
 			Object result = null;
 			for (; vars.hashNext();) {
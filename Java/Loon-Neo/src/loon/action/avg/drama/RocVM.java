@@ -0,0 +1,834 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.avg.drama;
+
+import loon.Json;
+import loon.LSystem;
+import loon.action.avg.drama.RocScript.ScriptException;
+import loon.utils.Array;
+import loon.utils.ArrayMap;
+import loon.utils.CollectionUtils;
+import loon.utils.MathUtils;
+import loon.utils.ObjectMap;
+import loon.utils.StringUtils;
+
+/**
+ * 执行RocProgram的栈式虚拟机,数值在运行栈与变量表中以double保存(不装箱),其它值保存为对象.
+ * 
+ * 变量按RocScript原有的作用域规则保存(内层作用域可见外层变量,作用域结束时把同名变量的值写回上一层),但以变量下标而非变量名访问.
+ */
+class RocVM {
+
+	private final RocScript script;
+
+	private final RocProgram program;
+
+	private final int nameCount;
+
+	// 运行栈,refs中为null时表示数值(保存在nums中)
+	private double[] nums;
+
+	private Object[] refs;
+
+	private int sp;
+
+	// 变量表,每个变量的各层取值以链表形式保存,slotTop为最内层取值的下标
+	private int[] slotTop;
+
+	private int[] entrySlot;
+
+	private int[] entryDepth;
+
+	private int[] entryPrev;
+
+	private double[] entryNum;
+
+	private Object[] entryRef;
+
+	private int entryCount;
+
+	private int depth;
+
+	// 脚本函数调用栈
+	private int[] frameReturn;
+
+	private int[] frameDepth;
+
+	private int frameCount;
+
+	private int[] functions;
+
+	// 不在程序变量名表中的变量(由外部注入或由宏命令产生)
+	private ObjectMap<String, Integer> extraSlots;
+
+	private String[] extraNames;
+
+	private int pc;
+
+	private int line;
+
+	private boolean completed;
+
+	RocVM(RocScript script, RocProgram program) {
+		this.script = script;
+		this.program = program;
+		this.nameCount = program.names.length;
+		reset();
+	}
+
+	void reset() {
+		int size = MathUtils.max(8, program.maxStack + 1);
+		this.nums = new double[size];
+		this.refs = new Object[size];
+		this.sp = 0;
+		this.slotTop = new int[MathUtils.max(8, nameCount)];
+		for (int i = 0; i < slotTop.length; i++) {
+			slotTop[i] = -1;
+		}
+		this.entrySlot = new int[32];
+		this.entryDepth = new int[32];
+		this.entryPrev = new int[32];
+		this.entryNum = new double[32];
+		this.entryRef = new Object[32];
+		this.entryCount = 0;
+		this.depth = 0;
+		this.frameReturn = new int[8];
+		this.frameDepth = new int[8];
+		this.frameCount = 0;
+		this.functions = new int[nameCount];
+		for (int i = 0; i < nameCount; i++) {
+			functions[i] = -1;
+		}
+		this.extraSlots = null;
+		this.extraNames = null;
+		this.pc = 0;
+		this.line = 1;
+		this.completed = false;
+	}
+
+	boolean isCompleted() {
+		return completed;
+	}
+
+	int getLine() {
+		return line;
+	}
+
+	/**
+	 * 执行脚本,直到脚本结束,等待,停止,或者在单步模式下执行完一条语句
+	 * 
+	 * @param step
+	 * @return
+	 * @throws ScriptException
+	 */
+	Object run(boolean step) throws ScriptException {
+		if (completed) {
+			return null;
+		}
+		final int[] code = program.code;
+		final int stepFrames = frameCount;
+		boolean executed = false;
+		int pc = this.pc;
+		try {
+			for (;;) {
+				switch (code[pc++]) {
+				case RocProgram.LINE:
+					if (script._stop || script._sleep != -1 || (step && executed && frameCount <= stepFrames)) {
+						pc--;
+						return null;
+					}
+					executed = true;
+					line = code[pc++];
+					break;
+				case RocProgram.NUM:
+					pushNum(program.numbers[code[pc++]]);
+					break;
+				case RocProgram.CONST:
+					refs[sp++] = program.constants[code[pc++]];
+					break;
+				case RocProgram.LOAD: {
+					int e = slotTop[code[pc++]];
+					if (e != -1 && entryRef[e] == null) {
+						pushNum(entryNum[e]);
+					} else {
+						pushAtom(e == -1 ? null : entryRef[e]);
+					}
+					break;
+				}
+				case RocProgram.LOAD_PATH:
+					pushAtom(getVarVal(program.names[code[pc++]]));
+					break;
+				case RocProgram.STORE:
+					sp--;
+					assign(code[pc++], nums[sp], refs[sp]);
+					refs[sp] = null;
+					break;
+				case RocProgram.POP:
+					refs[--sp] = null;
+					break;
+				case RocProgram.ADD:
+					sp--;
+					if (refs[sp] == null && refs[sp - 1] == null) {
+						nums[sp - 1] += nums[sp];
+					} else {
+						add(sp - 1, sp);
+					}
+					break;
+				case RocProgram.SUB:
+					sp--;
+					if (refs[sp] == null && refs[sp - 1] == null) {
+						nums[sp - 1] -= nums[sp];
+					} else {
+						sub(sp - 1, sp);
+					}
+					break;
+				case RocProgram.MUL:
+				case RocProgram.DIV:
+				case RocProgram.MOD:
+				case RocProgram.POW:
+					sp--;
+					arithmetic(code[pc - 1], sp - 1, sp);
+					break;
+				case RocProgram.NEG:
+					if (refs[sp - 1] == null) {
+						nums[sp - 1] = -nums[sp - 1];
+					} else {
+						negate(sp - 1);
+					}
+					break;
+				case RocProgram.NOT:
+					not(sp - 1);
+					break;
+				case RocProgram.LT:
+				case RocProgram.LE:
+				case RocProgram.GT:
+				case RocProgram.GE:
+				case RocProgram.EQ:
+					sp--;
+					compare(code[pc - 1], sp - 1, sp);
+					break;
+				case RocProgram.AND:
+				case RocProgram.OR:
+				case RocProgram.XOR:
+				case RocProgram.XAND:
+					sp--;
+					logic(code[pc - 1], sp - 1, sp);
+					break;
+				case RocProgram.JMP:
+					pc = code[pc];
+					break;
+				case RocProgram.JFALSE:
+					sp--;
+					pc = isTrue(sp) ? pc + 1 : code[pc];
+					refs[sp] = null;
+					break;
+				case RocProgram.JTRUE:
+					sp--;
+					pc = isTrue(sp) ? code[pc] : pc + 1;
+					refs[sp] = null;
+					break;
+				case RocProgram.PUSH_SCOPE:
+					depth++;
+					break;
+				case RocProgram.POP_SCOPE:
+					popScope();
+					break;
+				case RocProgram.PRINT:
+					sp--;
+					script.getScriptLog().line(value(sp));
+					refs[sp] = null;
+					break;
+				case RocProgram.PRINTLN:
+					sp--;
+					script.getScriptLog().info(value(sp));
+					refs[sp] = null;
+					break;
+				case RocProgram.PRINT_SEP:
+					script.getScriptLog().line(program.constants[code[pc++]]);
+					break;
+				case RocProgram.WAIT:
+					script._sleep = (long) program.numbers[code[pc++]];
+					break;
+				case RocProgram.MACRO:
+					macros((String) program.constants[code[pc++]]);
+					break;
+				case RocProgram.DEFUN:
+					functions[code[pc]] = code[pc + 1];
+					pc += 2;
+					break;
+				case RocProgram.CALL:
+					pc = call(code[pc], pc + 1);
+					break;
+				case RocProgram.RET: {
+					sp--;
+					double num = nums[sp];
+					Object ref = refs[sp];
+					pc = leave();
+					nums[sp] = num;
+					refs[sp++] = ref;
+					break;
+				}
+				case RocProgram.END_FN:
+					pc = leave();
+					refs[sp++] = RocProgram.NIL;
+					break;
+				case RocProgram.HALT:
+					pc--;
+					completed = true;
+					return null;
+				default:
+					script.handleError(RocScript.UNKNOWN, line);
+				}
+			}
+		} finally {
+			this.pc = pc;
+		}
+	}
+
+	private void pushNum(double v) {
+		nums[sp] = v;
+		refs[sp++] = null;
+	}
+
+	private void push(Object o) {
+		if (o == null) {
+			refs[sp++] = RocProgram.NIL;
+		} else if (o instanceof Double) {
+			pushNum(((Double) o).doubleValue());
+		} else {
+			refs[sp++] = o;
+		}
+	}
+
+	/**
+	 * 与解释执行时相同,把变量值中的数字与布尔值字符串转换为对应类型后入栈
+	 */
+	private void pushAtom(Object o) {
+		if (o == null || o == RocProgram.NIL) {
+			refs[sp++] = LSystem.UNKOWN;
+		} else if (o instanceof Number) {
+			push(o);
+		} else if (o instanceof Boolean) {
+			refs[sp++] = o;
+		} else {
+			String str = o.toString();
+			if (MathUtils.isNan(str)) {
+				pushNum(Double.parseDouble(str));
+			} else if (StringUtils.isBoolean(str)) {
+				refs[sp++] = StringUtils.toBoolean(str) ? Boolean.TRUE : Boolean.FALSE;
+			} else {
+				refs[sp++] = o;
+			}
+		}
+	}
+
+	private Object value(int i) {
+		Object o = refs[i];
+		if (o == null) {
+			return Double.valueOf(nums[i]);
+		}
+		return o == RocProgram.NIL ? null : o;
+	}
+
+	private void setNum(int i, double v) {
+		nums[i] = v;
+		refs[i] = null;
+	}
+
+	private void setBool(int i, boolean v) {
+		refs[i] = v ? Boolean.TRUE : Boolean.FALSE;
+	}
+
+	private boolean isNumber(int i) {
+		Object o = refs[i];
+		return o == null || o instanceof Number || (o != RocProgram.NIL && MathUtils.isNan(o.toString()));
+	}
+
+	private double number(int i) {
+		Object o = refs[i];
+		if (o == null) {
+			return nums[i];
+		} else if (o instanceof Number) {
+			return ((Number) o).doubleValue();
+		}
+		return Double.parseDouble(o.toString());
+	}
+
+	private boolean isBoolean(int i) {
+		Object o = refs[i];
+		return o instanceof Boolean || (o != null && o != RocProgram.NIL && StringUtils.isBoolean(o.toString()));
+	}
+
+	private boolean bool(int i) {
+		Object o = refs[i];
+		if (o instanceof Boolean) {
+			return ((Boolean) o).booleanValue();
+		}
+		return StringUtils.toBoolean(o.toString());
+	}
+
+	private boolean isTrue(int i) {
+		Object o = refs[i];
+		if (o == null) {
+			return nums[i] > 0;
+		} else if (o instanceof Boolean) {
+			return ((Boolean) o).booleanValue();
+		} else if (o instanceof Number) {
+			return ((Number) o).doubleValue() > 0;
+		}
+		return false;
+	}
+
+	private void add(int a, int b) throws ScriptException {
+		if (isNumber(a)) {
+			if (!isNumber(b)) {
+				script.handleError(RocScript.NOTANUMB, line);
+			}
+			setNum(a, number(a) + number(b));
+		} else if (!isBoolean(a)) {
+			if (isNumber(b) || isBoolean(b)) {
+				script.handleError(RocScript.NOTASTR, line);
+			}
+			refs[a] = String.valueOf(value(a)) + String.valueOf(value(b));
+		}
+		refs[b] = null;
+	}
+
+	private void sub(int a, int b) throws ScriptException {
+		if (isNumber(a)) {
+			if (!isNumber(b)) {
+				script.handleError(RocScript.NOTANUMB, line);
+			}
+			setNum(a, number(a) - number(b));
+		} else if (!isBoolean(a)) {
+			if (isNumber(b) || isBoolean(b)) {
+				script.handleError(RocScript.NOTASTR, line);
+			}
+			script.handleError(RocScript.INVALIDEXP, line);
+		}
+		refs[b] = null;
+	}
+
+	private void arithmetic(int op, int a, int b) throws ScriptException {
+		if (!isNumber(a) || !isNumber(b)) {
+			script.handleError(RocScript.NOTANUMB, line);
+		}
+		final double x = number(a);
+		final double y = number(b);
+		switch (op) {
+		case RocProgram.MUL:
+			setNum(a, x * y);
+			break;
+		case RocProgram.DIV:
+			if (y == 0.0) {
+				script.handleError(RocScript.DIVBYZERO, line);
+			}
+			setNum(a, x / y);
+			break;
+		case RocProgram.MOD:
+			if (y == 0.0) {
+				script.handleError(RocScript.DIVBYZERO, line);
+			}
+			setNum(a, x % y);
+			break;
+		case RocProgram.POW:
+			double result = x;
+			if (y == 0.0) {
+				result = 1.0;
+			} else {
+				for (double t = y - 1; t > 0; t--) {
+					result *= x;
+				}
+			}
+			setNum(a, result);
+			break;
+		}
+		refs[b] = null;
+	}
+
+	private void negate(int i) throws ScriptException {
+		if (isNumber(i)) {
+			setNum(i, -number(i));
+		} else if (isBoolean(i)) {
+			script.handleError(RocScript.NOTANUMB, line);
+		} else {
+			script.handleError(RocScript.INVALIDEXP, line);
+		}
+	}
+
+	private void not(int i) throws ScriptException {
+		if (isNumber(i)) {
+			script.handleError(RocScript.NOTABOOL, line);
+		} else if (isBoolean(i)) {
+			setBool(i, !bool(i));
+		} else {
+			script.handleError(RocScript.INVALIDEXP, line);
+		}
+	}
+
+	private void compare(int op, int a, int b) throws ScriptException {
+		double test;
+		if (refs[a] == null && refs[b] == null) {
+			test = nums[a] < nums[b] ? -1 : (nums[a] > nums[b] ? 1 : (nums[a] == nums[b] ? 0 : Double.NaN));
+		} else if (isNumber(a)) {
+			if (!isNumber(b)) {
+				script.handleError(RocScript.NOTANUMB, line);
+			}
+			double x = number(a), y = number(b);
+			test = x < y ? -1 : (x > y ? 1 : (x == y ? 0 : Double.NaN));
+		} else if (isBoolean(a)) {
+			// 布尔值不参与比较,保留左侧的值
+			refs[b] = null;
+			return;
+		} else {
+			if (isNumber(b)) {
+				script.handleError(RocScript.NOTASTR, line);
+			}
+			test = String.valueOf(value(a)).compareTo(String.valueOf(value(b)));
+		}
+		switch (op) {
+		case RocProgram.LT:
+			setBool(a, test < 0);
+			break;
+		case RocProgram.LE:
+			setBool(a, test <= 0);
+			break;
+		case RocProgram.GT:
+			setBool(a, test > 0);
+			break;
+		case RocProgram.GE:
+			setBool(a, test >= 0);
+			break;
+		case RocProgram.EQ:
+			setBool(a, test == 0);
+			break;
+		}
+		refs[b] = null;
+	}
+
+	private void logic(int op, int a, int b) throws ScriptException {
+		// 数字与字符串不参与布尔运算,保留左侧的值
+		if (!isNumber(a) && isBoolean(a)) {
+			if (isNumber(b) || !isBoolean(b)) {
+				script.handleError(RocScript.NOTABOOL, line);
+			}
+			boolean lb = bool(a), rb = bool(b);
+			switch (op) {
+			case RocProgram.AND:
+				setBool(a, lb && rb);
+				break;
+			case RocProgram.OR:
+				setBool(a, lb || rb);
+				break;
+			case RocProgram.XOR:
+				setBool(a, lb ^ rb);
+				break;
+			case RocProgram.XAND:
+				setBool(a, lb == rb);
+				break;
+			}
+		}
+		refs[b] = null;
+	}
+
+	private int call(int site, int pc) throws ScriptException {
+		final int slot = program.siteNames[site];
+		final int argc = program.siteArgs[site];
+		final String name = program.names[slot];
+		if (script.getFunctions()._system_functs.contains(name)) {
+			for (int i = 0; i < argc; i++) {
+				refs[--sp] = null;
+			}
+			push(script.callFunction(name, program.siteRaws[site]));
+			return pc;
+		}
+		final int fn = functions[slot];
+		if (fn == -1) {
+			script.handleError(RocScript.UNKFUNCTION, line);
+		}
+		final int[] params = program.functionParams[fn];
+		if (argc > params.length) {
+			script.handleError(RocScript.TOOMANYPARAMS, line);
+		}
+		depth++;
+		final int base = sp - argc;
+		for (int i = 0; i < argc; i++) {
+			assign(params[i], nums[base + i], refs[base + i]);
+			refs[base + i] = null;
+		}
+		sp = base;
+		if (frameCount == frameReturn.length) {
+			frameReturn = CollectionUtils.copyOf(frameReturn, frameCount * 2);
+			frameDepth = CollectionUtils.copyOf(frameDepth, frameCount * 2);
+		}
+		frameReturn[frameCount] = pc;
+		frameDepth[frameCount++] = depth;
+		if (sp + program.maxStack + 1 > nums.length) {
+			int size = (sp + program.maxStack + 1) * 2;
+			nums = CollectionUtils.copyOf(nums, size);
+			refs = CollectionUtils.copyOf(refs, size);
+		}
+		return program.functionEntries[fn];
+	}
+
+	/**
+	 * 结束当前脚本函数,依次关闭函数内尚未结束的作用域与函数自身的作用域
+	 */
+	private int leave() {
+		final int target = frameDepth[--frameCount];
+		while (depth > target) {
+			popScope();
+		}
+		popScope();
+		return frameReturn[frameCount];
+	}
+
+	private void macros(String context) throws ScriptException {
+		ArrayMap visible = new ArrayMap();
+		final int count = nameCount + (extraNames == null ? 0 : extraSlots.size);
+		for (int i = 0; i < count; i++) {
+			int e = slotTop[i];
+			if (e != -1) {
+				visible.put(nameOf(i), entryValue(e));
+			}
+		}
+		Array<ArrayMap> scopes = new Array<ArrayMap>();
+		scopes.add(visible);
+		ArrayMap result = script.execMacros(context, line, scopes);
+		if (result == null) {
+			return;
+		}
+		for (int i = 0; i < result.size(); i++) {
+			String name = (String) result.getKey(i);
+			Object o = result.get(name);
+			if (visible.get(name) != o) {
+				set(name, o);
+			}
+		}
+	}
+
+	private String nameOf(int slot) {
+		return slot < nameCount ? program.names[slot] : extraNames[slot - nameCount];
+	}
+
+	private int slotOf(String name, boolean create) {
+		int slot = program.slotOf(name);
+		if (slot != -1) {
+			return slot;
+		}
+		if (extraSlots != null) {
+			Integer idx = extraSlots.get(name);
+			if (idx != null) {
+				return idx.intValue();
+			}
+		}
+		if (!create) {
+			return -1;
+		}
+		if (extraSlots == null) {
+			extraSlots = new ObjectMap<String, Integer>();
+			extraNames = new String[8];
+		}
+		int index = extraSlots.size;
+		if (index == extraNames.length) {
+			extraNames = CollectionUtils.copyOf(extraNames, index * 2);
+		}
+		extraNames[index] = name;
+		slot = nameCount + index;
+		extraSlots.put(name, slot);
+		if (slot >= slotTop.length) {
+			int old = slotTop.length;
+			slotTop = CollectionUtils.copyOf(slotTop, MathUtils.max(slot + 1, old * 2));
+			for (int i = old; i < slotTop.length; i++) {
+				slotTop[i] = -1;
+			}
+		}
+		return slot;
+	}
+
+	private Object entryValue(int e) {
+		Object o = entryRef[e];
+		if (o == null) {
+			return Double.valueOf(entryNum[e]);
+		}
+		return o == RocProgram.NIL ? null : o;
+	}
+
+	private void assign(int slot, double num, Object ref) {
+		int e = slotTop[slot];
+		if (e == -1 || entryDepth[e] != depth) {
+			if (entryCount == entrySlot.length) {
+				int size = entryCount * 2;
+				entrySlot = CollectionUtils.copyOf(entrySlot, size);
+				entryDepth = CollectionUtils.copyOf(entryDepth, size);
+				entryPrev = CollectionUtils.copyOf(entryPrev, size);
+				entryNum = CollectionUtils.copyOf(entryNum, size);
+				entryRef = CollectionUtils.copyOf(entryRef, size);
+			}
+			int n = entryCount++;
+			entrySlot[n] = slot;
+			entryDepth[n] = depth;
+			entryPrev[n] = e;
+			slotTop[slot] = n;
+			e = n;
+		}
+		entryNum[e] = num;
+		entryRef[e] = ref;
+	}
+
+	/**
+	 * 关闭当前作用域,上一层作用域中已存在的同名变量会得到本层的值
+	 */
+	private void popScope() {
+		while (entryCount > 0 && entryDepth[entryCount - 1] == depth) {
+			int e = --entryCount;
+			int prev = entryPrev[e];
+			if (prev != -1 && entryDepth[prev] == depth - 1) {
+				entryNum[prev] = entryNum[e];
+				entryRef[prev] = entryRef[e];
+			}
+			slotTop[entrySlot[e]] = prev;
+			entryRef[e] = null;
+		}
+		if (depth > 0) {
+			depth--;
+		}
+	}
+
+	/**
+	 * 在当前作用域中设置变量
+	 * 
+	 * @param name
+	 * @param o
+	 */
+	void set(String name, Object o) {
+		if (o == null) {
+			assign(slotOf(name, true), 0, RocProgram.NIL);
+		} else if (o instanceof Double) {
+			assign(slotOf(name, true), ((Double) o).doubleValue(), null);
+		} else {
+			assign(slotOf(name, true), 0, o);
+		}
+	}
+
+	/**
+	 * 当前作用域中的变量值
+	 * 
+	 * @param name
+	 * @return
+	 */
+	Object getCurrent(String name) {
+		int slot = slotOf(name, false);
+		if (slot == -1) {
+			return null;
+		}
+		int e = slotTop[slot];
+		return (e != -1 && entryDepth[e] == depth) ? entryValue(e) : null;
+	}
+
+	/**
+	 * 全局作用域中的变量值
+	 * 
+	 * @param name
+	 * @return
+	 */
+	Object getGlobal(String name) {
+		int e = outermost(name);
+		return (e != -1 && entryDepth[e] == 0) ? entryValue(e) : null;
+	}
+
+	/**
+	 * 由外向内查找第一个不为null的变量值
+	 * 
+	 * @param name
+	 * @return
+	 */
+	Object getOuter(String name) {
+		int slot = slotOf(name, false);
+		if (slot == -1) {
+			return null;
+		}
+		Object result = null;
+		for (int e = slotTop[slot]; e != -1; e = entryPrev[e]) {
+			Object o = entryValue(e);
+			if (o != null) {
+				result = o;
+			}
+		}
+		return result;
+	}
+
+	private int outermost(String name) {
+		int slot = slotOf(name, false);
+		if (slot == -1) {
+			return -1;
+		}
+		int e = slotTop[slot];
+		while (e != -1 && entryPrev[e] != -1) {
+			e = entryPrev[e];
+		}
+		return e;
+	}
+
+	private Object innermost(String name) {
+		int slot = slotOf(name, false);
+		if (slot == -1 || slotTop[slot] == -1) {
+			return null;
+		}
+		return entryValue(slotTop[slot]);
+	}
+
+	/**
+	 * 按变量名取值,规则与解释执行时的getVarVal相同
+	 * 
+	 * @param vname
+	 * @return
+	 * @throws ScriptException
+	 */
+	Object getVarVal(String vname) throws ScriptException {
+		if (vname.indexOf('\'') == 0 || vname.indexOf('\"') == 0) {
+			if (vname.length() > 2) {
+				return vname.substring(1, vname.length() - 1);
+			}
+			return vname;
+		}
+		if (!Character.isLetter(vname.charAt(0))) {
+			script.handleError(RocScript.UNKOWN, line);
+			return 0;
+		}
+		Object o = innermost(vname);
+		if (o == null) {
+			String name = vname;
+			for (int idx = name.lastIndexOf('.'); idx != -1; idx = name.lastIndexOf('.')) {
+				String method = name.substring(idx + 1, name.length());
+				name = name.substring(0, idx);
+				int e = outermost(name);
+				Object value = e == -1 ? null : entryValue(e);
+				if (value != null) {
+					o = (value instanceof Json.Object) ? script.queryJson(value, vname, method) : value;
+					break;
+				}
+			}
+		}
+		return o == null ? LSystem.UNKOWN : o;
+	}
+
+}
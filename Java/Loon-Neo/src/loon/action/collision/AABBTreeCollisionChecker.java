@@ -0,0 +1,884 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.collision;
+
+import loon.geom.RectBox;
+import loon.geom.Vector2f;
+import loon.utils.LIterator;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
+
+/**
+ * 基于动态AABB树的碰撞检查器.
+ *
+ * 每个对象对应树中的一个叶子,叶子保存比对象实际范围略大的"胖"包围盒(四周各扩展fatMargin像素,并按移动方向额外预测一段位移),
+ * 对象移动后只要仍在胖包围盒内就不需要改动树结构,超出时才把叶子摘下重新插入,插入与删除后沿父节点回溯并做旋转平衡.
+ * 节点数据全部保存在基本类型数组中,增删改不产生新的节点对象.
+ *
+ * 除了与BSPCollisionChecker相同的查询外,还提供forEachOverlappingPair一次遍历整棵树得到场景中所有相交的对象对.
+ * 增删改互斥执行,查询与检索对象对不占用全局锁,可以并发进行(但不能与增删改同时进行).
+ */
+public class AABBTreeCollisionChecker implements CollisionChecker {
+
+	private final static int NULL_NODE = -1;
+
+	private final static class Proxy {
+
+		final AABBTreeCollisionChecker owner;
+
+		final int id;
+
+		Proxy(AABBTreeCollisionChecker owner, int id) {
+			this.owner = owner;
+			this.id = id;
+		}
+
+	}
+
+	private final static class QueryContext extends CollisionQueryContext {
+
+		int[] stack = new int[64];
+
+	}
+
+	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
+	private final static class LeafIterator implements LIterator<CollisionObject> {
+
+		private final AABBTreeCollisionChecker tree;
+
+		private int index;
+
+		private int current = NULL_NODE;
+
+		LeafIterator(AABBTreeCollisionChecker tree) {
+			this.tree = tree;
+			this.index = tree.nextLeaf(0);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index != NULL_NODE;
+		}
+
+		@Override
+		public CollisionObject next() {
+			current = index;
+			index = tree.nextLeaf(index + 1);
+			return tree.objects[current];
+		}
+
+		@Override
+		public void remove() {
+			if (current != NULL_NODE) {
+				tree.removeObject(tree.objects[current]);
+				current = NULL_NODE;
+			}
+		}
+
+	}
+
+	private float[] minX, minY, maxX, maxY;
+
+	private int[] parents, child1, child2, heights, categories;
+
+	private CollisionObject[] objects;
+
+	private int capacity, nodeCount, leafCount;
+
+	private int root = NULL_NODE;
+
+	private int freeList = NULL_NODE;
+
+	private float fatMargin = 8f;
+
+	private float predictFactor = 2f;
+
+	private int cellSizeX = 1, cellSizeY = 1;
+
+	private boolean itlayer = false;
+
+	private final Vector2f offsetLocation = new Vector2f(0, 0);
+
+	private final CollisionFilter filter = new CollisionFilter();
+
+	private final TArray<QueryContext> contextPool = new TArray<QueryContext>();
+
+	public AABBTreeCollisionChecker() {
+		this(32);
+	}
+
+	public AABBTreeCollisionChecker(int capacity) {
+		allocate(MathUtils.max(4, capacity));
+	}
+
+	@Override
+	public void initialize(int size) {
+		this.initialize(size, size);
+	}
+
+	@Override
+	public void initialize(int tsx, int tsy) {
+		this.cellSizeX = MathUtils.max(1, tsx);
+		this.cellSizeY = MathUtils.max(1, tsy);
+	}
+
+	/**
+	 * 设定叶子包围盒四周额外扩展的像素,越大则对象移动时重建树的次数越少,但查询的候选对象越多
+	 * 
+	 * @param margin
+	 */
+	public synchronized void setFatMargin(float margin) {
+		this.fatMargin = MathUtils.max(0f, margin);
+	}
+
+	public float getFatMargin() {
+		return fatMargin;
+	}
+
+	/**
+	 * 设定按移动位移预测扩展包围盒的倍数,为0时不做预测
+	 * 
+	 * @param factor
+	 */
+	public synchronized void setPredictFactor(float factor) {
+		this.predictFactor = MathUtils.max(0f, factor);
+	}
+
+	public float getPredictFactor() {
+		return predictFactor;
+	}
+
+	private void allocate(int newCapacity) {
+		int old = capacity;
+		minX = copyOf(minX, newCapacity);
+		minY = copyOf(minY, newCapacity);
+		maxX = copyOf(maxX, newCapacity);
+		maxY = copyOf(maxY, newCapacity);
+		parents = copyOf(parents, newCapacity);
+		child1 = copyOf(child1, newCapacity);
+		child2 = copyOf(child2, newCapacity);
+		heights = copyOf(heights, newCapacity);
+		categories = copyOf(categories, newCapacity);
+		CollisionObject[] tmp = new CollisionObject[newCapacity];
+		if (objects != null) {
+			System.arraycopy(objects, 0, tmp, 0, old);
+		}
+		objects = tmp;
+		for (int i = newCapacity - 1; i >= old; i--) {
+			parents[i] = freeList;
+			heights[i] = -1;
+			freeList = i;
+		}
+		capacity = newCapacity;
+	}
+
+	private final static float[] copyOf(float[] src, int size) {
+		float[] dst = new float[size];
+		if (src != null) {
+			System.arraycopy(src, 0, dst, 0, MathUtils.min(src.length, size));
+		}
+		return dst;
+	}
+
+	private final static int[] copyOf(int[] src, int size) {
+		int[] dst = new int[size];
+		if (src != null) {
+			System.arraycopy(src, 0, dst, 0, MathUtils.min(src.length, size));
+		}
+		return dst;
+	}
+
+	private int allocateNode() {
+		if (freeList == NULL_NODE) {
+			allocate(capacity * 2);
+		}
+		int node = freeList;
+		freeList = parents[node];
+		parents[node] = NULL_NODE;
+		child1[node] = NULL_NODE;
+		child2[node] = NULL_NODE;
+		heights[node] = 0;
+		categories[node] = 0;
+		objects[node] = null;
+		nodeCount++;
+		return node;
+	}
+
+	private void freeNode(int node) {
+		parents[node] = freeList;
+		heights[node] = -1;
+		objects[node] = null;
+		freeList = node;
+		nodeCount--;
+	}
+
+	private final boolean isLeaf(int node) {
+		return child1[node] == NULL_NODE;
+	}
+
+	private final float perimeter(int node) {
+		return 2f * ((maxX[node] - minX[node]) + (maxY[node] - minY[node]));
+	}
+
+	private final float unionPerimeter(int a, int b) {
+		return 2f * ((MathUtils.max(maxX[a], maxX[b]) - MathUtils.min(minX[a], minX[b]))
+				+ (MathUtils.max(maxY[a], maxY[b]) - MathUtils.min(minY[a], minY[b])));
+	}
+
+	private final void union(int node, int a, int b) {
+		minX[node] = MathUtils.min(minX[a], minX[b]);
+		minY[node] = MathUtils.min(minY[a], minY[b]);
+		maxX[node] = MathUtils.max(maxX[a], maxX[b]);
+		maxY[node] = MathUtils.max(maxY[a], maxY[b]);
+	}
+
+	private final void refit(int node) {
+		int a = child1[node];
+		int b = child2[node];
+		heights[node] = 1 + MathUtils.max(heights[a], heights[b]);
+		union(node, a, b);
+	}
+
+	private void setFatBounds(int node, RectBox bounds, float dx, float dy) {
+		float left = bounds.x - fatMargin;
+		float top = bounds.y - fatMargin;
+		float right = bounds.x + bounds.width + fatMargin;
+		float bottom = bounds.y + bounds.height + fatMargin;
+		if (predictFactor > 0f) {
+			float limit = fatMargin * 4f;
+			dx = MathUtils.clamp(dx * predictFactor, -limit, limit);
+			dy = MathUtils.clamp(dy * predictFactor, -limit, limit);
+			if (dx < 0f) {
+				left += dx;
+			} else {
+				right += dx;
+			}
+			if (dy < 0f) {
+				top += dy;
+			} else {
+				bottom += dy;
+			}
+		}
+		minX[node] = left;
+		minY[node] = top;
+		maxX[node] = right;
+		maxY[node] = bottom;
+	}
+
+	private void insertLeaf(int leaf) {
+		if (root == NULL_NODE) {
+			root = leaf;
+			parents[root] = NULL_NODE;
+			return;
+		}
+		int index = root;
+		while (!isLeaf(index)) {
+			int c1 = child1[index];
+			int c2 = child2[index];
+			float area = perimeter(index);
+			float combinedArea = unionPerimeter(index, leaf);
+			float cost = 2f * combinedArea;
+			float inheritanceCost = 2f * (combinedArea - area);
+			float cost1 = unionPerimeter(leaf, c1) + inheritanceCost;
+			if (!isLeaf(c1)) {
+				cost1 -= perimeter(c1);
+			}
+			float cost2 = unionPerimeter(leaf, c2) + inheritanceCost;
+			if (!isLeaf(c2)) {
+				cost2 -= perimeter(c2);
+			}
+			if (cost < cost1 && cost < cost2) {
+				break;
+			}
+			index = cost1 < cost2 ? c1 : c2;
+		}
+		int sibling = index;
+		int oldParent = parents[sibling];
+		int newParent = allocateNode();
+		parents[newParent] = oldParent;
+		union(newParent, leaf, sibling);
+		heights[newParent] = heights[sibling] + 1;
+		if (oldParent != NULL_NODE) {
+			if (child1[oldParent] == sibling) {
+				child1[oldParent] = newParent;
+			} else {
+				child2[oldParent] = newParent;
+			}
+		} else {
+			root = newParent;
+		}
+		child1[newParent] = sibling;
+		child2[newParent] = leaf;
+		parents[sibling] = newParent;
+		parents[leaf] = newParent;
+		for (index = parents[leaf]; index != NULL_NODE; index = parents[index]) {
+			index = balance(index);
+			refit(index);
+		}
+	}
+
+	private void removeLeaf(int leaf) {
+		if (leaf == root) {
+			root = NULL_NODE;
+			return;
+		}
+		int parent = parents[leaf];
+		int grandParent = parents[parent];
+		int sibling = child1[parent] == leaf ? child2[parent] : child1[parent];
+		if (grandParent != NULL_NODE) {
+			if (child1[grandParent] == parent) {
+				child1[grandParent] = sibling;
+			} else {
+				child2[grandParent] = sibling;
+			}
+			parents[sibling] = grandParent;
+			freeNode(parent);
+			for (int index = grandParent; index != NULL_NODE; index = parents[index]) {
+				index = balance(index);
+				refit(index);
+			}
+		} else {
+			root = sibling;
+			parents[sibling] = NULL_NODE;
+			freeNode(parent);
+		}
+		parents[leaf] = NULL_NODE;
+	}
+
+	private void replaceChild(int parent, int oldChild, int newChild) {
+		if (parent != NULL_NODE) {
+			if (child1[parent] == oldChild) {
+				child1[parent] = newChild;
+			} else {
+				child2[parent] = newChild;
+			}
+		} else {
+			root = newChild;
+		}
+	}
+
+	private int balance(int a) {
+		if (isLeaf(a) || heights[a] < 2) {
+			return a;
+		}
+		int b = child1[a];
+		int c = child2[a];
+		int diff = heights[c] - heights[b];
+		if (diff > 1) {
+			int f = child1[c];
+			int g = child2[c];
+			child1[c] = a;
+			parents[c] = parents[a];
+			parents[a] = c;
+			replaceChild(parents[c], a, c);
+			if (heights[f] > heights[g]) {
+				child2[c] = f;
+				child2[a] = g;
+				parents[g] = a;
+				refit(a);
+				refit(c);
+			} else {
+				child2[c] = g;
+				child2[a] = f;
+				parents[f] = a;
+				refit(a);
+				refit(c);
+			}
+			return c;
+		}
+		if (diff < -1) {
+			int d = child1[b];
+			int e = child2[b];
+			child1[b] = a;
+			parents[b] = parents[a];
+			parents[a] = b;
+			replaceChild(parents[b], a, b);
+			if (heights[d] > heights[e]) {
+				child2[b] = d;
+				child1[a] = e;
+				parents[e] = a;
+				refit(a);
+				refit(b);
+			} else {
+				child2[b] = e;
+				child1[a] = d;
+				parents[d] = a;
+				refit(a);
+				refit(b);
+			}
+			return b;
+		}
+		return a;
+	}
+
+	private int proxyOf(CollisionObject obj) {
+		Object data = obj.getCollisionData();
+		if (data instanceof Proxy) {
+			Proxy proxy = (Proxy) data;
+			if (proxy.owner == this && objects[proxy.id] == obj) {
+				return proxy.id;
+			}
+		}
+		return NULL_NODE;
+	}
+
+	private final int nextLeaf(int from) {
+		for (int i = from; i < capacity; i++) {
+			if (objects[i] != null) {
+				return i;
+			}
+		}
+		return NULL_NODE;
+	}
+
+	@Override
+	public synchronized void addObject(CollisionObject actor) {
+		if (actor == null || proxyOf(actor) != NULL_NODE) {
+			return;
+		}
+		int leaf = allocateNode();
+		setFatBounds(leaf, actor.getBoundingRect(), 0f, 0f);
+		objects[leaf] = actor;
+		categories[leaf] = filter.getBits(actor.getObjectFlag());
+		insertLeaf(leaf);
+		actor.setCollisionData(new Proxy(this, leaf));
+		leafCount++;
+	}
+
+	@Override
+	public synchronized void removeObject(CollisionObject actor) {
+		if (actor == null) {
+			return;
+		}
+		int leaf = proxyOf(actor);
+		if (leaf == NULL_NODE) {
+			return;
+		}
+		removeLeaf(leaf);
+		freeNode(leaf);
+		actor.setCollisionData(null);
+		leafCount--;
+	}
+
+	private boolean moveObject(CollisionObject actor, float dx, float dy) {
+		int leaf = proxyOf(actor);
+		if (leaf == NULL_NODE) {
+			return false;
+		}
+		// 对象的标记可能已经通过setObjectFlag修改,移动时重新读取类别位
+		categories[leaf] = filter.getBits(actor.getObjectFlag());
+		RectBox bounds = actor.getBoundingRect();
+		if (bounds.x >= minX[leaf] && bounds.y >= minY[leaf] && bounds.x + bounds.width <= maxX[leaf]
+				&& bounds.y + bounds.height <= maxY[leaf]) {
+			return false;
+		}
+		removeLeaf(leaf);
+		setFatBounds(leaf, bounds, dx, dy);
+		insertLeaf(leaf);
+		return true;
+	}
+
+	@Override
+	public synchronized void updateObjectLocation(CollisionObject actor, float oldX, float oldY) {
+		moveObject(actor, actor.getX() - oldX, actor.getY() - oldY);
+	}
+
+	@Override
+	public synchronized void updateObjectSize(CollisionObject actor) {
+		moveObject(actor, 0f, 0f);
+	}
+
+	@Override
+	public synchronized void clear() {
+		for (int i = 0; i < capacity; i++) {
+			CollisionObject obj = objects[i];
+			if (obj != null && proxyOf(obj) == i) {
+				obj.setCollisionData(null);
+			}
+			objects[i] = null;
+		}
+		freeList = NULL_NODE;
+		for (int i = capacity - 1; i >= 0; i--) {
+			parents[i] = freeList;
+			heights[i] = -1;
+			freeList = i;
+		}
+		root = NULL_NODE;
+		nodeCount = 0;
+		leafCount = 0;
+	}
+
+	@Override
+	public int numberActors() {
+		return leafCount;
+	}
+
+	/**
+	 * 树的高度(只有一个叶子时为0)
+	 * 
+	 * @return
+	 */
+	public int getTreeHeight() {
+		return root == NULL_NODE ? 0 : heights[root];
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	private QueryContext obtainContext(int mask, String flag) {
+		QueryContext ctx = null;
+		synchronized (contextPool) {
+			if (contextPool.size > 0) {
+				ctx = contextPool.pop();
+			}
+		}
+		if (ctx == null) {
+			ctx = new QueryContext();
+		}
+		ctx.mask = mask;
+		ctx.flag = flag;
+		return ctx;
+	}
+
+	/**
+	 * 以字符串标记查询时逐个比较对象当前的标记(对象的类别位只在加入或移动时更新,setObjectFlag之后可能已经过期),
+	 * 也不为查询中出现的新标记分配类别位
+	 */
+	private QueryContext obtainContext(String flag) {
+		return obtainContext(CollisionFilter.ALL, flag);
+	}
+
+	private void freeContext(QueryContext ctx) {
+		ctx.reset();
+		synchronized (contextPool) {
+			contextPool.add(ctx);
+		}
+	}
+
+	private int query(QueryContext ctx, CollisionVisitor visitor) {
+		if (root == NULL_NODE) {
+			return 0;
+		}
+		final float[] minX = this.minX, minY = this.minY, maxX = this.maxX, maxY = this.maxY;
+		final int[] child1 = this.child1, child2 = this.child2, categories = this.categories;
+		final CollisionObject[] objects = this.objects;
+		final float left = ctx.queryX, top = ctx.queryY;
+		final float right = left + ctx.queryWidth, bottom = top + ctx.queryHeight;
+		final int mask = ctx.mask;
+		int[] stack = ctx.stack;
+		int size = 0;
+		int count = 0;
+		stack[size++] = root;
+		for (; size > 0;) {
+			int node = stack[--size];
+			if (right <= minX[node] || left >= maxX[node] || bottom <= minY[node] || top >= maxY[node]) {
+				continue;
+			}
+			int c1 = child1[node];
+			if (c1 == NULL_NODE) {
+				if ((categories[node] & mask) == 0) {
+					continue;
+				}
+				CollisionObject obj = objects[node];
+				if (ctx.accept(obj)) {
+					count++;
+					if (!visitor.visit(obj)) {
+						return count;
+					}
+				}
+				continue;
+			}
+			if (size + 2 > stack.length) {
+				stack = ctx.stack = copyOf(stack, stack.length * 2);
+			}
+			stack[size++] = c1;
+			stack[size++] = child2[node];
+		}
+		return count;
+	}
+
+	/**
+	 * 让整棵树与自身做一次同步下降遍历:节点与自身比较时拆成两个子节点各自比较再互相比较,两个不同节点的包围盒相交时
+	 * 拆开较大(或非叶子)的一方继续比较,直到两边都是叶子,所以每对相交的对象只会被检出一次,不需要逐个对象查询.
+	 */
+	@Override
+	public int forEachOverlappingPair(int mask, CollisionPairVisitor visitor) {
+		if (root == NULL_NODE) {
+			return 0;
+		}
+		final float[] minX = this.minX, minY = this.minY, maxX = this.maxX, maxY = this.maxY;
+		final int[] child1 = this.child1, child2 = this.child2, categories = this.categories;
+		final CollisionObject[] objects = this.objects;
+		QueryContext ctx = obtainContext(mask, null);
+		int[] stack = ctx.stack;
+		int size = 0;
+		int count = 0;
+		stack[size++] = root;
+		stack[size++] = root;
+		for (; size > 0;) {
+			int b = stack[--size];
+			int a = stack[--size];
+			if (size + 6 > stack.length) {
+				stack = ctx.stack = copyOf(stack, stack.length * 2);
+			}
+			if (a == b) {
+				int c1 = child1[a];
+				if (c1 != NULL_NODE) {
+					int c2 = child2[a];
+					stack[size++] = c1;
+					stack[size++] = c1;
+					stack[size++] = c2;
+					stack[size++] = c2;
+					stack[size++] = c1;
+					stack[size++] = c2;
+				}
+				continue;
+			}
+			if (maxX[a] <= minX[b] || minX[a] >= maxX[b] || maxY[a] <= minY[b] || minY[a] >= maxY[b]) {
+				continue;
+			}
+			boolean leafA = child1[a] == NULL_NODE;
+			boolean leafB = child1[b] == NULL_NODE;
+			if (leafA && leafB) {
+				if ((categories[a] & mask) == 0 || (categories[b] & mask) == 0) {
+					continue;
+				}
+				CollisionObject objA = objects[a];
+				CollisionObject objB = objects[b];
+				if (objA.intersects(objB)) {
+					count++;
+					if (!visitor.visit(objA, objB)) {
+						break;
+					}
+				}
+			} else if (leafB || (!leafA && perimeter(a) >= perimeter(b))) {
+				stack[size++] = child1[a];
+				stack[size++] = b;
+				stack[size++] = child2[a];
+				stack[size++] = b;
+			} else {
+				stack[size++] = a;
+				stack[size++] = child1[b];
+				stack[size++] = a;
+				stack[size++] = child2[b];
+			}
+		}
+		freeContext(ctx);
+		return count;
+	}
+
+	@Override
+	public CollisionFilter getFilter() {
+		return filter;
+	}
+
+	@Override
+	public int queryObjectsAt(float x, float y, int mask, TArray<CollisionObject> result) {
+		return queryObjectsAt(obtainContext(mask, null), x, y, result, null);
+	}
+
+	@Override
+	public int queryObjectsAt(float x, float y, int mask, CollisionVisitor visitor) {
+		return queryObjectsAt(obtainContext(mask, null), x, y, null, visitor);
+	}
+
+	private int queryObjectsAt(QueryContext ctx, float x, float y, TArray<CollisionObject> result,
+			CollisionVisitor visitor) {
+		ctx.point(x, y, this.cellSizeX, this.cellSizeY, this.offsetLocation);
+		int count = query(ctx, visitor == null ? ctx.collect(result) : visitor);
+		freeContext(ctx);
+		return count;
+	}
+
+	@Override
+	public int queryIntersecting(CollisionObject actor, int mask, TArray<CollisionObject> result) {
+		return queryIntersecting(obtainContext(mask, null), actor, result, null);
+	}
+
+	@Override
+	public int queryIntersecting(CollisionObject actor, int mask, CollisionVisitor visitor) {
+		return queryIntersecting(obtainContext(mask, null), actor, null, visitor);
+	}
+
+	private int queryIntersecting(QueryContext ctx, CollisionObject actor, TArray<CollisionObject> result,
+			CollisionVisitor visitor) {
+		ctx.intersecting(actor, actor.getBoundingRect(), this.itlayer, this.offsetLocation);
+		int count = query(ctx, visitor == null ? ctx.collect(result) : visitor);
+		freeContext(ctx);
+		return count;
+	}
+
+	@Override
+	public int queryInRange(float x, float y, float r, int mask, TArray<CollisionObject> result) {
+		return queryInRange(obtainContext(mask, null), x, y, r, result, null);
+	}
+
+	@Override
+	public int queryInRange(float x, float y, float r, int mask, CollisionVisitor visitor) {
+		return queryInRange(obtainContext(mask, null), x, y, r, null, visitor);
+	}
+
+	private int queryInRange(QueryContext ctx, float x, float y, float r, TArray<CollisionObject> result,
+			CollisionVisitor visitor) {
+		ctx.inRange(x, y, r, this.cellSizeX, this.cellSizeY, this.offsetLocation);
+		int count = query(ctx, visitor == null ? ctx.collect(result) : visitor);
+		freeContext(ctx);
+		return count;
+	}
+
+	@Override
+	public int queryNeighbours(CollisionObject actor, float distance, boolean diag, int mask,
+			TArray<CollisionObject> result) {
+		return queryNeighbours(obtainContext(mask, null), actor, distance, diag, result, null);
+	}
+
+	@Override
+	public int queryNeighbours(CollisionObject actor, float distance, boolean diag, int mask,
+			CollisionVisitor visitor) {
+		return queryNeighbours(obtainContext(mask, null), actor, distance, diag, null, visitor);
+	}
+
+	private int queryNeighbours(QueryContext ctx, CollisionObject actor, float distance, boolean diag,
+			TArray<CollisionObject> result, CollisionVisitor visitor) {
+		ctx.neighbours(actor, distance, diag, this.itlayer, this.cellSizeX, this.cellSizeY, this.offsetLocation);
+		int count = query(ctx, visitor == null ? ctx.collect(result) : visitor);
+		freeContext(ctx);
+		return count;
+	}
+
+	@Override
+	public TArray<CollisionObject> getObjectsAt(float x, float y, String flag) {
+		TArray<CollisionObject> result = new TArray<CollisionObject>();
+		queryObjectsAt(obtainContext(flag), x, y, result, null);
+		return result;
+	}
+
+	@Override
+	public TArray<CollisionObject> getIntersectingObjects(CollisionObject actor, String flag) {
+		TArray<CollisionObject> result = new TArray<CollisionObject>();
+		queryIntersecting(obtainContext(flag), actor, result, null);
+		return result;
+	}
+
+	@Override
+	public TArray<CollisionObject> getObjectsInRange(float x, float y, float r, String flag) {
+		TArray<CollisionObject> result = new TArray<CollisionObject>();
+		queryInRange(obtainContext(flag), x, y, r, result, null);
+		return result;
+	}
+
+	@Override
+	public TArray<CollisionObject> getNeighbours(CollisionObject actor, float distance, boolean diag, String flag) {
+		TArray<CollisionObject> result = new TArray<CollisionObject>();
+		queryNeighbours(obtainContext(flag), actor, distance, diag, result, null);
+		return result;
+	}
+
+	@Override
+	public TArray<CollisionObject> getObjects(String flag) {
+		TArray<CollisionObject> result = new TArray<CollisionObject>(leafCount);
+		final CollisionObject[] objects = this.objects;
+		for (int i = 0, cap = capacity; i < cap; i++) {
+			CollisionObject obj = objects[i];
+			if (obj != null && (flag == null || flag.equals(obj.getObjectFlag()))) {
+				result.add(obj);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public TArray<CollisionObject> getObjectsList() {
+		return getObjects((String) null);
+	}
+
+	@Override
+	public CollisionObject getOnlyObjectAt(CollisionObject actor, float x, float y, String flag) {
+		QueryContext ctx = obtainContext(flag);
+		ctx.point(x, y, this.cellSizeX, this.cellSizeY, this.offsetLocation);
+		ctx.inLayer = itlayer;
+		ctx.layer = actor.getLayer();
+		query(ctx, ctx.first(actor));
+		CollisionObject result = ctx.first.result;
+		freeContext(ctx);
+		return result;
+	}
+
+	@Override
+	public CollisionObject getOnlyIntersectingObject(CollisionObject actor, String flag) {
+		QueryContext ctx = obtainContext(flag);
+		ctx.intersecting(actor, actor.getBoundingRect(), this.itlayer, this.offsetLocation);
+		query(ctx, ctx.first(actor));
+		CollisionObject result = ctx.first.result;
+		freeContext(ctx);
+		return result;
+	}
+
+	@Override
+	public LIterator<CollisionObject> getActorsIterator() {
+		return new LeafIterator(this);
+	}
+
+	@Override
+	public TArray<CollisionObject> getActorsList() {
+		return getObjectsList();
+	}
+
+	@Override
+	public void setInTheLayer(boolean yes) {
+		this.itlayer = yes;
+	}
+
+	@Override
+	public boolean getInTheLayer() {
+		return itlayer;
+	}
+
+	@Override
+	public void setOffsetPos(float x, float y) {
+		offsetLocation.set(x, y);
+	}
+
+	@Override
+	public void setOffsetX(float x) {
+		offsetLocation.setX(x);
+	}
+
+	@Override
+	public void setOffsetY(float y) {
+		offsetLocation.setY(y);
+	}
+
+	@Override
+	public Vector2f getOffsetPos() {
+		return offsetLocation;
+	}
+
+	@Override
+	public void dispose() {
+		clear();
+		synchronized (contextPool) {
+			contextPool.clear();
+		}
+	}
+
+}
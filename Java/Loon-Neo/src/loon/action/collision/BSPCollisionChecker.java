@@ -30,8 +30,56 @@ import loon.utils.ObjectSet;
 import loon.utils.SortedList;
 import loon.utils.TArray;
 
+/**
+ * 基于BSP树的碰撞检查器.
+ *
+ * 增删改对象的操作互斥执行;各类查询不再占用全局锁,每次查询从对象池取出独立的遍历栈与去重集合,按CollisionFilter的类别位过滤对象,
+ * 结果写入调用者提供的TArray或逐个交给CollisionVisitor,所以多个查询可以同时进行(但查询不能与增删改同时进行).
+ */
 public class BSPCollisionChecker implements CollisionChecker {
 
+	private final static class QueryContext extends CollisionQueryContext {
+
+		BSPCollisionNode[] stack = new BSPCollisionNode[32];
+
+		@Override
+		void reset() {
+			super.reset();
+			for (int i = 0; i < stack.length && stack[i] != null; i++) {
+				stack[i] = null;
+			}
+		}
+
+	}
+
+	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
+	private final static class PairCollector implements CollisionVisitor {
+
+		final ObjectSet<CollisionObject> processed = new ObjectSet<CollisionObject>();
+
+		CollisionObject source;
+
+		CollisionPairVisitor target;
+
+		int count;
+
+		boolean stopped;
+
+		@Override
+		public boolean visit(CollisionObject obj) {
+			if (obj == source || processed.contains(obj)) {
+				return true;
+			}
+			count++;
+			if (!target.visit(source, obj)) {
+				stopped = true;
+				return false;
+			}
+			return true;
+		}
+
+	}
+
 	private final static int MAX_SIZE = 2048;
 
 	private final static BSPCollisionNode[] cache = new BSPCollisionNode[MAX_SIZE];
@@ -44,6 +92,8 @@ public class BSPCollisionChecker implements CollisionChecker {
 
 	private Vector2f offsetLocation = new Vector2f(0, 0);
 
+	private final Vector2f zeroOffset = new Vector2f(0, 0);
+
 	public final static CollisionNode getNodeForActor(CollisionObject obj) {
 		return (CollisionNode) obj.getCollisionData();
 	}
@@ -88,12 +138,8 @@ public class BSPCollisionChecker implements CollisionChecker {
 
 	private final CollisionBaseQuery actorQuery = new CollisionBaseQuery();
 
-	private final CollisionNeighbourQuery neighbourQuery = new CollisionNeighbourQuery();
-
 	private final CollisionPointQuery pointQuery = new CollisionPointQuery();
 
-	private final CollisionInRangeQuery inRangeQuery = new CollisionInRangeQuery();
-
 	private int cellSizeX, cellSizeY;
 
 	private BSPCollisionNode bspTree;
@@ -102,6 +148,14 @@ public class BSPCollisionChecker implements CollisionChecker {
 
 	private SortedList<BSPCollisionNode> cacheNodeStack = new SortedList<BSPCollisionNode>();
 
+	private final TArray<BSPCollisionNode> refreshStack = new TArray<BSPCollisionNode>();
+
+	private final TArray<QueryContext> contextPool = new TArray<QueryContext>();
+
+	private final CollisionFilter filter = new CollisionFilter();
+
+	private volatile boolean treeDirty;
+
 	@Override
 	public void initialize(int size) {
 		this.initialize(size, size);
@@ -138,6 +192,11 @@ public class BSPCollisionChecker implements CollisionChecker {
 
 	@Override
 	public synchronized void addObject(CollisionObject actor) {
+		addObject(actor, filter.getBits(actor.getObjectFlag()));
+	}
+
+	private void addObject(CollisionObject actor, int category) {
+		treeDirty = true;
 		RectBox bounds = this.getActorBounds(actor);
 		float by;
 		if (this.bspTree == null) {
@@ -154,7 +213,7 @@ public class BSPCollisionChecker implements CollisionChecker {
 			this.bspTree.getArea().copy(bounds);
 			this.bspTree.setSplitAxis(treeArea);
 			this.bspTree.setSplitPos(by);
-			this.bspTree.addActor(actor);
+			this.bspTree.addActor(actor, category);
 		} else {
 			int idx = 0;
 			RectBox treeArea1 = this.bspTree.getArea();
@@ -210,13 +269,13 @@ public class BSPCollisionChecker implements CollisionChecker {
 				idx++;
 			}
 
-			this.insertObject(actor, bounds, bounds, treeArea1, this.bspTree, result1, result2);
+			this.insertObject(actor, category, bounds, bounds, treeArea1, this.bspTree, result1, result2);
 		}
 
 	}
 
-	private void insertObject(CollisionObject actor, RectBox actorBounds, RectBox bounds, RectBox area,
-			BSPCollisionNode node, RectBox result1, RectBox result2) {
+	private void insertObject(CollisionObject actor, int category, RectBox actorBounds, RectBox bounds,
+			RectBox area, BSPCollisionNode node, RectBox result1, RectBox result2) {
 		if (!node.containsActor(actor)) {
 			if (!node.isEmpty() && (area.width > actorBounds.width || area.height > actorBounds.height)) {
 				RectBox leftArea = node.getLeftArea();
@@ -227,32 +286,33 @@ public class BSPCollisionChecker implements CollisionChecker {
 				if (leftIntersects != null) {
 					if (node.getLeft() == null) {
 						newRight = this.createNewNode(leftArea);
-						newRight.addActor(actor);
+						newRight.addActor(actor, category);
 						node.setChild(0, newRight);
 					} else {
-						this.insertObject(actor, actorBounds, leftIntersects, leftArea, node.getLeft(), result1,
-								result2);
+						this.insertObject(actor, category, actorBounds, leftIntersects, leftArea, node.getLeft(),
+								result1, result2);
 					}
 				}
 				if (rightIntersects != null) {
 					if (node.getRight() == null) {
 						newRight = this.createNewNode(rightArea);
-						newRight.addActor(actor);
+						newRight.addActor(actor, category);
 						node.setChild(1, newRight);
 					} else {
-						this.insertObject(actor, actorBounds, rightIntersects, rightArea, node.getRight(), result1,
-								result2);
+						this.insertObject(actor, category, actorBounds, rightIntersects, rightArea, node.getRight(),
+								result1, result2);
 					}
 				}
 
 			} else {
-				node.addActor(actor);
+				node.addActor(actor, category);
 			}
 		}
 	}
 
 	@Override
 	public synchronized void clear() {
+		treeDirty = true;
 		if (bspTree != null) {
 			bspTree.clear();
 		}
@@ -282,6 +342,7 @@ public class BSPCollisionChecker implements CollisionChecker {
 
 	@Override
 	public synchronized void removeObject(CollisionObject obj) {
+		treeDirty = true;
 		for (CollisionNode node = getNodeForActor(obj); node != null; node = getNodeForActor(obj)) {
 			BSPCollisionNode bspNode = node.getBSPNode();
 			node.remove();
@@ -341,9 +402,17 @@ public class BSPCollisionChecker implements CollisionChecker {
 		return null;
 	}
 
-	private void updateObject(CollisionObject obj) {
+	private synchronized void updateObject(CollisionObject obj) {
 		CollisionNode node = getNodeForActor(obj);
 		if (node != null) {
+			treeDirty = true;
+			// 对象的标记可能已经通过setObjectFlag修改,移动时重新读取类别位
+			final int category = filter.getBits(obj.getObjectFlag());
+			if (category != node.category) {
+				for (CollisionNode n = node; n != null; n = n.getNext()) {
+					n.category = category;
+				}
+			}
 			RectBox newBounds = this.getActorBounds(obj);
 			BSPCollisionNode bspNode;
 			if (!this.bspTree.getArea().contains(newBounds)) {
@@ -353,7 +422,7 @@ public class BSPCollisionChecker implements CollisionChecker {
 					this.checkRemoveNode(bspNode);
 					node = node.getNext();
 				}
-				this.addObject(obj);
+				this.addObject(obj, category);
 			} else {
 				RectBox bspArea;
 				RectBox result1 = new RectBox();
@@ -393,7 +462,7 @@ public class BSPCollisionChecker implements CollisionChecker {
 							node = node.getNext();
 						}
 
-						this.addObject(obj);
+						this.addObject(obj, category);
 						return;
 					}
 				} else {
@@ -401,7 +470,7 @@ public class BSPCollisionChecker implements CollisionChecker {
 				}
 
 				bspArea = bspNode.getArea();
-				this.insertObject(obj, newBounds, newBounds, bspArea, bspNode, result1, result2);
+				this.insertObject(obj, category, newBounds, newBounds, bspArea, bspNode, result1, result2);
 				for (node = getNodeForActor(obj); node != null; node = node.getNext()) {
 					if (!node.checkMark()) {
 						bspNode = node.getBSPNode();
@@ -424,57 +493,235 @@ public class BSPCollisionChecker implements CollisionChecker {
 		this.updateObject(obj);
 	}
 
-	private TArray<CollisionObject> getIntersectingObjects(float[] r, CollisionQuery query) {
-		synchronized (cacheSet) {
-			cacheSet.clear();
-			this.getIntersectingObjects(r, query, cacheSet, this.bspTree);
-			TArray<CollisionObject> l = new TArray<CollisionObject>(cacheSet.size());
-			for (LIterator<CollisionObject> it = cacheSet.iterator(); it.hasNext();) {
-				l.add(it.next());
+	/**
+	 * 同步所有节点等待中的区域变化,此后的只读查询不会再修改树结构
+	 */
+	private synchronized void refreshTree() {
+		if (!treeDirty) {
+			return;
+		}
+		if (this.bspTree != null) {
+			TArray<BSPCollisionNode> stack = refreshStack;
+			stack.clear();
+			stack.add(this.bspTree);
+			for (; stack.size > 0;) {
+				BSPCollisionNode node = stack.pop();
+				BSPCollisionNode left = node.getLeft();
+				BSPCollisionNode right = node.getRight();
+				if (left != null) {
+					stack.add(left);
+				}
+				if (right != null) {
+					stack.add(right);
+				}
 			}
-			return l;
+			stack.clear();
 		}
+		treeDirty = false;
 	}
 
-	private void intersectingObjects(float[] r, CollisionQuery query, ObjectSet<CollisionObject> set) {
-		this.getIntersectingObjects(r, query, set, this.bspTree);
+	private QueryContext obtainContext(int mask, String flag) {
+		QueryContext ctx = null;
+		synchronized (contextPool) {
+			if (contextPool.size > 0) {
+				ctx = contextPool.pop();
+			}
+		}
+		if (ctx == null) {
+			ctx = new QueryContext();
+		}
+		ctx.mask = mask;
+		ctx.flag = flag;
+		return ctx;
 	}
 
-	private void getIntersectingObjects(float[] r, CollisionQuery query, ObjectSet<CollisionObject> resultSet,
-			BSPCollisionNode startNode) {
-		synchronized (cacheNodeStack) {
-			cacheNodeStack.clear();
-			try {
-				if (startNode != null) {
-					cacheNodeStack.add(startNode);
+	private void freeContext(QueryContext ctx) {
+		ctx.reset();
+		synchronized (contextPool) {
+			contextPool.add(ctx);
+		}
+	}
+
+	/**
+	 * 以字符串标记查询时逐个比较对象当前的标记(对象的类别位只在加入或移动时更新,setObjectFlag之后可能已经过期),
+	 * 也不为查询中出现的新标记分配类别位
+	 */
+	private QueryContext obtainContext(String flag) {
+		return obtainContext(CollisionFilter.ALL, flag);
+	}
+
+	private int query(QueryContext ctx, CollisionVisitor visitor) {
+		if (treeDirty) {
+			refreshTree();
+		}
+		BSPCollisionNode root = this.bspTree;
+		if (root == null) {
+			return 0;
+		}
+		final int mask = ctx.mask;
+		final float x = ctx.queryX, y = ctx.queryY, w = ctx.queryWidth, h = ctx.queryHeight;
+		BSPCollisionNode[] stack = ctx.stack;
+		int top = 0;
+		int count = 0;
+		stack[top++] = root;
+		for (; top > 0;) {
+			BSPCollisionNode node = stack[--top];
+			if (!node.getArea().intersects(x, y, w, h)) {
+				continue;
+			}
+			CollisionNode[] nodes = node.getNodes();
+			for (int i = 0, size = node.getNodeCount(); i < size; i++) {
+				CollisionNode item = nodes[i];
+				if ((item.category & mask) == 0) {
+					continue;
 				}
-				int idx = 0;
-				for (; cacheNodeStack.size() != 0 && idx < MAX_SIZE;) {
-					BSPCollisionNode node = (BSPCollisionNode) cacheNodeStack.removeLast();
-					synchronized (node) {
-						if (node.getArea().intersects(r[0], r[1], r[2], r[3])) {
-							LIterator<CollisionObject> i = node.getActorsIterator();
-							for (; i.hasNext();) {
-								CollisionObject left = i.next();
-								if (query.checkCollision(left) && !resultSet.contains(left)) {
-									resultSet.add(left);
-								}
-							}
-							BSPCollisionNode left1 = node.getLeft();
-							BSPCollisionNode right = node.getRight();
-							if (left1 != null) {
-								cacheNodeStack.add(left1);
-							}
-							if (right != null) {
-								cacheNodeStack.add(right);
-							}
-						}
-					}
-					idx++;
+				CollisionObject obj = item.getActor();
+				if (!ctx.accept(obj)) {
+					continue;
+				}
+				if (item.isShared() && !ctx.mark(obj)) {
+					continue;
+				}
+				count++;
+				if (!visitor.visit(obj)) {
+					return count;
 				}
-			} catch (Throwable e) {
+			}
+			if (top + 2 > stack.length) {
+				BSPCollisionNode[] tmp = new BSPCollisionNode[stack.length * 2];
+				System.arraycopy(stack, 0, tmp, 0, top);
+				stack = ctx.stack = tmp;
+			}
+			BSPCollisionNode left = node.leftChild();
+			BSPCollisionNode right = node.rightChild();
+			if (left != null) {
+				stack[top++] = left;
+			}
+			if (right != null) {
+				stack[top++] = right;
 			}
 		}
+		return count;
+	}
+
+	private int objectsAt(QueryContext ctx, float x, float y, CollisionVisitor visitor) {
+		ctx.point(x, y, this.cellSizeX, this.cellSizeY, this.offsetLocation);
+		return query(ctx, visitor);
+	}
+
+	private int intersecting(QueryContext ctx, CollisionObject actor, CollisionVisitor visitor) {
+		ctx.intersecting(actor, this.getActorBounds(actor), this.itlayer, this.offsetLocation);
+		return query(ctx, visitor);
+	}
+
+	private int inRange(QueryContext ctx, float x, float y, float r, CollisionVisitor visitor) {
+		ctx.inRange(x, y, r, this.cellSizeX, this.cellSizeY, this.offsetLocation);
+		return query(ctx, visitor);
+	}
+
+	private int neighbours(QueryContext ctx, CollisionObject actor, float distance, boolean diag,
+			CollisionVisitor visitor) {
+		ctx.neighbours(actor, distance, diag, this.itlayer, this.cellSizeX, this.cellSizeY, this.offsetLocation);
+		return query(ctx, visitor);
+	}
+
+	/**
+	 * 逐个对象查询相交对象来得到所有相交的对象对,每对只回调一次(BSP树没有整树检索的捷径,大量对象时应使用AABBTreeCollisionChecker)
+	 */
+	@Override
+	public int forEachOverlappingPair(int mask, CollisionPairVisitor visitor) {
+		TArray<CollisionObject> list = getObjects((String) null);
+		PairCollector pairs = new PairCollector();
+		pairs.target = visitor;
+		QueryContext ctx = obtainContext(mask, null);
+		for (int i = 0; i < list.size && !pairs.stopped; i++) {
+			CollisionObject obj = list.get(i);
+			CollisionNode node = getNodeForActor(obj);
+			if (node == null || (node.category & mask) == 0) {
+				continue;
+			}
+			pairs.source = obj;
+			ctx.intersecting(obj, this.getActorBounds(obj), false, zeroOffset);
+			query(ctx, pairs);
+			pairs.processed.add(obj);
+			if (ctx.visitedUsed) {
+				ctx.visited.clear();
+				ctx.visitedUsed = false;
+			}
+		}
+		freeContext(ctx);
+		return pairs.count;
+	}
+
+	@Override
+	public CollisionFilter getFilter() {
+		return filter;
+	}
+
+	@Override
+	public int queryObjectsAt(float x, float y, int mask, TArray<CollisionObject> result) {
+		QueryContext ctx = obtainContext(mask, null);
+		int count = objectsAt(ctx, x, y, ctx.collect(result));
+		freeContext(ctx);
+		return count;
+	}
+
+	@Override
+	public int queryObjectsAt(float x, float y, int mask, CollisionVisitor visitor) {
+		QueryContext ctx = obtainContext(mask, null);
+		int count = objectsAt(ctx, x, y, visitor);
+		freeContext(ctx);
+		return count;
+	}
+
+	@Override
+	public int queryIntersecting(CollisionObject actor, int mask, TArray<CollisionObject> result) {
+		QueryContext ctx = obtainContext(mask, null);
+		int count = intersecting(ctx, actor, ctx.collect(result));
+		freeContext(ctx);
+		return count;
+	}
+
+	@Override
+	public int queryIntersecting(CollisionObject actor, int mask, CollisionVisitor visitor) {
+		QueryContext ctx = obtainContext(mask, null);
+		int count = intersecting(ctx, actor, visitor);
+		freeContext(ctx);
+		return count;
+	}
+
+	@Override
+	public int queryInRange(float x, float y, float r, int mask, TArray<CollisionObject> result) {
+		QueryContext ctx = obtainContext(mask, null);
+		int count = inRange(ctx, x, y, r, ctx.collect(result));
+		freeContext(ctx);
+		return count;
+	}
+
+	@Override
+	public int queryInRange(float x, float y, float r, int mask, CollisionVisitor visitor) {
+		QueryContext ctx = obtainContext(mask, null);
+		int count = inRange(ctx, x, y, r, visitor);
+		freeContext(ctx);
+		return count;
+	}
+
+	@Override
+	public int queryNeighbours(CollisionObject actor, float distance, boolean diag, int mask,
+			TArray<CollisionObject> result) {
+		QueryContext ctx = obtainContext(mask, null);
+		int count = neighbours(ctx, actor, distance, diag, ctx.collect(result));
+		freeContext(ctx);
+		return count;
+	}
+
+	@Override
+	public int queryNeighbours(CollisionObject actor, float distance, boolean diag, int mask,
+			CollisionVisitor visitor) {
+		QueryContext ctx = obtainContext(mask, null);
+		int count = neighbours(ctx, actor, distance, diag, visitor);
+		freeContext(ctx);
+		return count;
 	}
 
 	private CollisionObject checkForOnlyCollision(CollisionObject ignore, BSPCollisionNode node, CollisionQuery query) {
@@ -568,70 +815,39 @@ public class BSPCollisionChecker implements CollisionChecker {
 	}
 
 	@Override
-	public synchronized TArray<CollisionObject> getObjectsAt(float x, float y, String flag) {
-		synchronized (this.pointQuery) {
-			float px = x * this.cellSizeX + this.cellSizeX / 2f;
-			float py = y * this.cellSizeY + this.cellSizeY / 2f;
-			this.pointQuery.init(px, py, flag, this.offsetLocation);
-			float[] r = { px, py, 1, 1 };
-			return this.getIntersectingObjects(r, this.pointQuery);
-		}
+	public TArray<CollisionObject> getObjectsAt(float x, float y, String flag) {
+		TArray<CollisionObject> result = new TArray<CollisionObject>();
+		QueryContext ctx = obtainContext(flag);
+		objectsAt(ctx, x, y, ctx.collect(result));
+		freeContext(ctx);
+		return result;
 	}
 
 	@Override
-	public synchronized TArray<CollisionObject> getIntersectingObjects(CollisionObject actor, String flag) {
-		RectBox r = this.getActorBounds(actor);
-		synchronized (this.actorQuery) {
-			this.actorQuery.init(flag, actor, offsetLocation);
-			return getInTheLayerObjects(actor.getLayer(), this.getIntersectingObjects(r.toFloat(), this.actorQuery));
-		}
-	}
-
-	private final static float getRadius(float r1, float r2) {
-		return MathUtils.max(r1, r2);
+	public TArray<CollisionObject> getIntersectingObjects(CollisionObject actor, String flag) {
+		TArray<CollisionObject> result = new TArray<CollisionObject>();
+		QueryContext ctx = obtainContext(flag);
+		intersecting(ctx, actor, ctx.collect(result));
+		freeContext(ctx);
+		return result;
 	}
 
 	@Override
-	public synchronized TArray<CollisionObject> getObjectsInRange(float x, float y, float r, String flag) {
-		float halfCellX = this.cellSizeX / 2;
-		float halfCellY = this.cellSizeY / 2;
-		float sizeRX = 2 * r * this.cellSizeX;
-		float sizeRY = 2 * r * this.cellSizeY;
-		float[] rect = { (x - r) * this.cellSizeX + halfCellX, (y - r) * this.cellSizeY + halfCellY, sizeRX, sizeRY };
-		cacheSet.clear();
-		synchronized (this.actorQuery) {
-			this.actorQuery.init(flag, null, this.offsetLocation);
-			intersectingObjects(rect, this.actorQuery, cacheSet);
-		}
-		synchronized (this.inRangeQuery) {
-			this.inRangeQuery.init(x * this.cellSizeX + halfCellX, y * this.cellSizeY + halfCellY,
-					r * getRadius(this.cellSizeX, this.cellSizeY), this.offsetLocation);
-			TArray<CollisionObject> rangeResult = new TArray<CollisionObject>();
-			LIterator<CollisionObject> it = cacheSet.iterator();
-			for (; it.hasNext();) {
-				CollisionObject a = it.next();
-				if (a != null && this.inRangeQuery.checkCollision(a)) {
-					rangeResult.add(a);
-				}
-			}
-			return rangeResult;
-		}
+	public TArray<CollisionObject> getObjectsInRange(float x, float y, float r, String flag) {
+		TArray<CollisionObject> result = new TArray<CollisionObject>();
+		QueryContext ctx = obtainContext(flag);
+		inRange(ctx, x, y, r, ctx.collect(result));
+		freeContext(ctx);
+		return result;
 	}
 
 	@Override
-	public synchronized TArray<CollisionObject> getNeighbours(CollisionObject actor, float distance, boolean diag,
-			String flag) {
-		float x = actor.getX();
-		float y = actor.getY();
-		float xPixel = x * this.cellSizeX;
-		float yPixel = y * this.cellSizeY;
-		float dxPixel = distance * this.cellSizeX;
-		float dyPixel = distance * this.cellSizeY;
-		float[] r = { xPixel - dxPixel, yPixel - dyPixel, dxPixel * 2 + 1, dyPixel * 2 + 1 };
-		synchronized (this.neighbourQuery) {
-			this.neighbourQuery.init(x, y, distance, diag, flag, this.offsetLocation);
-			return getInTheLayerObjects(actor.getLayer(), this.getIntersectingObjects(r, this.neighbourQuery));
-		}
+	public TArray<CollisionObject> getNeighbours(CollisionObject actor, float distance, boolean diag, String flag) {
+		TArray<CollisionObject> result = new TArray<CollisionObject>();
+		QueryContext ctx = obtainContext(flag);
+		neighbours(ctx, actor, distance, diag, ctx.collect(result));
+		freeContext(ctx);
+		return result;
 	}
 
 	@Override
@@ -690,20 +906,6 @@ public class BSPCollisionChecker implements CollisionChecker {
 		return null;
 	}
 
-	private TArray<CollisionObject> getInTheLayerObjects(int layer, TArray<CollisionObject> lists) {
-		if (!itlayer) {
-			return lists;
-		}
-		TArray<CollisionObject> tmp = new TArray<CollisionObject>(lists.size);
-		for (int i = 0; i < lists.size; i++) {
-			CollisionObject obj = lists.get(i);
-			if (obj != null && obj.getLayer() == layer) {
-				tmp.add(obj);
-			}
-		}
-		return tmp;
-	}
-
 	@Override
 	public synchronized TArray<CollisionObject> getObjects(String flag) {
 		synchronized (cacheSet) {
@@ -45,6 +45,10 @@ public final class BSPCollisionNode {
 
 	private boolean areaRipple;
 
+	private CollisionNode[] nodes = new CollisionNode[4];
+
+	private int nodeCount;
+
 	public BSPCollisionNode(RectBox area, int splitAxis, int splitPos) {
 		this.area = area;
 		this.splitAxis = splitAxis;
@@ -74,6 +78,10 @@ public final class BSPCollisionNode {
 			}
 		}
 		actors.clear();
+		for (int i = 0; i < nodeCount; i++) {
+			nodes[i] = null;
+		}
+		nodeCount = 0;
 	}
 
 	public void setArea(RectBox area) {
@@ -151,6 +159,28 @@ public final class BSPCollisionNode {
 		return this.right;
 	}
 
+	/**
+	 * 是否还有等待同步到子节点的区域变化
+	 * 
+	 * @return
+	 */
+	public boolean isAreaRipple() {
+		return this.areaRipple && (this.left != null || this.right != null);
+	}
+
+	/**
+	 * 不同步区域直接返回左子节点,只读查询在区域已同步后使用,避免并发修改节点
+	 * 
+	 * @return
+	 */
+	final BSPCollisionNode leftChild() {
+		return this.left;
+	}
+
+	final BSPCollisionNode rightChild() {
+		return this.right;
+	}
+
 	public BSPCollisionNode getParent() {
 		return this.parent;
 	}
@@ -164,7 +194,24 @@ public final class BSPCollisionNode {
 	}
 
 	public void addActor(CollisionObject actor) {
-		this.actors.put(actor, new CollisionNode(actor, this));
+		addActor(actor, CollisionFilter.DEFAULT);
+	}
+
+	public void addActor(CollisionObject actor, int category) {
+		CollisionNode node = new CollisionNode(actor, this, category);
+		CollisionNode old = this.actors.put(actor, node);
+		if (old != null) {
+			node.index = old.index;
+			nodes[node.index] = node;
+			return;
+		}
+		if (nodeCount == nodes.length) {
+			CollisionNode[] tmp = new CollisionNode[nodeCount * 2];
+			System.arraycopy(nodes, 0, tmp, 0, nodeCount);
+			nodes = tmp;
+		}
+		node.index = nodeCount;
+		nodes[nodeCount++] = node;
 	}
 
 	public boolean containsActor(CollisionObject actor) {
@@ -178,7 +225,16 @@ public final class BSPCollisionNode {
 	}
 
 	public void actorRemoved(CollisionObject actor) {
-		this.actors.remove(actor);
+		CollisionNode node = this.actors.remove(actor);
+		if (node != null && node.index < nodeCount && nodes[node.index] == node) {
+			int last = --nodeCount;
+			if (node.index != last) {
+				CollisionNode tail = nodes[last];
+				tail.index = node.index;
+				nodes[node.index] = tail;
+			}
+			nodes[last] = null;
+		}
 	}
 
 	public int numberActors() {
@@ -189,6 +245,19 @@ public final class BSPCollisionNode {
 		return this.actors.size == 0;
 	}
 
+	/**
+	 * 节点中的对象数组,只读,有效长度为getNodeCount()
+	 * 
+	 * @return
+	 */
+	final CollisionNode[] getNodes() {
+		return this.nodes;
+	}
+
+	final int getNodeCount() {
+		return this.nodeCount;
+	}
+
 	public Entries<CollisionObject, CollisionNode> getEntriesIterator() {
 		return this.actors.entries();
 	}
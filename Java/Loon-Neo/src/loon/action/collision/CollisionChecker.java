@@ -65,6 +65,26 @@ public interface CollisionChecker {
 
 	TArray<CollisionObject> getObjects(String actor);
 
+	CollisionFilter getFilter();
+
+	int queryObjectsAt(float x, float y, int mask, TArray<CollisionObject> result);
+
+	int queryObjectsAt(float x, float y, int mask, CollisionVisitor visitor);
+
+	int queryIntersecting(CollisionObject actor, int mask, TArray<CollisionObject> result);
+
+	int queryIntersecting(CollisionObject actor, int mask, CollisionVisitor visitor);
+
+	int queryInRange(float x, float y, float r, int mask, TArray<CollisionObject> result);
+
+	int queryInRange(float x, float y, float r, int mask, CollisionVisitor visitor);
+
+	int queryNeighbours(CollisionObject actor, float distance, boolean d, int mask, TArray<CollisionObject> result);
+
+	int queryNeighbours(CollisionObject actor, float distance, boolean d, int mask, CollisionVisitor visitor);
+
+	int forEachOverlappingPair(int mask, CollisionPairVisitor visitor);
+
 	TArray<CollisionObject> getObjectsList();
 
 	CollisionObject getOnlyObjectAt(CollisionObject actor, float x, float y, String flag);
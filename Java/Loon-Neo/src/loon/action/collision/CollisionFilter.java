@@ -0,0 +1,142 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.collision;
+
+import loon.utils.ObjectMap;
+import loon.utils.ObjectMap.Entries;
+import loon.utils.ObjectMap.Entry;
+
+/**
+ * 碰撞对象的类别注册表,把字符串标记(CollisionObject.getObjectFlag)映射为int位掩码,
+ * 查询时只需按位与比较,不再逐个比较字符串.
+ *
+ * 位0固定给没有标记的对象,其余标记按首次出现的顺序依次分配位1到位31,超出31个标记后从位1开始循环共用.
+ */
+public class CollisionFilter {
+
+	public final static int ALL = -1;
+
+	public final static int NONE = 0;
+
+	public final static int DEFAULT = 1;
+
+	private final static int MAX_BITS = 31;
+
+	private final ObjectMap<String, Integer> categories = new ObjectMap<String, Integer>();
+
+	private final ObjectMap<String, Boolean> shared = new ObjectMap<String, Boolean>();
+
+	private int nextBit;
+
+	private boolean overflow;
+
+	/**
+	 * 获得指定标记的类别位,标记尚未注册时自动分配
+	 * 
+	 * @param flag
+	 * @return
+	 */
+	public synchronized int getBits(String flag) {
+		if (flag == null) {
+			return DEFAULT;
+		}
+		Integer bits = categories.get(flag);
+		if (bits == null) {
+			if (nextBit >= MAX_BITS) {
+				nextBit = 0;
+				overflow = true;
+			}
+			int value = 1 << (++nextBit);
+			categories.put(flag, value);
+			if (overflow) {
+				updateShared();
+			}
+			return value;
+		}
+		return bits.intValue();
+	}
+
+	/**
+	 * 手动指定标记的类别位(可以同时占用多位),对象的类别位在加入检查器或移动时读取,所以应在添加对象之前设置
+	 * 
+	 * @param flag
+	 * @param bits
+	 */
+	public synchronized void setBits(String flag, int bits) {
+		if (flag == null) {
+			return;
+		}
+		categories.put(flag, bits);
+		updateShared();
+	}
+
+	/**
+	 * 把一组标记合并为查询用的掩码,传入null时返回ALL
+	 * 
+	 * @param flags
+	 * @return
+	 */
+	public int getMask(String... flags) {
+		if (flags == null) {
+			return ALL;
+		}
+		int mask = NONE;
+		for (int i = 0; i < flags.length; i++) {
+			if (flags[i] == null) {
+				return ALL;
+			}
+			mask |= getBits(flags[i]);
+		}
+		return mask;
+	}
+
+	/**
+	 * 标记的类别位是否与其它标记共用,共用时只靠掩码无法区分它们
+	 * 
+	 * @param flag
+	 * @return
+	 */
+	public synchronized boolean isShared(String flag) {
+		return flag != null && shared.containsKey(flag);
+	}
+
+	private void updateShared() {
+		shared.clear();
+		for (Entries<String, Integer> it = new Entries<String, Integer>(categories); it.hasNext();) {
+			Entry<String, Integer> e = it.next();
+			for (Entries<String, Integer> other = new Entries<String, Integer>(categories); other.hasNext();) {
+				Entry<String, Integer> o = other.next();
+				if (!o.key.equals(e.key) && (o.value.intValue() & e.value.intValue()) != 0) {
+					shared.put(e.key, Boolean.TRUE);
+					break;
+				}
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		categories.clear();
+		shared.clear();
+		nextBit = 0;
+		overflow = false;
+	}
+
+}
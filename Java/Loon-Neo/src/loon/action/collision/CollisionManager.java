@@ -35,9 +35,19 @@ public class CollisionManager implements CollisionChecker {
 
 	private ObjectSet<String> collisionClasses = new ObjectSet<String>();
 
-	private CollisionChecker collisionChecker = new BSPCollisionChecker();
+	private CollisionChecker collisionChecker;
 
 	public CollisionManager() {
+		this(new BSPCollisionChecker());
+	}
+
+	/**
+	 * 使用指定的碰撞检查器(比如大量移动对象时使用AABBTreeCollisionChecker)
+	 * 
+	 * @param checker
+	 */
+	public CollisionManager(CollisionChecker checker) {
+		this.collisionChecker = checker;
 		initialize(32);
 	}
 
@@ -102,6 +112,35 @@ public class CollisionManager implements CollisionChecker {
 		}
 	}
 
+	private void makeCollisionObjects(int mask) {
+		if (this.freeObjects.size == 0) {
+			return;
+		}
+		synchronized (CollisionManager.class) {
+			if (mask == CollisionFilter.ALL) {
+				this.makeCollisionObjects((String) null, false);
+				return;
+			}
+			CollisionFilter filter = this.collisionChecker.getFilter();
+			TArray<String> flags = null;
+			for (Entries<String, SortedList<CollisionObject>> entries = new Entries<String, SortedList<CollisionObject>>(
+					this.freeObjects); entries.hasNext();) {
+				String flag = entries.next().key;
+				if ((filter.getBits(flag) & mask) != 0) {
+					if (flags == null) {
+						flags = new TArray<String>();
+					}
+					flags.add(flag);
+				}
+			}
+			if (flags != null) {
+				for (int i = 0; i < flags.size; i++) {
+					this.makeCollisionObjects(flags.get(i), false);
+				}
+			}
+		}
+	}
+
 	private void prepareForCollision(CollisionObject actor, String flag) {
 		this.makeCollisionObjects(actor.getObjectFlag(), false);
 		this.makeCollisionObjects(flag, true);
@@ -167,6 +206,67 @@ public class CollisionManager implements CollisionChecker {
 
 	}
 
+	@Override
+	public CollisionFilter getFilter() {
+		return this.collisionChecker.getFilter();
+	}
+
+	@Override
+	public int queryObjectsAt(float x, float y, int mask, TArray<CollisionObject> result) {
+		this.makeCollisionObjects(mask);
+		return this.collisionChecker.queryObjectsAt(x, y, mask, result);
+	}
+
+	@Override
+	public int queryObjectsAt(float x, float y, int mask, CollisionVisitor visitor) {
+		this.makeCollisionObjects(mask);
+		return this.collisionChecker.queryObjectsAt(x, y, mask, visitor);
+	}
+
+	@Override
+	public int queryIntersecting(CollisionObject actor, int mask, TArray<CollisionObject> result) {
+		this.makeCollisionObjects(mask);
+		return this.collisionChecker.queryIntersecting(actor, mask, result);
+	}
+
+	@Override
+	public int queryIntersecting(CollisionObject actor, int mask, CollisionVisitor visitor) {
+		this.makeCollisionObjects(mask);
+		return this.collisionChecker.queryIntersecting(actor, mask, visitor);
+	}
+
+	@Override
+	public int queryInRange(float x, float y, float r, int mask, TArray<CollisionObject> result) {
+		this.makeCollisionObjects(mask);
+		return this.collisionChecker.queryInRange(x, y, r, mask, result);
+	}
+
+	@Override
+	public int queryInRange(float x, float y, float r, int mask, CollisionVisitor visitor) {
+		this.makeCollisionObjects(mask);
+		return this.collisionChecker.queryInRange(x, y, r, mask, visitor);
+	}
+
+	@Override
+	public int queryNeighbours(CollisionObject actor, float distance, boolean diag, int mask,
+			TArray<CollisionObject> result) {
+		this.makeCollisionObjects(mask);
+		return this.collisionChecker.queryNeighbours(actor, distance, diag, mask, result);
+	}
+
+	@Override
+	public int queryNeighbours(CollisionObject actor, float distance, boolean diag, int mask,
+			CollisionVisitor visitor) {
+		this.makeCollisionObjects(mask);
+		return this.collisionChecker.queryNeighbours(actor, distance, diag, mask, visitor);
+	}
+
+	@Override
+	public int forEachOverlappingPair(int mask, CollisionPairVisitor visitor) {
+		this.makeCollisionObjects(mask);
+		return this.collisionChecker.forEachOverlappingPair(mask, visitor);
+	}
+
 	@Override
 	public TArray<CollisionObject> getObjectsList() {
 		return this.getObjects((String) null);
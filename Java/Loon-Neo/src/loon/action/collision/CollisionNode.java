@@ -32,8 +32,17 @@ public class CollisionNode {
 
 	private boolean mark;
 
+	int category;
+
+	int index;
+
 	public CollisionNode(CollisionObject actor, BSPCollisionNode node) {
+		this(actor, node, CollisionFilter.DEFAULT);
+	}
+
+	public CollisionNode(CollisionObject actor, BSPCollisionNode node, int category) {
 		this.actor = actor;
+		this.category = category;
 		this.node = node;
 		CollisionNode first = BSPCollisionChecker.getNodeForActor(actor);
 		this.next = first;
@@ -63,6 +72,19 @@ public class CollisionNode {
 		return this.actor;
 	}
 
+	public int getCategory() {
+		return this.category;
+	}
+
+	/**
+	 * 对象是否同时存放在多个节点中(查询时只有这类对象需要去重)
+	 * 
+	 * @return
+	 */
+	public boolean isShared() {
+		return this.next != null || this.prev != null;
+	}
+
 	public BSPCollisionNode getBSPNode() {
 		return this.node;
 	}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.collision;
+
+import loon.geom.RectBox;
+import loon.geom.Vector2f;
+import loon.utils.MathUtils;
+import loon.utils.ObjectSet;
+import loon.utils.TArray;
+
+/**
+ * 碰撞查询的单次上下文,保存查询参数,候选矩形与去重集合,由各个CollisionChecker池化复用,使并发的查询互不干扰
+ */
+class CollisionQueryContext {
+
+	final static int QUERY_POINT = 0;
+
+	final static int QUERY_INTERSECT = 1;
+
+	final static int QUERY_RANGE = 2;
+
+	final static int QUERY_NEIGHBOUR = 3;
+
+	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
+	final static class ArrayCollector implements CollisionVisitor {
+
+		TArray<CollisionObject> result;
+
+		@Override
+		public boolean visit(CollisionObject obj) {
+			result.add(obj);
+			return true;
+		}
+
+	}
+
+	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
+	final static class FirstCollector implements CollisionVisitor {
+
+		CollisionObject ignore;
+
+		CollisionObject result;
+
+		@Override
+		public boolean visit(CollisionObject obj) {
+			if (obj == ignore) {
+				return true;
+			}
+			result = obj;
+			return false;
+		}
+
+	}
+
+	final ObjectSet<CollisionObject> visited = new ObjectSet<CollisionObject>();
+
+	final RectBox rect = new RectBox();
+
+	final ArrayCollector collector = new ArrayCollector();
+
+	final FirstCollector first = new FirstCollector();
+
+	boolean visitedUsed;
+
+	int mode, mask, layer;
+
+	boolean inLayer, offset, diag;
+
+	float x, y, r;
+
+	float queryX, queryY, queryWidth, queryHeight;
+
+	String flag;
+
+	CollisionObject actor;
+
+	CollisionVisitor collect(TArray<CollisionObject> result) {
+		collector.result = result;
+		return collector;
+	}
+
+	CollisionVisitor first(CollisionObject ignore) {
+		first.ignore = ignore;
+		first.result = null;
+		return first;
+	}
+
+	/**
+	 * 对象第一次出现时返回true(只有同时存放于多个位置的对象才需要调用)
+	 * 
+	 * @param obj
+	 * @return
+	 */
+	boolean mark(CollisionObject obj) {
+		visitedUsed = true;
+		return visited.add(obj);
+	}
+
+	void setQuery(float x, float y, float w, float h) {
+		this.queryX = x;
+		this.queryY = y;
+		this.queryWidth = w;
+		this.queryHeight = h;
+	}
+
+	void point(float x, float y, int cellSizeX, int cellSizeY, Vector2f offsetLocation) {
+		float px = x * cellSizeX + cellSizeX / 2f;
+		float py = y * cellSizeY + cellSizeY / 2f;
+		this.mode = QUERY_POINT;
+		this.x = px + offsetLocation.x;
+		this.y = py + offsetLocation.y;
+		setQuery(px, py, 1, 1);
+	}
+
+	void intersecting(CollisionObject actor, RectBox bounds, boolean itlayer, Vector2f offsetLocation) {
+		this.mode = QUERY_INTERSECT;
+		this.actor = actor;
+		this.offset = !offsetLocation.isZero();
+		if (offset) {
+			rect.setBounds(actor.getX() + offsetLocation.x, actor.getY() + offsetLocation.y, actor.getWidth(),
+					actor.getHeight());
+		}
+		this.inLayer = itlayer;
+		this.layer = actor.getLayer();
+		setQuery(bounds.x, bounds.y, bounds.width, bounds.height);
+	}
+
+	void inRange(float x, float y, float r, int cellSizeX, int cellSizeY, Vector2f offsetLocation) {
+		float halfCellX = cellSizeX / 2;
+		float halfCellY = cellSizeY / 2;
+		this.mode = QUERY_RANGE;
+		this.x = x * cellSizeX + halfCellX + offsetLocation.x;
+		this.y = y * cellSizeY + halfCellY + offsetLocation.y;
+		this.r = r * MathUtils.max(cellSizeX, cellSizeY);
+		setQuery((x - r) * cellSizeX + halfCellX, (y - r) * cellSizeY + halfCellY, 2 * r * cellSizeX,
+				2 * r * cellSizeY);
+	}
+
+	void neighbours(CollisionObject actor, float distance, boolean diag, boolean itlayer, int cellSizeX,
+			int cellSizeY, Vector2f offsetLocation) {
+		float x = actor.getX();
+		float y = actor.getY();
+		float xPixel = x * cellSizeX;
+		float yPixel = y * cellSizeY;
+		float dxPixel = distance * cellSizeX;
+		float dyPixel = distance * cellSizeY;
+		this.mode = QUERY_NEIGHBOUR;
+		this.x = x + offsetLocation.x;
+		this.y = y + offsetLocation.y;
+		this.r = distance;
+		this.diag = diag;
+		this.inLayer = itlayer;
+		this.layer = actor.getLayer();
+		setQuery(xPixel - dxPixel, yPixel - dyPixel, dxPixel * 2 + 1, dyPixel * 2 + 1);
+	}
+
+	boolean accept(CollisionObject obj) {
+		if (flag != null && !flag.equals(obj.getObjectFlag())) {
+			return false;
+		}
+		if (inLayer && obj.getLayer() != layer) {
+			return false;
+		}
+		switch (mode) {
+		case QUERY_POINT:
+			return obj.containsPoint(x, y);
+		case QUERY_INTERSECT:
+			return offset ? obj.intersects(rect) : obj.intersects(actor);
+		case QUERY_RANGE:
+			RectBox box = obj.getRectBox();
+			float dx = MathUtils.abs(box.getCenterX() - x);
+			float dy = MathUtils.abs(box.getCenterY() - y);
+			return MathUtils.sqrt(dx * dx + dy * dy) <= r;
+		case QUERY_NEIGHBOUR:
+			float ax = obj.getX();
+			float ay = obj.getY();
+			if (ax == x && ay == y) {
+				return false;
+			}
+			if (!diag) {
+				return MathUtils.abs(ax - x) + MathUtils.abs(ay - y) <= r;
+			}
+			return ax >= x - r && ay >= y - r && ax <= x + r && ay <= y + r;
+		default:
+			return false;
+		}
+	}
+
+	void reset() {
+		if (visitedUsed) {
+			visited.clear();
+			visitedUsed = false;
+		}
+		collector.result = null;
+		first.ignore = null;
+		first.result = null;
+		actor = null;
+		flag = null;
+		inLayer = offset = diag = false;
+	}
+
+}
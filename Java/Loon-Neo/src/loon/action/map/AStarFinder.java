@@ -33,7 +33,6 @@ import loon.action.map.heuristics.Manhattan;
 import loon.action.map.heuristics.Mixing;
 import loon.event.Updateable;
 import loon.geom.Vector2f;
-import loon.utils.IntMap;
 import loon.utils.ObjectSet;
 import loon.utils.TArray;
 
@@ -55,10 +54,25 @@ public class AStarFinder extends TileImplPathFind implements Updateable, LReleas
 
 	public final static AStarFindHeuristic ASTAR_DIAGONAL_SHORT = new DiagonalShort();
 
-	private final static IntMap<TArray<Vector2f>> FINDER_LAZY = new IntMap<TArray<Vector2f>>(100);
+	private final static AStarFinderCache FINDER_LAZY = new AStarFinderCache();
 
-	private final static int makeLazyKey(AStarFindHeuristic heuristic, int[][] map, int[] limits, int sx, int sy,
-			int ex, int ey, boolean flag) {
+	/**
+	 * 获得静态find函数使用的路径缓存(可查看命中,未命中及淘汰次数)
+	 * 
+	 * @return
+	 */
+	public final static AStarFinderCache getFinderCache() {
+		return FINDER_LAZY;
+	}
+
+	public final static void clearFinderCache() {
+		FINDER_LAZY.clear();
+	}
+
+	/**
+	 * 原始数组没有版本信息,只能以数组内容生成标记
+	 */
+	private final static int makeLazyKey(int[][] map, int[] limits) {
 		int hashCode = 1;
 		int w = map.length;
 		int h = map[0].length;
@@ -72,61 +86,50 @@ public class AStarFinder extends TileImplPathFind implements Updateable, LReleas
 				hashCode = LSystem.unite(hashCode, limits[i]);
 			}
 		}
-		hashCode = LSystem.unite(hashCode, heuristic.getType());
-		hashCode = LSystem.unite(hashCode, sx);
-		hashCode = LSystem.unite(hashCode, sy);
-		hashCode = LSystem.unite(hashCode, ex);
-		hashCode = LSystem.unite(hashCode, ey);
-		hashCode = LSystem.unite(hashCode, flag);
 		return hashCode;
 	}
 
+	private final static TArray<Vector2f> copyResult(TArray<Vector2f> result) {
+		return new TArray<Vector2f>(result);
+	}
+
 	public static TArray<Vector2f> find(AStarFindHeuristic heuristic, int[][] maps, int[] limits, int x1, int y1,
 			int x2, int y2, boolean flag) {
 		heuristic = (heuristic == null ? ASTAR_MANHATTAN : heuristic);
-		synchronized (FINDER_LAZY) {
-			if (FINDER_LAZY.size >= LSystem.DEFAULT_MAX_CACHE_SIZE * 10) {
-				FINDER_LAZY.clear();
+		int version = makeLazyKey(maps, limits);
+		TArray<Vector2f> result = FINDER_LAZY.get(0, version, x1, y1, x2, y2, heuristic.getType(), flag);
+		if (result == null) {
+			Field2D fieldMap = new Field2D(maps);
+			if (limits != null) {
+				fieldMap.setLimit(limits);
 			}
-			int key = makeLazyKey(heuristic, maps, limits, x1, y1, x2, y2, flag);
-			TArray<Vector2f> result = FINDER_LAZY.get(key);
-			if (result == null) {
-				AStarFinder astar = new AStarFinder(heuristic);
-				Field2D fieldMap = new Field2D(maps);
-				if (limits != null) {
-					fieldMap.setLimit(limits);
-				}
-				Vector2f start = new Vector2f(x1, y1);
-				Vector2f over = new Vector2f(x2, y2);
-				result = astar.calc(fieldMap, start, over, flag);
-				FINDER_LAZY.put(key, result);
-				astar.close();
-			}
-			if (result != null) {
-				TArray<Vector2f> newResult = new TArray<Vector2f>();
-				newResult.addAll(result);
-				result = newResult;
-			}
-			if (result == null) {
-				return new TArray<Vector2f>();
-			}
-			return new TArray<Vector2f>(result);
+			result = calcPath(heuristic, fieldMap, x1, y1, x2, y2, flag);
+			FINDER_LAZY.put(0, version, x1, y1, x2, y2, heuristic.getType(), flag, result);
 		}
+		return copyResult(result);
 	}
 
 	public static TArray<Vector2f> find(AStarFindHeuristic heuristic, int[][] maps, int x1, int y1, int x2, int y2,
 			boolean flag) {
-		return find(heuristic, maps, x1, y1, x2, y2, flag);
+		return find(heuristic, maps, null, x1, y1, x2, y2, flag);
 	}
 
 	public static TArray<Vector2f> find(AStarFindHeuristic heuristic, Field2D maps, int x1, int y1, int x2, int y2,
 			boolean flag) {
-		return find(heuristic, maps.getMap(), maps.getLimit(), x1, y1, x2, y2, flag);
+		heuristic = (heuristic == null ? ASTAR_MANHATTAN : heuristic);
+		final int fieldId = maps.getFieldId();
+		final int version = maps.getVersion();
+		TArray<Vector2f> result = FINDER_LAZY.get(fieldId, version, x1, y1, x2, y2, heuristic.getType(), flag);
+		if (result == null) {
+			result = calcPath(heuristic, maps, x1, y1, x2, y2, flag);
+			FINDER_LAZY.put(fieldId, version, x1, y1, x2, y2, heuristic.getType(), flag, result);
+		}
+		return copyResult(result);
 	}
 
 	public static TArray<Vector2f> find(AStarFindHeuristic heuristic, Field2D maps, Vector2f start, Vector2f goal,
 			boolean flag) {
-		return find(heuristic, maps.getMap(), maps.getLimit(), start.x(), start.y(), goal.x(), goal.y(), flag);
+		return find(heuristic, maps, start.x(), start.y(), goal.x(), goal.y(), flag);
 	}
 
 	public static TArray<Vector2f> find(AStarFindHeuristic heuristic, int[][] maps, Vector2f start, Vector2f goal,
@@ -134,6 +137,16 @@ public class AStarFinder extends TileImplPathFind implements Updateable, LReleas
 		return find(heuristic, maps, start.x(), start.y(), goal.x(), goal.y(), flag);
 	}
 
+	private static TArray<Vector2f> calcPath(AStarFindHeuristic heuristic, Field2D field, int x1, int y1, int x2,
+			int y2, boolean flag) {
+		AStarFinder astar = new AStarFinder(heuristic);
+		Vector2f start = new Vector2f(x1, y1);
+		Vector2f over = new Vector2f(x2, y2);
+		TArray<Vector2f> result = astar.calc(field, start, over, flag);
+		astar.close();
+		return result == null ? new TArray<Vector2f>() : result;
+	}
+
 	private Vector2f goal;
 
 	private TArray<ScoredPath> pathes;
@@ -154,6 +167,10 @@ public class AStarFinder extends TileImplPathFind implements Updateable, LReleas
 
 	private AStarFindHeuristic findHeuristic;
 
+	private AStarFinderCore findCore;
+
+	private TArray<Vector2f> neighbors;
+
 	public AStarFinder(AStarFindHeuristic heuristic) {
 		this(heuristic, false);
 	}
@@ -215,6 +232,15 @@ public class AStarFinder extends TileImplPathFind implements Updateable, LReleas
 			v.add(start);
 			return v;
 		}
+		if (!flying && allowCore(field, start.x(), start.y())) {
+			if (!allowCore(field, goal.x(), goal.y())) {
+				return null;
+			}
+			if (findCore == null) {
+				findCore = new AStarFinderCore();
+			}
+			return findCore.search(field, start.x(), start.y(), goal.x(), goal.y(), flag, overflow);
+		}
 		this.goal = goal;
 		if (visitedCache == null) {
 			visitedCache = new ObjectSet<Vector2f>();
@@ -243,6 +269,10 @@ public class AStarFinder extends TileImplPathFind implements Updateable, LReleas
 		return astar(field, flag);
 	}
 
+	private final static boolean allowCore(Field2D field, int x, int y) {
+		return x >= 0 && y >= 0 && x < field.getWidth() && y < field.getHeight();
+	}
+
 	private int overflow = 4096;
 
 	public void setOverflow(int over) {
@@ -253,6 +283,15 @@ public class AStarFinder extends TileImplPathFind implements Updateable, LReleas
 		return this.overflow;
 	}
 
+	/**
+	 * 最近一次寻径中展开的节点数量(仅在使用AStarFinderCore时有效)
+	 * 
+	 * @return
+	 */
+	public int getExpandedCount() {
+		return findCore == null ? 0 : findCore.getExpandedCount();
+	}
+
 	private TArray<Vector2f> astar(Field2D field, boolean flag) {
 		for (int j = 0; pathes.size > 0; j++) {
 			if (j > overflow) {
@@ -264,7 +303,10 @@ public class AStarFinder extends TileImplPathFind implements Updateable, LReleas
 			if (current.equals(goal)) {
 				return new TArray<Vector2f>(spath.path);
 			}
-			TArray<Vector2f> list = field.neighbors(current, flag);
+			if (neighbors == null) {
+				neighbors = new TArray<Vector2f>(8);
+			}
+			TArray<Vector2f> list = field.neighbors(current, flag, neighbors);
 			int size = list.size;
 			for (int i = 0; i < size; i++) {
 				Vector2f next = list.get(i);
@@ -343,7 +385,7 @@ public class AStarFinder extends TileImplPathFind implements Updateable, LReleas
 	@Override
 	public void close() {
 		try {
-			if (path == null) {
+			if (path != null) {
 				path.clear();
 				path = null;
 			}
@@ -355,6 +397,11 @@ public class AStarFinder extends TileImplPathFind implements Updateable, LReleas
 				visitedCache.clear();
 				visitedCache = null;
 			}
+			if (findCore != null) {
+				findCore.close();
+				findCore = null;
+			}
+			neighbors = null;
 			spath = null;
 			goal = null;
 			closed = true;
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map;
+
+import loon.LSystem;
+import loon.geom.Vector2f;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
+
+/**
+ * AStarFinder的路径缓存,以(地图标识,地图版本,起点,终点,估值类型,是否斜向)为键,
+ * 分段加锁(不同分段的查询互不阻塞),每个分段独立按LRU规则淘汰最久未使用的路径.
+ */
+public class AStarFinderCache {
+
+	private static class Entry {
+
+		int fieldId, version, sx, sy, ex, ey, heuristic, hash;
+
+		boolean flag;
+
+		TArray<Vector2f> path;
+
+		Entry chain;
+
+		Entry before, after;
+
+		final boolean same(int hash, int fieldId, int version, int sx, int sy, int ex, int ey, int heuristic,
+				boolean flag) {
+			return this.hash == hash && this.fieldId == fieldId && this.version == version && this.sx == sx
+					&& this.sy == sy && this.ex == ex && this.ey == ey && this.heuristic == heuristic
+					&& this.flag == flag;
+		}
+
+	}
+
+	private static class Segment {
+
+		private final Entry[] table;
+
+		private final Entry head = new Entry();
+
+		private final int maxSize;
+
+		private int size;
+
+		private Entry free;
+
+		int hits, misses, evictions;
+
+		Segment(int maxSize) {
+			this.maxSize = maxSize;
+			this.table = new Entry[MathUtils.nextPowerOfTwo(maxSize * 2)];
+			head.before = head.after = head;
+		}
+
+		private void unlink(Entry e) {
+			e.before.after = e.after;
+			e.after.before = e.before;
+		}
+
+		private void linkFirst(Entry e) {
+			e.after = head.after;
+			e.before = head;
+			head.after.before = e;
+			head.after = e;
+		}
+
+		private void removeChain(Entry e) {
+			int idx = e.hash & (table.length - 1);
+			Entry prev = null;
+			for (Entry c = table[idx]; c != null; prev = c, c = c.chain) {
+				if (c == e) {
+					if (prev == null) {
+						table[idx] = c.chain;
+					} else {
+						prev.chain = c.chain;
+					}
+					break;
+				}
+			}
+		}
+
+		synchronized TArray<Vector2f> get(int hash, int fieldId, int version, int sx, int sy, int ex, int ey,
+				int heuristic, boolean flag) {
+			for (Entry e = table[hash & (table.length - 1)]; e != null; e = e.chain) {
+				if (e.same(hash, fieldId, version, sx, sy, ex, ey, heuristic, flag)) {
+					unlink(e);
+					linkFirst(e);
+					hits++;
+					return e.path;
+				}
+			}
+			misses++;
+			return null;
+		}
+
+		synchronized void put(int hash, int fieldId, int version, int sx, int sy, int ex, int ey, int heuristic,
+				boolean flag, TArray<Vector2f> path) {
+			int idx = hash & (table.length - 1);
+			for (Entry e = table[idx]; e != null; e = e.chain) {
+				if (e.same(hash, fieldId, version, sx, sy, ex, ey, heuristic, flag)) {
+					e.path = path;
+					unlink(e);
+					linkFirst(e);
+					return;
+				}
+			}
+			Entry e;
+			if (size >= maxSize) {
+				e = head.before;
+				unlink(e);
+				removeChain(e);
+				evictions++;
+				size--;
+			} else if (free != null) {
+				e = free;
+				free = e.chain;
+			} else {
+				e = new Entry();
+			}
+			e.hash = hash;
+			e.fieldId = fieldId;
+			e.version = version;
+			e.sx = sx;
+			e.sy = sy;
+			e.ex = ex;
+			e.ey = ey;
+			e.heuristic = heuristic;
+			e.flag = flag;
+			e.path = path;
+			e.chain = table[idx];
+			table[idx] = e;
+			linkFirst(e);
+			size++;
+		}
+
+		synchronized void clear() {
+			for (int i = 0; i < table.length; i++) {
+				table[i] = null;
+			}
+			for (Entry e = head.after; e != head;) {
+				Entry next = e.after;
+				e.path = null;
+				e.before = e.after = null;
+				e.chain = free;
+				free = e;
+				e = next;
+			}
+			head.before = head.after = head;
+			size = 0;
+		}
+
+		synchronized void resetCounters() {
+			hits = misses = evictions = 0;
+		}
+
+	}
+
+	private final Segment[] segments;
+
+	private final int segmentMask;
+
+	public AStarFinderCache() {
+		this(LSystem.DEFAULT_MAX_CACHE_SIZE * 10, 16);
+	}
+
+	public AStarFinderCache(int maxSize, int concurrency) {
+		int count = MathUtils.nextPowerOfTwo(MathUtils.max(1, concurrency));
+		int perSegment = MathUtils.max(1, (maxSize + count - 1) / count);
+		this.segments = new Segment[count];
+		this.segmentMask = count - 1;
+		for (int i = 0; i < count; i++) {
+			segments[i] = new Segment(perSegment);
+		}
+	}
+
+	private final static int hash(int fieldId, int version, int sx, int sy, int ex, int ey, int heuristic,
+			boolean flag) {
+		int hashCode = 1;
+		hashCode = LSystem.unite(hashCode, fieldId);
+		hashCode = LSystem.unite(hashCode, version);
+		hashCode = LSystem.unite(hashCode, sx);
+		hashCode = LSystem.unite(hashCode, sy);
+		hashCode = LSystem.unite(hashCode, ex);
+		hashCode = LSystem.unite(hashCode, ey);
+		hashCode = LSystem.unite(hashCode, heuristic);
+		hashCode = LSystem.unite(hashCode, flag);
+		return hashCode ^ (hashCode >>> 16);
+	}
+
+	private final Segment segmentFor(int hash) {
+		return segments[(hash >>> 8) & segmentMask];
+	}
+
+	public TArray<Vector2f> get(int fieldId, int version, int sx, int sy, int ex, int ey, int heuristic,
+			boolean flag) {
+		int hash = hash(fieldId, version, sx, sy, ex, ey, heuristic, flag);
+		return segmentFor(hash).get(hash, fieldId, version, sx, sy, ex, ey, heuristic, flag);
+	}
+
+	public void put(int fieldId, int version, int sx, int sy, int ex, int ey, int heuristic, boolean flag,
+			TArray<Vector2f> path) {
+		int hash = hash(fieldId, version, sx, sy, ex, ey, heuristic, flag);
+		segmentFor(hash).put(hash, fieldId, version, sx, sy, ex, ey, heuristic, flag, path);
+	}
+
+	public int getHitCount() {
+		int count = 0;
+		for (int i = 0; i < segments.length; i++) {
+			count += segments[i].hits;
+		}
+		return count;
+	}
+
+	public int getMissCount() {
+		int count = 0;
+		for (int i = 0; i < segments.length; i++) {
+			count += segments[i].misses;
+		}
+		return count;
+	}
+
+	public int getEvictionCount() {
+		int count = 0;
+		for (int i = 0; i < segments.length; i++) {
+			count += segments[i].evictions;
+		}
+		return count;
+	}
+
+	public int size() {
+		int count = 0;
+		for (int i = 0; i < segments.length; i++) {
+			count += segments[i].size;
+		}
+		return count;
+	}
+
+	public void resetCounters() {
+		for (int i = 0; i < segments.length; i++) {
+			segments[i].resetCounters();
+		}
+	}
+
+	public void clear() {
+		for (int i = 0; i < segments.length; i++) {
+			segments[i].clear();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "AStarFinderCache [size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+				+ ", evictions=" + getEvictionCount() + "]";
+	}
+
+}
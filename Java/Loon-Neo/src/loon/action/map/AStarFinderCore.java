@@ -0,0 +1,189 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map;
+
+import loon.LRelease;
+import loon.geom.Vector2f;
+import loon.utils.IntPriorityQueue;
+import loon.utils.TArray;
+
+/**
+ * AStarFinder使用的寻径核心,以int索引(y * width + x)表示地图格子,用二叉堆保存待处理节点,
+ * 以父节点数组回溯路径,所有缓存数组在同一个寻径器中重复使用,寻径过程中不再产生对象.
+ *
+ * 节点的出堆顺序与旧版的开放列表完全一致(按步数排序,步数相同时先进先出),所以对任意AStarFindHeuristic都会返回相同的路径.
+ */
+public class AStarFinderCore implements LRelease {
+
+	private final static int[] OFFSET_X = { 0, 1, 0, -1, -1, 1, 1, -1 };
+
+	private final static int[] OFFSET_Y = { -1, 0, 1, 0, -1, -1, 1, 1 };
+
+	private final IntPriorityQueue openList = new IntPriorityQueue(256);
+
+	private int[] parents;
+
+	private int[] depths;
+
+	private int[] visitMarks;
+
+	private int[] pathBuffer;
+
+	private int visitStamp;
+
+	private int expandedCount;
+
+	private int capacity;
+
+	private void ensureSize(int size) {
+		if (size > capacity) {
+			parents = new int[size];
+			depths = new int[size];
+			visitMarks = new int[size];
+			visitStamp = 0;
+			capacity = size;
+		}
+	}
+
+	private void nextStamp() {
+		visitStamp++;
+		if (visitStamp == Integer.MAX_VALUE) {
+			for (int i = 0; i < capacity; i++) {
+				visitMarks[i] = 0;
+			}
+			visitStamp = 1;
+		}
+	}
+
+	/**
+	 * 检索指定地图中两点间的路径,找不到路径或超出overflow限制时返回null
+	 *
+	 * @param field
+	 * @param startX
+	 * @param startY
+	 * @param endX
+	 * @param endY
+	 * @param flag
+	 *            是否允许斜向移动
+	 * @param overflow
+	 *            最多处理的节点数量
+	 * @return
+	 */
+	public TArray<Vector2f> search(Field2D field, int startX, int startY, int endX, int endY, boolean flag,
+			int overflow) {
+		final int width = field.getWidth();
+		final int height = field.getHeight();
+		if (startX == endX && startY == endY) {
+			TArray<Vector2f> result = new TArray<Vector2f>(1);
+			result.add(new Vector2f(startX, startY));
+			return result;
+		}
+		ensureSize(width * height);
+		nextStamp();
+		openList.clear();
+		expandedCount = 0;
+
+		final int[] parents = this.parents;
+		final int[] depths = this.depths;
+		final int[] visitMarks = this.visitMarks;
+		final int stamp = this.visitStamp;
+		final int dirs = flag ? 8 : 4;
+		final int goal = endY * width + endX;
+
+		int start = startY * width + startX;
+		visitMarks[start] = stamp;
+		parents[start] = -1;
+		depths[start] = 0;
+		openList.add(start, 0);
+
+		for (int j = 0; openList.size > 0; j++) {
+			if (j > overflow) {
+				openList.clear();
+				return null;
+			}
+			int current = openList.pop();
+			if (current == goal) {
+				return makePath(current, width);
+			}
+			expandedCount++;
+			int cx = current % width;
+			int cy = current / width;
+			int depth = depths[current] + 1;
+			for (int i = 0; i < dirs; i++) {
+				int nx = cx + OFFSET_X[i];
+				int ny = cy + OFFSET_Y[i];
+				if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+					continue;
+				}
+				int next = ny * width + nx;
+				if (visitMarks[next] == stamp) {
+					continue;
+				}
+				visitMarks[next] = stamp;
+				if (!field.isHit(nx, ny)) {
+					continue;
+				}
+				parents[next] = current;
+				depths[next] = depth;
+				openList.add(next, depth);
+			}
+		}
+		return null;
+	}
+
+	private TArray<Vector2f> makePath(int node, int width) {
+		int count = depths[node] + 1;
+		if (pathBuffer == null || pathBuffer.length < count) {
+			pathBuffer = new int[count];
+		}
+		for (int i = count - 1; i >= 0; i--) {
+			pathBuffer[i] = node;
+			node = parents[node];
+		}
+		TArray<Vector2f> result = new TArray<Vector2f>(count);
+		for (int i = 0; i < count; i++) {
+			int index = pathBuffer[i];
+			result.add(new Vector2f(index % width, index / width));
+		}
+		return result;
+	}
+
+	/**
+	 * 最近一次寻径中展开的节点数量
+	 *
+	 * @return
+	 */
+	public int getExpandedCount() {
+		return expandedCount;
+	}
+
+	@Override
+	public void close() {
+		openList.clear();
+		parents = null;
+		depths = null;
+		visitMarks = null;
+		pathBuffer = null;
+		capacity = 0;
+		visitStamp = 0;
+	}
+
+}
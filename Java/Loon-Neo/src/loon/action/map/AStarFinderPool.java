@@ -20,23 +20,164 @@
  */
 package loon.action.map;
 
+import loon.LGame;
+import loon.LRelease;
+import loon.LSystem;
 import loon.geom.Vector2f;
-import loon.utils.LIterator;
-import loon.utils.SortedList;
+import loon.utils.IntArray;
+import loon.utils.IntPriorityQueue;
+import loon.utils.ObjectMap;
 import loon.utils.TArray;
+import loon.utils.TimeUtils;
 import loon.utils.processes.RealtimeProcess;
 import loon.utils.processes.RealtimeProcessManager;
 import loon.utils.timer.LTimerContext;
 
-public class AStarFinderPool {
+/**
+ * 后台寻径服务,在支持多线程的平台(JavaSE,Lwjgl等)上以固定数量的工作者并行寻径,不支持的平台则在游戏循环中按时间片分批寻径.
+ * 
+ * 同一个key(默认为AStarFinderListener)的请求会被合并,只保留最新的一次;请求可取消,可设置优先级(数值越大越先处理),
+ * 寻径结果在下一帧的游戏线程中交给AStarFinderListener.寻径使用提交时的地图快照,所以游戏线程修改地图时不会影响正在进行的寻径.
+ */
+public class AStarFinderPool implements LRelease {
+
+	/**
+	 * 一次异步寻径请求
+	 */
+	public static class FinderTask implements Runnable {
+
+		private final Object key;
+
+		private final AStarFinder finder;
+
+		private final AStarFinderListener listener;
+
+		private final int priority;
+
+		// 在工作线程写入,在游戏线程读取
+		private volatile TArray<Vector2f> result;
+
+		private volatile boolean cancelled, completed;
+
+		FinderTask(Object key, AStarFinder finder, AStarFinderListener listener, int priority) {
+			this.key = key;
+			this.finder = finder;
+			this.listener = listener;
+			this.priority = priority;
+		}
+
+		public void cancel() {
+			cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		public boolean isCompleted() {
+			return completed;
+		}
+
+		public int getPriority() {
+			return priority;
+		}
+
+		public Object getKey() {
+			return key;
+		}
+
+		public TArray<Vector2f> getResult() {
+			return result;
+		}
+
+		@Override
+		public void run() {
+			if (!cancelled && listener != null) {
+				listener.pathFound(result);
+			}
+			completed = true;
+		}
+	}
+
+	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
+	private static class FinderWorker implements Runnable {
+
+		private final AStarFinderPool pool;
+
+		FinderWorker(AStarFinderPool pool) {
+			this.pool = pool;
+		}
+
+		@Override
+		public void run() {
+			AStarFinder astar = new AStarFinder(null);
+			try {
+				for (FinderTask task; (task = pool.nextWorkerTask()) != null;) {
+					pool.process(astar, task);
+				}
+			} finally {
+				astar.close();
+			}
+		}
+	}
+
+	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
+	private static class FinderProcess extends RealtimeProcess {
+
+		private final AStarFinderPool pool;
+
+		private final AStarFinder astar = new AStarFinder(null);
+
+		FinderProcess(AStarFinderPool pool) {
+			super("AStarProcess", 0);
+			this.pool = pool;
+		}
+
+		@Override
+		public void run(LTimerContext time) {
+			final long end = TimeUtils.nanoTime() + pool.timeSlice;
+			for (FinderTask task; (task = pool.nextProcessTask(this)) != null;) {
+				pool.process(astar, task);
+				if (TimeUtils.nanoTime() >= end) {
+					break;
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			astar.close();
+			super.close();
+		}
+	}
 
 	private Field2D field;
 
-	private RealtimeProcess pathfinderProcess;
+	private Field2D snapshot;
+
+	private int snapshotVersion;
+
+	private final IntPriorityQueue taskQueue = new IntPriorityQueue(64);
+
+	private final IntArray freeSlots = new IntArray(64);
+
+	private FinderTask[] taskSlots = new FinderTask[64];
+
+	private int slotCount;
+
+	private final ObjectMap<Object, FinderTask> pendingTasks = new ObjectMap<Object, FinderTask>();
+
+	private FinderProcess pathfinderProcess;
 
 	private boolean running;
 
-	private TaskQueue pathQueue = new TaskQueue();
+	private int maxWorkers = 2;
+
+	private int activeWorkers;
+
+	private long timeSlice = TimeUtils.millisToNanos(2);
+
+	private int queuedCount, completedCount, mergedCount;
 
 	public AStarFinderPool(int[][] maps) {
 		this(new Field2D(maps));
@@ -45,95 +186,298 @@ public class AStarFinderPool {
 	public AStarFinderPool(Field2D field) {
 		this.field = field;
 		this.running = true;
-		pathfinderProcess = new RealtimeProcess("AStarProcess") {
-
-			@Override
-			public void run(LTimerContext time) {
-				if (running) {
-					emptyPathQueue();
-					kill();
-				}
-			}
-		};
-		pathfinderProcess.sleep(1000000);
-		RealtimeProcessManager.get().addProcess(pathfinderProcess);
 	}
 
 	public void run() {
-
+		this.running = true;
 	}
 
-	private void emptyPathQueue() {
-		AStarFinder task;
-		for (; (task = pathQueue.poll()) != null;) {
-			task.action(task);
+	/**
+	 * 多线程环境下同时进行寻径的工作者数量
+	 * 
+	 * @param workers
+	 * @return
+	 */
+	public AStarFinderPool setMaxWorkers(int workers) {
+		synchronized (this) {
+			this.maxWorkers = workers < 1 ? 1 : workers;
 		}
+		return this;
+	}
+
+	public int getMaxWorkers() {
+		return maxWorkers;
+	}
+
+	/**
+	 * 不支持多线程时,每帧用于寻径的最长时间(毫秒)
+	 * 
+	 * @param millis
+	 * @return
+	 */
+	public AStarFinderPool setTimeSlice(long millis) {
+		this.timeSlice = TimeUtils.millisToNanos(millis < 1 ? 1 : millis);
+		return this;
+	}
+
+	public long getTimeSlice() {
+		return TimeUtils.nanosToMillis(timeSlice);
 	}
 
 	public void stop() {
-		running = true;
-		pathfinderProcess.kill();
-	}
-
-	public void search(AStarFindHeuristic heuristic, int startx, int starty,
-			int endx, int endy, boolean flying, boolean flag,
-			AStarFinderListener callback) {
-		AStarFinder pathfinderTask = new AStarFinder(heuristic, field, startx,
-				starty, endx, endy, flying, flag, callback);
-		AStarFinder existing = pathQueue.contains(pathfinderTask);
-		if (existing != null) {
-			existing.update(pathfinderTask);
-		} else {
-			pathQueue.add(pathfinderTask);
+		synchronized (this) {
+			running = false;
+			for (FinderTask task = pollTask(); task != null; task = pollTask()) {
+				task.cancel();
+			}
+			pendingTasks.clear();
+			if (pathfinderProcess != null) {
+				pathfinderProcess.kill();
+				pathfinderProcess = null;
+			}
+		}
+	}
+
+	private Field2D snapshot() {
+		final int version = field.getVersion();
+		if (snapshot == null || snapshotVersion != version) {
+			snapshot = new Field2D(field);
+			snapshot.setSize(field.getWidth(), field.getHeight());
+			int[] limits = field.getLimit();
+			if (limits != null) {
+				int[] newLimits = new int[limits.length];
+				System.arraycopy(limits, 0, newLimits, 0, limits.length);
+				snapshot.setLimit(newLimits);
+			}
+			snapshotVersion = version;
+		}
+		return snapshot;
+	}
+
+	public FinderTask search(AStarFindHeuristic heuristic, int startx, int starty, int endx, int endy,
+			boolean flying, boolean flag, AStarFinderListener callback) {
+		return search(heuristic, startx, starty, endx, endy, flying, flag, callback, 0);
+	}
+
+	public FinderTask search(AStarFindHeuristic heuristic, int startx, int starty, int endx, int endy,
+			boolean flying, boolean flag, AStarFinderListener callback, int priority) {
+		return search(callback, heuristic, startx, starty, endx, endy, flying, flag, callback, priority);
+	}
+
+	/**
+	 * 提交一个异步寻径请求,key相同的未完成请求会被新请求取代
+	 * 
+	 * @param key
+	 * @param heuristic
+	 * @param startx
+	 * @param starty
+	 * @param endx
+	 * @param endy
+	 * @param flying
+	 * @param flag
+	 * @param callback
+	 * @param priority
+	 * @return
+	 */
+	public FinderTask search(Object key, AStarFindHeuristic heuristic, int startx, int starty, int endx, int endy,
+			boolean flying, boolean flag, AStarFinderListener callback, int priority) {
+		FinderTask task;
+		synchronized (this) {
+			if (!running) {
+				return null;
+			}
+			heuristic = (heuristic == null ? AStarFinder.ASTAR_MANHATTAN : heuristic);
+			AStarFinder finder = new AStarFinder(heuristic, snapshot(), startx, starty, endx, endy, flying, flag,
+					callback);
+			task = new FinderTask(key, finder, callback, priority);
+			if (key != null) {
+				FinderTask existing = pendingTasks.put(key, task);
+				if (existing != null) {
+					existing.cancel();
+					mergedCount++;
+				}
+			}
+			int slot;
+			if (freeSlots.length > 0) {
+				slot = freeSlots.pop();
+			} else {
+				if (slotCount == taskSlots.length) {
+					FinderTask[] newSlots = new FinderTask[slotCount * 2];
+					System.arraycopy(taskSlots, 0, newSlots, 0, slotCount);
+					taskSlots = newSlots;
+				}
+				slot = slotCount++;
+			}
+			taskSlots[slot] = task;
+			taskQueue.add(slot, -priority);
+			queuedCount++;
 		}
-		pathfinderProcess.kill();
+		dispatch();
+		return task;
 	}
 
-	public void search(AStarFindHeuristic heuristic, int startx, int starty,
-			int endx, int endy, boolean flying, AStarFinderListener callback) {
-		search(heuristic, startx, starty, endx, endy, flying, false, callback);
+	public FinderTask search(AStarFindHeuristic heuristic, int startx, int starty, int endx, int endy,
+			boolean flying, AStarFinderListener callback) {
+		return search(heuristic, startx, starty, endx, endy, flying, false, callback);
 	}
 
-	public TArray<Vector2f> search(AStarFindHeuristic heuristic, int startX,
-			int startY, int endX, int endY, boolean flying, boolean flag) {
+	/**
+	 * 取消指定key对应的未完成请求
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public boolean cancel(Object key) {
+		synchronized (this) {
+			FinderTask task = pendingTasks.remove(key);
+			if (task != null) {
+				task.cancel();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	public TArray<Vector2f> search(AStarFindHeuristic heuristic, int startX, int startY, int endX, int endY,
+			boolean flying, boolean flag) {
 		TArray<Vector2f> result = null;
-		AStarFinder astar = new AStarFinder(heuristic, field, startX, startY,
-				endX, endY, flying, flag);
+		AStarFinder astar = new AStarFinder(heuristic, field, startX, startY, endX, endY, flying, flag);
 		result = astar.findPath();
 		astar.close();
 		return result;
 	}
 
-	public TArray<Vector2f> search(AStarFindHeuristic heuristic, int startX,
-			int startY, int endX, int endY, boolean flying) {
+	public TArray<Vector2f> search(AStarFindHeuristic heuristic, int startX, int startY, int endX, int endY,
+			boolean flying) {
 		TArray<Vector2f> result = null;
-		AStarFinder astar = new AStarFinder(heuristic, field, startX, startY,
-				endX, endY, flying, false);
+		AStarFinder astar = new AStarFinder(heuristic, field, startX, startY, endX, endY, flying, false);
 		result = astar.findPath();
 		astar.close();
 		return result;
 	}
 
-	static class TaskQueue {
-
-		private SortedList<AStarFinder> queue = new SortedList<AStarFinder>();
+	private final static boolean isAsyncSupported() {
+		LGame game = LSystem.base();
+		return game != null && game.isAsyncSupported();
+	}
 
-		public synchronized AStarFinder contains(AStarFinder element) {
-			for (LIterator<AStarFinder> it = queue.listIterator(); it.hasNext();) {
-				AStarFinder af = it.next();
-				if (af.equals(element)) {
-					return af;
+	private void dispatch() {
+		if (isAsyncSupported()) {
+			for (;;) {
+				synchronized (this) {
+					if (!running || activeWorkers >= maxWorkers || activeWorkers >= taskQueue.size) {
+						return;
+					}
+					activeWorkers++;
 				}
+				try {
+					LSystem.base().invokeAsync(new FinderWorker(this));
+				} catch (Throwable cause) {
+					synchronized (this) {
+						activeWorkers--;
+					}
+					LSystem.error("AStarFinderPool dispatch failure", cause);
+					// 无法启动工作者时改为在游戏循环中分批寻径,避免请求滞留
+					startProcess();
+					return;
+				}
+			}
+		} else {
+			startProcess();
+		}
+	}
+
+	private void startProcess() {
+		FinderProcess process;
+		synchronized (this) {
+			if (!running || pathfinderProcess != null) {
+				return;
+			}
+			process = pathfinderProcess = new FinderProcess(this);
+		}
+		RealtimeProcessManager.get().addProcess(process);
+	}
+
+	private FinderTask pollTask() {
+		while (taskQueue.size > 0) {
+			int slot = taskQueue.pop();
+			FinderTask task = taskSlots[slot];
+			taskSlots[slot] = null;
+			freeSlots.add(slot);
+			if (task.cancelled) {
+				continue;
 			}
-			return null;
+			if (task.key != null && pendingTasks.get(task.key) == task) {
+				pendingTasks.remove(task.key);
+			}
+			return task;
+		}
+		return null;
+	}
+
+	private synchronized FinderTask nextWorkerTask() {
+		FinderTask task = running ? pollTask() : null;
+		if (task == null) {
+			activeWorkers--;
 		}
+		return task;
+	}
 
-		public synchronized AStarFinder poll() {
-			return queue.poll();
+	private synchronized FinderTask nextProcessTask(FinderProcess process) {
+		FinderTask task = running ? pollTask() : null;
+		if (task == null) {
+			process.kill();
+			if (pathfinderProcess == process) {
+				pathfinderProcess = null;
+			}
 		}
+		return task;
+	}
 
-		public synchronized void add(AStarFinder t) {
-			queue.add(t);
+	private void process(AStarFinder astar, FinderTask task) {
+		try {
+			astar.update(task.finder);
+			task.result = astar.findPath();
+		} catch (Throwable cause) {
+			LSystem.error("AStarFinderPool search failure", cause);
+		}
+		synchronized (this) {
+			completedCount++;
 		}
+		LGame game = LSystem.base();
+		if (game != null) {
+			game.invokeLater(task);
+		} else {
+			task.run();
+		}
+	}
+
+	public synchronized int getQueueSize() {
+		return taskQueue.size;
+	}
+
+	public synchronized int getActiveWorkers() {
+		return activeWorkers;
+	}
+
+	public synchronized int getQueuedCount() {
+		return queuedCount;
+	}
+
+	public synchronized int getCompletedCount() {
+		return completedCount;
+	}
+
+	public synchronized int getMergedCount() {
+		return mergedCount;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public void close() {
+		stop();
 	}
 }
@@ -20,6 +20,7 @@
  */
 package loon.action.map;
 
+import loon.IDGenerator;
 import loon.LSystem;
 import loon.action.collision.CollisionHelper;
 import loon.action.map.colider.Tile;
@@ -40,6 +41,12 @@ public class Field2D implements IArray, Config {
 	
 	private String _objectName = "Field2D";
 
+	private final int _fieldId = IDGenerator.get().generate();
+
+	private int _version;
+
+	private TArray<Field2DListener> _listeners;
+
 	private Vector2f _offset = new Vector2f();
 
 	private RectBox _rectTemp = null;
@@ -315,7 +322,8 @@ public class Field2D implements IArray, Config {
 	}
 
 	public void set(int[][] mapArrays, int tw, int th) {
-		this.setMap(mapArrays);
+		// 先更新地图数组与尺寸,最后只通知一次,监听器收到通知时读取到的是完整的新地图
+		this.mapArrays = mapArrays;
 		this.setTileWidth(tw);
 		this.setTileHeight(th);
 		this.width = mapArrays[0].length;
@@ -326,11 +334,13 @@ public class Field2D implements IArray, Config {
 			this._tileImpl.setWidth(tileWidth);
 			this._tileImpl.setHeight(tileHeight);
 		}
+		this.fieldChanged();
 	}
 
 	public void setSize(int width, int height) {
 		this.width = width;
 		this.height = height;
+		this.fieldChanged();
 	}
 
 	public void setTile(int tw, int th) {
@@ -408,6 +418,68 @@ public class Field2D implements IArray, Config {
 
 	public void setLimit(int[] limit) {
 		this.moveLimited = limit;
+		this.fieldChanged();
+	}
+
+	/**
+	 * 当前地图对象的唯一标识
+	 * 
+	 * @return
+	 */
+	public int getFieldId() {
+		return _fieldId;
+	}
+
+	/**
+	 * 地图数据的修改版本,每次通过setTileType,setMap,setLimit等函数修改地图数据时递增
+	 * 
+	 * @return
+	 */
+	public int getVersion() {
+		return _version;
+	}
+
+	/**
+	 * 在外部直接修改了地图数组时,手动标记地图数据已变化
+	 */
+	public void modified() {
+		this.fieldChanged();
+	}
+
+	public void addListener(Field2DListener listener) {
+		if (listener == null) {
+			return;
+		}
+		if (_listeners == null) {
+			_listeners = new TArray<Field2DListener>(4);
+		}
+		if (!_listeners.contains(listener)) {
+			_listeners.add(listener);
+		}
+	}
+
+	public void removeListener(Field2DListener listener) {
+		if (_listeners != null) {
+			_listeners.remove(listener);
+		}
+	}
+
+	private void tileChanged(int x, int y) {
+		this._version++;
+		if (_listeners != null) {
+			for (int i = 0; i < _listeners.size; i++) {
+				_listeners.get(i).onTileChanged(this, x, y);
+			}
+		}
+	}
+
+	private void fieldChanged() {
+		this._version++;
+		if (_listeners != null) {
+			for (int i = 0; i < _listeners.size; i++) {
+				_listeners.get(i).onFieldChanged(this);
+			}
+		}
 	}
 
 	private final boolean allowLimit(int x, int y) {
@@ -430,7 +502,10 @@ public class Field2D implements IArray, Config {
 			if (!allowLimit(x, y)) {
 				return;
 			}
-			this.mapArrays[y][x] = tile;
+			if (this.mapArrays[y][x] != tile) {
+				this.mapArrays[y][x] = tile;
+				this.tileChanged(x, y);
+			}
 		} catch (Throwable e) {
 		}
 	}
@@ -441,6 +516,7 @@ public class Field2D implements IArray, Config {
 
 	public void setMap(int[][] mapArrays) {
 		this.mapArrays = mapArrays;
+		this.fieldChanged();
 	}
 
 	public int getPixelsAtFieldType(Vector2f pos) {
@@ -509,9 +585,20 @@ public class Field2D implements IArray, Config {
 	public TArray<Vector2f> neighbors(Vector2f pos, boolean flag) {
 		if (result == null) {
 			result = new TArray<Vector2f>(8);
-		} else {
-			result.clear();
 		}
+		return neighbors(pos, flag, result);
+	}
+
+	/**
+	 * 把指定位置的相邻格子写入调用者提供的集合(多个寻径器同时读取一个地图时,各自使用自己的集合)
+	 * 
+	 * @param pos
+	 * @param flag
+	 * @param result
+	 * @return
+	 */
+	public TArray<Vector2f> neighbors(Vector2f pos, boolean flag, TArray<Vector2f> result) {
+		result.clear();
 		int x = pos.x();
 		int y = pos.y();
 		result.add(new Vector2f(x, y - 1));
@@ -560,6 +647,7 @@ public class Field2D implements IArray, Config {
 				mapArrays[i][j] = val;
 			}
 		}
+		this.fieldChanged();
 		return this;
 	}
 
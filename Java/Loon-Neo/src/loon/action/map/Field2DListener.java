@@ -0,0 +1,44 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map;
+
+/**
+ * Field2D地图数据变化的监听器
+ */
+public interface Field2DListener {
+
+	/**
+	 * 单个格子的数据发生了变化
+	 * 
+	 * @param field
+	 * @param x
+	 * @param y
+	 */
+	void onTileChanged(Field2D field, int x, int y);
+
+	/**
+	 * 整个地图数据(地图数组,通行限制,大小等)发生了变化
+	 * 
+	 * @param field
+	 */
+	void onFieldChanged(Field2D field);
+
+}
@@ -0,0 +1,376 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map;
+
+import loon.LRelease;
+import loon.utils.IntArray;
+import loon.utils.IntPriorityQueue;
+import loon.utils.MathUtils;
+
+/**
+ * 流场寻径用类,以目标点为起点对整个Field2D做一次Dijkstra扩散,得到每个格子到目标的累计消耗(积分场)以及下一步的移动方向(方向场),
+ * 所有朝同一目标移动的单位共用同一个流场,每次取方向都是O(1)且不产生对象.
+ * 
+ * 流场注册为Field2D的监听器,setTileType修改格子后只修复受影响的区域,整个地图变化时才全部重建.
+ */
+public class FlowField implements Field2DListener, LRelease {
+
+	private final static float SQRT2 = MathUtils.sqrt(2f);
+
+	private final static float INFINITY = Float.MAX_VALUE;
+
+	private final static int[] OFFSET_X = { 0, 1, 0, -1, -1, 1, 1, -1 };
+
+	private final static int[] OFFSET_Y = { -1, 0, 1, 0, -1, -1, 1, 1 };
+
+	private final IntPriorityQueue openList = new IntPriorityQueue(256);
+
+	private final IntArray changedCells = new IntArray(16);
+
+	private final IntArray stack = new IntArray(64);
+
+	private final IntArray invalidated = new IntArray(64);
+
+	private final Field2D field;
+
+	private final boolean diagonal;
+
+	private final int goalX, goalY;
+
+	private int width, height;
+
+	private float[] costs;
+
+	private int[] parents;
+
+	private boolean rebuildAll, closed;
+
+	private int rebuildCount, repairCount;
+
+	private long lastUseTime;
+
+	public FlowField(Field2D field, int goalX, int goalY) {
+		this(field, goalX, goalY, true);
+	}
+
+	public FlowField(Field2D field, int goalX, int goalY, boolean diagonal) {
+		this.field = field;
+		this.goalX = goalX;
+		this.goalY = goalY;
+		this.diagonal = diagonal;
+		this.rebuildAll = true;
+		field.addListener(this);
+	}
+
+	@Override
+	public void onTileChanged(Field2D f, int x, int y) {
+		if (!rebuildAll) {
+			changedCells.add(y * width + x);
+		}
+	}
+
+	@Override
+	public void onFieldChanged(Field2D f) {
+		rebuildAll = true;
+		changedCells.clear();
+	}
+
+	private final boolean walkable(int x, int y) {
+		return field.isHit(x, y);
+	}
+
+	/**
+	 * 重建流场或修复被修改过的区域
+	 */
+	public void validate() {
+		if (closed) {
+			return;
+		}
+		if (rebuildAll) {
+			build();
+		} else if (changedCells.length > 0) {
+			repair();
+		}
+	}
+
+	private void build() {
+		width = field.getWidth();
+		height = field.getHeight();
+		final int size = width * height;
+		if (costs == null || costs.length != size) {
+			costs = new float[size];
+			parents = new int[size];
+		}
+		for (int i = 0; i < size; i++) {
+			costs[i] = INFINITY;
+			parents[i] = -1;
+		}
+		openList.clear();
+		if (goalX >= 0 && goalY >= 0 && goalX < width && goalY < height && walkable(goalX, goalY)) {
+			int goal = goalY * width + goalX;
+			costs[goal] = 0;
+			openList.add(goal, 0);
+			propagate();
+		}
+		changedCells.clear();
+		rebuildAll = false;
+		rebuildCount++;
+	}
+
+	private void propagate() {
+		final int dirs = diagonal ? 8 : 4;
+		for (; openList.size > 0;) {
+			float score = openList.peekPriority();
+			int current = openList.pop();
+			if (score > costs[current]) {
+				continue;
+			}
+			int cx = current % width;
+			int cy = current / width;
+			for (int i = 0; i < dirs; i++) {
+				int nx = cx + OFFSET_X[i];
+				int ny = cy + OFFSET_Y[i];
+				if (!walkable(nx, ny)) {
+					continue;
+				}
+				if (i >= 4 && (!walkable(cx, ny) || !walkable(nx, cy))) {
+					continue;
+				}
+				int next = ny * width + nx;
+				float cost = score + (i >= 4 ? SQRT2 : 1f);
+				if (cost < costs[next]) {
+					costs[next] = cost;
+					parents[next] = current;
+					openList.add(next, cost);
+				}
+			}
+		}
+	}
+
+	private void invalidate(int cell) {
+		if (costs[cell] == INFINITY) {
+			return;
+		}
+		stack.clear();
+		stack.add(cell);
+		costs[cell] = INFINITY;
+		parents[cell] = -1;
+		invalidated.add(cell);
+		final int dirs = diagonal ? 8 : 4;
+		while (stack.length > 0) {
+			int current = stack.pop();
+			int cx = current % width;
+			int cy = current / width;
+			for (int i = 0; i < dirs; i++) {
+				int nx = cx + OFFSET_X[i];
+				int ny = cy + OFFSET_Y[i];
+				if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+					continue;
+				}
+				int next = ny * width + nx;
+				if (parents[next] == current) {
+					costs[next] = INFINITY;
+					parents[next] = -1;
+					invalidated.add(next);
+					stack.add(next);
+				}
+			}
+		}
+	}
+
+	private void seedAround(int cell) {
+		int cx = cell % width;
+		int cy = cell / width;
+		for (int i = 0; i < 8; i++) {
+			int nx = cx + OFFSET_X[i];
+			int ny = cy + OFFSET_Y[i];
+			if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+				continue;
+			}
+			int next = ny * width + nx;
+			if (costs[next] != INFINITY) {
+				openList.add(next, costs[next]);
+			}
+		}
+	}
+
+	private void repair() {
+		final int goal = goalY * width + goalX;
+		invalidated.clear();
+		openList.clear();
+		for (int i = 0; i < changedCells.length; i++) {
+			int cell = changedCells.items[i];
+			if (cell == goal) {
+				rebuildAll = true;
+				build();
+				return;
+			}
+			int cx = cell % width;
+			int cy = cell / width;
+			if (!walkable(cx, cy)) {
+				invalidate(cell);
+				// 斜向移动不允许穿过障碍物的拐角,所以经过此格拐角的斜向路径也失效
+				for (int j = 0; j < 4; j++) {
+					int nx = cx + OFFSET_X[j];
+					int ny = cy + OFFSET_Y[j];
+					if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+						continue;
+					}
+					int next = ny * width + nx;
+					int parent = parents[next];
+					if (parent != -1) {
+						int px = parent % width;
+						int py = parent / width;
+						if ((px != nx && py != ny) && ((px == cx && ny == cy) || (py == cy && nx == cx))) {
+							invalidate(next);
+						}
+					}
+				}
+			} else {
+				invalidated.add(cell);
+			}
+		}
+		for (int i = 0; i < invalidated.length; i++) {
+			seedAround(invalidated.items[i]);
+		}
+		propagate();
+		changedCells.clear();
+		invalidated.clear();
+		repairCount++;
+	}
+
+	/**
+	 * 指定格子到目标的累计消耗,无法到达时返回Float.MAX_VALUE
+	 * 
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public float getCost(int x, int y) {
+		validate();
+		if (closed || x < 0 || y < 0 || x >= width || y >= height) {
+			return INFINITY;
+		}
+		return costs[y * width + x];
+	}
+
+	public boolean isReachable(int x, int y) {
+		return getCost(x, y) != INFINITY;
+	}
+
+	private final int nextCell(int x, int y) {
+		validate();
+		if (closed || x < 0 || y < 0 || x >= width || y >= height) {
+			return -1;
+		}
+		return parents[y * width + x];
+	}
+
+	/**
+	 * 下一步在x轴上的移动量(-1,0,1)
+	 * 
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int getDirectionX(int x, int y) {
+		int next = nextCell(x, y);
+		return next == -1 ? 0 : (next % width) - x;
+	}
+
+	/**
+	 * 下一步在y轴上的移动量(-1,0,1)
+	 * 
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int getDirectionY(int x, int y) {
+		int next = nextCell(x, y);
+		return next == -1 ? 0 : (next / width) - y;
+	}
+
+	/**
+	 * 下一步的移动方向,返回值为Config中的方向常量,已在目标点或无法到达时返回Config.EMPTY
+	 * 
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int getDirection(int x, int y) {
+		int next = nextCell(x, y);
+		if (next == -1) {
+			return Config.EMPTY;
+		}
+		return Field2D.getDirection((next % width) - x, (next / width) - y);
+	}
+
+	public int getGoalX() {
+		return goalX;
+	}
+
+	public int getGoalY() {
+		return goalY;
+	}
+
+	public boolean isDiagonal() {
+		return diagonal;
+	}
+
+	public Field2D getField() {
+		return field;
+	}
+
+	public int getRebuildCount() {
+		return rebuildCount;
+	}
+
+	public int getRepairCount() {
+		return repairCount;
+	}
+
+	long getLastUseTime() {
+		return lastUseTime;
+	}
+
+	void setLastUseTime(long time) {
+		this.lastUseTime = time;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * 关闭流场并停止监听Field2D的修改,关闭后的流场不再重建,所有格子都视为无法到达(方向为Config.EMPTY)
+	 */
+	@Override
+	public void close() {
+		field.removeListener(this);
+		costs = null;
+		parents = null;
+		changedCells.clear();
+		openList.clear();
+		rebuildAll = true;
+		closed = true;
+	}
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map;
+
+import loon.LRelease;
+import loon.utils.TArray;
+
+/**
+ * 流场缓存,为同一个Field2D上的多个目标点保存最近使用的FlowField,超过数量上限时关闭最久未使用的流场.
+ * 
+ * 被关闭的流场不再跟随地图修改,查询时只会返回无法到达,因此不要长期持有get返回的对象,每次查询都应通过管理器获取.
+ */
+public class FlowFieldManager implements LRelease {
+
+	private final TArray<FlowField> flowFields;
+
+	private final Field2D field;
+
+	private final boolean diagonal;
+
+	private int maxGoals;
+
+	private long useTick;
+
+	private int hits, misses, evictions;
+
+	public FlowFieldManager(Field2D field) {
+		this(field, 8, true);
+	}
+
+	public FlowFieldManager(Field2D field, int maxGoals, boolean diagonal) {
+		this.field = field;
+		this.maxGoals = maxGoals < 1 ? 1 : maxGoals;
+		this.diagonal = diagonal;
+		this.flowFields = new TArray<FlowField>(this.maxGoals);
+	}
+
+	/**
+	 * 获得指向指定目标点的流场,不存在时新建
+	 * 
+	 * @param goalX
+	 * @param goalY
+	 * @return
+	 */
+	public FlowField get(int goalX, int goalY) {
+		FlowField flow = null;
+		for (int i = 0; i < flowFields.size; i++) {
+			FlowField f = flowFields.get(i);
+			if (f.getGoalX() == goalX && f.getGoalY() == goalY) {
+				flow = f;
+				break;
+			}
+		}
+		if (flow == null) {
+			misses++;
+			if (flowFields.size >= maxGoals) {
+				evict();
+			}
+			flow = new FlowField(field, goalX, goalY, diagonal);
+			flowFields.add(flow);
+		} else {
+			hits++;
+		}
+		flow.setLastUseTime(++useTick);
+		return flow;
+	}
+
+	private void evict() {
+		int index = 0;
+		long oldest = Long.MAX_VALUE;
+		for (int i = 0; i < flowFields.size; i++) {
+			long time = flowFields.get(i).getLastUseTime();
+			if (time < oldest) {
+				oldest = time;
+				index = i;
+			}
+		}
+		FlowField flow = flowFields.removeIndex(index);
+		flow.close();
+		evictions++;
+	}
+
+	public boolean remove(int goalX, int goalY) {
+		for (int i = 0; i < flowFields.size; i++) {
+			FlowField f = flowFields.get(i);
+			if (f.getGoalX() == goalX && f.getGoalY() == goalY) {
+				flowFields.removeIndex(i);
+				f.close();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int getDirection(int goalX, int goalY, int x, int y) {
+		return get(goalX, goalY).getDirection(x, y);
+	}
+
+	public void setMaxGoals(int max) {
+		this.maxGoals = max < 1 ? 1 : max;
+		while (flowFields.size > maxGoals) {
+			evict();
+		}
+	}
+
+	public int getMaxGoals() {
+		return maxGoals;
+	}
+
+	public int size() {
+		return flowFields.size;
+	}
+
+	public Field2D getField() {
+		return field;
+	}
+
+	public int getHitCount() {
+		return hits;
+	}
+
+	public int getMissCount() {
+		return misses;
+	}
+
+	public int getEvictionCount() {
+		return evictions;
+	}
+
+	public void clear() {
+		for (int i = 0; i < flowFields.size; i++) {
+			flowFields.get(i).close();
+		}
+		flowFields.clear();
+	}
+
+	@Override
+	public void close() {
+		clear();
+	}
+
+}
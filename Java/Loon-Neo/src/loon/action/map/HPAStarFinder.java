@@ -0,0 +1,582 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map;
+
+import loon.LRelease;
+import loon.geom.Vector2f;
+import loon.utils.FloatArray;
+import loon.utils.IntArray;
+import loon.utils.IntPriorityQueue;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
+
+/**
+ * 分层寻径(HPA*)用类,将Field2D按固定大小分块,在块的边界上建立出入口节点,预先计算块内出入口间的距离形成抽象图,
+ * 寻径时先在抽象图上搜索,再逐段细化成逐格路径.
+ * 
+ * 注册为Field2D的监听器,当setTileType修改格子时只重建受影响的块,修改整个地图时才全部重建.适用于大地图上的远距离寻径,
+ * 所得路径接近但不保证为最短路径.
+ */
+public class HPAStarFinder implements Field2DListener, LRelease {
+
+	private final static float SQRT2 = MathUtils.sqrt(2f);
+
+	private final static float INFINITY = Float.MAX_VALUE;
+
+	private final static int MAX_ENTRANCE_WIDTH = 6;
+
+	private final static int[] OFFSET_X = { 0, 1, 0, -1, -1, 1, 1, -1 };
+
+	private final static int[] OFFSET_Y = { -1, 0, 1, 0, -1, -1, 1, 1 };
+
+	private static class Cluster {
+
+		int x0, y0, x1, y1;
+
+		final IntArray nodes = new IntArray(16);
+
+		final IntArray linkFrom = new IntArray(16);
+
+		final IntArray linkTo = new IntArray(16);
+
+		float[] dist;
+
+		boolean dirty;
+
+	}
+
+	private final IntPriorityQueue openList = new IntPriorityQueue(256);
+
+	private final IntArray dirtyClusters = new IntArray(16);
+
+	private final IntArray abstractPath = new IntArray(64);
+
+	private final IntArray localPath = new IntArray(64);
+
+	private final FloatArray startDist = new FloatArray(16);
+
+	private final FloatArray goalDist = new FloatArray(16);
+
+	private final Field2D field;
+
+	private final int clusterSize;
+
+	private final boolean diagonal;
+
+	private Cluster[] clusters;
+
+	private int width, height, clustersX, clustersY;
+
+	private boolean rebuildAll;
+
+	private float[] localScores;
+
+	private int[] localParents;
+
+	private int[] localMarks;
+
+	private int localStamp;
+
+	private float[] abstractScores;
+
+	private int[] abstractParents;
+
+	private int[] abstractMarks;
+
+	private int abstractStamp;
+
+	private AStarFindHeuristic findHeuristic;
+
+	private int expandedCount;
+
+	private int rebuildCount;
+
+	public HPAStarFinder(Field2D field) {
+		this(field, 16, true);
+	}
+
+	public HPAStarFinder(Field2D field, int clusterSize, boolean diagonal) {
+		this.field = field;
+		this.clusterSize = MathUtils.max(4, clusterSize);
+		this.diagonal = diagonal;
+		this.rebuildAll = true;
+		this.findHeuristic = AStarFinder.ASTAR_DIAGONAL;
+		field.addListener(this);
+	}
+
+	@Override
+	public void onTileChanged(Field2D f, int x, int y) {
+		if (rebuildAll || clusters == null) {
+			return;
+		}
+		int cx = x / clusterSize;
+		int cy = y / clusterSize;
+		markDirty(cx, cy);
+		Cluster c = clusters[cy * clustersX + cx];
+		if (x == c.x0) {
+			markDirty(cx - 1, cy);
+		}
+		if (x == c.x1 - 1) {
+			markDirty(cx + 1, cy);
+		}
+		if (y == c.y0) {
+			markDirty(cx, cy - 1);
+		}
+		if (y == c.y1 - 1) {
+			markDirty(cx, cy + 1);
+		}
+	}
+
+	@Override
+	public void onFieldChanged(Field2D f) {
+		rebuildAll = true;
+	}
+
+	private void markDirty(int cx, int cy) {
+		if (cx < 0 || cy < 0 || cx >= clustersX || cy >= clustersY) {
+			return;
+		}
+		int index = cy * clustersX + cx;
+		if (!clusters[index].dirty) {
+			clusters[index].dirty = true;
+			dirtyClusters.add(index);
+		}
+	}
+
+	private final boolean walkable(int x, int y) {
+		return field.isHit(x, y);
+	}
+
+	private final static float octile(int dx, int dy) {
+		return dx < dy ? (SQRT2 - 1f) * dx + dy : (SQRT2 - 1f) * dy + dx;
+	}
+
+	/**
+	 * 重建全部或者被标记为需要修复的块
+	 */
+	public void validate() {
+		if (rebuildAll) {
+			build();
+		} else if (dirtyClusters.length > 0) {
+			for (int i = 0; i < dirtyClusters.length; i++) {
+				rebuildCluster(clusters[dirtyClusters.items[i]]);
+			}
+			dirtyClusters.clear();
+		}
+	}
+
+	private void build() {
+		this.width = field.getWidth();
+		this.height = field.getHeight();
+		this.clustersX = (width + clusterSize - 1) / clusterSize;
+		this.clustersY = (height + clusterSize - 1) / clusterSize;
+		final int size = width * height;
+		if (localScores == null || localScores.length < size) {
+			localScores = new float[size];
+			localParents = new int[size];
+			localMarks = new int[size];
+			abstractScores = new float[size];
+			abstractParents = new int[size];
+			abstractMarks = new int[size];
+			localStamp = 0;
+			abstractStamp = 0;
+		}
+		clusters = new Cluster[clustersX * clustersY];
+		for (int cy = 0; cy < clustersY; cy++) {
+			for (int cx = 0; cx < clustersX; cx++) {
+				Cluster c = new Cluster();
+				c.x0 = cx * clusterSize;
+				c.y0 = cy * clusterSize;
+				c.x1 = MathUtils.min(c.x0 + clusterSize, width);
+				c.y1 = MathUtils.min(c.y0 + clusterSize, height);
+				clusters[cy * clustersX + cx] = c;
+			}
+		}
+		for (int i = 0; i < clusters.length; i++) {
+			rebuildCluster(clusters[i]);
+		}
+		dirtyClusters.clear();
+		rebuildAll = false;
+	}
+
+	private void rebuildCluster(Cluster c) {
+		c.dirty = false;
+		c.nodes.clear();
+		c.linkFrom.clear();
+		c.linkTo.clear();
+		if (c.x1 < width) {
+			scanBorder(c, c.x1 - 1, c.y0, c.x1, c.y0, 0, 1, c.y1 - c.y0);
+		}
+		if (c.x0 > 0) {
+			scanBorder(c, c.x0, c.y0, c.x0 - 1, c.y0, 0, 1, c.y1 - c.y0);
+		}
+		if (c.y1 < height) {
+			scanBorder(c, c.x0, c.y1 - 1, c.x0, c.y1, 1, 0, c.x1 - c.x0);
+		}
+		if (c.y0 > 0) {
+			scanBorder(c, c.x0, c.y0, c.x0, c.y0 - 1, 1, 0, c.x1 - c.x0);
+		}
+		final int count = c.nodes.length;
+		if (c.dist == null || c.dist.length < count * count) {
+			c.dist = new float[MathUtils.max(1, count * count)];
+		}
+		for (int i = 0; i < count; i++) {
+			localSearch(c, c.nodes.items[i], -1);
+			for (int j = 0; j < count; j++) {
+				int node = c.nodes.items[j];
+				c.dist[i * count + j] = reached(node) ? localScores[node] : INFINITY;
+			}
+		}
+		rebuildCount++;
+	}
+
+	/**
+	 * 扫描块的一条边界,inside为块内一侧的格子,outside为相邻块一侧的格子
+	 */
+	private void scanBorder(Cluster c, int insideX, int insideY, int outsideX, int outsideY, int stepX, int stepY,
+			int length) {
+		int begin = -1;
+		for (int i = 0; i <= length; i++) {
+			boolean open = i < length && walkable(insideX + stepX * i, insideY + stepY * i)
+					&& walkable(outsideX + stepX * i, outsideY + stepY * i);
+			if (open) {
+				if (begin == -1) {
+					begin = i;
+				}
+			} else if (begin != -1) {
+				int end = i - 1;
+				int size = end - begin + 1;
+				if (size < MAX_ENTRANCE_WIDTH) {
+					int mid = begin + (size - 1) / 2;
+					addTransition(c, insideX + stepX * mid, insideY + stepY * mid, outsideX + stepX * mid,
+							outsideY + stepY * mid);
+				} else {
+					addTransition(c, insideX + stepX * begin, insideY + stepY * begin, outsideX + stepX * begin,
+							outsideY + stepY * begin);
+					addTransition(c, insideX + stepX * end, insideY + stepY * end, outsideX + stepX * end,
+							outsideY + stepY * end);
+				}
+				begin = -1;
+			}
+		}
+	}
+
+	private void addTransition(Cluster c, int x, int y, int ox, int oy) {
+		int node = y * width + x;
+		int index = c.nodes.indexOf(node);
+		if (index == -1) {
+			index = c.nodes.length;
+			c.nodes.add(node);
+		}
+		c.linkFrom.add(index);
+		c.linkTo.add(oy * width + ox);
+	}
+
+	private Cluster clusterOf(int cell) {
+		return clusters[((cell / width) / clusterSize) * clustersX + (cell % width) / clusterSize];
+	}
+
+	/**
+	 * 在块内进行寻径,target为-1时计算起点到块内全部格子的距离
+	 */
+	private boolean localSearch(Cluster c, int from, int target) {
+		localStamp++;
+		if (localStamp == Integer.MAX_VALUE) {
+			for (int i = 0; i < localMarks.length; i++) {
+				localMarks[i] = 0;
+			}
+			localStamp = 1;
+		}
+		final int stamp = localStamp;
+		final int dirs = diagonal ? 8 : 4;
+		final int tx = target == -1 ? 0 : target % width;
+		final int ty = target == -1 ? 0 : target / width;
+		openList.clear();
+		localMarks[from] = stamp;
+		localScores[from] = 0;
+		localParents[from] = -1;
+		openList.add(from, 0);
+		for (; openList.size > 0;) {
+			int current = openList.pop();
+			if (current == target) {
+				return true;
+			}
+			if (localMarks[current] == -stamp) {
+				continue;
+			}
+			localMarks[current] = -stamp;
+			int cx = current % width;
+			int cy = current / width;
+			float g = localScores[current];
+			for (int i = 0; i < dirs; i++) {
+				int nx = cx + OFFSET_X[i];
+				int ny = cy + OFFSET_Y[i];
+				if (nx < c.x0 || ny < c.y0 || nx >= c.x1 || ny >= c.y1 || !walkable(nx, ny)) {
+					continue;
+				}
+				if (i >= 4 && (!walkable(cx + OFFSET_X[i], cy) || !walkable(cx, cy + OFFSET_Y[i]))) {
+					continue;
+				}
+				int next = ny * width + nx;
+				if (localMarks[next] == -stamp) {
+					continue;
+				}
+				float score = g + (i >= 4 ? SQRT2 : 1f);
+				if (localMarks[next] != stamp || score < localScores[next]) {
+					localMarks[next] = stamp;
+					localScores[next] = score;
+					localParents[next] = current;
+					float h = target == -1 ? 0 : octile(MathUtils.abs(tx - nx), MathUtils.abs(ty - ny));
+					openList.add(next, score + h);
+				}
+			}
+			expandedCount++;
+		}
+		return target == -1;
+	}
+
+	private final boolean reached(int cell) {
+		return localMarks[cell] == localStamp || localMarks[cell] == -localStamp;
+	}
+
+	private void distancesTo(Cluster c, int cell, FloatArray out) {
+		out.clear();
+		localSearch(c, cell, -1);
+		for (int i = 0; i < c.nodes.length; i++) {
+			int node = c.nodes.items[i];
+			out.add(reached(node) ? localScores[node] : INFINITY);
+		}
+	}
+
+	public TArray<Vector2f> find(int x1, int y1, int x2, int y2) {
+		return find(findHeuristic, x1, y1, x2, y2);
+	}
+
+	public TArray<Vector2f> find(AStarFindHeuristic heuristic, Vector2f start, Vector2f goal) {
+		return find(heuristic, start.x(), start.y(), goal.x(), goal.y());
+	}
+
+	/**
+	 * 检索两点间的路径,找不到时返回空的TArray
+	 * 
+	 * @param heuristic
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @return
+	 */
+	public TArray<Vector2f> find(AStarFindHeuristic heuristic, int x1, int y1, int x2, int y2) {
+		TArray<Vector2f> result = search(heuristic, x1, y1, x2, y2);
+		return result == null ? new TArray<Vector2f>() : result;
+	}
+
+	/**
+	 * 检索两点间的路径,找不到时返回null
+	 */
+	public TArray<Vector2f> search(AStarFindHeuristic heuristic, int x1, int y1, int x2, int y2) {
+		validate();
+		heuristic = (heuristic == null ? findHeuristic : heuristic);
+		expandedCount = 0;
+		if (x1 < 0 || y1 < 0 || x1 >= width || y1 >= height || !walkable(x2, y2)) {
+			return null;
+		}
+		final int start = y1 * width + x1;
+		final int goal = y2 * width + x2;
+		if (start == goal) {
+			TArray<Vector2f> result = new TArray<Vector2f>(1);
+			result.add(new Vector2f(x1, y1));
+			return result;
+		}
+		final Cluster startCluster = clusterOf(start);
+		final Cluster goalCluster = clusterOf(goal);
+		if (startCluster == goalCluster && localSearch(startCluster, start, goal)) {
+			localPath.clear();
+			appendLocal(start, goal);
+			return makePath(start);
+		}
+		distancesTo(startCluster, start, startDist);
+		distancesTo(goalCluster, goal, goalDist);
+		if (!abstractSearch(heuristic, start, goal, startCluster, goalCluster)) {
+			return null;
+		}
+		localPath.clear();
+		for (int i = abstractPath.length - 1; i > 0; i--) {
+			int from = abstractPath.items[i];
+			int to = abstractPath.items[i - 1];
+			Cluster c = clusterOf(from);
+			if (c == clusterOf(to)) {
+				if (!localSearch(c, from, to)) {
+					return null;
+				}
+				appendLocal(from, to);
+			} else {
+				localPath.add(to);
+			}
+		}
+		return makePath(start);
+	}
+
+	private void appendLocal(int from, int to) {
+		int mark = localPath.length;
+		for (int n = to; n != from; n = localParents[n]) {
+			localPath.add(n);
+		}
+		for (int i = mark, j = localPath.length - 1; i < j; i++, j--) {
+			localPath.swap(i, j);
+		}
+	}
+
+	private TArray<Vector2f> makePath(int start) {
+		TArray<Vector2f> result = new TArray<Vector2f>(localPath.length + 1);
+		result.add(new Vector2f(start % width, start / width));
+		for (int i = 0; i < localPath.length; i++) {
+			int cell = localPath.items[i];
+			result.add(new Vector2f(cell % width, cell / width));
+		}
+		return result;
+	}
+
+	private void relax(AStarFindHeuristic heuristic, int from, int to, float cost, int gx, int gy) {
+		if (cost >= INFINITY) {
+			return;
+		}
+		final int stamp = abstractStamp;
+		if (abstractMarks[to] == -stamp) {
+			return;
+		}
+		float score = abstractScores[from] + cost;
+		if (abstractMarks[to] != stamp || score < abstractScores[to]) {
+			abstractMarks[to] = stamp;
+			abstractScores[to] = score;
+			abstractParents[to] = from;
+			openList.add(to, score + heuristic.getScore(to % width, to / width, gx, gy));
+		}
+	}
+
+	private boolean abstractSearch(AStarFindHeuristic heuristic, int start, int goal, Cluster startCluster,
+			Cluster goalCluster) {
+		abstractStamp++;
+		if (abstractStamp == Integer.MAX_VALUE) {
+			for (int i = 0; i < abstractMarks.length; i++) {
+				abstractMarks[i] = 0;
+			}
+			abstractStamp = 1;
+		}
+		final int stamp = abstractStamp;
+		final int gx = goal % width;
+		final int gy = goal / width;
+		openList.clear();
+		abstractMarks[start] = stamp;
+		abstractScores[start] = 0;
+		abstractParents[start] = -1;
+		openList.add(start, 0);
+		for (; openList.size > 0;) {
+			int current = openList.pop();
+			if (abstractMarks[current] == -stamp) {
+				continue;
+			}
+			if (current == goal) {
+				abstractPath.clear();
+				for (int n = goal; n != -1; n = abstractParents[n]) {
+					abstractPath.add(n);
+				}
+				return true;
+			}
+			abstractMarks[current] = -stamp;
+			expandedCount++;
+			Cluster c = clusterOf(current);
+			int index = c.nodes.indexOf(current);
+			int count = c.nodes.length;
+			if (current == start) {
+				for (int j = 0; j < count; j++) {
+					relax(heuristic, current, c.nodes.items[j], startDist.items[j], gx, gy);
+				}
+			} else if (index != -1) {
+				for (int j = 0; j < count; j++) {
+					if (j != index) {
+						relax(heuristic, current, c.nodes.items[j], c.dist[index * count + j], gx, gy);
+					}
+				}
+			}
+			if (index != -1) {
+				for (int j = 0; j < c.linkFrom.length; j++) {
+					if (c.linkFrom.items[j] == index) {
+						relax(heuristic, current, c.linkTo.items[j], 1f, gx, gy);
+					}
+				}
+				if (c == goalCluster) {
+					relax(heuristic, current, goal, goalDist.items[index], gx, gy);
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 最近一次寻径中展开的节点数量(包括抽象图与块内细化)
+	 * 
+	 * @return
+	 */
+	public int getExpandedCount() {
+		return expandedCount;
+	}
+
+	/**
+	 * 块被重建的总次数
+	 * 
+	 * @return
+	 */
+	public int getRebuildCount() {
+		return rebuildCount;
+	}
+
+	public int getClusterSize() {
+		return clusterSize;
+	}
+
+	public AStarFindHeuristic getHeuristic() {
+		return findHeuristic;
+	}
+
+	public void setHeuristic(AStarFindHeuristic heuristic) {
+		this.findHeuristic = (heuristic == null ? AStarFinder.ASTAR_DIAGONAL : heuristic);
+	}
+
+	public Field2D getField() {
+		return field;
+	}
+
+	@Override
+	public void close() {
+		field.removeListener(this);
+		clusters = null;
+		localScores = null;
+		localParents = null;
+		localMarks = null;
+		abstractScores = null;
+		abstractParents = null;
+		abstractMarks = null;
+		dirtyClusters.clear();
+		rebuildAll = true;
+	}
+
+}
@@ -0,0 +1,379 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map;
+
+import loon.LRelease;
+import loon.geom.Vector2f;
+import loon.utils.IntArray;
+import loon.utils.IntPriorityQueue;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
+
+/**
+ * 跳点搜索(Jump Point Search)寻径器,适用于8方向移动且每格消耗相同的Field2D地图.
+ * 
+ * 在开阔地形上只展开拐点而不是全部格子,返回的路径格式与AStarFinder相同,逐格展开(包含起点与终点).
+ * 
+ * 注意:斜向移动时不允许穿过障碍物的拐角,而AStarFinder允许斜穿拐角,所以两者对同一地图得到的路径不一定相同,
+ * 在只能斜穿拐角通过的地形上,本类会返回更长的路径或找不到路径.
+ */
+public class JumpPointFinder implements LRelease {
+
+	private final static float SQRT2 = MathUtils.sqrt(2f);
+
+	public static TArray<Vector2f> find(AStarFindHeuristic heuristic, Field2D field, int x1, int y1, int x2, int y2) {
+		JumpPointFinder finder = new JumpPointFinder(heuristic);
+		TArray<Vector2f> result = finder.search(field, x1, y1, x2, y2);
+		finder.close();
+		return result == null ? new TArray<Vector2f>() : result;
+	}
+
+	public static TArray<Vector2f> find(AStarFindHeuristic heuristic, Field2D field, Vector2f start, Vector2f goal) {
+		return find(heuristic, field, start.x(), start.y(), goal.x(), goal.y());
+	}
+
+	private final IntPriorityQueue openList = new IntPriorityQueue(256);
+
+	private final IntArray jumpPoints = new IntArray(64);
+
+	private AStarFindHeuristic findHeuristic;
+
+	private Field2D field;
+
+	private int width, height, endX, endY;
+
+	private int[] parents;
+
+	private float[] scores;
+
+	private int[] visitMarks;
+
+	private int visitStamp;
+
+	private int capacity;
+
+	private int expandedCount;
+
+	public JumpPointFinder() {
+		this(null);
+	}
+
+	public JumpPointFinder(AStarFindHeuristic heuristic) {
+		this.findHeuristic = (heuristic == null ? AStarFinder.ASTAR_DIAGONAL : heuristic);
+	}
+
+	private void ensureSize(int size) {
+		if (size > capacity) {
+			parents = new int[size];
+			scores = new float[size];
+			visitMarks = new int[size];
+			visitStamp = 0;
+			capacity = size;
+		}
+	}
+
+	private final boolean walkable(int x, int y) {
+		return field.isHit(x, y);
+	}
+
+	/**
+	 * 检索指定地图中两点间的路径,找不到路径时返回null
+	 * 
+	 * @param field
+	 * @param startX
+	 * @param startY
+	 * @param goalX
+	 * @param goalY
+	 * @return
+	 */
+	public TArray<Vector2f> search(Field2D field, int startX, int startY, int goalX, int goalY) {
+		this.field = field;
+		this.width = field.getWidth();
+		this.height = field.getHeight();
+		this.endX = goalX;
+		this.endY = goalY;
+		this.expandedCount = 0;
+		if (startX < 0 || startY < 0 || startX >= width || startY >= height || !walkable(goalX, goalY)) {
+			return null;
+		}
+		if (startX == goalX && startY == goalY) {
+			TArray<Vector2f> result = new TArray<Vector2f>(1);
+			result.add(new Vector2f(startX, startY));
+			return result;
+		}
+		ensureSize(width * height);
+		visitStamp++;
+		if (visitStamp == Integer.MAX_VALUE) {
+			for (int i = 0; i < capacity; i++) {
+				visitMarks[i] = 0;
+			}
+			visitStamp = 1;
+		}
+		openList.clear();
+		final int stamp = visitStamp;
+		final int start = startY * width + startX;
+		final int goal = goalY * width + goalX;
+		visitMarks[start] = stamp;
+		parents[start] = -1;
+		scores[start] = 0;
+		openList.add(start, 0);
+		for (; openList.size > 0;) {
+			int current = openList.pop();
+			if (current == goal) {
+				return makePath(current);
+			}
+			if (visitMarks[current] == -stamp) {
+				continue;
+			}
+			visitMarks[current] = -stamp;
+			expandedCount++;
+			int cx = current % width;
+			int cy = current / width;
+			findNeighbors(current, cx, cy);
+			for (int i = 0; i < jumpPoints.length; i += 2) {
+				int jp = jump(jumpPoints.items[i], jumpPoints.items[i + 1], cx, cy);
+				if (jp == -1) {
+					continue;
+				}
+				if (visitMarks[jp] == -stamp) {
+					continue;
+				}
+				int jx = jp % width;
+				int jy = jp / width;
+				float g = scores[current] + octile(MathUtils.abs(jx - cx), MathUtils.abs(jy - cy));
+				if (visitMarks[jp] != stamp || g < scores[jp]) {
+					visitMarks[jp] = stamp;
+					scores[jp] = g;
+					parents[jp] = current;
+					openList.add(jp, g + findHeuristic.getScore(jx, jy, endX, endY));
+				}
+			}
+		}
+		return null;
+	}
+
+	private final static float octile(int dx, int dy) {
+		return dx < dy ? (SQRT2 - 1f) * dx + dy : (SQRT2 - 1f) * dy + dx;
+	}
+
+	private void addNeighbor(int x, int y) {
+		jumpPoints.add(x);
+		jumpPoints.add(y);
+	}
+
+	private void findNeighbors(int node, int x, int y) {
+		jumpPoints.clear();
+		int parent = parents[node];
+		if (parent == -1) {
+			boolean up = walkable(x, y - 1), right = walkable(x + 1, y), down = walkable(x, y + 1),
+					left = walkable(x - 1, y);
+			if (up) {
+				addNeighbor(x, y - 1);
+			}
+			if (right) {
+				addNeighbor(x + 1, y);
+			}
+			if (down) {
+				addNeighbor(x, y + 1);
+			}
+			if (left) {
+				addNeighbor(x - 1, y);
+			}
+			if (left && up && walkable(x - 1, y - 1)) {
+				addNeighbor(x - 1, y - 1);
+			}
+			if (right && up && walkable(x + 1, y - 1)) {
+				addNeighbor(x + 1, y - 1);
+			}
+			if (right && down && walkable(x + 1, y + 1)) {
+				addNeighbor(x + 1, y + 1);
+			}
+			if (left && down && walkable(x - 1, y + 1)) {
+				addNeighbor(x - 1, y + 1);
+			}
+			return;
+		}
+		int px = parent % width;
+		int py = parent / width;
+		int dx = MathUtils.sign(x - px);
+		int dy = MathUtils.sign(y - py);
+		if (dx != 0 && dy != 0) {
+			boolean nextY = walkable(x, y + dy);
+			boolean nextX = walkable(x + dx, y);
+			if (nextY) {
+				addNeighbor(x, y + dy);
+			}
+			if (nextX) {
+				addNeighbor(x + dx, y);
+			}
+			if (nextX && nextY && walkable(x + dx, y + dy)) {
+				addNeighbor(x + dx, y + dy);
+			}
+		} else if (dx != 0) {
+			boolean next = walkable(x + dx, y);
+			boolean top = walkable(x, y + 1);
+			boolean bottom = walkable(x, y - 1);
+			if (next) {
+				addNeighbor(x + dx, y);
+				if (top && walkable(x + dx, y + 1)) {
+					addNeighbor(x + dx, y + 1);
+				}
+				if (bottom && walkable(x + dx, y - 1)) {
+					addNeighbor(x + dx, y - 1);
+				}
+			}
+			if (top) {
+				addNeighbor(x, y + 1);
+			}
+			if (bottom) {
+				addNeighbor(x, y - 1);
+			}
+		} else {
+			boolean next = walkable(x, y + dy);
+			boolean right = walkable(x + 1, y);
+			boolean left = walkable(x - 1, y);
+			if (next) {
+				addNeighbor(x, y + dy);
+				if (right && walkable(x + 1, y + dy)) {
+					addNeighbor(x + 1, y + dy);
+				}
+				if (left && walkable(x - 1, y + dy)) {
+					addNeighbor(x - 1, y + dy);
+				}
+			}
+			if (right) {
+				addNeighbor(x + 1, y);
+			}
+			if (left) {
+				addNeighbor(x - 1, y);
+			}
+		}
+	}
+
+	/**
+	 * 沿直线方向跳跃,返回跳点索引,没有跳点时返回-1
+	 */
+	private int jumpStraight(int x, int y, int dx, int dy) {
+		for (;;) {
+			if (!walkable(x, y)) {
+				return -1;
+			}
+			if (x == endX && y == endY) {
+				return y * width + x;
+			}
+			if (dx != 0) {
+				if ((walkable(x, y - 1) && !walkable(x - dx, y - 1))
+						|| (walkable(x, y + 1) && !walkable(x - dx, y + 1))) {
+					return y * width + x;
+				}
+			} else {
+				if ((walkable(x - 1, y) && !walkable(x - 1, y - dy))
+						|| (walkable(x + 1, y) && !walkable(x + 1, y - dy))) {
+					return y * width + x;
+				}
+			}
+			if (!walkable(x + dx, y + dy)) {
+				return -1;
+			}
+			x += dx;
+			y += dy;
+		}
+	}
+
+	private int jump(int x, int y, int px, int py) {
+		int dx = x - px;
+		int dy = y - py;
+		if (dx == 0 || dy == 0) {
+			return jumpStraight(x, y, dx, dy);
+		}
+		for (;;) {
+			if (!walkable(x, y)) {
+				return -1;
+			}
+			if (x == endX && y == endY) {
+				return y * width + x;
+			}
+			if (jumpStraight(x + dx, y, dx, 0) != -1 || jumpStraight(x, y + dy, 0, dy) != -1) {
+				return y * width + x;
+			}
+			if (!walkable(x + dx, y) || !walkable(x, y + dy)) {
+				return -1;
+			}
+			x += dx;
+			y += dy;
+		}
+	}
+
+	private TArray<Vector2f> makePath(int node) {
+		jumpPoints.clear();
+		for (int n = node; n != -1; n = parents[n]) {
+			jumpPoints.add(n);
+		}
+		TArray<Vector2f> result = new TArray<Vector2f>();
+		int last = jumpPoints.items[jumpPoints.length - 1];
+		int x = last % width;
+		int y = last / width;
+		result.add(new Vector2f(x, y));
+		for (int i = jumpPoints.length - 2; i >= 0; i--) {
+			int next = jumpPoints.items[i];
+			int nx = next % width;
+			int ny = next / width;
+			int dx = MathUtils.sign(nx - x);
+			int dy = MathUtils.sign(ny - y);
+			while (x != nx || y != ny) {
+				x += dx;
+				y += dy;
+				result.add(new Vector2f(x, y));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 最近一次寻径中展开的节点数量
+	 * 
+	 * @return
+	 */
+	public int getExpandedCount() {
+		return expandedCount;
+	}
+
+	public AStarFindHeuristic getHeuristic() {
+		return findHeuristic;
+	}
+
+	public void setHeuristic(AStarFindHeuristic heuristic) {
+		this.findHeuristic = (heuristic == null ? AStarFinder.ASTAR_DIAGONAL : heuristic);
+	}
+
+	@Override
+	public void close() {
+		openList.clear();
+		jumpPoints.clear();
+		parents = null;
+		scores = null;
+		visitMarks = null;
+		capacity = 0;
+		visitStamp = 0;
+		field = null;
+	}
+
+}
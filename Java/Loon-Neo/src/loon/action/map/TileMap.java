@@ -26,6 +26,7 @@ import loon.LObject;
 import loon.LSysException;
 import loon.LSystem;
 import loon.LTexture;
+import loon.LTextureBatch.Cache;
 import loon.PlayerUtils;
 import loon.Screen;
 import loon.LTexture.Format;
@@ -46,6 +47,8 @@ import loon.geom.Vector2f;
 import loon.opengl.GLEx;
 import loon.opengl.LTexturePack;
 import loon.opengl.LTexturePackClip;
+import loon.utils.IntArray;
+import loon.utils.IntMap;
 import loon.utils.MathUtils;
 import loon.utils.TArray;
 
@@ -54,6 +57,85 @@ import loon.utils.TArray;
  */
 public class TileMap extends LObject<ISprite> implements ISprite {
 
+	/**
+	 * 地图分块,每块保存自身静态瓦片的顶点缓存(以块左上角为原点),滚动时只平移绘制,动画瓦片只记录位置,每帧单独绘制
+	 */
+	private static class MapChunk {
+
+		final int col, row;
+
+		Cache cache;
+
+		// 块内动画瓦片的格子坐标,依次为(x,y)
+		final IntArray animated = new IntArray(8);
+
+		int tileCount;
+
+		int drawStamp;
+
+		boolean active;
+
+		MapChunk(int col, int row) {
+			this.col = col;
+			this.row = row;
+		}
+
+		boolean isBuilt() {
+			return cache != null && !cache.isClosed();
+		}
+
+		void free() {
+			if (cache != null) {
+				cache.close();
+				cache = null;
+			}
+			animated.clear();
+			tileCount = 0;
+		}
+
+	}
+
+	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
+	private static class TileMapFieldListener implements Field2DListener {
+
+		private final TileMap map;
+
+		TileMapFieldListener(TileMap map) {
+			this.map = map;
+		}
+
+		@Override
+		public void onTileChanged(Field2D field, int x, int y) {
+			map.freeChunkAt(x, y);
+		}
+
+		@Override
+		public void onFieldChanged(Field2D field) {
+			map.dirty = true;
+		}
+
+	}
+
+	private final TileMapFieldListener fieldListener = new TileMapFieldListener(this);
+
+	private int chunkWidth = 16, chunkHeight = 16;
+
+	private int chunkCols, chunkRows;
+
+	private MapChunk[] chunks;
+
+	private final TArray<MapChunk> activeChunks = new TArray<MapChunk>();
+
+	private LTexture chunkTexture;
+
+	private int chunkStamp;
+
+	private int chunkBuildCount;
+
+	private final IntMap<TileImpl> tileLookup = new IntMap<TileImpl>();
+
+	private boolean lookupDirty = true;
+
 	private LTexture _background;
 
 	// 地图的Sprites
@@ -174,6 +256,10 @@ public class TileMap extends LObject<ISprite> implements ISprite {
 
 	public TileMap(Field2D field, Screen screen, int mWidth, int mHeight, Format format) {
 		this.field = field;
+		if (field != null) {
+			// 直接通过Field2D修改地图时同样需要重建对应的分块
+			field.addListener(fieldListener);
+		}
 		if (field != null && mWidth == -1 && mHeight == -1) {
 			this.maxWidth = field.getViewWidth();
 			this.maxHeight = field.getViewHeight();
@@ -252,6 +338,7 @@ public class TileMap extends LObject<ISprite> implements ISprite {
 		if (animations.size == 0) {
 			playAnimation = false;
 		}
+		this.lookupDirty = true;
 		this.dirty = true;
 		return this;
 	}
@@ -268,6 +355,7 @@ public class TileMap extends LObject<ISprite> implements ISprite {
 			}
 			animations.add(animation);
 			arrays.add(tile);
+			lookupDirty = true;
 			dirty = true;
 			return tile.imgId;
 		} else {
@@ -289,6 +377,7 @@ public class TileMap extends LObject<ISprite> implements ISprite {
 			tile.imgId = texturePack.putImage(img);
 			tile.attribute = attribute;
 			arrays.add(tile);
+			lookupDirty = true;
 			dirty = true;
 			return tile.imgId;
 		} else {
@@ -306,6 +395,7 @@ public class TileMap extends LObject<ISprite> implements ISprite {
 			tile.imgId = texturePack.putImage(img);
 			tile.attribute = attribute;
 			arrays.add(tile);
+			lookupDirty = true;
 			dirty = true;
 			return tile.imgId;
 		} else {
@@ -323,6 +413,7 @@ public class TileMap extends LObject<ISprite> implements ISprite {
 			tile.imgId = texturePack.putImage(res);
 			tile.attribute = attribute;
 			arrays.add(tile);
+			lookupDirty = true;
 			dirty = true;
 			return tile.imgId;
 		} else {
@@ -340,6 +431,7 @@ public class TileMap extends LObject<ISprite> implements ISprite {
 			tile.imgId = imgId;
 			tile.attribute = attribute;
 			arrays.add(tile);
+			lookupDirty = true;
 			dirty = true;
 		} else {
 			new LSysException("Map is no longer active, you can not add new tiles !");
@@ -408,6 +500,16 @@ public class TileMap extends LObject<ISprite> implements ISprite {
 		return this;
 	}
 
+	private void freeChunkAt(int x, int y) {
+		if (chunks != null && chunkCols * chunkWidth >= field.getWidth()
+				&& chunkRows * chunkHeight >= field.getHeight()) {
+			MapChunk chunk = chunks[(y / chunkHeight) * chunkCols + (x / chunkWidth)];
+			if (chunk != null) {
+				chunk.free();
+			}
+		}
+	}
+
 	public TileMap addMapSprite(ISprite sprite) {
 		_mapSprites.add(sprite);
 		return this;
@@ -455,101 +557,202 @@ public class TileMap extends LObject<ISprite> implements ISprite {
 			completed();
 			return;
 		}
-		dirty = dirty || !texturePack.existCache();
-		if (!dirty && lastOffsetX == offsetX && lastOffsetY == offsetY) {
-			texturePack.postCache();
-			if (playAnimation) {
-				int[][] maps = field.getMap();
-				for (int i = firstTileX; i < lastTileX; i++) {
-					for (int j = firstTileY; j < lastTileY; j++) {
-						if (i > -1 && j > -1 && i < field.getWidth() && j < field.getHeight()) {
-							int id = maps[j][i];
-							for (TileImpl tile : arrays) {
-								if (tile.isAnimation && tile.idx == id) {
-									if (useBatch) {
-										LColor tmp = batch.getColor();
-										batch.setColor(baseColor);
-										batch.draw(tile.animation.getSpriteImage(),
-												field.tilesToWidthPixels(i) + offsetX,
-												field.tilesToHeightPixels(j) + offsetY, field.getTileWidth(),
-												field.getTileHeight());
-										batch.setColor(tmp);
-									} else {
-										g.draw(tile.animation.getSpriteImage(), field.tilesToWidthPixels(i) + offsetX,
-												field.tilesToHeightPixels(j) + offsetY, field.getTileWidth(),
-												field.getTileHeight(), baseColor);
-									}
-								}
-							}
-						}
+		if (arrays.size == 0) {
+			throw new LSysException("Not to add any tiles !");
+		}
+		if (lookupDirty) {
+			tileLookup.clear();
+			for (TileImpl tile : arrays) {
+				tileLookup.put(tile.idx, tile);
+			}
+			lookupDirty = false;
+		}
+		final LTexture texture = texturePack.pack();
+		if (dirty || texture != chunkTexture || chunks == null
+				|| chunkCols != (field.getWidth() + chunkWidth - 1) / chunkWidth
+				|| chunkRows != (field.getHeight() + chunkHeight - 1) / chunkHeight) {
+			resetChunks();
+			chunkTexture = texture;
+			dirty = false;
+		}
+
+		firstTileX = field.pixelsToTilesWidth(-offsetX);
+		firstTileY = field.pixelsToTilesHeight(-offsetY);
+
+		lastTileX = firstTileX + field.pixelsToTilesWidth(maxWidth) + 1;
+		lastTileX = MathUtils.min(lastTileX, field.getWidth());
+		lastTileY = firstTileY + field.pixelsToTilesHeight(maxHeight) + 1;
+		lastTileY = MathUtils.min(lastTileY, field.getHeight());
+
+		final int startX = MathUtils.max(0, firstTileX);
+		final int startY = MathUtils.max(0, firstTileY);
+		if (startX < lastTileX && startY < lastTileY) {
+			final int firstCol = startX / chunkWidth;
+			final int firstRow = startY / chunkHeight;
+			final int lastCol = (lastTileX - 1) / chunkWidth;
+			final int lastRow = (lastTileY - 1) / chunkHeight;
+			final int stamp = ++chunkStamp;
+			final int chunkPixelWidth = field.tilesToWidthPixels(chunkWidth);
+			final int chunkPixelHeight = field.tilesToHeightPixels(chunkHeight);
+			// 已生成的块只平移绘制,新出现在视野中的块才生成顶点缓存
+			for (int row = firstRow; row <= lastRow; row++) {
+				for (int col = firstCol; col <= lastCol; col++) {
+					MapChunk chunk = chunks[row * chunkCols + col];
+					if (chunk == null) {
+						chunk = chunks[row * chunkCols + col] = new MapChunk(col, row);
 					}
+					final int chunkX = offsetX + col * chunkPixelWidth;
+					final int chunkY = offsetY + row * chunkPixelHeight;
+					if (!chunk.isBuilt()) {
+						buildChunk(chunk, texture, chunkX, chunkY);
+					} else if (chunk.tileCount > 0) {
+						texture.getTextureBatch().postCache(chunk.cache, null, chunkX, chunkY);
+					}
+					if (!chunk.active) {
+						chunk.active = true;
+						activeChunks.add(chunk);
+					}
+					chunk.drawStamp = stamp;
 				}
 			}
-		} else {
-			if (arrays.size == 0) {
-				throw new LSysException("Not to add any tiles !");
-			}
-
-			texturePack.glBegin();
-
-			firstTileX = field.pixelsToTilesWidth(-offsetX);
-			firstTileY = field.pixelsToTilesHeight(-offsetY);
-
-			lastTileX = firstTileX + field.pixelsToTilesWidth(maxWidth) + 1;
-			lastTileX = MathUtils.min(lastTileX, field.getWidth());
-			lastTileY = firstTileY + field.pixelsToTilesHeight(maxHeight) + 1;
-			lastTileY = MathUtils.min(lastTileY, field.getHeight());
-			int[][] maps = field.getMap();
-			for (int i = firstTileX; i < lastTileX; i++) {
-				for (int j = firstTileY; j < lastTileY; j++) {
-					if (i > -1 && j > -1 && i < field.getWidth() && j < field.getHeight()) {
-						int id = maps[j][i];
-						for (TileImpl tile : arrays) {
-							if (playAnimation) {
-								if (tile.idx == id) {
-									if (tile.isAnimation) {
-										if (useBatch) {
-											LColor tmp = batch.getColor();
-											batch.setColor(baseColor);
-											batch.draw(tile.animation.getSpriteImage(),
-													field.tilesToWidthPixels(i) + offsetX,
-													field.tilesToHeightPixels(j) + offsetY, field.getTileWidth(),
-													field.getTileHeight());
-											batch.setColor(tmp);
-										} else {
-											g.draw(tile.animation.getSpriteImage(),
-													field.tilesToWidthPixels(i) + offsetX,
-													field.tilesToHeightPixels(j) + offsetY, field.getTileWidth(),
-													field.getTileHeight(), baseColor);
-										}
-									} else {
-										texturePack.draw(tile.imgId, field.tilesToWidthPixels(i) + offsetX,
-												field.tilesToHeightPixels(j) + offsetY, field.getTileWidth(),
-												field.getTileHeight(), baseColor);
-									}
-								}
-							} else if (tile.idx == id) {
-								texturePack.draw(tile.imgId, field.tilesToWidthPixels(i) + offsetX,
-										field.tilesToHeightPixels(j) + offsetY, field.getTileWidth(),
-										field.getTileHeight(), baseColor);
-							}
-
-						}
+			if (playAnimation) {
+				for (int row = firstRow; row <= lastRow; row++) {
+					for (int col = firstCol; col <= lastCol; col++) {
+						drawAnimationTiles(g, batch, chunks[row * chunkCols + col], offsetX, offsetY);
 					}
 				}
 			}
-			texturePack.glEnd();
-			texturePack.saveCache();
-			lastOffsetX = offsetX;
-			lastOffsetY = offsetY;
-			dirty = false;
+			// 释放离开视野一个块以上的缓存
+			for (int i = activeChunks.size - 1; i > -1; i--) {
+				MapChunk chunk = activeChunks.get(i);
+				if (chunk.drawStamp != stamp && (chunk.col < firstCol - 1 || chunk.col > lastCol + 1
+						|| chunk.row < firstRow - 1 || chunk.row > lastRow + 1)) {
+					chunk.free();
+					chunk.active = false;
+					activeChunks.removeIndex(i);
+				}
+			}
 		}
+		lastOffsetX = offsetX;
+		lastOffsetY = offsetY;
 
 		if (listener != null) {
 			listener.draw(g, offsetX, offsetY);
 		}
 	}
 
+	private void buildChunk(MapChunk chunk, LTexture texture, int chunkX, int chunkY) {
+		chunk.free();
+		if (texture == null) {
+			return;
+		}
+		final int tileWidth = field.getTileWidth();
+		final int tileHeight = field.getTileHeight();
+		final int startX = chunk.col * chunkWidth;
+		final int startY = chunk.row * chunkHeight;
+		final int endX = MathUtils.min(startX + chunkWidth, field.getWidth());
+		final int endY = MathUtils.min(startY + chunkHeight, field.getHeight());
+		texturePack.glBegin();
+		for (int j = startY; j < endY; j++) {
+			for (int i = startX; i < endX; i++) {
+				TileImpl tile = tileLookup.get(field.getTileType(i, j));
+				if (tile == null) {
+					continue;
+				}
+				if (tile.isAnimation) {
+					chunk.animated.add(i);
+					chunk.animated.add(j);
+				} else {
+					texturePack.draw(tile.imgId, (i - startX) * tileWidth, (j - startY) * tileHeight, tileWidth,
+							tileHeight, baseColor);
+					chunk.tileCount++;
+				}
+			}
+		}
+		texture.setBatchPos(chunkX, chunkY);
+		texturePack.glEnd();
+		texture.setBatchPos(0, 0);
+		chunk.cache = texture.newBatchCache();
+		chunkBuildCount++;
+	}
+
+	private void drawAnimationTiles(GLEx g, SpriteBatch batch, MapChunk chunk, int offsetX, int offsetY) {
+		if (chunk == null || chunk.animated.length == 0) {
+			return;
+		}
+		final int tileWidth = field.getTileWidth();
+		final int tileHeight = field.getTileHeight();
+		for (int n = 0; n < chunk.animated.length; n += 2) {
+			final int i = chunk.animated.get(n);
+			final int j = chunk.animated.get(n + 1);
+			if (i < firstTileX || i >= lastTileX || j < firstTileY || j >= lastTileY) {
+				continue;
+			}
+			TileImpl tile = tileLookup.get(field.getTileType(i, j));
+			if (tile == null || !tile.isAnimation) {
+				continue;
+			}
+			if (batch != null) {
+				LColor tmp = batch.getColor();
+				batch.setColor(baseColor);
+				batch.draw(tile.animation.getSpriteImage(), field.tilesToWidthPixels(i) + offsetX,
+						field.tilesToHeightPixels(j) + offsetY, tileWidth, tileHeight);
+				batch.setColor(tmp);
+			} else {
+				g.draw(tile.animation.getSpriteImage(), field.tilesToWidthPixels(i) + offsetX,
+						field.tilesToHeightPixels(j) + offsetY, tileWidth, tileHeight, baseColor);
+			}
+		}
+	}
+
+	private void resetChunks() {
+		freeChunks();
+		chunkCols = (field.getWidth() + chunkWidth - 1) / chunkWidth;
+		chunkRows = (field.getHeight() + chunkHeight - 1) / chunkHeight;
+		chunks = new MapChunk[chunkCols * chunkRows];
+	}
+
+	private void freeChunks() {
+		for (int i = activeChunks.size - 1; i > -1; i--) {
+			MapChunk chunk = activeChunks.get(i);
+			chunk.free();
+			chunk.active = false;
+		}
+		activeChunks.clear();
+		chunks = null;
+	}
+
+	/**
+	 * 设定地图分块的大小(以瓦片为单位)
+	 * 
+	 * @param w
+	 * @param h
+	 * @return
+	 */
+	public TileMap setChunkSize(int w, int h) {
+		this.chunkWidth = MathUtils.max(1, w);
+		this.chunkHeight = MathUtils.max(1, h);
+		this.dirty = true;
+		return this;
+	}
+
+	public int getChunkWidth() {
+		return chunkWidth;
+	}
+
+	public int getChunkHeight() {
+		return chunkHeight;
+	}
+
+	/**
+	 * 地图分块缓存的生成次数
+	 * 
+	 * @return
+	 */
+	public int getChunkBuildCount() {
+		return chunkBuildCount;
+	}
+
 	public void scrollDown(float distance) {
 		this.offset.y = limitOffsetY(MathUtils.min((this.offset.y + distance),
 				(MathUtils.max(0, this.field.getViewHeight() - getContainerHeight()))));
@@ -1152,6 +1355,12 @@ public class TileMap extends LObject<ISprite> implements ISprite {
 		playAnimation = false;
 		roll = false;
 		animations.clear();
+		freeChunks();
+		if (field != null) {
+			field.removeListener(fieldListener);
+		}
+		tileLookup.clear();
+		chunkTexture = null;
 		if (texturePack != null) {
 			texturePack.close();
 			texturePack = null;
@@ -0,0 +1,513 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map.tmx;
+
+import loon.BaseIO;
+import loon.LRelease;
+import loon.LSysException;
+import loon.LSystem;
+import loon.action.map.Field2D;
+import loon.action.map.TileMapConfig;
+import loon.action.map.tmx.TMXTileLayer.Compression;
+import loon.action.map.tmx.TMXTileLayer.Encoding;
+import loon.utils.ArrayByte;
+import loon.utils.IntArray;
+import loon.utils.IntMap;
+import loon.utils.MathUtils;
+import loon.utils.NumberUtils;
+import loon.utils.TArray;
+import loon.utils.xml.XMLDocument;
+import loon.utils.xml.XMLElement;
+import loon.utils.xml.XMLParser;
+
+/**
+ * TMX地图瓦片数据的二进制格式,瓦片按固定大小分块保存,每块可以单独定位并解码,读取时只解码实际访问到的块,
+ * 所以加载耗时只与使用到的区域相关,而与整张地图的大小无关.
+ * 
+ * 格式(大端序):'LTMB',版本,地图宽,地图高,瓦片宽,瓦片高,分块大小,层数,然后依次是每一层的名称,是否可见,透明度,分块偏移表,
+ * 每块数据以类型开头(0为原始gid,1为游程编码),gid均为TMX中的原始值(包含翻转标记).
+ * 
+ * 离线转换可使用convert或convertText把tmx文件转换为此格式.
+ */
+public class TMXBinaryMap implements LRelease {
+
+	public final static int MAGIC = 0x4C544D42;
+
+	public final static int VERSION = 1;
+
+	public final static int DEFAULT_CHUNK_SIZE = 32;
+
+	private final static int CHUNK_RAW = 0;
+
+	private final static int CHUNK_RLE = 1;
+
+	private static class Layer {
+
+		String name;
+
+		boolean visible;
+
+		float opacity;
+
+		int[] offsets;
+
+		final IntMap<int[]> chunks = new IntMap<int[]>();
+
+		// 已解码块的先后顺序,超出缓存数量时先释放最早解码的块
+		final IntArray order = new IntArray(16);
+
+	}
+
+	private final ArrayByte data;
+
+	private final TArray<Layer> layers;
+
+	private final int width, height;
+
+	private final int tileWidth, tileHeight;
+
+	private final int chunkSize, chunkCols, chunkRows;
+
+	private int maxCachedChunks = 64;
+
+	private int decodedCount;
+
+	private boolean closed;
+
+	public TMXBinaryMap(String path) {
+		this(BaseIO.loadArrayByte(path));
+	}
+
+	public TMXBinaryMap(byte[] bytes) {
+		this(new ArrayByte(bytes));
+	}
+
+	public TMXBinaryMap(ArrayByte bytes) {
+		if (bytes == null) {
+			throw new LSysException("The binary map data is null !");
+		}
+		this.data = bytes;
+		this.data.setByteOrder(ArrayByte.BIG_ENDIAN);
+		this.data.setPosition(0);
+		if (data.readInt() != MAGIC) {
+			throw new LSysException("Invalid binary map data, the magic number does not match !");
+		}
+		int version = data.readInt();
+		if (version != VERSION) {
+			throw new LSysException("Unsupported binary map version: " + version);
+		}
+		this.width = data.readInt();
+		this.height = data.readInt();
+		this.tileWidth = data.readInt();
+		this.tileHeight = data.readInt();
+		this.chunkSize = data.readInt();
+		this.chunkCols = (width + chunkSize - 1) / chunkSize;
+		this.chunkRows = (height + chunkSize - 1) / chunkSize;
+		final int count = data.readInt();
+		this.layers = new TArray<Layer>(count);
+		try {
+			// 只读取各层的偏移表,块数据在访问时才解码
+			for (int i = 0; i < count; i++) {
+				Layer layer = new Layer();
+				layer.name = data.readUTF();
+				layer.visible = data.readBoolean();
+				layer.opacity = data.readFloat();
+				final int chunkCount = data.readInt();
+				layer.offsets = new int[chunkCount];
+				for (int j = 0; j < chunkCount; j++) {
+					layer.offsets[j] = data.readInt();
+				}
+				layers.add(layer);
+			}
+		} catch (Exception ex) {
+			throw new LSysException("Invalid binary map data !", ex);
+		}
+	}
+
+	private int[] getChunk(Layer layer, int index) {
+		int[] chunk = layer.chunks.get(index);
+		if (chunk != null) {
+			return chunk;
+		}
+		chunk = new int[chunkSize * chunkSize];
+		data.setPosition(layer.offsets[index]);
+		final int type = data.read();
+		if (type == CHUNK_RAW) {
+			for (int i = 0; i < chunk.length; i++) {
+				chunk[i] = data.readInt();
+			}
+		} else if (type == CHUNK_RLE) {
+			int idx = 0;
+			while (idx < chunk.length) {
+				final int gid = data.readInt();
+				final int run = data.readInt();
+				for (int i = 0; i < run && idx < chunk.length; i++) {
+					chunk[idx++] = gid;
+				}
+			}
+		} else {
+			throw new LSysException("Invalid chunk type: " + type);
+		}
+		if (layer.order.length >= maxCachedChunks) {
+			layer.chunks.remove(layer.order.removeIndex(0));
+		}
+		layer.chunks.put(index, chunk);
+		layer.order.add(index);
+		decodedCount++;
+		return chunk;
+	}
+
+	private Layer getLayer(int index) {
+		if (closed) {
+			throw new LSysException("The binary map is closed !");
+		}
+		return layers.get(index);
+	}
+
+	/**
+	 * 返回指定格子的原始gid(包含翻转标记),超出地图范围时返回0
+	 * 
+	 * @param layer
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int getGID(int layer, int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return 0;
+		}
+		final int[] chunk = getChunk(getLayer(layer), (y / chunkSize) * chunkCols + (x / chunkSize));
+		return chunk[(y % chunkSize) * chunkSize + (x % chunkSize)];
+	}
+
+	/**
+	 * 读取指定区域的原始gid(按行排列),只解码与此区域相交的块
+	 * 
+	 * @param layer
+	 * @param x
+	 * @param y
+	 * @param w
+	 * @param h
+	 * @param dest
+	 *            为null或长度不足时新建数组
+	 * @return
+	 */
+	public int[] readRegion(int layer, int x, int y, int w, int h, int[] dest) {
+		if (dest == null || dest.length < w * h) {
+			dest = new int[w * h];
+		}
+		final Layer l = getLayer(layer);
+		final int startX = MathUtils.max(0, x);
+		final int startY = MathUtils.max(0, y);
+		final int endX = MathUtils.min(width, x + w);
+		final int endY = MathUtils.min(height, y + h);
+		if (startX >= endX || startY >= endY) {
+			for (int i = 0, size = w * h; i < size; i++) {
+				dest[i] = 0;
+			}
+			return dest;
+		}
+		if (startX != x || startY != y || endX != x + w || endY != y + h) {
+			for (int i = 0, size = w * h; i < size; i++) {
+				dest[i] = 0;
+			}
+		}
+		for (int row = startY / chunkSize, lastRow = (endY - 1) / chunkSize; row <= lastRow; row++) {
+			for (int col = startX / chunkSize, lastCol = (endX - 1) / chunkSize; col <= lastCol; col++) {
+				final int[] chunk = getChunk(l, row * chunkCols + col);
+				final int chunkX = col * chunkSize;
+				final int chunkY = row * chunkSize;
+				final int fromX = MathUtils.max(startX, chunkX);
+				final int toX = MathUtils.min(endX, chunkX + chunkSize);
+				final int fromY = MathUtils.max(startY, chunkY);
+				final int toY = MathUtils.min(endY, chunkY + chunkSize);
+				for (int ty = fromY; ty < toY; ty++) {
+					System.arraycopy(chunk, (ty - chunkY) * chunkSize + (fromX - chunkX), dest,
+							(ty - y) * w + (fromX - x), toX - fromX);
+				}
+			}
+		}
+		return dest;
+	}
+
+	/**
+	 * 以指定区域的gid(去掉翻转标记)生成Field2D,可直接用于TileMap
+	 * 
+	 * @param layer
+	 * @param x
+	 * @param y
+	 * @param w
+	 * @param h
+	 * @return
+	 */
+	public Field2D newGIDField2D(int layer, int x, int y, int w, int h) {
+		final int[] gids = readRegion(layer, x, y, w, h, null);
+		final int mask = (int) ~(TMXMap.FLIPPED_HORIZONTALLY_FLAG | TMXMap.FLIPPED_VERTICALLY_FLAG
+				| TMXMap.FLIPPED_DIAGONALLY_FLAG);
+		int[][] maps = new int[h][w];
+		for (int j = 0; j < h; j++) {
+			for (int i = 0; i < w; i++) {
+				maps[j][i] = gids[j * w + i] & mask;
+			}
+		}
+		Field2D field2d = new Field2D(maps, tileWidth, tileHeight);
+		field2d.setName(getLayerName(layer));
+		return field2d;
+	}
+
+	/**
+	 * 把整层数据写入已有的TMXTileLayer(两者尺寸必须一致)
+	 * 
+	 * @param layer
+	 * @param tileLayer
+	 */
+	public void fillLayer(int layer, TMXTileLayer tileLayer) {
+		if (tileLayer.getWidth() != width || tileLayer.getHeight() != height) {
+			throw new LSysException("The tile layer size does not match the binary map size !");
+		}
+		tileLayer.setTileGIDs(readRegion(layer, 0, 0, width, height, null));
+	}
+
+	/**
+	 * 释放已解码的块缓存
+	 */
+	public void clearCache() {
+		for (int i = 0; i < layers.size; i++) {
+			Layer layer = layers.get(i);
+			layer.chunks.clear();
+			layer.order.clear();
+		}
+	}
+
+	public int getLayerCount() {
+		return layers.size;
+	}
+
+	public String getLayerName(int layer) {
+		return getLayer(layer).name;
+	}
+
+	public boolean isLayerVisible(int layer) {
+		return getLayer(layer).visible;
+	}
+
+	public float getLayerOpacity(int layer) {
+		return getLayer(layer).opacity;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getTileWidth() {
+		return tileWidth;
+	}
+
+	public int getTileHeight() {
+		return tileHeight;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public int getMaxCachedChunks() {
+		return maxCachedChunks;
+	}
+
+	public void setMaxCachedChunks(int max) {
+		this.maxCachedChunks = MathUtils.max(1, max);
+	}
+
+	/**
+	 * 已解码的块数量
+	 * 
+	 * @return
+	 */
+	public int getDecodedCount() {
+		return decodedCount;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void close() {
+		clearCache();
+		layers.clear();
+		closed = true;
+	}
+
+	/**
+	 * 转换指定tmx文件为二进制地图数据
+	 * 
+	 * @param tmxPath
+	 * @return
+	 */
+	public static ArrayByte convert(String tmxPath) {
+		return convert(XMLParser.parse(tmxPath), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * 转换tmx文本为二进制地图数据
+	 * 
+	 * @param tmxText
+	 * @return
+	 */
+	public static ArrayByte convertText(String tmxText) {
+		return convert(XMLParser.loadText(tmxText), DEFAULT_CHUNK_SIZE);
+	}
+
+	public static ArrayByte convert(XMLDocument doc, int chunkSize) {
+		XMLElement root = doc.getRoot();
+		if (!root.getName().equals("map")) {
+			throw new LSysException("Invalid TMX map file. The first child must be a <map> element.");
+		}
+		final int width = root.getIntAttribute("width", 0);
+		final int height = root.getIntAttribute("height", 0);
+		TArray<String> names = new TArray<String>();
+		TArray<int[]> datas = new TArray<int[]>();
+		IntArray flags = new IntArray();
+		TArray<XMLElement> list = root.list();
+		for (XMLElement node : list) {
+			if ("layer".equals(node.getName())) {
+				XMLElement dataElement = node.getChildrenByName("data");
+				int[] gids = new int[width * height];
+				if (dataElement != null) {
+					Encoding encoding = TMXTileLayer.getEncoding(dataElement);
+					Compression compression = TMXTileLayer.getCompression(dataElement);
+					TMXTileLayer.readData(dataElement, encoding, compression, gids);
+				}
+				names.add(node.getAttribute("name", LSystem.EMPTY));
+				datas.add(gids);
+				flags.add(node.getBoolAttribute("visible", true) ? 1 : 0);
+				flags.add(NumberUtils.floatToIntBits(node.getFloatAttribute("opacity", 1f)));
+			}
+		}
+		return encode(width, height, root.getIntAttribute("tilewidth", 0), root.getIntAttribute("tileheight", 0),
+				names, datas, flags, chunkSize);
+	}
+
+	/**
+	 * 转换已加载的TMXMap为二进制地图数据
+	 * 
+	 * @param map
+	 * @return
+	 */
+	public static ArrayByte encode(TMXMap map) {
+		return encode(map, DEFAULT_CHUNK_SIZE);
+	}
+
+	public static ArrayByte encode(TMXMap map, int chunkSize) {
+		TArray<String> names = new TArray<String>();
+		TArray<int[]> datas = new TArray<int[]>();
+		IntArray flags = new IntArray();
+		TArray<TMXTileLayer> tileLayers = map.getTileLayers();
+		for (int i = 0; i < tileLayers.size; i++) {
+			TMXTileLayer layer = tileLayers.get(i);
+			names.add(layer.getName());
+			datas.add(layer.getTileGIDs());
+			flags.add(layer.isVisible() ? 1 : 0);
+			flags.add(NumberUtils.floatToIntBits(layer.getOpacity()));
+		}
+		return encode(map.getWidth(), map.getHeight(), map.getTileWidth(), map.getTileHeight(), names, datas, flags,
+				chunkSize);
+	}
+
+	private static ArrayByte encode(int width, int height, int tileWidth, int tileHeight, TArray<String> names,
+			TArray<int[]> datas, IntArray flags, int chunkSize) {
+		chunkSize = MathUtils.max(1, chunkSize);
+		final int chunkCols = (width + chunkSize - 1) / chunkSize;
+		final int chunkRows = (height + chunkSize - 1) / chunkSize;
+		final int chunkCount = chunkCols * chunkRows;
+		ArrayByte out = new ArrayByte(MathUtils.max(1024, width * height));
+		out.setByteOrder(ArrayByte.BIG_ENDIAN);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(tileWidth);
+			out.writeInt(tileHeight);
+			out.writeInt(chunkSize);
+			out.writeInt(datas.size);
+			int[] tablePositions = new int[datas.size];
+			for (int i = 0; i < datas.size; i++) {
+				out.writeUTF(names.get(i));
+				out.writeBoolean(flags.get(i * 2) != 0);
+				out.writeFloat(NumberUtils.intBitsToFloat(flags.get(i * 2 + 1)));
+				out.writeInt(chunkCount);
+				tablePositions[i] = out.position();
+				for (int j = 0; j < chunkCount; j++) {
+					out.writeInt(0);
+				}
+			}
+			final int[] chunk = new int[chunkSize * chunkSize];
+			for (int i = 0; i < datas.size; i++) {
+				final int[] gids = datas.get(i);
+				for (int j = 0; j < chunkCount; j++) {
+					final int startX = (j % chunkCols) * chunkSize;
+					final int startY = (j / chunkCols) * chunkSize;
+					int runs = 0;
+					for (int n = 0; n < chunk.length; n++) {
+						int tx = startX + (n % chunkSize);
+						int ty = startY + (n / chunkSize);
+						chunk[n] = (tx < width && ty < height) ? gids[ty * width + tx] : 0;
+						if (n == 0 || chunk[n] != chunk[n - 1]) {
+							runs++;
+						}
+					}
+					final int offset = out.position();
+					out.setPosition(tablePositions[i] + j * 4);
+					out.writeInt(offset);
+					out.setPosition(offset);
+					// 游程编码更小时使用游程编码,否则保存原始gid
+					if (runs * 2 < chunk.length) {
+						out.writeByte(CHUNK_RLE);
+						int start = 0;
+						for (int n = 1; n <= chunk.length; n++) {
+							if (n == chunk.length || chunk[n] != chunk[start]) {
+								out.writeInt(chunk[start]);
+								out.writeInt(n - start);
+								start = n;
+							}
+						}
+					} else {
+						out.writeByte(CHUNK_RAW);
+						for (int n = 0; n < chunk.length; n++) {
+							out.writeInt(chunk[n]);
+						}
+					}
+				}
+			}
+		} catch (Exception ex) {
+			throw new LSysException("Binary map encode exception !", ex);
+		}
+		out.truncate();
+		return out;
+	}
+
+}
@@ -20,7 +20,6 @@
  */
 package loon.action.map.tmx;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
@@ -46,7 +45,8 @@ public class TMXTileLayer extends TMXMapLayer {
 		NONE, GZIP, ZLIB
 	}
 
-	private TMXMapTile[] tileMap;
+	// 保存原始gid(包含翻转标记),而不是每个格子一个TMXMapTile对象
+	private int[] tileGIDs;
 
 	private Encoding encoding;
 	private Compression compression;
@@ -72,172 +72,208 @@ public class TMXTileLayer extends TMXMapLayer {
 		if (nodes != null)
 			properties.parse(nodes);
 
-		tileMap = new TMXMapTile[width * height];
+		tileGIDs = new int[width * height];
 
 		XMLElement dataElement = element.getChildrenByName("data");
 
+		encoding = getEncoding(dataElement);
+		compression = getCompression(dataElement);
+
+		readData(dataElement, encoding, compression, tileGIDs);
+	}
+
+	static Encoding getEncoding(XMLElement dataElement) {
 		if (dataElement.hasAttribute("encoding")) {
 			switch (dataElement.getAttribute("encoding", LSystem.EMPTY).trim().toLowerCase()) {
 			case "base64":
-				encoding = Encoding.BASE64;
-				break;
+				return Encoding.BASE64;
 			case "csv":
-				encoding = Encoding.CSV;
-				break;
-
+				return Encoding.CSV;
 			default:
-				encoding = Encoding.XML;
+				return Encoding.XML;
 			}
 		}
+		return Encoding.XML;
+	}
 
+	static Compression getCompression(XMLElement dataElement) {
 		if (dataElement.hasAttribute("compression")) {
 			switch (dataElement.getAttribute("compression", LSystem.EMPTY).trim().toLowerCase()) {
 			case "gzip":
-				compression = Compression.GZIP;
-				break;
+				return Compression.GZIP;
 			case "zlib":
-				compression = Compression.ZLIB;
-				break;
+				return Compression.ZLIB;
 			default:
-				compression = Compression.NONE;
+				return Compression.NONE;
 			}
 		}
+		return Compression.NONE;
+	}
 
+	/**
+	 * 把data节点中的瓦片数据直接解码到gid数组中
+	 * 
+	 * @param dataElement
+	 * @param encoding
+	 * @param compression
+	 * @param gids
+	 */
+	static void readData(XMLElement dataElement, Encoding encoding, Compression compression, int[] gids) {
 		switch (encoding) {
 		case XML:
-			parseXML(dataElement);
+			parseXML(dataElement, gids);
 			break;
 
 		case BASE64:
 			try {
-				parseBase64(dataElement.getContents());
+				parseBase64(dataElement.getContents(), compression, gids);
 			} catch (Throwable e) {
 				LSystem.error("TMXTile parse base64 exception", e);
 			}
 			break;
 
 		case CSV:
-			parseCSV(dataElement.getContents());
+			parseCSV(dataElement.getContents(), gids);
 			break;
 		}
 	}
 
-	private void parseXML(XMLElement element) {
+	private static void parseXML(XMLElement element, int[] gids) {
 		XMLElement nodes = element.getChildrenByName("tile");
 		TArray<XMLElement> list = nodes.list();
-		for (int tileCount = 0; tileCount < list.size; tileCount++) {
+		for (int tileCount = 0, size = MathUtils.min(list.size, gids.length); tileCount < size; tileCount++) {
 			XMLElement tileElement = list.get(tileCount);
-
-			int gid = MathUtils.parseUnsignedInt(tileElement.getAttribute("gid", "-1"));
-
-			int tileSetIndex = map.findTileSetIndex(gid);
-
-			if (tileSetIndex != -1) {
-				TMXTileSet tileSet = map.getTileset(tileSetIndex);
-				tileMap[tileCount] = new TMXMapTile(gid, tileSet.getFirstGID(), tileSetIndex);
-			} else
-				tileMap[tileCount] = new TMXMapTile(gid, 0, -1);
+			gids[tileCount] = MathUtils.parseUnsignedInt(tileElement.getAttribute("gid", "-1"));
 		}
 	}
 
-	private static int byteToInt(byte b) {
-		return b & 0xFF;
-	}
-
-	private void parseBase64(String base64) throws Exception {
+	private static void parseBase64(String base64, Compression compression, int[] gids) throws Exception {
 		byte[] bytes = Base64Coder.decodeBase64(base64.toCharArray());
-		InputStream is = null;
+		final int length = gids.length * 4;
 		if (compression == null || compression == Compression.NONE) {
-			is = new ByteArrayInputStream(bytes);
-		} else if (compression == Compression.GZIP) {
-			is = new BufferedInputStream(new GZIPInputStream(new ByteArrayInputStream(bytes), bytes.length));
-		} else if (compression == Compression.ZLIB) {
-			is = new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+			if (bytes.length < length) {
+				throw new LSysException("Error Reading TMX Layer Data: Premature end of tile data");
+			}
+			decodeGIDs(bytes, gids);
+			return;
 		}
-		byte[] temp = new byte[4];
-		for (int y = 0; y < height; y++) {
-			for (int x = 0; x < width; x++) {
-				int read = is.read(temp);
-				while (read < temp.length) {
-					int curr = is.read(temp, read, temp.length - read);
-					if (curr == -1)
-						break;
-					read += curr;
-				}
-				if (read != temp.length) {
-					throw new LSysException("Error Reading TMX Layer Data: Premature end of tile data");
-				}
-				int gid = byteToInt(temp[0]) | byteToInt(temp[1]) << 8 | byteToInt(temp[2]) << 16
-						| byteToInt(temp[3]) << 24;
-
-				int tileSetIndex = map.findTileSetIndex(gid);
-
-				if (tileSetIndex != -1) {
-					TMXTileSet tileSet = map.getTileset(tileSetIndex);
-					tileMap[y * width + x] = new TMXMapTile(gid, tileSet.getFirstGID(), tileSetIndex);
-				} else {
-					tileMap[y * width + x] = new TMXMapTile(gid, 0, -1);
+		InputStream is = null;
+		if (compression == Compression.GZIP) {
+			is = new GZIPInputStream(new ByteArrayInputStream(bytes), MathUtils.max(512, bytes.length));
+		} else {
+			is = new InflaterInputStream(new ByteArrayInputStream(bytes));
+		}
+		// 直接解压到最终大小的数组中,再一次性转换为gid
+		byte[] buffer = new byte[length];
+		try {
+			int read = 0;
+			while (read < length) {
+				int curr = is.read(buffer, read, length - read);
+				if (curr == -1) {
+					break;
 				}
+				read += curr;
+			}
+			if (read != length) {
+				throw new LSysException("Error Reading TMX Layer Data: Premature end of tile data");
 			}
+		} finally {
+			is.close();
 		}
+		decodeGIDs(buffer, gids);
 	}
 
-	private void parseCSV(String csv) {
-		String[] tokens = csv.split(",");
-		int tileCount = 0;
-
-		for (String token : tokens) {
-			int gid = MathUtils.parseUnsignedInt(token.trim());
-
-			int tileSetIndex = map.findTileSetIndex(gid);
+	private static void decodeGIDs(byte[] bytes, int[] gids) {
+		for (int i = 0, n = 0, size = gids.length; i < size; i++, n += 4) {
+			gids[i] = (bytes[n] & 0xFF) | (bytes[n + 1] & 0xFF) << 8 | (bytes[n + 2] & 0xFF) << 16
+					| (bytes[n + 3] & 0xFF) << 24;
+		}
+	}
 
-			if (tileSetIndex != -1) {
-				TMXTileSet tileSet = map.getTileset(tileSetIndex);
-				tileMap[tileCount] = new TMXMapTile(gid, tileSet.getFirstGID(), tileSetIndex);
-			} else {
-				tileMap[tileCount] = new TMXMapTile(gid, 0, -1);
+	/**
+	 * 逐字符扫描csv数据,直接写入gid数组,不再分割出临时字符串
+	 * 
+	 * @param csv
+	 */
+	private static void parseCSV(CharSequence csv, int[] gids) {
+		int tileCount = 0;
+		long value = 0;
+		boolean digit = false;
+		for (int i = 0, size = csv.length(); i < size && tileCount < gids.length; i++) {
+			char ch = csv.charAt(i);
+			if (ch >= '0' && ch <= '9') {
+				value = value * 10 + (ch - '0');
+				digit = true;
+			} else if (ch == ',') {
+				gids[tileCount++] = digit ? (int) value : 0;
+				value = 0;
+				digit = false;
 			}
-
-			tileCount++;
+		}
+		if (digit && tileCount < gids.length) {
+			gids[tileCount] = (int) value;
 		}
 	}
 
 	public void setTileGID(int x, int y, int gid) {
-		int tileSetIndex = map.findTileSetIndex(gid);
-		if (tileSetIndex != -1) {
-			TMXTileSet tileSet = map.getTileset(tileSetIndex);
-			tileMap[y * width + x] = new TMXMapTile(gid, tileSet.getFirstGID(), tileSetIndex);
-		} else {
-			tileMap[y * width + x] = new TMXMapTile(gid, 0, -1);
-		}
+		tileGIDs[y * width + x] = gid;
 	}
 
 	public int getTileID(int x, int y) {
-		return tileMap[y * width + x].getID();
+		int gid = tileGIDs[y * width + x];
+		int tileSetIndex = map.findTileSetIndex(gid);
+		return tileSetIndex == -1 ? gid : gid - map.getTileset(tileSetIndex).getFirstGID();
 	}
 
 	public int getTileGID(int x, int y) {
-		return tileMap[y * width + x].getGID();
+		return (int) (tileGIDs[y * width + x] & ~(TMXMap.FLIPPED_HORIZONTALLY_FLAG | TMXMap.FLIPPED_VERTICALLY_FLAG
+				| TMXMap.FLIPPED_DIAGONALLY_FLAG));
 	}
 
 	public int getTileTileSetIndex(int x, int y) {
-		return tileMap[y * width + x].getTileSetID();
+		return map.findTileSetIndex(tileGIDs[y * width + x]);
 	}
 
 	public boolean isTileFlippedHorizontally(int x, int y) {
-		return tileMap[y * width + x].isFlippedHorizontally();
+		return (tileGIDs[y * width + x] & TMXMap.FLIPPED_HORIZONTALLY_FLAG) != 0;
 	}
 
 	public boolean isTileFlippedVertically(int x, int y) {
-		return tileMap[y * width + x].isFlippedVertically();
+		return (tileGIDs[y * width + x] & TMXMap.FLIPPED_VERTICALLY_FLAG) != 0;
 	}
 
 	public boolean isTileFlippedDiagonally(int x, int y) {
-		return tileMap[y * width + x].isFlippedDiagonally();
+		return (tileGIDs[y * width + x] & TMXMap.FLIPPED_DIAGONALLY_FLAG) != 0;
 	}
 
 	public TMXMapTile getTile(int x, int y) {
-		return tileMap[y * width + x];
+		int gid = tileGIDs[y * width + x];
+		int tileSetIndex = map.findTileSetIndex(gid);
+		if (tileSetIndex != -1) {
+			return new TMXMapTile(gid, map.getTileset(tileSetIndex).getFirstGID(), tileSetIndex);
+		}
+		return new TMXMapTile(gid, 0, -1);
+	}
+
+	/**
+	 * 返回本层的原始gid数组(按行排列,包含翻转标记)
+	 * 
+	 * @return
+	 */
+	public int[] getTileGIDs() {
+		return tileGIDs;
+	}
+
+	/**
+	 * 以原始gid数组(按行排列,包含翻转标记)替换本层数据
+	 * 
+	 * @param gids
+	 */
+	public void setTileGIDs(int[] gids) {
+		if (gids == null || gids.length != width * height) {
+			throw new LSysException("The tile data size does not match the layer size !");
+		}
+		this.tileGIDs = gids;
 	}
 
 	public Encoding getEncoding() {
@@ -266,13 +302,13 @@ public class TMXTileLayer extends TMXMapLayer {
 			for (int y = 0; y < height; y++) {
 				switch (mode) {
 				case 0:
-					tmp[x][y] = tileMap[y * width + x].getGID();
+					tmp[x][y] = getTileGID(x, y);
 					break;
 				case 1:
-					tmp[x][y] = tileMap[y * width + x].getTileSetID();
+					tmp[x][y] = getTileTileSetIndex(x, y);
 					break;
 				default:
-					tmp[x][y] = tileMap[y * width + x].getID();
+					tmp[x][y] = getTileID(x, y);
 					break;
 				}
 			}
@@ -27,7 +27,6 @@ import loon.action.map.tmx.TMXImageLayer;
 import loon.action.map.tmx.TMXMap;
 import loon.action.map.tmx.TMXTileLayer;
 import loon.action.map.tmx.TMXTileSet;
-import loon.action.map.tmx.tiles.TMXMapTile;
 import loon.action.map.tmx.tiles.TMXTile;
 import loon.opengl.BlendState;
 import loon.opengl.GLEx;
@@ -145,15 +144,15 @@ public class TMXHexagonalMapRenderer extends TMXMapRenderer {
 							continue;
 						}
 
-						TMXMapTile mapTile = tileLayer.getTile(x, y);
+						final int tileSetIndex = tileLayer.getTileTileSetIndex(x, y);
+						final int gid = tileLayer.getTileGID(x, y);
 
-						if (mapTile.getTileSetID() == -1) {
+						if (tileSetIndex == -1) {
 							continue;
 						}
 
-						TMXTileSet tileSet = map.getTileset(mapTile
-								.getTileSetID());
-						TMXTile tile = tileSet.getTile(mapTile.getGID()
+						TMXTileSet tileSet = map.getTileset(tileSetIndex);
+						TMXTile tile = tileSet.getTile(gid
 								- tileSet.getFirstGID());
 
 						LTexture texture = textureMap.get(tileSet.getImage()
@@ -168,7 +167,7 @@ public class TMXHexagonalMapRenderer extends TMXMapRenderer {
 							batch.checkTexture(current);
 						}
 
-						int tileID = mapTile.getGID() - tileSet.getFirstGID();
+						int tileID = gid - tileSet.getFirstGID();
 						if (tile != null && tile.isAnimated()) {
 							tileID = tileAnimators.get(tile).getCurrentFrame()
 									.getTileID();
@@ -199,9 +198,9 @@ public class TMXHexagonalMapRenderer extends TMXMapRenderer {
 								+ texture.yOff;
 						float heightRatio = srcHeight * batch.getInvTexHeight();
 
-						boolean flipX = mapTile.isFlippedHorizontally();
-						boolean flipY = mapTile.isFlippedVertically();
-						boolean flipZ = mapTile.isFlippedDiagonally();
+						boolean flipX = tileLayer.isTileFlippedHorizontally(x, y);
+						boolean flipY = tileLayer.isTileFlippedVertically(x, y);
+						boolean flipZ = tileLayer.isTileFlippedDiagonally(x, y);
 
 						if (flipZ) {
 							flipX = !flipX;
@@ -22,61 +22,161 @@ package loon.action.sprite;
 
 import loon.BaseIO;
 import loon.LTexture;
+import loon.canvas.Image;
 import loon.geom.Dimension;
 import loon.opengl.GLEx;
 import loon.utils.ArrayByte;
 import loon.utils.GifDecoder;
 
+/**
+ * gif动画精灵,默认一次解码全部帧,streaming为true时改为流式解码,只保留少量帧的像素并重复使用同一个纹理,适合帧数较多的gif
+ */
 public class GifAnimation extends Entity {
 
 	private GifDecoder _gifDecoder;
 
 	private Animation _animation;
 
+	private boolean _streaming;
+
+	private boolean _running = true;
+
+	private Image _frameImage;
+
+	private LTexture _frameTexture;
+
+	private int _frameIndex;
+
+	private long _frameTime;
+
 	public GifAnimation(ArrayByte bytes) {
-		loadData(bytes);
+		this(bytes, false);
 	}
 
 	public GifAnimation(String path) {
-		loadData(BaseIO.loadArrayByte(path));
+		this(path, false);
+	}
+
+	public GifAnimation(ArrayByte bytes, boolean streaming) {
+		loadData(bytes, streaming);
+	}
+
+	public GifAnimation(String path, boolean streaming) {
+		loadData(BaseIO.loadArrayByte(path), streaming);
 	}
 
 	public Animation loadData(ArrayByte bytes) {
-		this._animation = new Animation();
+		return loadData(bytes, false);
+	}
+
+	/**
+	 * 载入gif数据,流式解码时不生成Animation(返回null)
+	 * 
+	 * @param bytes
+	 * @param streaming
+	 * @return
+	 */
+	public Animation loadData(ArrayByte bytes, boolean streaming) {
+		this._streaming = streaming;
 		this._gifDecoder = new GifDecoder();
-		this._gifDecoder.readStatus(bytes);
+		if (streaming) {
+			this._animation = null;
+			this._gifDecoder.readStream(bytes);
+		} else {
+			this._animation = new Animation();
+			this._gifDecoder.readStatus(bytes);
+		}
 		Dimension d = _gifDecoder.getFrameSize();
 		this._width = d.getWidth();
 		this._height = d.getHeight();
-		for (int i = 0; i < _gifDecoder.getFrameCount(); i++) {
-			int delay = _gifDecoder.getDelay(i);
-			_animation.addFrame(_gifDecoder.getFrame(i).texture(),
-					delay == 0 ? 100 : delay);
+		if (streaming) {
+			this._frameIndex = 0;
+			this._frameTime = 0;
+			showFrame(0);
+		} else {
+			for (int i = 0; i < _gifDecoder.getFrameCount(); i++) {
+				int delay = _gifDecoder.getDelay(i);
+				_animation.addFrame(_gifDecoder.getFrame(i).texture(), delay == 0 ? 100 : delay);
+			}
 		}
 		setRepaint(true);
 		return _animation;
 	}
 
+	private void showFrame(int index) {
+		int[] pixels = _gifDecoder.getFramePixels(index);
+		if (pixels == null) {
+			return;
+		}
+		final int width = (int) _width;
+		final int height = (int) _height;
+		if (_frameImage == null) {
+			_frameImage = Image.createImage(width, height);
+		}
+		_frameImage.setPixels(pixels, width, height);
+		if (_frameTexture == null) {
+			_frameTexture = _frameImage.texture();
+		} else {
+			_frameTexture.update(_frameImage, false);
+		}
+	}
+
+	private int frameDelay(int index) {
+		int delay = _gifDecoder.getDelay(index);
+		return delay <= 0 ? 100 : delay;
+	}
+
 	public void setRunning(boolean runing) {
-		_animation.setRunning(runing);
+		if (_streaming) {
+			_running = runing;
+		} else {
+			_animation.setRunning(runing);
+		}
+	}
+
+	public boolean isStreaming() {
+		return _streaming;
 	}
 
 	@Override
 	public void onUpdate(long elapsedTime) {
+		if (_streaming) {
+			final int count = _gifDecoder.getFrameCount();
+			if (!_running || count <= 1) {
+				return;
+			}
+			_frameTime += elapsedTime;
+			int index = _frameIndex;
+			for (int delay = frameDelay(index); _frameTime >= delay; delay = frameDelay(index)) {
+				_frameTime -= delay;
+				index = (index + 1) % count;
+			}
+			if (index != _frameIndex) {
+				_frameIndex = index;
+				showFrame(index);
+			}
+			setTexture(_frameTexture);
+			return;
+		}
 		_animation.update(elapsedTime);
 		setTexture(_animation.getSpriteImage());
 	}
 
 	@Override
 	public void repaint(GLEx g, float offsetX, float offsetY) {
-		g.draw(_animation.getSpriteImage(), drawX(offsetX), drawY(offsetY));
+		g.draw(getBitmap(), drawX(offsetX), drawY(offsetY));
 	}
 
 	@Override
 	public LTexture getBitmap() {
-		return _animation.getSpriteImage();
+		return _streaming ? _frameTexture : _animation.getSpriteImage();
 	}
 
+	/**
+	 * 返回动画对象(流式解码时为null)
+	 * 
+	 * @return
+	 */
 	public Animation getAnimation() {
 		return _animation;
 	}
@@ -89,8 +189,19 @@ public class GifAnimation extends Entity {
 	public void close() {
 		super.close();
 		if (_gifDecoder != null) {
+			if (_streaming) {
+				_gifDecoder.close();
+			}
 			_gifDecoder = null;
 		}
+		if (_frameTexture != null) {
+			_frameTexture.close();
+			_frameTexture = null;
+		}
+		if (_frameImage != null) {
+			_frameImage.close();
+			_frameImage = null;
+		}
 	}
 
 }
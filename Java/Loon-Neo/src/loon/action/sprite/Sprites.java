@@ -20,6 +20,8 @@
  */
 package loon.action.sprite;
 
+import java.util.Comparator;
+
 import loon.LObject.State;
 import loon.LRelease;
 import loon.LSystem;
@@ -33,8 +35,9 @@ import loon.geom.RectBox;
 import loon.opengl.GLEx;
 import loon.utils.CollectionUtils;
 import loon.utils.IArray;
-import loon.utils.LayerSorter;
+import loon.utils.IntArray;
 import loon.utils.MathUtils;
+import loon.utils.SortUtils;
 import loon.utils.StringUtils;
 import loon.utils.TArray;
 
@@ -42,6 +45,8 @@ import loon.utils.TArray;
  * 精灵精灵总父类，用来注册，控制，以及渲染所有精灵精灵（所有默认【不支持】触屏的精灵，被置于此。不过，
  * 当LNode系列精灵和SpriteBatchScreen合用时，也支持触屏.）
  * 
+ * 精灵按层级(getLayer)由大到小排列,添加时以二分查找插入到同层级精灵之后,不再每次添加都重新排序全部精灵;
+ * 精灵层级改变后,会在下一次渲染前检查并(稳定地)重新排序一次.
  */
 public class Sprites implements IArray, Visible, LRelease {
 
@@ -51,6 +56,18 @@ public class Sprites implements IArray, Visible, LRelease {
 
 	}
 
+	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
+	private static class SpriteLayerComparator implements Comparator<ISprite> {
+
+		@Override
+		public int compare(ISprite o1, ISprite o2) {
+			if (o1 == null || o2 == null) {
+				return o1 == o2 ? 0 : (o1 == null ? 1 : -1);
+			}
+			return o2.getLayer() - o1.getLayer();
+		}
+	}
+
 	protected ISprite[] _sprites;
 
 	private int viewX;
@@ -65,7 +82,19 @@ public class Sprites implements IArray, Visible, LRelease {
 
 	private SpriteListener sprListerner;
 
-	private final static LayerSorter<ISprite> spriteSorter = new LayerSorter<ISprite>(false);
+	private final static SpriteLayerComparator spriteSorter = new SpriteLayerComparator();
+
+	private ISprite[] _sortBuffer;
+
+	private boolean _sortDirty;
+
+	private SpritesGrid _spatialIndex;
+
+	private boolean _spatialDirty = true;
+
+	private final IntArray _queryIndexes = new IntArray();
+
+	private final IntArray _paintIndexes = new IntArray();
 
 	private int _size;
 
@@ -146,10 +175,9 @@ public class Sprites implements IArray, Visible, LRelease {
 		}
 		for (int i = 0; i < this._size; i++) {
 			if (this._sprites[i] == sprite) {
-				this._sprites = CollectionUtils.cut(this._sprites, i);
-				this._sprites = CollectionUtils.expand(this._sprites, 1, false);
+				System.arraycopy(this._sprites, 0, this._sprites, 1, i);
 				this._sprites[0] = sprite;
-				this.sortSprites();
+				this.spritesChanged(true);
 				break;
 			}
 		}
@@ -172,10 +200,9 @@ public class Sprites implements IArray, Visible, LRelease {
 		}
 		for (int i = 0; i < this._size; i++) {
 			if (this._sprites[i] == sprite) {
-				this._sprites = CollectionUtils.cut(this._sprites, i);
-				this._sprites = CollectionUtils.expand(this._sprites, 1, true);
+				System.arraycopy(this._sprites, i + 1, this._sprites, i, this._size - i - 1);
 				this._sprites[this._size - 1] = sprite;
-				this.sortSprites();
+				this.spritesChanged(true);
 				break;
 			}
 		}
@@ -189,7 +216,117 @@ public class Sprites implements IArray, Visible, LRelease {
 		if (_closed) {
 			return;
 		}
-		spriteSorter.sort(this._sprites);
+		if (this._size > 1) {
+			if (_sortBuffer == null || _sortBuffer.length < this._size) {
+				_sortBuffer = new ISprite[this._size];
+			}
+			SortUtils.msort(this._sprites, _sortBuffer, 0, this._size - 1, spriteSorter);
+			for (int i = 0; i < this._size; i++) {
+				_sortBuffer[i] = null;
+			}
+		}
+		this._sortDirty = false;
+		this._spatialDirty = true;
+	}
+
+	/**
+	 * 精灵集合发生了变化
+	 * 
+	 * @param sort
+	 *            是否需要重新排序
+	 */
+	private void spritesChanged(boolean sort) {
+		if (sort) {
+			this._sortDirty = true;
+		}
+		this._spatialDirty = true;
+	}
+
+	/**
+	 * 检查精灵是否仍按层级排列(精灵层级可能在添加后被修改),不是时重新排序
+	 */
+	private void validateSort() {
+		if (_sortDirty) {
+			sortSprites();
+			return;
+		}
+		for (int i = 1; i < this._size; i++) {
+			ISprite prev = this._sprites[i - 1];
+			ISprite next = this._sprites[i];
+			if (prev == null || next == null || prev.getLayer() < next.getLayer()) {
+				sortSprites();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 二分查找指定层级的插入位置(同层级精灵之后)
+	 * 
+	 * @param layer
+	 * @return
+	 */
+	private int insertIndex(int layer) {
+		int low = 0;
+		int high = this._size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			ISprite spr = this._sprites[mid];
+			if (spr != null && spr.getLayer() >= layer) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * 设定精灵空间索引的格子大小(小于等于0时关闭索引).
+	 * 
+	 * 开启后,视窗裁剪,find(x,y)与findRect只检查附近格子中的精灵,检测方式与未开启索引时相同.
+	 * 每次查询前都会核对精灵的范围,精灵增删,移动(包括在两次update之间调用setLocation)或改变大小后会先重建索引,
+	 * 核对只比较数值,不产生对象,适合精灵数量多而视窗只显示其中一部分,或每帧需要多次点击检测的场合.
+	 * 
+	 * @param cellSize
+	 * @return
+	 */
+	public Sprites setSpatialIndex(float cellSize) {
+		if (cellSize <= 0) {
+			this._spatialIndex = null;
+		} else {
+			this._spatialIndex = new SpritesGrid(cellSize);
+		}
+		this._spatialDirty = true;
+		return this;
+	}
+
+	public SpritesGrid getSpatialIndex() {
+		return _spatialIndex;
+	}
+
+	public boolean isSpatialIndex() {
+		return _spatialIndex != null;
+	}
+
+	/**
+	 * 查询可能与指定范围相交的精灵索引(按绘制顺序排列),需要时先重建索引
+	 */
+	private IntArray querySpatial(float minX, float minY, float maxX, float maxY, IntArray result) {
+		if (_sortDirty) {
+			sortSprites();
+		}
+		final float width = MathUtils.max(_width, viewX + viewWidth);
+		final float height = MathUtils.max(_height, viewY + viewHeight);
+		// 精灵可能在任何时候被移动(不只是update期间),所以每次查询都核对索引范围
+		if (!_spatialDirty) {
+			_spatialDirty = _spatialIndex.isChanged(this._sprites, this._size, width, height);
+		}
+		if (_spatialDirty) {
+			_spatialIndex.build(this._sprites, this._size, width, height);
+			_spatialDirty = false;
+		}
+		return _spatialIndex.query(minX, minY, maxX, maxY, result);
 	}
 
 	/**
@@ -211,7 +348,7 @@ public class Sprites implements IArray, Visible, LRelease {
 	 * @param capacity
 	 */
 	private void compressCapacity(int capacity) {
-		if (capacity + this._size < _sprites.length) {
+		if ((capacity + this._size) * 2 < _sprites.length) {
 			ISprite[] newArray = new ISprite[this._size + capacity];
 			System.arraycopy(_sprites, 0, newArray, 0, this._size);
 			_sprites = newArray;
@@ -229,9 +366,23 @@ public class Sprites implements IArray, Visible, LRelease {
 		if (_closed) {
 			return null;
 		}
+		if (_spatialIndex != null) {
+			IntArray indexes = querySpatial(x, y, x, y, _queryIndexes);
+			for (int i = indexes.length - 1; i >= 0; i--) {
+				ISprite child = _sprites[indexes.items[i]];
+				RectBox rect = child.getCollisionBox();
+				if (rect != null && rect.contains(x, y)) {
+					return child;
+				}
+			}
+			return null;
+		}
 		ISprite[] snapshot = _sprites;
-		for (int i = snapshot.length - 1; i >= 0; i--) {
+		for (int i = _size - 1; i >= 0; i--) {
 			ISprite child = snapshot[i];
+			if (child == null) {
+				continue;
+			}
 			RectBox rect = child.getCollisionBox();
 			if (rect != null && rect.contains(x, y)) {
 				return child;
@@ -240,6 +391,43 @@ public class Sprites implements IArray, Visible, LRelease {
 		return null;
 	}
 
+	/**
+	 * 查找与指定范围相交的精灵对象(按绘制顺序排列)
+	 * 
+	 * @param x
+	 * @param y
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	public TArray<ISprite> findRect(float x, float y, float width, float height) {
+		TArray<ISprite> list = new TArray<ISprite>();
+		if (_closed) {
+			return list;
+		}
+		final float maxX = x + width;
+		final float maxY = y + height;
+		if (_spatialIndex != null) {
+			IntArray indexes = querySpatial(x, y, maxX, maxY, _queryIndexes);
+			for (int i = 0; i < indexes.length; i++) {
+				ISprite child = _sprites[indexes.items[i]];
+				if (child.getX() <= maxX && child.getX() + child.getWidth() >= x && child.getY() <= maxY
+						&& child.getY() + child.getHeight() >= y) {
+					list.add(child);
+				}
+			}
+			return list;
+		}
+		for (int i = 0; i < _size; i++) {
+			ISprite child = _sprites[i];
+			if (child != null && child.getX() <= maxX && child.getX() + child.getWidth() >= x
+					&& child.getY() <= maxY && child.getY() + child.getHeight() >= y) {
+				list.add(child);
+			}
+		}
+		return list;
+	}
+
 	/**
 	 * 查找指定名称的精灵对象
 	 * 
@@ -435,12 +623,13 @@ public class Sprites implements IArray, Visible, LRelease {
 			if (sprite.getHeight() > getHeight()) {
 				setViewWindow(viewX, viewY, _width, (int) MathUtils.max(sprite.getWidth(), LSystem.viewSize.width));
 			}
-			System.arraycopy(this._sprites, index, this._sprites, index + 1, this._size - index);
-			this._sprites[index] = sprite;
-			if (++this._size >= this._sprites.length) {
+			if (this._size == this._sprites.length) {
 				expandCapacity((_size + 1) * 2);
 			}
-			sortSprites();
+			System.arraycopy(this._sprites, index, this._sprites, index + 1, this._size - index);
+			this._sprites[index] = sprite;
+			this._size++;
+			spritesChanged(true);
 			sprite.setState(State.ADDED);
 			sprite.setSprites(this);
 		}
@@ -465,6 +654,9 @@ public class Sprites implements IArray, Visible, LRelease {
 		if (index < 0 || index > _size || index >= _sprites.length) {
 			return null;
 		}
+		if (_sortDirty) {
+			sortSprites();
+		}
 		return _sprites[index];
 	}
 
@@ -478,6 +670,9 @@ public class Sprites implements IArray, Visible, LRelease {
 			return null;
 		}
 		if (_size > 0) {
+			if (_sortDirty) {
+				sortSprites();
+			}
 			return _sprites[0];
 		}
 		return null;
@@ -493,6 +688,9 @@ public class Sprites implements IArray, Visible, LRelease {
 			return null;
 		}
 		if (_size > 0) {
+			if (_sortDirty) {
+				sortSprites();
+			}
 			return _sprites[_size - 1];
 		}
 		return null;
@@ -524,10 +722,19 @@ public class Sprites implements IArray, Visible, LRelease {
 		if (this._size == this._sprites.length) {
 			expandCapacity((_size + 1) * 2);
 		}
-		boolean result = (_sprites[_size++] = sprite) != null;
-		sortSprites();
+		if (_sortDirty) {
+			_sprites[_size++] = sprite;
+		} else {
+			int index = insertIndex(sprite.getLayer());
+			if (index < _size) {
+				System.arraycopy(_sprites, index, _sprites, index + 1, _size - index);
+			}
+			_sprites[index] = sprite;
+			_size++;
+		}
+		spritesChanged(false);
 		sprite.setState(State.ADDED);
-		return result;
+		return true;
 	}
 
 	/**
@@ -706,9 +913,10 @@ public class Sprites implements IArray, Visible, LRelease {
 			System.arraycopy(this._sprites, index + 1, this._sprites, index, size);
 		}
 		this._sprites[--this._size] = null;
-		if (size == 0) {
+		if (this._size == 0) {
 			_sprites = new ISprite[0];
 		}
+		spritesChanged(false);
 		return removed;
 	}
 
@@ -751,13 +959,14 @@ public class Sprites implements IArray, Visible, LRelease {
 				}
 				removed = true;
 				_size--;
-				_sprites[i - 1] = _sprites[_size];
+				System.arraycopy(_sprites, i, _sprites, i - 1, _size - i + 1);
 				_sprites[_size] = null;
 				if (_size == 0) {
 					_sprites = new ISprite[0];
 				} else {
 					compressCapacity(CollectionUtils.INITIAL_CAPACITY);
 				}
+				spritesChanged(false);
 				return removed;
 			}
 		}
@@ -791,13 +1000,14 @@ public class Sprites implements IArray, Visible, LRelease {
 				}
 				removed = true;
 				_size--;
-				_sprites[i - 1] = _sprites[_size];
+				System.arraycopy(_sprites, i, _sprites, i - 1, _size - i + 1);
 				_sprites[_size] = null;
 				if (_size == 0) {
 					_sprites = new ISprite[0];
 				} else {
 					compressCapacity(CollectionUtils.INITIAL_CAPACITY);
 				}
+				spritesChanged(false);
 				return removed;
 			}
 		}
@@ -835,6 +1045,7 @@ public class Sprites implements IArray, Visible, LRelease {
 		if (_size == 0) {
 			_sprites = new ISprite[0];
 		}
+		spritesChanged(false);
 	}
 
 	public PointI getMinPos() {
@@ -883,6 +1094,8 @@ public class Sprites implements IArray, Visible, LRelease {
 			_sprites[i] = null;
 		}
 		_size = 0;
+		_sortDirty = false;
+		_spatialDirty = true;
 	}
 
 	/**
@@ -919,12 +1132,22 @@ public class Sprites implements IArray, Visible, LRelease {
 		if (!_visible || _closed) {
 			return;
 		}
+		validateSort();
 		float spriteX;
 		float spriteY;
 		float spriteWidth;
 		float spriteHeight;
-		for (int i = 0; i < this._size; i++) {
-			ISprite spr = this._sprites[i];
+		IntArray indexes = null;
+		if (_spatialIndex != null) {
+			indexes = querySpatial(0, 0, maxX - minX, maxY - minY, _paintIndexes);
+		}
+		final int size = indexes == null ? this._size : indexes.length;
+		for (int i = 0; i < size; i++) {
+			int index = indexes == null ? i : indexes.items[i];
+			if (index >= this._size) {
+				continue;
+			}
+			ISprite spr = this._sprites[index];
 			if (spr != null && spr.isVisible()) {
 				spriteX = minX + spr.getX();
 				spriteY = minY + spr.getY();
@@ -945,6 +1168,7 @@ public class Sprites implements IArray, Visible, LRelease {
 		if (!_visible) {
 			return;
 		}
+		validateSort();
 		for (int i = 0; i < this._size; i++) {
 			ISprite spr = this._sprites[i];
 			if (spr != null && spr.isVisible()) {
@@ -986,12 +1210,22 @@ public class Sprites implements IArray, Visible, LRelease {
 			minY = y;
 			maxY = y + this._height;
 		}
+		validateSort();
 		boolean offset = (minX != 0 || minY != 0);
 		if (offset) {
 			g.translate(minX, minY);
 		}
-		for (int i = 0; i < this._size; i++) {
-			ISprite spr = this._sprites[i];
+		IntArray indexes = null;
+		if (_spatialIndex != null) {
+			indexes = querySpatial(minX, minY, maxX, maxY, _paintIndexes);
+		}
+		final int size = indexes == null ? this._size : indexes.length;
+		for (int i = 0; i < size; i++) {
+			int index = indexes == null ? i : indexes.items[i];
+			if (index >= this._size) {
+				continue;
+			}
+			ISprite spr = this._sprites[index];
 			if (spr != null && spr.isVisible()) {
 				int layerX = spr.x();
 				int layerY = spr.y();
@@ -1117,6 +1351,9 @@ public class Sprites implements IArray, Visible, LRelease {
 		if (_sprites == null) {
 			return null;
 		}
+		if (_sortDirty) {
+			sortSprites();
+		}
 		return CollectionUtils.copyOf(this._sprites, this._size);
 	}
 
@@ -1282,6 +1519,8 @@ public class Sprites implements IArray, Visible, LRelease {
 		}
 		clear();
 		this._sprites = null;
+		this._sortBuffer = null;
+		this._spatialIndex = null;
 		this._closed = true;
 		LSystem.popSpritesPool(this);
 	}
@@ -0,0 +1,349 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.sprite;
+
+import loon.geom.RectBox;
+import loon.utils.CollectionUtils;
+import loon.utils.IntArray;
+import loon.utils.MathUtils;
+
+/**
+ * Sprites使用的均匀网格空间索引,按精灵的getX,getY,getWidth,getHeight与getCollisionBox两个范围的并集把精灵索引放入格子,
+ * 查询时只检查范围内格子中的精灵,所以按显示范围裁剪与按碰撞范围点击检测都不会遗漏精灵.
+ * 
+ * 网格覆盖[0,width)x[0,height)的范围,超出范围的精灵放入边缘格子(查询范围也按同样的规则截取,所以结果不会遗漏),
+ * 以计数排序的方式整体重建,格子中的精灵索引天然按绘制顺序排列.覆盖格子过多的大精灵(比如背景)单独保存,每次查询都会返回.
+ */
+public class SpritesGrid {
+
+	private float cellSize;
+
+	private int maxCellsPerSprite;
+
+	private int cols, rows;
+
+	private int[] cellStarts;
+
+	private int[] cellCursors;
+
+	private int[] cellItems;
+
+	private int[] ranges;
+
+	private int[] larges;
+
+	private int numLarges;
+
+	private int[] marks;
+
+	private int markStamp;
+
+	private int spriteCount;
+
+	// 建立索引时各精灵的范围(minX,minY,maxX,maxY),用于判断精灵是否移动过
+	private float[] bounds;
+
+	private ISprite[] indexed;
+
+	private float gridWidth, gridHeight;
+
+	public SpritesGrid() {
+		this(64f);
+	}
+
+	public SpritesGrid(float cellSize) {
+		this(cellSize, 64);
+	}
+
+	/**
+	 * @param cellSize
+	 *            格子大小,一般取常见精灵尺寸的1到2倍
+	 * @param maxCellsPerSprite
+	 *            单个精灵最多占用的格子数量,超过时作为大精灵单独处理
+	 */
+	public SpritesGrid(float cellSize, int maxCellsPerSprite) {
+		this.cellSize = MathUtils.max(1f, cellSize);
+		this.maxCellsPerSprite = MathUtils.max(1, maxCellsPerSprite);
+		this.cellStarts = new int[2];
+		this.cellCursors = new int[1];
+		this.cellItems = new int[CollectionUtils.INITIAL_CAPACITY];
+		this.ranges = new int[CollectionUtils.INITIAL_CAPACITY * 4];
+		this.larges = new int[CollectionUtils.INITIAL_CAPACITY];
+		this.marks = new int[CollectionUtils.INITIAL_CAPACITY];
+		this.bounds = new float[CollectionUtils.INITIAL_CAPACITY * 4];
+		this.indexed = new ISprite[CollectionUtils.INITIAL_CAPACITY];
+	}
+
+	/**
+	 * 把精灵的索引范围(显示范围与碰撞范围的并集)写入指定数组
+	 */
+	private final static void boundsOf(ISprite spr, float[] out, int offset) {
+		final float x = spr.getX();
+		final float y = spr.getY();
+		float minX = x;
+		float minY = y;
+		float maxX = x + spr.getWidth();
+		float maxY = y + spr.getHeight();
+		final RectBox rect = spr.getCollisionBox();
+		if (rect != null) {
+			minX = MathUtils.min(minX, rect.getMinX());
+			minY = MathUtils.min(minY, rect.getMinY());
+			maxX = MathUtils.max(maxX, rect.getMaxX());
+			maxY = MathUtils.max(maxY, rect.getMaxY());
+		}
+		out[offset] = minX;
+		out[offset + 1] = minY;
+		out[offset + 2] = maxX;
+		out[offset + 3] = maxY;
+	}
+
+	private final float[] tmpBounds = new float[4];
+
+	/**
+	 * 检查精灵集合或精灵的位置,大小自上次建立索引后是否发生了变化
+	 * 
+	 * @param sprites
+	 * @param size
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	public boolean isChanged(ISprite[] sprites, int size, float width, float height) {
+		if (size != spriteCount || width != gridWidth || height != gridHeight) {
+			return true;
+		}
+		final float[] tmp = tmpBounds;
+		for (int i = 0; i < size; i++) {
+			ISprite spr = sprites[i];
+			if (spr != indexed[i]) {
+				return true;
+			}
+			if (spr == null) {
+				continue;
+			}
+			boundsOf(spr, tmp, 0);
+			int r = i * 4;
+			if (tmp[0] != bounds[r] || tmp[1] != bounds[r + 1] || tmp[2] != bounds[r + 2]
+					|| tmp[3] != bounds[r + 3]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private final int cellX(float x) {
+		return MathUtils.clamp(MathUtils.ifloor(x / cellSize), 0, cols - 1);
+	}
+
+	private final int cellY(float y) {
+		return MathUtils.clamp(MathUtils.ifloor(y / cellSize), 0, rows - 1);
+	}
+
+	/**
+	 * 以指定精灵数组(已按绘制顺序排列)重建索引
+	 * 
+	 * @param sprites
+	 * @param size
+	 * @param width
+	 *            网格覆盖的宽度
+	 * @param height
+	 *            网格覆盖的高度
+	 */
+	public void build(ISprite[] sprites, int size, float width, float height) {
+		cols = MathUtils.max(1, MathUtils.ceil(width / cellSize));
+		rows = MathUtils.max(1, MathUtils.ceil(height / cellSize));
+		final int cellCount = cols * rows;
+		if (cellStarts.length < cellCount + 1) {
+			cellStarts = new int[cellCount + 1];
+			cellCursors = new int[cellCount];
+		} else {
+			for (int i = 0; i <= cellCount; i++) {
+				cellStarts[i] = 0;
+			}
+		}
+		if (ranges.length < size * 4) {
+			ranges = new int[size * 4];
+			bounds = new float[size * 4];
+		}
+		if (indexed.length < size) {
+			indexed = new ISprite[size];
+		} else {
+			for (int i = size; i < spriteCount && i < indexed.length; i++) {
+				indexed[i] = null;
+			}
+		}
+		gridWidth = width;
+		gridHeight = height;
+		if (marks.length < size) {
+			marks = new int[size];
+			markStamp = 0;
+		}
+		numLarges = 0;
+		spriteCount = size;
+		for (int i = 0; i < size; i++) {
+			ISprite spr = sprites[i];
+			int r = i * 4;
+			indexed[i] = spr;
+			if (spr == null) {
+				ranges[r] = -1;
+				continue;
+			}
+			boundsOf(spr, bounds, r);
+			int minX = cellX(bounds[r] - 1);
+			int minY = cellY(bounds[r + 1] - 1);
+			int maxX = cellX(bounds[r + 2] + 1);
+			int maxY = cellY(bounds[r + 3] + 1);
+			if ((maxX - minX + 1) * (maxY - minY + 1) > maxCellsPerSprite) {
+				if (numLarges == larges.length) {
+					larges = CollectionUtils.copyOf(larges, larges.length * 2);
+				}
+				larges[numLarges++] = i;
+				ranges[r] = -1;
+				continue;
+			}
+			ranges[r] = minX;
+			ranges[r + 1] = minY;
+			ranges[r + 2] = maxX;
+			ranges[r + 3] = maxY;
+			for (int cy = minY; cy <= maxY; cy++) {
+				int row = cy * cols;
+				for (int cx = minX; cx <= maxX; cx++) {
+					cellStarts[row + cx + 1]++;
+				}
+			}
+		}
+		for (int i = 0; i < cellCount; i++) {
+			cellStarts[i + 1] += cellStarts[i];
+			cellCursors[i] = cellStarts[i];
+		}
+		final int total = cellStarts[cellCount];
+		if (cellItems.length < total) {
+			cellItems = new int[MathUtils.nextPowerOfTwo(total)];
+		}
+		for (int i = 0; i < size; i++) {
+			int r = i * 4;
+			int minX = ranges[r];
+			if (minX < 0) {
+				continue;
+			}
+			int minY = ranges[r + 1];
+			int maxX = ranges[r + 2];
+			int maxY = ranges[r + 3];
+			for (int cy = minY; cy <= maxY; cy++) {
+				int row = cy * cols;
+				for (int cx = minX; cx <= maxX; cx++) {
+					cellItems[cellCursors[row + cx]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 查询与指定范围可能相交的精灵索引,结果去重并按绘制顺序(由小到大)排列
+	 * 
+	 * @param minX
+	 * @param minY
+	 * @param maxX
+	 * @param maxY
+	 * @param result
+	 * @return
+	 */
+	public IntArray query(float minX, float minY, float maxX, float maxY, IntArray result) {
+		result.clear();
+		if (spriteCount == 0) {
+			return result;
+		}
+		markStamp++;
+		if (markStamp == Integer.MAX_VALUE) {
+			for (int i = 0; i < marks.length; i++) {
+				marks[i] = 0;
+			}
+			markStamp = 1;
+		}
+		final int stamp = markStamp;
+		final int x0 = cellX(minX);
+		final int y0 = cellY(minY);
+		final int x1 = cellX(maxX);
+		final int y1 = cellY(maxY);
+		for (int cy = y0; cy <= y1; cy++) {
+			int row = cy * cols;
+			for (int cx = x0; cx <= x1; cx++) {
+				int cell = row + cx;
+				for (int j = cellStarts[cell], end = cellStarts[cell + 1]; j < end; j++) {
+					int index = cellItems[j];
+					if (marks[index] != stamp) {
+						marks[index] = stamp;
+						result.add(index);
+					}
+				}
+			}
+		}
+		for (int i = 0; i < numLarges; i++) {
+			result.add(larges[i]);
+		}
+		if ((x0 != x1 || y0 != y1 || numLarges > 0) && result.length > 1) {
+			result.sort();
+		}
+		return result;
+	}
+
+	/**
+	 * 查询可能包含指定点的精灵索引,结果按绘制顺序(由小到大)排列
+	 * 
+	 * @param x
+	 * @param y
+	 * @param result
+	 * @return
+	 */
+	public IntArray query(float x, float y, IntArray result) {
+		return query(x, y, x, y, result);
+	}
+
+	public int getLargeCount() {
+		return numLarges;
+	}
+
+	public int getCols() {
+		return cols;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	public int getMaxCellsPerSprite() {
+		return maxCellsPerSprite;
+	}
+
+	public void clear() {
+		for (int i = 0; i < spriteCount && i < indexed.length; i++) {
+			indexed[i] = null;
+		}
+		spriteCount = 0;
+		numLarges = 0;
+		cols = rows = 0;
+	}
+
+}
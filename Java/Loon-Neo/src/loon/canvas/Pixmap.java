@@ -207,6 +207,10 @@ public class Pixmap extends Limit implements LRelease {
 
 	private RectI clip;
 
+	private PixmapRaster _raster;
+
+	private boolean _bilinear;
+
 	public Pixmap(int w, int h, boolean hasAlpha) {
 		this.set(new int[w * h], w, h, hasAlpha);
 	}
@@ -245,9 +249,8 @@ public class Pixmap extends Limit implements LRelease {
 		if (_isClosed) {
 			return this;
 		}
-		for (int i = 0; i < this.size; i++) {
-			drawPoint(_drawPixels, i, c);
-		}
+		raster().fill(0, 0, _width, _height, c, true);
+		_dirty = true;
 		return this;
 	}
 
@@ -292,11 +295,7 @@ public class Pixmap extends Limit implements LRelease {
 	 * @return
 	 */
 	public Pixmap filter(int src, int dst) {
-		for (int i = 0; i < size; i++) {
-			if (_drawPixels[i] == src) {
-				_drawPixels[i] = dst;
-			}
-		}
+		raster().filter(_height, src, dst);
 		_dirty = true;
 		return this;
 	}
@@ -339,22 +338,8 @@ public class Pixmap extends Limit implements LRelease {
 	 * @return
 	 */
 	public Pixmap greyScale(float mix) {
-		mix = MathUtils.min(MathUtils.max(mix, 0f), 1f);
-		for (int i = 0; i < size; i++) {
-			int color = _drawPixels[i];
-			if (color != LColor.TRANSPARENT) {
-				int[] rgba = LColor.getRGBAs(color);
-				int r = rgba[0];
-				int g = rgba[1];
-				int b = rgba[2];
-				float a = rgba[3] / 255f;
-				float v = LColor.getLuminanceRGB(r, g, b);
-				_drawPixels[i] = LColor.argb(a, v * mix + r * (1 - mix), v * mix + g * (1 - mix),
-						v * mix + b * (1 - mix));
-			} else {
-				_drawPixels[i] = _transparent;
-			}
-		}
+		raster().greyScale(_height, mix);
+		_dirty = true;
 		return this;
 	}
 
@@ -375,20 +360,8 @@ public class Pixmap extends Limit implements LRelease {
 	 */
 	public Pixmap threshold(int threshold) {
 		threshold = (threshold | 127);
-		for (int i = 0; i < size; i++) {
-			int color = _drawPixels[i];
-			if (color != LColor.TRANSPARENT) {
-				int[] rgba = LColor.getRGBAs(color);
-				int r = rgba[0];
-				int g = rgba[1];
-				int b = rgba[2];
-				float a = rgba[3] / 255f;
-				float v = LColor.getLuminanceRGB(r, g, b) > threshold ? 255f : 0f;
-				_drawPixels[i] = LColor.argb(a, v, v, v);
-			} else {
-				_drawPixels[i] = _transparent;
-			}
-		}
+		raster().threshold(_height, threshold);
+		_dirty = true;
 		return this;
 	}
 
@@ -399,21 +372,8 @@ public class Pixmap extends Limit implements LRelease {
 	 * @return
 	 */
 	public Pixmap invert(float mix) {
-		mix = MathUtils.min(MathUtils.max(mix, 0f), 1f);
-		for (int i = 0; i < size; i++) {
-			int color = _drawPixels[i];
-			if (color != LColor.TRANSPARENT) {
-				int[] rgba = LColor.getRGBAs(color);
-				int r = rgba[0];
-				int g = rgba[1];
-				int b = rgba[2];
-				float a = rgba[3] / 255f;
-				_drawPixels[i] = LColor.argb(a, (255 - r) * mix + r * (1 - mix), (255 - g) * mix + g * (1 - mix),
-						(255 - b) * mix + b * (1 - mix));
-			} else {
-				_drawPixels[i] = _transparent;
-			}
-		}
+		raster().invert(_height, mix);
+		_dirty = true;
 		return this;
 	}
 
@@ -424,23 +384,8 @@ public class Pixmap extends Limit implements LRelease {
 	 * @return
 	 */
 	public Pixmap sepia(float mix) {
-		mix = MathUtils.min(MathUtils.max(mix, 0f), 1f);
-		for (int i = 0; i < size; i++) {
-			int color = _drawPixels[i];
-			if (color != LColor.TRANSPARENT) {
-				int[] rgba = LColor.getRGBAs(color);
-				float r = rgba[0] / 255f;
-				float g = rgba[1] / 255f;
-				float b = rgba[2] / 255f;
-				float a = rgba[3] / 255f;
-				float nr = (0.393f * r + 0.769f * g + 0.189f * b) * mix + r * (1f - mix);
-				float ng = (0.349f * r + 0.686f * g + 0.168f * b) * mix + g * (1f - mix);
-				float nb = (0.272f * r + 0.534f * g + 0.131f * b) * mix + b * (1f - mix);
-				_drawPixels[i] = LColor.argb(a, nr, ng, nb);
-			} else {
-				_drawPixels[i] = _transparent;
-			}
-		}
+		raster().sepia(_height, mix);
+		_dirty = true;
 		return this;
 	}
 
@@ -1599,24 +1544,14 @@ public class Pixmap extends Limit implements LRelease {
 			}
 			_dirty = true;
 		} else {
-			int findIndex = y * _width + x;
-			int drawIndex = offsetY * pixel._width + offsetX;
-			int moveFind = _width - w;
-			int moveDraw = pixel._width - w;
-			for (int i = 0; i < h; i++) {
-				for (int j = 0; j < w;) {
-					if (inside(j, i)) {
-						continue;
-					}
-					if (currentPixels[drawIndex] != transparent) {
-						drawPoint(_drawPixels, findIndex, currentPixels[drawIndex]);
-					}
-					j++;
-					findIndex++;
-					drawIndex++;
-				}
-				findIndex += moveFind;
-				drawIndex += moveDraw;
+			int minX = MathUtils.max(x, clip.x);
+			int minY = MathUtils.max(y, clip.y);
+			int maxX = MathUtils.min(x + w, clip.x + clip.width);
+			int maxY = MathUtils.min(y + h, clip.y + clip.height);
+			if (maxX > minX && maxY > minY) {
+				raster().copy(currentPixels, pixel._width, offsetX + minX - x, offsetY + minY - y, minX, minY,
+						maxX - minX, maxY - minY, transparent);
+				_dirty = true;
 			}
 		}
 		return this;
@@ -1672,92 +1607,33 @@ public class Pixmap extends Limit implements LRelease {
 			return this;
 		}
 
-		int[] currentPixels = img.getData();
-
-		int spitch = img._width;
-		int dpitch = this._width;
-
-		float x_ratio = ((float) srcWidth - 1) / dstWidth;
-		float y_ratio = ((float) srcHeight - 1) / dstHeight;
-		float x_diff = 0F;
-		float y_diff = 0F;
-
-		int dx = dstX;
-		int dy = dstY;
-		int sx = srcX;
-		int sy = srcY;
-		int i = 0;
-		int j = 0;
-
-		for (; i < dstHeight; i++) {
-			sy = (int) (i * y_ratio) + srcY;
-			dy = i + dstY;
-			y_diff = (y_ratio * i + srcY) - sy;
-			if (sy < 0 || dy < 0) {
-				continue;
-			}
-			if (sy >= img._height || dy >= this._height) {
-				break;
-			}
-
-			for (j = 0; j < dstWidth; j++) {
-				sx = (int) (j * x_ratio) + srcX;
-				dx = j + dstX;
-				x_diff = (x_ratio * j + srcX) - sx;
-				if (sx < 0 || dx < 0) {
-					continue;
-				}
-				if (sx >= img._width || dx >= this._width) {
-					break;
-				}
-
-				int src_ptr = sx + sy * spitch;
-				int dst_ptr = dx + dy * dpitch;
-				int src_color = currentPixels[src_ptr];
-				int src_pixel = src_color;
-
-				if (src_pixel != _transparent) {
-					float ta = (1 - x_diff) * (1 - y_diff);
-					float tb = (x_diff) * (1 - y_diff);
-					float tc = (1 - x_diff) * (y_diff);
-					float td = (x_diff) * (y_diff);
-
-					int a = (int) (((src_pixel & 0xff000000) >> 24) * ta + ((src_pixel & 0xff000000) >> 24) * tb
-							+ ((src_pixel & 0xff000000) >> 24) * tc + ((src_pixel & 0xff000000) >> 24) * td) & 0xff;
-					int b = (int) (((src_pixel & 0xff0000) >> 16) * ta + ((src_pixel & 0xff0000) >> 16) * tb
-							+ ((src_pixel & 0xff0000) >> 16) * tc + ((src_pixel & 0xff0000) >> 16) * td) & 0xff;
-					int g = (int) (((src_pixel & 0xff00) >> 8) * ta + ((src_pixel & 0xff00) >> 8) * tb
-							+ ((src_pixel & 0xff00) >> 8) * tc + ((src_pixel & 0xff00) >> 8) * td) & 0xff;
-					int r = (int) ((src_pixel & 0xff) * ta + (src_pixel & 0xff) * tb + (src_pixel & 0xff) * tc
-							+ (src_pixel & 0xff) * td) & 0xff;
-
-					int dst_color = _drawPixels[dst_ptr];
-					drawPoint(_drawPixels, dst_ptr, blend(r, g, b, a, dst_color), src_color);
-				} else {
-					drawPoint(_drawPixels, dst_ptr, _transparent);
-				}
-			}
-		}
+		raster().scale(img._drawPixels, img._width, img._height, dstX, dstY, dstWidth, dstHeight, srcX, srcY,
+				srcWidth, srcHeight, _width, _height, _bilinear);
+		_dirty = true;
+		return this;
+	}
 
+	/**
+	 * 设置缩放绘制Pixmap时是否使用双线性过滤(默认为false,即取最近的像素)
+	 * 
+	 * @param bilinear
+	 * @return
+	 */
+	public Pixmap setBilinearFilter(boolean bilinear) {
+		this._bilinear = bilinear;
 		return this;
 	}
 
-	private int blend(int src_r, int src_g, int src_b, int src_a, int value) {
-		int dst_r = (value & 0x00FF0000) >> 16;
-		int dst_g = (value & 0x0000FF00) >> 8;
-		int dst_b = (value & 0x000000FF);
-		int dst_a = (value & 0xFF000000) >> 24;
-		if (src_a == _transparent && dst_a == _transparent) {
-			return _transparent;
-		}
-		if (dst_a == 0) {
-			return ((src_a << 24) | (src_b << 16) | (src_g << 8) | src_r);
+	public boolean isBilinearFilter() {
+		return _bilinear;
+	}
+
+	private PixmapRaster raster() {
+		if (_raster == null) {
+			_raster = new PixmapRaster();
 		}
-		dst_r = (int) (dst_r + src_a * (src_r - dst_r) / 255);
-		dst_g = (int) (dst_g + src_a * (src_g - dst_g) / 255);
-		dst_b = (int) (dst_b + src_a * (src_b - dst_b) / 255);
-		dst_a = (int) (((1.0f - (1.0f - src_a / 255.0f) * (1.0f - dst_a / 255.0f)) * 255));
-		return (int) ((dst_a << 24) | (dst_b << 16) | (dst_g << 8) | dst_r);
+		_raster.begin(_drawPixels, _width, _composite, _baseAlpha, xorMode, xorRGB, _transparent);
+		return _raster;
 	}
 
 	public Pixmap fillRect(int x, int y, int width, int height) {
@@ -1768,12 +1644,13 @@ public class Pixmap extends Limit implements LRelease {
 			clearDraw(_baseColor);
 			return this;
 		}
-		int maxX = MathUtils.min(x + width - 1 + _translateX, clip.x + clip.width - 1);
-		int maxY = MathUtils.min(y + height - 1 + _translateY, clip.y + clip.height - 1);
-		for (int row = MathUtils.max(y + _translateY, clip.y); row <= maxY; row++) {
-			for (int col = MathUtils.max(x + _translateX, clip.x); col <= maxX; col++) {
-				drawPoint(col, row, _baseColor);
-			}
+		int minX = MathUtils.max(MathUtils.max(x + _translateX, clip.x), 0);
+		int minY = MathUtils.max(MathUtils.max(y + _translateY, clip.y), 0);
+		int maxX = MathUtils.min(MathUtils.min(x + width + _translateX, clip.x + clip.width), _width);
+		int maxY = MathUtils.min(MathUtils.min(y + height + _translateY, clip.y + clip.height), _height);
+		if (maxX > minX && maxY > minY) {
+			raster().fill(minX, minY, maxX - minX, maxY - minY, _baseColor, false);
+			_dirty = true;
 		}
 		return this;
 	}
@@ -2102,67 +1979,6 @@ public class Pixmap extends Limit implements LRelease {
 		}
 	}
 
-	private void drawPoint(int[] pixels, int pixelIndex, int dst) {
-		drawPoint(pixels, pixelIndex, dst, 0);
-	}
-
-	private void drawPoint(int[] pixels, int pixelIndex, int dst, int src) {
-		int pixel = pixels[pixelIndex];
-		if (_composite == -1) {
-			if (_baseAlpha == 1f) {
-				int newColor = xorMode ? 0xFF000000 | ((pixel ^ dst) ^ xorRGB) : dst;
-				pixels[pixelIndex] = (newColor == 0) ? src : newColor;
-			} else {
-				int ialpha = (int) (0xFF * MathUtils.clamp(_baseAlpha, 0, 1));
-				dst = (ialpha << 24) | (dst & 0xFFFFFF);
-				int newColor = xorMode ? 0xFF000000 | ((pixel ^ dst) ^ xorRGB) : dst;
-				pixels[pixelIndex] = (newColor == 0) ? src : newColor;
-			}
-			return;
-		} else {
-			switch (_composite) {
-			default:
-			case SRC_IN:
-				if (pixel != _transparent) {
-					if (_baseAlpha == 1f) {
-						int newColor = xorMode ? 0xFF000000 | ((pixel ^ dst) ^ xorRGB) : dst;
-						pixels[pixelIndex] = (newColor == 0) ? src : newColor;
-					} else {
-						int ialpha = (int) (0xFF * MathUtils.clamp(_baseAlpha, 0, 1));
-						dst = (ialpha << 24) | (dst & 0xFFFFFF);
-						int newColor = xorMode ? 0xFF000000 | ((pixel ^ dst) ^ xorRGB) : dst;
-						pixels[pixelIndex] = (newColor == 0) ? src : newColor;
-					}
-				}
-				break;
-			case SRC_OUT:
-				if (pixel == _transparent) {
-					if (_baseAlpha == 1f) {
-						int newColor = xorMode ? 0xFF000000 | ((pixel ^ dst) ^ xorRGB) : dst;
-						pixels[pixelIndex] = (newColor == 0) ? src : newColor;
-					} else {
-						int ialpha = (int) (0xFF * MathUtils.clamp(_baseAlpha, 0, 1));
-						dst = (ialpha << 24) | (dst & 0xFFFFFF);
-						int newColor = xorMode ? 0xFF000000 | ((pixel ^ dst) ^ xorRGB) : dst;
-						pixels[pixelIndex] = (newColor == 0) ? src : newColor;
-					}
-				}
-				break;
-			case SRC_OVER:
-				if (_baseAlpha == 1f) {
-					int newColor = xorMode ? 0xFF000000 | ((pixel ^ dst) ^ xorRGB) : dst;
-					pixels[pixelIndex] = (newColor == 0) ? src : newColor;
-				} else {
-					int ialpha = (int) (0xFF * MathUtils.clamp(_baseAlpha, 0, 1));
-					dst = (ialpha << 24) | (dst & 0xFFFFFF);
-					int newColor = xorMode ? 0xFF000000 | ((pixel ^ dst) ^ xorRGB) : dst;
-					pixels[pixelIndex] = (newColor == 0) ? src : newColor;
-				}
-				break;
-			}
-		}
-	}
-
 	public int getComposite() {
 		return this._composite;
 	}
@@ -0,0 +1,571 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.canvas;
+
+import loon.LGame;
+import loon.LSystem;
+import loon.utils.MathUtils;
+
+/**
+ * Pixmap使用的光栅化后端,采样与混合全部以定点整数完成(8位小数的双线性权重,整数Porter-Duff源覆盖混合),
+ * 像素数量达到阀值且平台支持多线程时,按行分段交给Asyn.invokeAll并行处理,每段只写入自己负责的行.
+ */
+public class PixmapRaster {
+
+	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
+	private static class RasterBand implements Runnable {
+
+		private PixmapRaster raster;
+
+		private int from, to;
+
+		@Override
+		public void run() {
+			raster.runRows(from, to);
+		}
+	}
+
+	final static int FILL = 0;
+
+	final static int FILTER = 1;
+
+	final static int GREY = 2;
+
+	final static int THRESHOLD = 3;
+
+	final static int INVERT = 4;
+
+	final static int SEPIA = 5;
+
+	final static int COPY = 6;
+
+	final static int SCALE = 7;
+
+	private static boolean parallelAllowed = true;
+
+	private static int parallelThreshold = 256 * 256;
+
+	private static int maxBands = 8;
+
+	/**
+	 * 设置是否允许并行光栅化,以及启用并行所需的最少像素数量与最多分段数量
+	 * 
+	 * @param allowed
+	 * @param threshold
+	 * @param bands
+	 */
+	public static void setParallel(boolean allowed, int threshold, int bands) {
+		parallelAllowed = allowed;
+		parallelThreshold = threshold;
+		maxBands = MathUtils.max(1, bands);
+	}
+
+	public static boolean isParallelAllowed() {
+		return parallelAllowed;
+	}
+
+	public static int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	public static int getMaxBands() {
+		return maxBands;
+	}
+
+	private RasterBand[] bands = new RasterBand[0];
+
+	private int op;
+
+	private int[] pixels;
+
+	private int width, left, right, top;
+
+	private int composite, alpha, xorRGB, transparent;
+
+	private boolean xorMode;
+
+	private int color, value, mix;
+
+	private int[] srcPixels;
+
+	private int srcWidth, srcLeft, srcTop, srcRight, srcBottom;
+
+	private int srcRows, dstRows;
+
+	private boolean bilinear;
+
+	private int[] xIndex = new int[0];
+
+	private int[] xFrac = new int[0];
+
+	private int usedBands;
+
+	/**
+	 * 载入当前Pixmap的绘制状态(混合模式,透明度,XOR模式)
+	 * 
+	 * @param pixels
+	 * @param width
+	 * @param composite
+	 * @param baseAlpha
+	 * @param xorMode
+	 * @param xorRGB
+	 * @param transparent
+	 */
+	void begin(int[] pixels, int width, int composite, float baseAlpha, boolean xorMode, int xorRGB,
+			int transparent) {
+		this.pixels = pixels;
+		this.width = width;
+		if (composite == -1 || composite == Pixmap.SRC_OVER) {
+			this.composite = Pixmap.SRC_OVER;
+		} else if (composite == Pixmap.SRC_OUT) {
+			this.composite = Pixmap.SRC_OUT;
+		} else {
+			this.composite = Pixmap.SRC_IN;
+		}
+		this.alpha = baseAlpha == 1f ? -1 : (int) (0xFF * MathUtils.clamp(baseAlpha, 0, 1));
+		this.xorMode = xorMode;
+		this.xorRGB = xorRGB;
+		this.transparent = transparent;
+		this.srcPixels = null;
+	}
+
+	private final boolean isPlain() {
+		return composite == Pixmap.SRC_OVER && !xorMode;
+	}
+
+	private final int compose(int pixel, int dst, int src) {
+		if (composite == Pixmap.SRC_IN && pixel == transparent) {
+			return pixel;
+		}
+		if (composite == Pixmap.SRC_OUT && pixel != transparent) {
+			return pixel;
+		}
+		if (alpha != -1) {
+			dst = (alpha << 24) | (dst & 0xFFFFFF);
+		}
+		int newColor = xorMode ? 0xFF000000 | ((pixel ^ dst) ^ xorRGB) : dst;
+		return (newColor == 0) ? src : newColor;
+	}
+
+	/**
+	 * 以整数运算完成的Porter-Duff源覆盖(SRC_OVER)混合,目标不透明时与旧版的逐通道插值结果一致
+	 * 
+	 * @param src
+	 * @param dst
+	 * @return
+	 */
+	static int blend(int src, int dst) {
+		int sa = src >>> 24;
+		if (sa == 0xFF) {
+			return src;
+		}
+		if (sa == 0) {
+			return dst;
+		}
+		int da = dst >>> 24;
+		if (da == 0) {
+			return src;
+		}
+		int sr = (src >> 16) & 0xFF;
+		int sg = (src >> 8) & 0xFF;
+		int sb = src & 0xFF;
+		int dr = (dst >> 16) & 0xFF;
+		int dg = (dst >> 8) & 0xFF;
+		int db = dst & 0xFF;
+		if (da == 0xFF) {
+			return 0xFF000000 | ((dr + sa * (sr - dr) / 255) << 16) | ((dg + sa * (sg - dg) / 255) << 8)
+					| (db + sa * (sb - db) / 255);
+		}
+		int fa = da * (255 - sa) / 255;
+		int oa = sa + fa;
+		int half = oa >> 1;
+		int r = (sr * sa + dr * fa + half) / oa;
+		int g = (sg * sa + dg * fa + half) / oa;
+		int b = (sb * sa + db * fa + half) / oa;
+		return (oa << 24) | (r << 16) | (g << 8) | b;
+	}
+
+	/**
+	 * 填充指定矩形区域(区域需已裁剪到画布内)
+	 * 
+	 * @param x
+	 * @param y
+	 * @param w
+	 * @param h
+	 * @param c
+	 * @param useComposite
+	 *            是否遵守混合模式(为false时只处理透明度与XOR模式)
+	 */
+	void fill(int x, int y, int w, int h, int c, boolean useComposite) {
+		if (!useComposite) {
+			this.composite = Pixmap.SRC_OVER;
+		}
+		this.left = x;
+		this.right = x + w;
+		this.top = y;
+		this.color = c;
+		this.value = alpha == -1 ? c : (alpha << 24) | (c & 0xFFFFFF);
+		execute(FILL, h);
+	}
+
+	void filter(int height, int src, int dst) {
+		this.left = 0;
+		this.right = width;
+		this.top = 0;
+		this.color = src;
+		this.value = dst;
+		execute(FILTER, height);
+	}
+
+	void greyScale(int height, float mix) {
+		pixelOp(GREY, height, mix, 0);
+	}
+
+	void threshold(int height, int threshold) {
+		pixelOp(THRESHOLD, height, 1f, threshold);
+	}
+
+	void invert(int height, float mix) {
+		pixelOp(INVERT, height, mix, 0);
+	}
+
+	void sepia(int height, float mix) {
+		pixelOp(SEPIA, height, mix, 0);
+	}
+
+	private void pixelOp(int op, int height, float mix, int value) {
+		this.left = 0;
+		this.right = width;
+		this.top = 0;
+		this.mix = (int) (MathUtils.min(MathUtils.max(mix, 0f), 1f) * 256);
+		this.value = value;
+		execute(op, height);
+	}
+
+	/**
+	 * 不缩放的复制(区域需已裁剪到画布内),源像素等于key时跳过
+	 */
+	void copy(int[] src, int srcWidth, int srcX, int srcY, int x, int y, int w, int h, int key) {
+		this.srcPixels = src;
+		this.srcWidth = srcWidth;
+		this.srcLeft = srcX;
+		this.srcTop = srcY;
+		this.left = x;
+		this.right = x + w;
+		this.top = y;
+		this.value = key;
+		execute(COPY, h);
+	}
+
+	/**
+	 * 缩放并混合源图像,采样坐标按(目标坐标 * (源大小 - 1) / 目标大小)以整数精确计算
+	 */
+	void scale(int[] src, int srcWidth, int srcHeight, int dstX, int dstY, int dstWidth, int dstHeight, int srcX,
+			int srcY, int srcW, int srcH, int dstLimitWidth, int dstLimitHeight, boolean bilinear) {
+		final int xspan = srcW - 1;
+		final int yspan = srcH - 1;
+		int colStart = 0;
+		while (colStart < dstWidth && (colStart + dstX < 0 || colStart * xspan / dstWidth + srcX < 0)) {
+			colStart++;
+		}
+		int colEnd = colStart;
+		while (colEnd < dstWidth && colEnd + dstX < dstLimitWidth && colEnd * xspan / dstWidth + srcX < srcWidth) {
+			colEnd++;
+		}
+		int rowStart = 0;
+		while (rowStart < dstHeight && (rowStart + dstY < 0 || rowStart * yspan / dstHeight + srcY < 0)) {
+			rowStart++;
+		}
+		int rowEnd = rowStart;
+		while (rowEnd < dstHeight && rowEnd + dstY < dstLimitHeight
+				&& rowEnd * yspan / dstHeight + srcY < srcHeight) {
+			rowEnd++;
+		}
+		final int cols = colEnd - colStart;
+		if (cols <= 0 || rowEnd <= rowStart) {
+			return;
+		}
+		if (xIndex.length < cols) {
+			xIndex = new int[cols];
+			xFrac = new int[cols];
+		}
+		for (int j = colStart, k = 0; j < colEnd; j++, k++) {
+			int num = j * xspan;
+			int sx = num / dstWidth;
+			xIndex[k] = sx + srcX;
+			xFrac[k] = ((num - sx * dstWidth) << 8) / dstWidth;
+		}
+		this.srcPixels = src;
+		this.srcWidth = srcWidth;
+		this.srcLeft = srcX;
+		this.srcTop = srcY;
+		this.srcRight = MathUtils.min(srcWidth - 1, srcX + xspan);
+		this.srcBottom = MathUtils.min(srcHeight - 1, srcY + yspan);
+		this.srcRows = yspan;
+		this.dstRows = dstHeight;
+		this.left = dstX + colStart;
+		this.right = dstX + colEnd;
+		this.top = dstY;
+		this.value = rowStart;
+		this.bilinear = bilinear;
+		execute(SCALE, rowEnd - rowStart);
+	}
+
+	private void execute(int op, int rows) {
+		this.op = op;
+		if (rows <= 0 || right <= left) {
+			this.srcPixels = null;
+			return;
+		}
+		LGame game = parallelAllowed && rows > 1 && rows * (right - left) >= parallelThreshold ? LSystem.base()
+				: null;
+		if (game == null || !game.asyn().isParallelSupported()) {
+			usedBands = 1;
+			runRows(0, rows);
+		} else {
+			invokeBands(game, rows);
+		}
+		this.srcPixels = null;
+	}
+
+	private void invokeBands(LGame game, int rows) {
+		int count = MathUtils.min(rows, maxBands);
+		if (bands.length < count) {
+			RasterBand[] tmp = new RasterBand[count];
+			System.arraycopy(bands, 0, tmp, 0, bands.length);
+			bands = tmp;
+		}
+		int step = (rows + count - 1) / count;
+		int used = 0;
+		for (int from = 0; from < rows; from += step) {
+			RasterBand band = bands[used];
+			if (band == null) {
+				band = bands[used] = new RasterBand();
+				band.raster = this;
+			}
+			band.from = from;
+			band.to = MathUtils.min(rows, from + step);
+			used++;
+		}
+		usedBands = used;
+		game.asyn().invokeAll(bands, used);
+	}
+
+	/**
+	 * 最近一次光栅化操作所使用的分段数量
+	 * 
+	 * @return
+	 */
+	public int getUsedBands() {
+		return usedBands;
+	}
+
+	private void runRows(int from, int to) {
+		switch (op) {
+		case FILL:
+			fillRows(from, to);
+			break;
+		case FILTER:
+			filterRows(from, to);
+			break;
+		case COPY:
+			copyRows(from, to);
+			break;
+		case SCALE:
+			scaleRows(from, to);
+			break;
+		default:
+			colorRows(from, to);
+			break;
+		}
+	}
+
+	private void fillRows(int from, int to) {
+		final int[] pixels = this.pixels;
+		final int w = right - left;
+		if (isPlain()) {
+			final int c = value;
+			for (int r = from; r < to; r++) {
+				int idx = (top + r) * width + left;
+				for (int end = idx + w; idx < end; idx++) {
+					pixels[idx] = c;
+				}
+			}
+		} else {
+			final int c = color;
+			for (int r = from; r < to; r++) {
+				int idx = (top + r) * width + left;
+				for (int end = idx + w; idx < end; idx++) {
+					pixels[idx] = compose(pixels[idx], c, 0);
+				}
+			}
+		}
+	}
+
+	private void filterRows(int from, int to) {
+		final int[] pixels = this.pixels;
+		final int src = color;
+		final int dst = value;
+		final int end = MathUtils.min(to * width, pixels.length);
+		for (int idx = from * width; idx < end; idx++) {
+			if (pixels[idx] == src) {
+				pixels[idx] = dst;
+			}
+		}
+	}
+
+	private void colorRows(int from, int to) {
+		final int[] pixels = this.pixels;
+		final int end = MathUtils.min(to * width, pixels.length);
+		final int m = mix;
+		final int n = 256 - m;
+		final int level = value;
+		for (int idx = from * width; idx < end; idx++) {
+			int c = pixels[idx];
+			if (c == LColor.TRANSPARENT) {
+				pixels[idx] = transparent;
+				continue;
+			}
+			int a = c & 0xFF000000;
+			int r = (c >> 16) & 0xFF;
+			int g = (c >> 8) & 0xFF;
+			int b = c & 0xFF;
+			switch (op) {
+			case GREY: {
+				int v = (13933 * r + 46871 * g + 4732 * b) >> 16;
+				r = (v * m + r * n) >> 8;
+				g = (v * m + g * n) >> 8;
+				b = (v * m + b * n) >> 8;
+				break;
+			}
+			case THRESHOLD: {
+				int v = ((13933 * r + 46871 * g + 4732 * b) >> 16) > level ? 0xFF : 0;
+				r = g = b = v;
+				break;
+			}
+			case INVERT:
+				r = ((255 - r) * m + r * n) >> 8;
+				g = ((255 - g) * m + g * n) >> 8;
+				b = ((255 - b) * m + b * n) >> 8;
+				break;
+			case SEPIA: {
+				int nr = (402 * r + 787 * g + 194 * b) >> 10;
+				int ng = (357 * r + 702 * g + 172 * b) >> 10;
+				int nb = (279 * r + 547 * g + 134 * b) >> 10;
+				r = (MathUtils.min(nr, 0xFF) * m + r * n) >> 8;
+				g = (MathUtils.min(ng, 0xFF) * m + g * n) >> 8;
+				b = (MathUtils.min(nb, 0xFF) * m + b * n) >> 8;
+				break;
+			}
+			}
+			pixels[idx] = a | (r << 16) | (g << 8) | b;
+		}
+	}
+
+	private void copyRows(int from, int to) {
+		final int[] pixels = this.pixels;
+		final int[] src = this.srcPixels;
+		final int w = right - left;
+		final int key = value;
+		final boolean plain = isPlain() && alpha == -1;
+		for (int r = from; r < to; r++) {
+			int idx = (top + r) * width + left;
+			int sidx = (srcTop + r) * srcWidth + srcLeft;
+			for (int end = idx + w; idx < end; idx++, sidx++) {
+				int s = src[sidx];
+				if (s != key) {
+					pixels[idx] = plain ? s : compose(pixels[idx], s, 0);
+				}
+			}
+		}
+	}
+
+	private void scaleRows(int from, int to) {
+		final int[] pixels = this.pixels;
+		final int[] src = this.srcPixels;
+		final int[] xIndex = this.xIndex;
+		final int[] xFrac = this.xFrac;
+		final int w = right - left;
+		final int spitch = srcWidth;
+		final boolean plain = isPlain() && alpha == -1;
+		for (int r = from; r < to; r++) {
+			int i = value + r;
+			int num = i * srcRows;
+			int sy = num / dstRows;
+			int fy = ((num - sy * dstRows) << 8) / dstRows;
+			sy += srcTop;
+			int row0 = sy * spitch;
+			int row1 = MathUtils.min(sy + 1, srcBottom) * spitch;
+			int idx = (top + i) * width + left;
+			for (int k = 0; k < w; k++, idx++) {
+				int sx = xIndex[k];
+				int s;
+				if (bilinear) {
+					s = sample(src, row0, row1, sx, MathUtils.min(sx + 1, srcRight), xFrac[k], fy);
+				} else {
+					s = src[row0 + sx];
+				}
+				if (s == transparent || (s >>> 24) == 0) {
+					continue;
+				}
+				int d = pixels[idx];
+				if (plain) {
+					pixels[idx] = blend(s, d);
+				} else {
+					pixels[idx] = compose(d, blend(s, d), s);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 双线性采样,颜色以透明度加权(等同于预乘透明度后插值),避免透明像素的颜色渗入边缘
+	 */
+	private static int sample(int[] src, int row0, int row1, int x0, int x1, int fx, int fy) {
+		int c00 = src[row0 + x0];
+		int c10 = src[row0 + x1];
+		int c01 = src[row1 + x0];
+		int c11 = src[row1 + x1];
+		if (c00 == c10 && c00 == c01 && c00 == c11) {
+			return c00;
+		}
+		int w11 = fx * fy;
+		int w10 = (fx << 8) - w11;
+		int w01 = (fy << 8) - w11;
+		int w00 = 65536 - w10 - w01 - w11;
+		int a00 = (w00 * (c00 >>> 24)) >> 8;
+		int a10 = (w10 * (c10 >>> 24)) >> 8;
+		int a01 = (w01 * (c01 >>> 24)) >> 8;
+		int a11 = (w11 * (c11 >>> 24)) >> 8;
+		int sum = a00 + a10 + a01 + a11;
+		if (sum == 0) {
+			return 0;
+		}
+		int half = sum >> 1;
+		int r = (a00 * ((c00 >> 16) & 0xFF) + a10 * ((c10 >> 16) & 0xFF) + a01 * ((c01 >> 16) & 0xFF)
+				+ a11 * ((c11 >> 16) & 0xFF) + half) / sum;
+		int g = (a00 * ((c00 >> 8) & 0xFF) + a10 * ((c10 >> 8) & 0xFF) + a01 * ((c01 >> 8) & 0xFF)
+				+ a11 * ((c11 >> 8) & 0xFF) + half) / sum;
+		int b = (a00 * (c00 & 0xFF) + a10 * (c10 & 0xFF) + a01 * (c01 & 0xFF) + a11 * (c11 & 0xFF) + half) / sum;
+		return (((sum + 0x80) >> 8) << 24) | (r << 16) | (g << 8) | b;
+	}
+
+}
@@ -31,6 +31,7 @@ import loon.font.LFont;
 import loon.font.ShadowFont;
 import loon.opengl.GLEx;
 import loon.opengl.LSTRDictionary;
+import loon.opengl.LSTRFont;
 import loon.utils.MathUtils;
 import loon.utils.ObjectMap;
 import loon.utils.StringUtils;
@@ -379,6 +380,8 @@ public class LMessageBox extends LComponent implements FontSet<LMessageBox> {
 
 	private String _tmpString;
 
+	private LSTRFont _retainedFont;
+
 	private boolean _showShadow = false;
 
 	public LMessageBox(TArray<Message> messages, int x, int y, int width, int height) {
@@ -653,7 +656,12 @@ public class LMessageBox extends LComponent implements FontSet<LMessageBox> {
 	public void drawMessage(GLEx g) {
 		if (!_initNativeDraw) {
 			if (_font instanceof LFont) {
-				LSTRDictionary.get().bind((LFont) _font, _tmpString);
+				LSTRDictionary.Dict dict = LSTRDictionary.get().bind((LFont) _font, _tmpString);
+				// 对话框显示期间固定其中的文字,以免被纹理页淘汰
+				_retainedFont = dict.getSTR();
+				if (_retainedFont != null) {
+					_retainedFont.retainChars(_tmpString);
+				}
 			}
 			_initNativeDraw = true;
 		}
@@ -825,4 +833,14 @@ public class LMessageBox extends LComponent implements FontSet<LMessageBox> {
 		return "MessageBox";
 	}
 
+	@Override
+	public void close() {
+		super.close();
+		if (_retainedFont != null) {
+			_retainedFont.releaseChars(_tmpString);
+			_retainedFont = null;
+		}
+		_initNativeDraw = false;
+	}
+
 }
@@ -27,10 +27,13 @@ import loon.LTexture;
 import loon.canvas.LColor;
 import loon.component.skin.SkinManager;
 import loon.component.skin.TextListSkin;
+import loon.component.table.IPagedTableModel;
+import loon.component.table.ITableModel;
 import loon.event.SysTouch;
 import loon.font.FontSet;
 import loon.font.IFont;
 import loon.opengl.GLEx;
+import loon.utils.IntMap;
 
 /**
  * 文字列表显示用UI,用以列表方式显示指定数据,LGame本身附带有默认UI,用户也可以自行注入图片进行替换.
@@ -94,6 +97,10 @@ public class LTextList extends LComponent implements FontSet<LTextList> {
 	private boolean useHold;
 	private int hold;
 
+	private ITableModel model;
+	private int modelColumn;
+	private final IntMap<String> modelNames = new IntMap<String>();
+
 	public LTextList(int x, int y) {
 		this(128, x, y, defaultWidth, defaultHeight, 30);
 	}
@@ -195,6 +202,81 @@ public class LTextList extends LComponent implements FontSet<LTextList> {
 		return _font;
 	}
 
+	/**
+	 * 改为从指定表格模型的第一列读取列表内容,只有显示中的行会被读取,数据量很大时不必逐行调用add
+	 * 
+	 * @param model
+	 * @return
+	 */
+	public LTextList setModel(ITableModel model) {
+		return setModel(model, 0);
+	}
+
+	/**
+	 * 改为从指定表格模型的指定列读取列表内容,只有显示中的行会被读取,此时行号即为数据标识
+	 * 
+	 * @param model
+	 * @param column
+	 * @return
+	 */
+	public LTextList setModel(ITableModel model, int column) {
+		this.model = model;
+		this.modelColumn = column;
+		this.modelNames.clear();
+		this.selectList = 0;
+		this.scrollList = 0;
+		return this;
+	}
+
+	public ITableModel getModel() {
+		return model;
+	}
+
+	/**
+	 * 列表中的数据行数
+	 * 
+	 * @return
+	 */
+	public int getItemCount() {
+		return model == null ? num : model.getRowCount();
+	}
+
+	private String getItemName(int idx) {
+		if (model == null) {
+			if (!this.lengthCheck[idx]) {
+				this.lengthCheck[idx] = true;
+				if (this.name[idx] != null) {
+					this.name[idx] = confineName(this.name[idx]);
+				}
+			}
+			return this.name[idx];
+		}
+		String result = modelNames.get(idx);
+		if (result == null) {
+			Object value = model.getValue(idx, modelColumn);
+			if (value == null) {
+				return null;
+			}
+			if (modelNames.size > drawNum * 4 + 16) {
+				modelNames.clear();
+			}
+			result = confineName(value.toString());
+			modelNames.put(idx, result);
+		}
+		return result;
+	}
+
+	private String confineName(String s) {
+		while (s.length() > 0 && _font.stringWidth(s) > getWidth()) {
+			s = s.substring(0, s.length() - 1);
+		}
+		return s;
+	}
+
+	private LColor getItemColor(int idx) {
+		return model == null ? this.color[idx] : this.defaultStringColor;
+	}
+
 	public LTextList changeName(int position, String nameString, int numberInt) {
 		this.name[position] = nameString;
 		this.number[position] = numberInt;
@@ -315,7 +397,7 @@ public class LTextList extends LComponent implements FontSet<LTextList> {
 	public String getSelectName() {
 		int idx = get();
 		if (idx != -1) {
-			return name[idx];
+			return model == null ? name[idx] : getItemName(idx);
 		}
 		return LSystem.UNKOWN;
 	}
@@ -327,7 +409,7 @@ public class LTextList extends LComponent implements FontSet<LTextList> {
 	 */
 	public int get() {
 		if (this.selectList >= 0) {
-			return this.number[this.selectList];
+			return model == null ? this.number[this.selectList] : this.selectList;
 		}
 		return -1;
 	}
@@ -370,8 +452,14 @@ public class LTextList extends LComponent implements FontSet<LTextList> {
 				this.loop = 0;
 				this.selectList = -1;
 
+				final int count = getItemCount();
+
+				if (model instanceof IPagedTableModel) {
+					((IPagedTableModel) model).prefetch(this.scrollList, this.scrollList + this.drawNum);
+				}
+
 				for (int i = this.scrollList; i < this.drawNum + this.scrollList; i++) {
-					if (i >= this.num)
+					if (i >= count)
 						break;
 					this.drawX = (x + 5);
 					this.drawY = (y + 5 + this.loop * fontSize);
@@ -384,22 +472,14 @@ public class LTextList extends LComponent implements FontSet<LTextList> {
 
 					}
 
-					// 计算是否选中当前行
-					if (!this.lengthCheck[i]) {
-						this.lengthCheck[i] = true;
-						if (this.name[i] != null) {
-							while (_font.stringWidth(this.name[i]) > getWidth()) {
-								this.name[i] = this.name[i].substring(0, this.name[i].length() - 1);
-							}
-						}
-					}
+					final String itemName = getItemName(i);
 
 					if ((this.selectList == i) || ((this.useHold) && (this.hold == i))) {
 						if ((this.useHold) && (this.hold == i)) {
 							g.setTint(255, 255, 0);
 							g.fillRect(x + 1, this.drawY, getWidth() - 1, fontSize);
 							g.setTint(LColor.black);
-							drawString(g, this.name[i], this.drawX, this.drawY);
+							drawString(g, itemName, this.drawX, this.drawY);
 							this.hold = -1;
 						}
 						// 选中指定列时
@@ -412,11 +492,11 @@ public class LTextList extends LComponent implements FontSet<LTextList> {
 										_component_baseColor);
 							}
 							g.setTint(this.choiceStringColor);
-							drawString(g, this.name[i], this.drawX, this.drawY);
+							drawString(g, itemName, this.drawX, this.drawY);
 						}
 					} else {
-						g.setTint(this.color[i]);
-						drawString(g, this.name[i], this.drawX, this.drawY);
+						g.setTint(getItemColor(i));
+						drawString(g, itemName, this.drawX, this.drawY);
 					}
 
 					this.loop += 1;
@@ -426,15 +506,14 @@ public class LTextList extends LComponent implements FontSet<LTextList> {
 
 				this.scrollBarHeight_max = (int) (getHeight() - this.scrollButtonHeight * 2);
 
-				if ((this.drawNum < this.num) && (this.drawNum > 0)) {
-					this.scrollBarHeight = (this.scrollBarHeight_max / this.num / this.drawNum);
-					this.scrollBarHeight = (this.scrollBarHeight_max * this.drawNum / this.num);
+				if ((this.drawNum < count) && (this.drawNum > 0)) {
+					this.scrollBarHeight = (this.scrollBarHeight_max * this.drawNum / count);
 					if (this.scrollBarHeight < 8)
 						this.scrollBarHeight = 8;
 
 					this.scrollBarY = (y + this.scrollButtonHeight + 1);
 					this.scrollBarY += (this.scrollBarHeight_max - this.scrollBarHeight) * this.scrollList
-							/ (this.num - this.drawNum);
+							/ (count - this.drawNum);
 				} else {
 					this.scrollBarHeight = this.scrollBarHeight_max;
 					this.scrollBarY = (y + this.scrollButtonHeight + 1);
@@ -451,7 +530,7 @@ public class LTextList extends LComponent implements FontSet<LTextList> {
 
 					if (mouseY > this.scrollBarY + this.scrollBarHeight * 2 / 3) {
 						for (int i = 0; i < 5; i++) {
-							if (this.scrollList >= this.num - this.drawNum)
+							if (this.scrollList >= count - this.drawNum)
 								break;
 							this.scrollList += 1;
 						}
@@ -521,7 +600,7 @@ public class LTextList extends LComponent implements FontSet<LTextList> {
 			if ((!this.scrollBarDrag) && isFocusable() && (mouseX > this.scrollButtonX)
 					&& (mouseX <= this.scrollButtonX + this.scrollButtonWidth) && (mouseY > this.scrollButtonY)
 					&& (mouseY < this.scrollButtonY + this.scrollButtonHeight)) {
-				if (this.scrollList < this.num - this.drawNum) {
+				if (this.scrollList < getItemCount() - this.drawNum) {
 					this.scrollList += 1;
 				}
 				this.scrollDownButtonON = true;
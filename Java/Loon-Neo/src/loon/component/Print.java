@@ -181,6 +181,9 @@ public class Print implements FontSet<Print>, LRelease {
 
 	private LSTRFont strings;
 
+	// strings来自LSTRDictionary时,被固定在纹理页中的字符(不属于Print,只能解除固定而不能关闭)
+	private String stringsRetained;
+
 	private IFont ifont;
 
 	private boolean isEnglish, isWait, isIconFlag;
@@ -235,14 +238,16 @@ public class Print implements FontSet<Print>, LRelease {
 			if (_context == null) {
 				return;
 			}
-			if (_print.strings != null && !_print.strings.isClosed() && !_drawDrawingFont) {
-				_print.strings.close();
-			}
+			_print.releaseStrings();
 			// 如果是默认的loon系统字体
 			if (_font instanceof LFont) {
 				if (_drawDrawingFont) {
 					LSTRDictionary.Dict dict = LSTRDictionary.get().bind((LFont) _font, _context);
 					_print.strings = dict.getSTR();
+					if (_print.strings != null) {
+						_print.strings.retainChars(_context);
+						_print.stringsRetained = _context;
+					}
 					_print.ifont = _font;
 				} else {
 					_print.strings = new LSTRFont((LFont) _font, _context, LSystem.isHTML5());
@@ -813,13 +818,22 @@ public class Print implements FontSet<Print>, LRelease {
 		return closed;
 	}
 
+	private void releaseStrings() {
+		if (strings != null && !strings.isClosed()) {
+			if (stringsRetained != null) {
+				strings.releaseChars(stringsRetained);
+			} else {
+				strings.close();
+			}
+		}
+		stringsRetained = null;
+	}
+
 	@Override
 	public void close() {
 		if (!nativeFont) {
-			if (strings != null) {
-				strings.close();
-				strings = null;
-			}
+			releaseStrings();
+			strings = null;
 		}
 		if (creeseIcon != null) {
 			creeseIcon.close();
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.component.table;
+
+/**
+ * 按页载入数据的表格模型,表格只会向模型索取当前显示的行,并在绘制前通知模型即将显示的行范围,
+ * 因此数据量很大时也不需要一次性载入全部数据
+ */
+public interface IPagedTableModel extends ITableModel {
+
+	/**
+	 * 通知模型即将显示[startRow,endRow)范围内的行
+	 * 
+	 * @param startRow
+	 * @param endRow
+	 */
+	public void prefetch(int startRow, int endRow);
+
+}
@@ -26,6 +26,7 @@ import loon.LTexture;
 import loon.canvas.LColor;
 import loon.component.LComponent;
 import loon.component.LContainer;
+import loon.component.LScrollContainer;
 import loon.component.skin.SkinManager;
 import loon.component.skin.TableSkin;
 import loon.font.FontSet;
@@ -35,6 +36,7 @@ import loon.geom.Dimension;
 import loon.opengl.GLEx;
 import loon.utils.TArray;
 import loon.utils.ArrayMap;
+import loon.utils.CollectionUtils;
 import loon.utils.MathUtils;
 
 /**
@@ -120,6 +122,20 @@ public class LTable extends LContainer implements FontSet<LTable> {
 
 	private LTexture backgroundTexture;
 
+	private boolean virtualized = false;
+
+	private int[] rowHeights;
+
+	private int[] rowOffsets;
+
+	private int rowOffsetCount = -1;
+
+	private int[] columnWidths = new int[0];
+
+	private final Dimension cellSize = new Dimension();
+
+	private int firstVisibleRow = -1, lastVisibleRow = -1;
+
 	public LTable(int x, int y) {
 		this(SkinManager.get().getTableSkin().getFont(), x, y, LSystem.viewSize.getWidth(),
 				LSystem.viewSize.getHeight());
@@ -265,18 +281,7 @@ public class LTable extends LContainer implements FontSet<LTable> {
 
 		assertSelectionArraySize();
 
-		int mouseY = (int) y;
-		if (!isTableHeadVisible()) {
-			mouseY -= getCellHeight();
-		}
-
-		mouseY += getCellSpacing();
-
-		int row = (mouseY / (getCellHeight() + getCellSpacing()));
-
-		if (isTableHeadVisible()) {
-			row--;
-		}
+		int row = getRowAt((int) y - getCellHeight());
 
 		if (row < 0 || row >= selected.length) {
 			return this;
@@ -336,10 +341,7 @@ public class LTable extends LContainer implements FontSet<LTable> {
 		if (model == null) {
 			return super.getHeight();
 		}
-		int height = 0;
-		for (int i = 0; i < model.getRowCount(); i++) {
-			height += (cellHeight + cellSpacing);
-		}
+		int height = getRowOffset(model.getRowCount());
 		if (isTableHeadVisible()) {
 			height += (cellHeight + cellSpacing);
 		}
@@ -373,15 +375,10 @@ public class LTable extends LContainer implements FontSet<LTable> {
 			int x = displayX;
 			int y = displayY;
 			y += cellHeight;
-			int size = (int) (getHeight() / (cellHeight + cellSpacing));
-			int wid = 0;
-			for (int i = 0; i < model.getColumnCount(); i++) {
-				wid += getColumnWidth(i);
-			}
-			int hei = 0;
-			for (int i = 0; i < model.getRowCount(); i++) {
-				hei += (cellHeight + cellSpacing);
-			}
+			final int rowCount = model.getRowCount();
+			final int columnCount = model.getColumnCount();
+			int wid = updateColumnWidths(columnCount);
+			int hei = getRowOffset(rowCount);
 			if (wid != getWidth() || hei + (cellHeight + cellSpacing) != getHeight()) {
 				setSize(wid, hei + (cellHeight + cellSpacing));
 			}
@@ -400,58 +397,66 @@ public class LTable extends LContainer implements FontSet<LTable> {
 				newFont.setSupportCacheFontPack(false);
 			}
 
-			for (int row = 0; row < size && row < model.getRowCount(); row++) {
+			updateVisibleRows(y, rowCount);
+
+			if (firstVisibleRow != -1 && model instanceof IPagedTableModel) {
+				((IPagedTableModel) model).prefetch(firstVisibleRow, lastVisibleRow + 1);
+			}
+
+			final int[] widths = columnWidths;
+			final int rowsTop = y;
+			for (int row = firstVisibleRow; row != -1 && row <= lastVisibleRow; row++) {
 				x = displayX;
+				y = rowsTop + getRowOffset(row);
+				final int rowHeight = getRowHeight(row);
 				if (isSelected(row)) {
 					g.setColor(selectionColor);
-					g.fillRect(x, y, wid, cellHeight);
+					g.fillRect(x, y, wid, rowHeight);
 					g.setColor(LColor.white);
 				}
-				for (int columnIndex = 0; columnIndex < model.getColumnCount(); columnIndex++) {
+				for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+
+					final int columnWidth = widths[columnIndex];
 
 					g.setColor(textColor);
 					Object value = model.getValue(row, columnIndex);
 
 					if (value != null) {
-						ICellRenderer cellRenderer = getColumn(columnIndex).getCellRenderer();
+						TableColumn column = columns[columnIndex];
+						ICellRenderer cellRenderer = column.getCellRenderer();
 						Dimension contentDimension = cellRenderer.getCellContentSize(value);
 						if (contentDimension == null) {
-							contentDimension = new Dimension(getColumnWidth(columnIndex), cellHeight);
+							cellSize.setSize(columnWidth, rowHeight);
+							contentDimension = cellSize;
 						}
-						int alignedX = x + getColumn(columnIndex).getEntryAlignment()
-								.alignX(getColumnWidth(columnIndex), contentDimension.getWidth());
-						int alignedY = y + getColumn(columnIndex).getEntryAlignment().alignY(cellHeight,
-								contentDimension.getHeight());
+						int alignedX = x + column.getEntryAlignment().alignX(columnWidth, contentDimension.getWidth());
+						int alignedY = y + column.getEntryAlignment().alignY(rowHeight, contentDimension.getHeight());
 
 						if (bindIcons.size() == 0) {
-							cellRenderer.paint(g, value, alignedX, alignedY, getColumnWidth(columnIndex), cellHeight);
+							cellRenderer.paint(g, value, alignedX, alignedY, columnWidth, rowHeight);
 						} else {
 							if (value instanceof String) {
 								String v = (String) value;
 								BindIcon icon = containsBindIcon(v);
 								if (icon != null) {
-									cellRenderer.paint(g, icon, alignedX, alignedY, getColumnWidth(columnIndex),
-											cellHeight);
+									cellRenderer.paint(g, icon, alignedX, alignedY, columnWidth, rowHeight);
 								} else {
-									cellRenderer.paint(g, value, alignedX, alignedY, getColumnWidth(columnIndex),
-											cellHeight);
+									cellRenderer.paint(g, value, alignedX, alignedY, columnWidth, rowHeight);
 								}
 							} else {
-								cellRenderer.paint(g, value, alignedX, alignedY, getColumnWidth(columnIndex),
-										cellHeight);
+								cellRenderer.paint(g, value, alignedX, alignedY, columnWidth, rowHeight);
 							}
 						}
 					}
 
 					if (gridVisible) {
 						g.setColor(gridColor);
-						g.drawRect(x, y, getColumnWidth(columnIndex), cellHeight);
+						g.drawRect(x, y, columnWidth, rowHeight);
 						g.setColor(LColor.white);
 					}
 
-					x += getColumnWidth(columnIndex) + cellSpacing;
+					x += columnWidth + cellSpacing;
 				}
-				y += (cellHeight + cellSpacing);
 			}
 			if (tableHeaderVisible) {
 				header.headerY = displayY;
@@ -469,9 +474,9 @@ public class LTable extends LContainer implements FontSet<LTable> {
 				}
 				x = displayX;
 
-				for (int columnIndex = 0; columnIndex < model.getColumnCount(); columnIndex++) {
+				for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
 					String s = model.getColumnName(columnIndex);
-					int columnWidth = getColumnWidth(columnIndex);
+					int columnWidth = columnWidths[columnIndex];
 					s = font.confineLength(s, columnWidth - OFFSET);
 					int entryOffset = OFFSET + getColumn(columnIndex).getHeaderAlignment().alignX(columnWidth - OFFSET,
 							font.stringWidth(s));
@@ -491,6 +496,213 @@ public class LTable extends LContainer implements FontSet<LTable> {
 		}
 	}
 
+	private int updateColumnWidths(int columnCount) {
+		if (columnWidths.length < columnCount) {
+			columnWidths = new int[columnCount];
+		}
+		int wid = 0;
+		for (int i = 0; i < columnCount; i++) {
+			wid += (columnWidths[i] = getColumnWidth(i));
+		}
+		return wid;
+	}
+
+	/**
+	 * 计算需要绘制的行范围,虚拟化模式下只保留与可见区域(所在LScrollContainer的显示范围,或游戏画面)相交的行
+	 * 
+	 * @param rowsTop
+	 * @param rowCount
+	 */
+	private void updateVisibleRows(int rowsTop, int rowCount) {
+		if (rowCount <= 0) {
+			firstVisibleRow = lastVisibleRow = -1;
+			return;
+		}
+		if (!virtualized) {
+			firstVisibleRow = 0;
+			lastVisibleRow = rowCount - 1;
+			return;
+		}
+		int viewTop;
+		int viewBottom;
+		LContainer container = getContainer();
+		if (container instanceof LScrollContainer) {
+			LScrollContainer scroll = (LScrollContainer) container;
+			viewTop = scroll.getScreenY() + scroll.getScrollY();
+			viewBottom = viewTop + (int) scroll.getHeight();
+		} else {
+			viewTop = 0;
+			viewBottom = LSystem.viewSize.getHeight();
+		}
+		int total = getRowOffset(rowCount);
+		int top = MathUtils.max(viewTop - rowsTop, 0);
+		int bottom = MathUtils.min(viewBottom - rowsTop, total - 1);
+		if (bottom < top) {
+			firstVisibleRow = lastVisibleRow = -1;
+			return;
+		}
+		firstVisibleRow = getRowAt(top);
+		lastVisibleRow = getRowAt(bottom);
+		if (firstVisibleRow == -1 || lastVisibleRow == -1) {
+			firstVisibleRow = lastVisibleRow = -1;
+		}
+	}
+
+	private void ensureRowOffsets(int rows) {
+		if (rowOffsetCount >= rows) {
+			return;
+		}
+		if (rowOffsets == null || rowOffsets.length < rows + 1) {
+			rowOffsets = CollectionUtils.copyOf(rowOffsets == null ? new int[0] : rowOffsets,
+					MathUtils.max(rows + 1, rowOffsets == null ? 0 : rowOffsets.length * 2));
+		}
+		int start = MathUtils.max(rowOffsetCount, 0);
+		if (start == 0) {
+			rowOffsets[0] = 0;
+		}
+		for (int i = start; i < rows; i++) {
+			rowOffsets[i + 1] = rowOffsets[i] + getRowHeight(i) + cellSpacing;
+		}
+		rowOffsetCount = rows;
+	}
+
+	private void invalidateRowOffsets(int row) {
+		if (rowOffsetCount > row) {
+			rowOffsetCount = row;
+		}
+	}
+
+	/**
+	 * 获得指定行相对于首行的纵向偏移(行高不一致时使用缓存的前缀和,只在行高改变后重新计算)
+	 * 
+	 * @param row
+	 * @return
+	 */
+	public int getRowOffset(int row) {
+		if (row <= 0) {
+			return 0;
+		}
+		if (rowHeights == null) {
+			return row * (cellHeight + cellSpacing);
+		}
+		ensureRowOffsets(row);
+		return rowOffsets[row];
+	}
+
+	/**
+	 * 获得指定纵向偏移(相对首行)所在的行,不存在时返回-1
+	 * 
+	 * @param offset
+	 * @return
+	 */
+	public int getRowAt(int offset) {
+		if (model == null || offset < 0) {
+			return -1;
+		}
+		int rows = model.getRowCount();
+		if (rows <= 0) {
+			return -1;
+		}
+		if (rowHeights == null) {
+			int row = offset / MathUtils.max(1, cellHeight + cellSpacing);
+			return row < rows ? row : -1;
+		}
+		ensureRowOffsets(rows);
+		if (offset >= rowOffsets[rows]) {
+			return -1;
+		}
+		int low = 0;
+		int high = rows - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (rowOffsets[mid] <= offset) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	public int getRowHeight(int row) {
+		if (rowHeights != null && row >= 0 && row < rowHeights.length && rowHeights[row] > 0) {
+			return rowHeights[row];
+		}
+		return cellHeight;
+	}
+
+	/**
+	 * 设置指定行的行高,小于等于0时恢复为默认的cellHeight
+	 * 
+	 * @param row
+	 * @param height
+	 * @return
+	 */
+	public LTable setRowHeight(int row, int height) {
+		if (row < 0) {
+			return this;
+		}
+		if (rowHeights == null || row >= rowHeights.length) {
+			if (height <= 0) {
+				return this;
+			}
+			int size = MathUtils.max(row + 1, model == null ? 0 : model.getRowCount());
+			rowHeights = CollectionUtils.copyOf(rowHeights == null ? new int[0] : rowHeights, size);
+		}
+		rowHeights[row] = MathUtils.max(0, height);
+		invalidateRowOffsets(row);
+		return this;
+	}
+
+	/**
+	 * 清除所有单独设置的行高
+	 * 
+	 * @return
+	 */
+	public LTable resetRowHeights() {
+		rowHeights = null;
+		rowOffsetCount = -1;
+		return this;
+	}
+
+	/**
+	 * 是否只绘制可见区域内的行
+	 * 
+	 * @return
+	 */
+	public boolean isVirtualized() {
+		return virtualized;
+	}
+
+	/**
+	 * 设置是否只绘制可见区域内的行(处于LScrollContainer中时以其显示范围为准,否则以游戏画面为准)
+	 * 
+	 * @param virtualized
+	 * @return
+	 */
+	public LTable setVirtualized(boolean virtualized) {
+		this.virtualized = virtualized;
+		return this;
+	}
+
+	/**
+	 * 最近一次绘制的首行,没有绘制任何行时返回-1
+	 * 
+	 * @return
+	 */
+	public int getFirstVisibleRow() {
+		return firstVisibleRow;
+	}
+
+	/**
+	 * 最近一次绘制的末行,没有绘制任何行时返回-1
+	 * 
+	 * @return
+	 */
+	public int getLastVisibleRow() {
+		return lastVisibleRow;
+	}
+
 	public void setGridColor(LColor gridColor) {
 		this.gridColor = gridColor;
 	}
@@ -507,6 +719,7 @@ public class LTable extends LContainer implements FontSet<LTable> {
 		this.font = fn;
 		this.useLFont = (this.font instanceof LFont);
 		this.cellHeight = font.getHeight();
+		this.rowOffsetCount = -1;
 		return this;
 	}
 
@@ -547,6 +760,7 @@ public class LTable extends LContainer implements FontSet<LTable> {
 
 	public LTable setCellHeight(int cellHeight) {
 		this.cellHeight = cellHeight;
+		this.rowOffsetCount = -1;
 		return this;
 	}
 
@@ -573,6 +787,7 @@ public class LTable extends LContainer implements FontSet<LTable> {
 
 	public LTable setCellSpacing(int cellSpacing) {
 		this.cellSpacing = cellSpacing;
+		this.rowOffsetCount = -1;
 		return this;
 	}
 
@@ -618,6 +833,8 @@ public class LTable extends LContainer implements FontSet<LTable> {
 		model = m;
 		columns = new TableColumn[m.getColumnCount()];
 		selected = new boolean[m.getRowCount()];
+		rowHeights = null;
+		rowOffsetCount = -1;
 		for (int i = 0; i < columns.length; i++) {
 			columns[i] = new TableColumn(m.getColumnName(i), width);
 		}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.component.table;
+
+import loon.utils.IntArray;
+import loon.utils.IntMap;
+import loon.utils.MathUtils;
+
+/**
+ * IPagedTableModel的默认实现,以固定行数为一页,按需调用loadRows载入数据页,
+ * 最多保留maxPages页数据,超出时丢弃最久未使用的页.继承此类并实现getRowCount,getColumnCount,getColumnName与loadRows后,
+ * 交给LTable.setModel使用即可.
+ */
+public abstract class PagedTableModel implements IPagedTableModel {
+
+	private final IntMap<Object[][]> pages = new IntMap<Object[][]>();
+
+	private final IntArray pageOrder = new IntArray();
+
+	private final int pageSize;
+
+	private int maxPages;
+
+	private int loadCount;
+
+	public PagedTableModel() {
+		this(64, 16);
+	}
+
+	public PagedTableModel(int pageSize, int maxPages) {
+		this.pageSize = MathUtils.max(1, pageSize);
+		this.maxPages = MathUtils.max(1, maxPages);
+	}
+
+	/**
+	 * 载入从startRow开始的count行数据,写入rows[行][列]
+	 * 
+	 * @param startRow
+	 * @param count
+	 * @param rows
+	 */
+	protected abstract void loadRows(int startRow, int count, Object[][] rows);
+
+	private Object[][] getPage(int pageIndex) {
+		Object[][] page = pages.get(pageIndex);
+		if (page != null) {
+			int idx = pageOrder.indexOf(pageIndex);
+			if (idx != pageOrder.length - 1) {
+				pageOrder.removeIndex(idx);
+				pageOrder.add(pageIndex);
+			}
+			return page;
+		}
+		int start = pageIndex * pageSize;
+		int count = MathUtils.min(pageSize, getRowCount() - start);
+		if (count <= 0) {
+			return null;
+		}
+		page = new Object[count][getColumnCount()];
+		loadRows(start, count, page);
+		loadCount++;
+		while (pageOrder.length >= maxPages) {
+			pages.remove(pageOrder.removeIndex(0));
+		}
+		pages.put(pageIndex, page);
+		pageOrder.add(pageIndex);
+		return page;
+	}
+
+	@Override
+	public Object getValue(int row, int column) {
+		if (row < 0 || row >= getRowCount()) {
+			return null;
+		}
+		Object[][] page = getPage(row / pageSize);
+		if (page == null) {
+			return null;
+		}
+		Object[] values = page[row % pageSize];
+		return column >= 0 && column < values.length ? values[column] : null;
+	}
+
+	@Override
+	public void prefetch(int startRow, int endRow) {
+		endRow = MathUtils.min(endRow, getRowCount());
+		if (endRow <= startRow) {
+			return;
+		}
+		int first = MathUtils.max(0, startRow) / pageSize;
+		int last = (endRow - 1) / pageSize;
+		for (int i = first; i <= last && i - first < maxPages; i++) {
+			getPage(i);
+		}
+	}
+
+	/**
+	 * 丢弃全部已载入的数据页,下次访问时重新载入
+	 */
+	public void invalidate() {
+		pages.clear();
+		pageOrder.clear();
+	}
+
+	/**
+	 * 丢弃包含[startRow,endRow)范围的数据页
+	 * 
+	 * @param startRow
+	 * @param endRow
+	 */
+	public void invalidateRows(int startRow, int endRow) {
+		if (endRow <= startRow) {
+			return;
+		}
+		int first = MathUtils.max(0, startRow) / pageSize;
+		int last = (endRow - 1) / pageSize;
+		for (int i = pageOrder.length - 1; i >= 0; i--) {
+			int pageIndex = pageOrder.get(i);
+			if (pageIndex >= first && pageIndex <= last) {
+				pages.remove(pageIndex);
+				pageOrder.removeIndex(i);
+			}
+		}
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public int getMaxPages() {
+		return maxPages;
+	}
+
+	public PagedTableModel setMaxPages(int maxPages) {
+		this.maxPages = MathUtils.max(1, maxPages);
+		while (pageOrder.length > this.maxPages) {
+			pages.remove(pageOrder.removeIndex(0));
+		}
+		return this;
+	}
+
+	/**
+	 * 当前保留的数据页数量
+	 * 
+	 * @return
+	 */
+	public int getLoadedPageCount() {
+		return pageOrder.length;
+	}
+
+	/**
+	 * 累计调用loadRows的次数
+	 * 
+	 * @return
+	 */
+	public int getPageLoadCount() {
+		return loadCount;
+	}
+
+}
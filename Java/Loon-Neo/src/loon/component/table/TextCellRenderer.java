@@ -34,6 +34,7 @@ public class TextCellRenderer implements ICellRenderer, FontSet<TextCellRenderer
 	private IFont font = LSystem.getSystemGameFont();
 	private LColor textColor = LColor.white;
 	private Alignment alignment = Alignment.LEFT;
+	private final Dimension contentSize = new Dimension();
 
 	@Override
 	public void paint(GLEx g, Object value, int x, int y, int width, int height) {
@@ -81,7 +82,8 @@ public class TextCellRenderer implements ICellRenderer, FontSet<TextCellRenderer
 			return null;
 		}
 		String s = value.toString();
-		return new Dimension(font.stringWidth(s), font.getHeight());
+		contentSize.setSize(font.stringWidth(s), font.getHeight());
+		return contentSize;
 	}
 
 	@Override
@@ -29,6 +29,8 @@ public class TextureCellRenderer implements ICellRenderer {
 
 	private boolean scaleTexture = true;
 
+	private final Dimension contentSize = new Dimension();
+
 	@Override
 	public void paint(GLEx g, Object value, int x, int y, int width, int height) {
 
@@ -57,6 +59,7 @@ public class TextureCellRenderer implements ICellRenderer {
 			return null;
 		}
 		LTexture texture = (LTexture) value;
-		return new Dimension(texture.getWidth(), texture.getHeight());
+		contentSize.setSize(texture.getWidth(), texture.getHeight());
+		return contentSize;
 	}
 }
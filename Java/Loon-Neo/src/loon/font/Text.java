@@ -54,6 +54,9 @@ public class Text implements LRelease {
 	protected FloatArray _lineWidths = new FloatArray(1);
 	protected float _width = 0, _height = 0;
 
+	private LSTRFont _retainedFont;
+	private String _retainedChars;
+
 	public Text(final IFont font, final CharSequence chars) {
 		this(font, chars, new TextOptions());
 	}
@@ -134,6 +137,7 @@ public class Text implements LRelease {
 		if (_height <= 0) {
 			_height = _font.getHeight();
 		}
+		this.releaseLFont();
 		this._initNativeDraw = false;
 	}
 
@@ -157,7 +161,14 @@ public class Text implements LRelease {
 		}
 		if (!_initNativeDraw) {
 			if (_font instanceof LFont) {
-				LSTRDictionary.get().bind((LFont) _font, _lines);
+				LSTRDictionary.Dict dict = LSTRDictionary.get().bind((LFont) _font, _lines);
+				releaseLFont();
+				// 固定正在显示的文字,以免被纹理页淘汰
+				_retainedFont = dict.getSTR();
+				if (_retainedFont != null) {
+					_retainedChars = toString(_chars);
+					_retainedFont.retainChars(_retainedChars);
+				}
 			}
 			if (LSystem.isDesktop()) {
 				if (_font instanceof LFont) {
@@ -176,6 +187,14 @@ public class Text implements LRelease {
 
 	}
 
+	private void releaseLFont() {
+		if (_retainedFont != null) {
+			_retainedFont.releaseChars(_retainedChars);
+			_retainedFont = null;
+			_retainedChars = null;
+		}
+	}
+
 	public void paintNonStyleString(GLEx g, String mes, float offsetX, float offsetY, LColor color) {
 		if (_closed) {
 			return;
@@ -443,6 +462,7 @@ public class Text implements LRelease {
 				}
 			}
 		}
+		releaseLFont();
 		_chars = null;
 		_lines = null;
 		_lineWidths = null;
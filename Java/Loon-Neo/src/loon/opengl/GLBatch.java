@@ -26,6 +26,7 @@ import loon.canvas.LColor;
 import loon.geom.Affine2f;
 import loon.opengl.VertexAttributes.Usage;
 import loon.utils.TArray;
+import loon.utils.timer.FrameProfiler;
 
 public class GLBatch implements LRelease {
 
@@ -198,6 +199,7 @@ public class GLBatch implements LRelease {
 		if (numVertices == 0) {
 			return;
 		}
+		final long profile = FrameProfiler.begin();
 		try {
 			shader.begin();
 			shader.setUniformMatrix("u_projModelView", projModelView.toViewMatrix4());
@@ -210,6 +212,7 @@ public class GLBatch implements LRelease {
 			LSystem.error("Batch error flush()", ex);
 		} finally {
 			shader.end();
+			FrameProfiler.flush(profile);
 		}
 	}
 
@@ -20,6 +20,7 @@
  */
 package loon.opengl;
 
+import loon.LGame;
 import loon.LRelease;
 import loon.LSystem;
 import loon.LTexture;
@@ -27,10 +28,16 @@ import loon.canvas.LColor;
 import loon.font.LFont;
 import loon.utils.ArrayMap;
 import loon.utils.CharArray;
+import loon.utils.MathUtils;
 import loon.utils.ArrayMap.Entry;
 import loon.utils.StringUtils;
 import loon.utils.TArray;
+import loon.utils.TimeUtils;
 
+/**
+ * 本地字体的文字纹理字典,同一字体的文字保存在一组纹理页(LSTRFont)中,出现新文字时只把缺少的字符追加到已有纹理页的空位,
+ * 纹理页放不下时,如果显存没有超出上限就新建一页,否则按LRU规则淘汰最久未使用的字符腾出位置.
+ */
 public final class LSTRDictionary implements LRelease {
 
 	private final CharArray templateChars = new CharArray(256);
@@ -87,9 +94,21 @@ public final class LSTRDictionary implements LRelease {
 
 	private static StringBuffer _lazyKey;
 
+	private int _maxAtlasSize = 1024 * 1024 * 8;
+
+	private int _rebuildCount;
+
+	private int _glyphMissCount;
+
+	private int _evictedCount;
+
+	private long _glyphMissTime;
+
+	private long _glyphMissMaxTime;
+
 	public static class Dict implements LRelease {
 
-		protected TArray<Character> dicts;
+		protected final TArray<LSTRFont> pages;
 
 		protected LSTRFont font;
 
@@ -98,7 +117,92 @@ public final class LSTRDictionary implements LRelease {
 		}
 
 		public Dict() {
-			dicts = new TArray<Character>(512);
+			pages = new TArray<LSTRFont>(4);
+		}
+
+		protected void addPage(LSTRFont page) {
+			pages.add(page);
+			font = page;
+		}
+
+		protected void usePage(LSTRFont page, String mes) {
+			page.touchChars(mes);
+			font = page;
+		}
+
+		protected LSTRFont findPage(String mes) {
+			if (font != null && font.containsChars(mes)) {
+				return font;
+			}
+			for (int i = pages.size - 1; i > -1; i--) {
+				LSTRFont page = pages.get(i);
+				if (page != font && page.containsChars(mes)) {
+					return page;
+				}
+			}
+			return null;
+		}
+
+		protected LSTRFont findBestPage(String mes) {
+			LSTRFont result = null;
+			int minMissing = Integer.MAX_VALUE;
+			for (int i = pages.size - 1; i > -1; i--) {
+				LSTRFont page = pages.get(i);
+				int missing = page.countMissingChars(mes);
+				if (missing < minMissing) {
+					minMissing = missing;
+					result = page;
+				}
+			}
+			return result;
+		}
+
+		protected void removeClosedPages() {
+			for (int i = pages.size - 1; i > -1; i--) {
+				if (pages.get(i).isClosed()) {
+					pages.removeIndex(i);
+				}
+			}
+			if (font != null && font.isClosed()) {
+				font = pages.size > 0 ? pages.peek() : null;
+			}
+		}
+
+		/**
+		 * 关闭最久未使用的纹理页,直到显存占用不超过指定大小(keep页以及仍被显示中文字固定的纹理页不会被关闭)
+		 */
+		protected void trimPages(int maxSize, LSTRFont keep) {
+			for (; getMemorySize() > maxSize && pages.size > 1;) {
+				int idx = -1;
+				int minUse = Integer.MAX_VALUE;
+				for (int i = 0; i < pages.size; i++) {
+					LSTRFont page = pages.get(i);
+					if (page != keep && !page.isRetained() && page.getLastUsed() < minUse) {
+						minUse = page.getLastUsed();
+						idx = i;
+					}
+				}
+				if (idx == -1) {
+					break;
+				}
+				pages.removeIndex(idx).close();
+			}
+		}
+
+		public TArray<LSTRFont> getPages() {
+			return pages;
+		}
+
+		public int getPageCount() {
+			return pages.size;
+		}
+
+		public int getMemorySize() {
+			int size = 0;
+			for (int i = 0; i < pages.size; i++) {
+				size += pages.get(i).getMemorySize();
+			}
+			return size;
 		}
 
 		public LTexture getTexture() {
@@ -113,30 +217,23 @@ public final class LSTRDictionary implements LRelease {
 		}
 
 		public boolean include(String mes) {
-			int size = mes.length();
-			for (int i = 0; i < size; i++) {
-				char flag = mes.charAt(i);
-				if (!dicts.contains(flag)) {
-					return false;
-				}
-			}
-			return true;
+			return findPage(mes) != null;
 		}
 
 		public boolean isClosed() {
-			return font.isClosed();
+			return font == null || font.isClosed();
 		}
 
 		@Override
 		public void close() {
+			for (int i = pages.size - 1; i > -1; i--) {
+				pages.get(i).close();
+			}
+			pages.clear();
 			if (font != null) {
 				font.close();
 				font = null;
 			}
-			if (dicts != null) {
-				dicts.clear();
-				dicts = null;
-			}
 		}
 
 	}
@@ -249,8 +346,6 @@ public final class LSTRDictionary implements LRelease {
 		return count == len;
 	}
 
-	private StringBuffer tmpBuffer = null;
-
 	public final Dict bind(final LFont font, final TArray<CharSequence> chars) {
 		CharSequence[] buffers = new CharSequence[chars.size];
 		for (int i = 0, size = buffers.length; i < size; i++) {
@@ -283,7 +378,7 @@ public final class LSTRDictionary implements LRelease {
 			}
 			if (pDict == null) {
 				pDict = Dict.newDict();
-				pDict.font = new LSTRFont(font, ADDED, tmp_asyn);
+				pDict.addPage(new LSTRFont(font, ADDED, tmp_asyn));
 				englishFontList.put(font, pDict);
 			}
 			return (_lastDict = pDict);
@@ -294,62 +389,132 @@ public final class LSTRDictionary implements LRelease {
 		} else {
 			message = mes + ADDED;
 		}
-		// 查询字典缓存
-		Dict cacheDict = searchCacheDict(font, message);
-		if (cacheDict != null && !cacheDict.isClosed()) {
-			return _lastDict = cacheDict;
-		}
-		if (cacheList.size() > CACHE_SIZE) {
-			clearStringLazy();
-		}
-		// 查询字体缓存
-		LFont cFont = searchCacheFont(message);
 		String fontFlag = toFontString(font);
 		Dict pDict = (Dict) fontList.get(fontFlag);
-		if (pDict != null && pDict.isClosed()) {
-			fontList.remove(fontFlag);
-			pDict = null;
+		if (pDict == null) {
+			pDict = Dict.newDict();
+			fontList.put(fontFlag, pDict);
 		}
-		// 判定当前font与字体和已存在的文字图片纹理，是否和缓存的font适配
-		if ((cFont == null || pDict == null || (pDict != null && !pDict.include(mes)))) {
-			if (pDict == null) {
-				pDict = Dict.newDict();
-				fontList.put(fontFlag, pDict);
+		synchronized (pDict) {
+			pDict.removeClosedPages();
+			LSTRFont page = pDict.findPage(message);
+			if (page == null) {
+				page = addChars(pDict, font, message);
 			}
-			synchronized (pDict) {
-				cacheList.put(message, font);
-				TArray<Character> charas = pDict.dicts;
-				int oldSize = charas.size;
-				int size = message.length();
-				for (int i = 0; i < size; i++) {
-					char flag = message.charAt(i);
-					if (!charas.contains(flag)) {
-						charas.add(flag);
-					}
-				}
-				int newSize = charas.size;
-				// 如果旧有大小，不等于新的纹理字符大小，重新扩展LSTRFont纹理字符
-				if (oldSize != newSize) {
-					if (pDict.font != null) {
-						pDict.font.close();
-						pDict.font = null;
-					}
-					if (tmpBuffer == null) {
-						tmpBuffer = new StringBuffer(newSize);
-					} else {
-						tmpBuffer.delete(0, tmpBuffer.length());
-					}
-					for (int i = 0; i < newSize; i++) {
-						tmpBuffer.append(charas.get(i));
-					}
-					// 个别浏览器纹理同步会卡出国，只能异步……
-					pDict.font = new LSTRFont(font, tmpBuffer.toString(), tmp_asyn);
-				}
+			pDict.usePage(page, message);
+		}
+		if (cacheList.size() > CACHE_SIZE) {
+			synchronized (cacheList) {
+				cacheList.clear();
 			}
 		}
+		cacheList.put(message, font);
 		return (_lastDict = pDict);
 	}
 
+	/**
+	 * 把字符串中缺少的字符追加到最合适的纹理页,放不下时淘汰旧字符或新建纹理页
+	 */
+	private LSTRFont addChars(Dict pDict, LFont font, String message) {
+		final long start = nanoTime();
+		LSTRFont page = pDict.findBestPage(message);
+		boolean added = false;
+		if (page != null) {
+			added = page.addChars(message);
+			if (!added && pDict.getMemorySize() + page.getMemorySize() > _maxAtlasSize) {
+				// 显存已达上限,淘汰当前页中最久未使用的字符(至少淘汰四分之一,以免频繁淘汰)
+				int count = MathUtils.max(page.countMissingChars(message), page.getCharCount() / 4);
+				_evictedCount += page.evictChars(count, message);
+				added = page.addChars(message);
+			}
+		}
+		if (!added) {
+			// 个别浏览器纹理同步会卡出国，只能异步……
+			page = new LSTRFont(font, message, tmp_asyn);
+			pDict.addPage(page);
+			pDict.trimPages(_maxAtlasSize, page);
+			_rebuildCount++;
+		}
+		final long elapsed = nanoTime() - start;
+		_glyphMissCount++;
+		_glyphMissTime += elapsed;
+		if (elapsed > _glyphMissMaxTime) {
+			_glyphMissMaxTime = elapsed;
+		}
+		return page;
+	}
+
+	private final static long nanoTime() {
+		LGame game = LSystem.base();
+		return game == null ? TimeUtils.nanoTime() : game.nanoTime();
+	}
+
+	/**
+	 * 设定单一字体所有文字纹理页的显存上限(字节),超出后新文字会淘汰最久未使用的字符,而不是继续新建纹理页
+	 * 
+	 * @param size
+	 */
+	public void setMaxAtlasSize(int size) {
+		this._maxAtlasSize = size;
+	}
+
+	public int getMaxAtlasSize() {
+		return _maxAtlasSize;
+	}
+
+	/**
+	 * 整张文字纹理的生成次数
+	 * 
+	 * @return
+	 */
+	public int getRebuildCount() {
+		return _rebuildCount;
+	}
+
+	/**
+	 * 因文字纹理中缺少字符而进行追加的次数
+	 * 
+	 * @return
+	 */
+	public int getGlyphMissCount() {
+		return _glyphMissCount;
+	}
+
+	/**
+	 * 因显存上限而被淘汰的字符数量
+	 * 
+	 * @return
+	 */
+	public int getEvictedCount() {
+		return _evictedCount;
+	}
+
+	/**
+	 * 追加缺少字符的平均耗时(纳秒)
+	 * 
+	 * @return
+	 */
+	public long getGlyphMissAverageTime() {
+		return _glyphMissCount == 0 ? 0 : _glyphMissTime / _glyphMissCount;
+	}
+
+	/**
+	 * 追加缺少字符的最大耗时(纳秒)
+	 * 
+	 * @return
+	 */
+	public long getGlyphMissMaxTime() {
+		return _glyphMissMaxTime;
+	}
+
+	public void resetCounters() {
+		_rebuildCount = 0;
+		_glyphMissCount = 0;
+		_evictedCount = 0;
+		_glyphMissTime = 0;
+		_glyphMissMaxTime = 0;
+	}
+
 	public final void drawString(LFont font, String message, float x, float y, float angle, LColor c) {
 		Dict pDict = bind(font, message);
 		if (pDict.font != null) {
@@ -35,9 +35,12 @@ import loon.font.TextLayout;
 import loon.geom.Affine2f;
 import loon.geom.PointI;
 import loon.utils.GLUtils;
+import loon.utils.IntArray;
 import loon.utils.IntMap;
+import loon.utils.LongArray;
 import loon.utils.MathUtils;
 import loon.utils.StringUtils;
+import loon.utils.TArray;
 
 public class LSTRFont implements IFont, LRelease {
 
@@ -69,6 +72,12 @@ public class LSTRFont implements IFont, LRelease {
 
 		public int storedY;
 
+		public int slotWidth;
+
+		public int slotHeight;
+
+		public int lastUsed;
+
 	}
 
 	private static class UpdateStringFont implements Updateable {
@@ -103,37 +112,20 @@ public class LSTRFont implements IFont, LRelease {
 				fixSize -= 1;
 			}
 			final boolean clipFont = LSystem.isTrueFontClip() && strfont.fontSize < 20 && LSystem.isMobile();
+			strfont._fixSize = fixSize;
+			strfont._clipFont = clipFont;
+			strfont._shelves.clear();
 			// 本地字体怎么都不如ttf或者fnt字体清晰准确,差异太大，只能尽量保证显示效果……
 			for (int i = 0, size = strfont.totalCharSet + customCharsLength; i < size; i++) {
 				char ch = (i < strfont.totalCharSet) ? (char) i : strfont.additionalChars[i - strfont.totalCharSet];
 
 				TextLayout layout = strfont.font.getLayoutText(String.valueOf(ch));
 
-				int charwidth = layout.charWidth(ch);
-
-				if (charwidth <= 0) {
-					charwidth = 1;
-				}
-
-				int charheight = (int) layout.getHeight();
-				if (charheight <= 0) {
-					charheight = strfont.fontSize;
-				}
-				IntObject newIntObject = new IntObject();
+				IntObject newIntObject = strfont.measureChar(ch, layout);
 
-				if (clipFont) {
-					if (StringUtils.isAlphabetLower(ch)) {
-						charwidth += fixSize;
-						charheight += fixSize;
-					}
-				} else {
-					if (ch == 'i' && charheight > 24) {
-						charheight -= 4;
-					}
-				}
+				int charwidth = newIntObject.width;
 
-				newIntObject.width = charwidth;
-				newIntObject.height = charheight;
+				int charheight = newIntObject.height;
 
 				if (clipFont) {
 					// 发现部分环境字体如果整体渲染到canvas的话，会导致纹理切的不整齐(实际上就是间距和从系统获取的不符合),
@@ -143,6 +135,7 @@ public class LSTRFont implements IFont, LRelease {
 					image.close();
 					image = null;
 					if (positionX + newIntObject.width >= strfont.textureWidth) {
+						strfont._shelves.addAll(positionY, rowHeight, positionX);
 						positionX = 0;
 						positionY += rowHeight;
 						rowHeight = 0;
@@ -153,6 +146,7 @@ public class LSTRFont implements IFont, LRelease {
 						layout = strfont.font.getLayoutText(sbr.toString());
 						canvas.fillText(layout, 0, positionY);
 						sbr.delete(0, sbr.length());
+						strfont._shelves.addAll(positionY, rowHeight, positionX);
 						positionX = 0;
 						positionY += rowHeight;
 						rowHeight = 0;
@@ -162,6 +156,8 @@ public class LSTRFont implements IFont, LRelease {
 
 				newIntObject.storedX = positionX;
 				newIntObject.storedY = positionY;
+				newIntObject.slotWidth = newIntObject.width;
+				newIntObject.slotHeight = newIntObject.height;
 
 				if (newIntObject.height > strfont.fontHeight) {
 					strfont.fontHeight = newIntObject.height;
@@ -182,8 +178,16 @@ public class LSTRFont implements IFont, LRelease {
 				canvas.fillText(layout, 0, positionY);
 				sbr = null;
 			}
+			if (rowHeight > 0) {
+				strfont._shelves.addAll(positionY, rowHeight, positionX);
+			}
 			LTextureBatch tmpbatch = strfont.fontBatch;
 			strfont.fontBatch = new LTextureBatch(strfont.texture = canvas.toTexture());
+			// 保留画布,以后新增字符时只绘制新增部分,不再重建整张纹理
+			if (strfont._canvas != null && strfont._canvas != canvas) {
+				strfont._canvas.image.close();
+			}
+			strfont._canvas = canvas;
 			strfont.fontBatch.setBlendState(BlendState.AlphaBlend);
 			if (tmpbatch != null) {
 				tmpbatch.close();
@@ -194,6 +198,34 @@ public class LSTRFont implements IFont, LRelease {
 
 	}
 
+	private final IntObject measureChar(char ch, TextLayout layout) {
+		int charwidth = layout.charWidth(ch);
+
+		if (charwidth <= 0) {
+			charwidth = 1;
+		}
+
+		int charheight = (int) layout.getHeight();
+		if (charheight <= 0) {
+			charheight = fontSize;
+		}
+
+		if (_clipFont) {
+			if (StringUtils.isAlphabetLower(ch)) {
+				charwidth += _fixSize;
+				charheight += _fixSize;
+			}
+		} else {
+			if (ch == 'i' && charheight > 24) {
+				charheight -= 4;
+			}
+		}
+		IntObject newIntObject = new IntObject();
+		newIntObject.width = charwidth;
+		newIntObject.height = charheight;
+		return newIntObject;
+	}
+
 	private final Image getFontImage(TextLayout layout, char ch, int w, int h) {
 		Canvas canvas = Image.createCanvas(w, h);
 		canvas.setColor(LColor.white);
@@ -259,6 +291,30 @@ public class LSTRFont implements IFont, LRelease {
 
 	private char[] additionalChars = null;
 
+	private Canvas _canvas;
+
+	// 纹理中每一行(货架)的数据,依次为(y,行高,行内已使用宽度)
+	private final IntArray _shelves = new IntArray(48);
+
+	private TArray<IntObject> _freeSlots;
+
+	private boolean _clipFont;
+
+	private int _fixSize;
+
+	private int _glyphStamp;
+
+	// 所有纹理页共用的使用序号,用于在纹理页之间比较谁最久未被使用
+	private static int _pageClock;
+
+	private int _pageUsed;
+
+	// 仍在显示中的文字所固定的字符及其引用次数,这些字符不会被淘汰,纹理页也不会被LSTRDictionary关闭.
+	// 按字符的高8位分为256页,每页256个计数,页在首次固定该范围的字符时创建,之后固定与解除都不再分配对象
+	private int[][] _pinnedChars;
+
+	private int _retainCount;
+
 	public LSTRFont(LFont font) {
 		this(font, (char[]) null, true);
 	}
@@ -338,6 +394,374 @@ public class LSTRFont implements IFont, LRelease {
 		return texture;
 	}
 
+	private void clearDisplays() {
+		synchronized (displays) {
+			for (Cache cache : displays.values()) {
+				if (cache != null) {
+					cache.close();
+					cache = null;
+				}
+			}
+		}
+		displays.clear();
+	}
+
+	private final IntObject findChar(int ch) {
+		if (ch < totalCharSet) {
+			return charArray[ch];
+		}
+		return customChars.get(ch);
+	}
+
+	/**
+	 * 判断当前纹理中是否已包含指定字符
+	 * 
+	 * @param ch
+	 * @return
+	 */
+	public boolean containsChar(char ch) {
+		if (_isClose) {
+			return false;
+		}
+		if (!_initChars) {
+			return text.indexOf(ch) != -1;
+		}
+		return findChar(ch) != null;
+	}
+
+	/**
+	 * 返回指定字符串中当前纹理尚未包含的字符数量
+	 * 
+	 * @param chars
+	 * @return
+	 */
+	public int countMissingChars(CharSequence chars) {
+		if (_isClose) {
+			return chars.length();
+		}
+		int count = 0;
+		for (int i = 0, size = chars.length(); i < size; i++) {
+			if (!containsChar(chars.charAt(i))) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public boolean containsChars(CharSequence chars) {
+		if (_isClose) {
+			return false;
+		}
+		for (int i = 0, size = chars.length(); i < size; i++) {
+			if (!containsChar(chars.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 标记指定字符串中的字符为最近使用,供evictChars按LRU规则淘汰
+	 * 
+	 * @param chars
+	 */
+	public void touchChars(CharSequence chars) {
+		if (_isClose || !_initChars) {
+			return;
+		}
+		final int stamp = ++_glyphStamp;
+		for (int i = 0, size = chars.length(); i < size; i++) {
+			IntObject obj = findChar(chars.charAt(i));
+			if (obj != null) {
+				obj.lastUsed = stamp;
+			}
+		}
+		_pageUsed = ++_pageClock;
+	}
+
+	/**
+	 * 纹理页最后一次被绑定或绘制的序号(所有纹理页共用同一计数)
+	 * 
+	 * @return
+	 */
+	public int getLastUsed() {
+		return _pageUsed;
+	}
+
+	/**
+	 * 固定指定字符串中的字符,在调用releaseChars之前,这些字符不会被evictChars淘汰,纹理页也不会被LSTRDictionary关闭.
+	 * 
+	 * 持有纹理页并反复绘制的对象(比如Print)应在显示文字时调用此函数,不再显示时调用releaseChars.
+	 * 
+	 * @param chars
+	 */
+	public synchronized void retainChars(CharSequence chars) {
+		if (_isClose || chars == null) {
+			return;
+		}
+		if (_pinnedChars == null) {
+			_pinnedChars = new int[256][];
+		}
+		for (int i = 0, size = chars.length(); i < size; i++) {
+			final char ch = chars.charAt(i);
+			int[] page = _pinnedChars[ch >>> 8];
+			if (page == null) {
+				page = _pinnedChars[ch >>> 8] = new int[256];
+			}
+			page[ch & 0xFF]++;
+		}
+		_retainCount++;
+		touchChars(chars);
+	}
+
+	/**
+	 * 解除retainChars对指定字符串中字符的固定
+	 * 
+	 * @param chars
+	 */
+	public synchronized void releaseChars(CharSequence chars) {
+		if (_isClose || chars == null || _retainCount <= 0) {
+			return;
+		}
+		for (int i = 0, size = chars.length(); i < size; i++) {
+			final char ch = chars.charAt(i);
+			final int[] page = _pinnedChars[ch >>> 8];
+			if (page != null && page[ch & 0xFF] > 0) {
+				page[ch & 0xFF]--;
+			}
+		}
+		_retainCount--;
+	}
+
+	private boolean isPinned(int ch) {
+		if (_pinnedChars == null || ch < 0 || ch > 0xFFFF) {
+			return false;
+		}
+		final int[] page = _pinnedChars[ch >>> 8];
+		return page != null && page[ch & 0xFF] > 0;
+	}
+
+	/**
+	 * 是否还有仍在显示的文字固定了此纹理页中的字符
+	 * 
+	 * @return
+	 */
+	public boolean isRetained() {
+		return _retainCount > 0;
+	}
+
+	/**
+	 * 向纹理中追加字符,只绘制尚未包含的字符并上传一次纹理,而不是重建整张纹理.
+	 * 
+	 * 新字符优先放入被淘汰字符空出的格子,其次放入已有行的剩余空间,最后在纹理底部开辟新行.
+	 * 
+	 * @param chars
+	 * @return 如果纹理空间不足以放下全部字符,返回false
+	 */
+	public synchronized boolean addChars(CharSequence chars) {
+		if (_isClose || chars == null) {
+			return false;
+		}
+		if (!_initChars) {
+			return addPendingChars(chars);
+		}
+		if (_canvas == null || texture == null || texture.isClosed()) {
+			return false;
+		}
+		int added = 0;
+		boolean full = false;
+		for (int i = 0, size = chars.length(); i < size; i++) {
+			char ch = chars.charAt(i);
+			if (findChar(ch) != null) {
+				continue;
+			}
+			TextLayout layout = font.getLayoutText(String.valueOf(ch));
+			IntObject newIntObject = measureChar(ch, layout);
+			if (!allocateSlot(newIntObject)) {
+				full = true;
+				continue;
+			}
+			_canvas.clearRect(newIntObject.storedX, newIntObject.storedY, newIntObject.slotWidth,
+					newIntObject.slotHeight);
+			if (_clipFont) {
+				Image image = getFontImage(layout, ch, newIntObject.width, newIntObject.height);
+				_canvas.draw(image, newIntObject.storedX, newIntObject.storedY);
+				image.close();
+				image = null;
+			} else {
+				_canvas.fillText(layout, newIntObject.storedX, newIntObject.storedY);
+			}
+			if (newIntObject.height > fontHeight) {
+				fontHeight = newIntObject.height;
+			}
+			newIntObject.lastUsed = _glyphStamp;
+			customChars.put(ch, newIntObject);
+			added++;
+		}
+		if (added > 0) {
+			texture.update(_canvas.image, false);
+		}
+		return !full;
+	}
+
+	private boolean addPendingChars(CharSequence chars) {
+		StringBuilder sbr = null;
+		for (int i = 0, size = chars.length(); i < size; i++) {
+			char ch = chars.charAt(i);
+			if (text.indexOf(ch) == -1 && (sbr == null || sbr.indexOf(String.valueOf(ch)) == -1)) {
+				if (sbr == null) {
+					sbr = new StringBuilder(text);
+				}
+				sbr.append(ch);
+			}
+		}
+		if (sbr == null) {
+			return true;
+		}
+		// 尚未生成纹理时合并到待生成的字符中,但不能超出纹理的大致容量
+		int lineCount = textureWidth / MathUtils.max(1, fontSize);
+		int rowCount = textureHeight / MathUtils.max(1, fontHeight);
+		if (sbr.length() > lineCount * rowCount) {
+			return false;
+		}
+		text = sbr.toString();
+		additionalChars = text.toCharArray();
+		return true;
+	}
+
+	private boolean allocateSlot(IntObject obj) {
+		final int w = obj.width;
+		final int h = obj.height;
+		if (_freeSlots != null && _freeSlots.size > 0) {
+			int bestIndex = -1;
+			int bestWaste = Integer.MAX_VALUE;
+			for (int i = 0; i < _freeSlots.size; i++) {
+				IntObject slot = _freeSlots.get(i);
+				if (slot.slotWidth >= w && slot.slotHeight >= h) {
+					int waste = slot.slotWidth * slot.slotHeight - w * h;
+					if (waste < bestWaste) {
+						bestWaste = waste;
+						bestIndex = i;
+					}
+				}
+			}
+			if (bestIndex != -1) {
+				IntObject slot = _freeSlots.removeIndex(bestIndex);
+				obj.storedX = slot.storedX;
+				obj.storedY = slot.storedY;
+				obj.slotWidth = slot.slotWidth;
+				obj.slotHeight = slot.slotHeight;
+				return true;
+			}
+		}
+		int bestIndex = -1;
+		int bestWaste = Integer.MAX_VALUE;
+		int bottom = 0;
+		for (int i = 0, size = _shelves.length; i < size; i += 3) {
+			int shelfY = _shelves.get(i);
+			int shelfHeight = _shelves.get(i + 1);
+			int usedWidth = _shelves.get(i + 2);
+			if (h <= shelfHeight && usedWidth + w < textureWidth) {
+				int waste = shelfHeight - h;
+				if (waste < bestWaste) {
+					bestWaste = waste;
+					bestIndex = i;
+				}
+			}
+			bottom = MathUtils.max(bottom, shelfY + shelfHeight);
+		}
+		if (bestIndex == -1) {
+			if (bottom + h > textureHeight || w >= textureWidth) {
+				return false;
+			}
+			bestIndex = _shelves.length;
+			_shelves.addAll(bottom, h, 0);
+		}
+		obj.storedX = _shelves.get(bestIndex + 2);
+		obj.storedY = _shelves.get(bestIndex);
+		obj.slotWidth = w;
+		obj.slotHeight = _shelves.get(bestIndex + 1);
+		_shelves.set(bestIndex + 2, obj.storedX + w);
+		return true;
+	}
+
+	/**
+	 * 按LRU规则淘汰最久未使用的字符,被淘汰字符的格子留给之后追加的字符
+	 * 
+	 * @param count
+	 *            最多淘汰的字符数量
+	 * @param keep
+	 *            不允许淘汰的字符
+	 * @return 实际淘汰的字符数量
+	 */
+	public synchronized int evictChars(int count, CharSequence keep) {
+		if (_isClose || !_initChars || count <= 0 || customChars.size() == 0) {
+			return 0;
+		}
+		final String keepChars = keep == null ? LSystem.EMPTY : keep.toString();
+		int[] keys = customChars.keys();
+		LongArray order = new LongArray(keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			int ch = keys[i];
+			if (ch == ' ' || keepChars.indexOf(ch) != -1 || isPinned(ch)) {
+				continue;
+			}
+			IntObject obj = customChars.get(ch);
+			if (obj != null) {
+				order.add(((long) obj.lastUsed << 32) | (ch & 0xFFFFFFFFL));
+			}
+		}
+		order.sort();
+		if (_freeSlots == null) {
+			_freeSlots = new TArray<IntObject>();
+		}
+		int evicted = 0;
+		for (int i = 0, size = MathUtils.min(count, order.size()); i < size; i++) {
+			IntObject obj = customChars.remove((int) order.get(i));
+			if (obj != null) {
+				_canvas.clearRect(obj.storedX, obj.storedY, obj.slotWidth, obj.slotHeight);
+				_freeSlots.add(obj);
+				evicted++;
+			}
+		}
+		if (evicted > 0) {
+			// 缓存的字符串顶点可能引用了被淘汰的字符
+			clearDisplays();
+		}
+		return evicted;
+	}
+
+	/**
+	 * 当前纹理中包含的字符数量
+	 * 
+	 * @return
+	 */
+	public int getCharCount() {
+		if (_isClose) {
+			return 0;
+		}
+		if (!_initChars) {
+			return text.length();
+		}
+		int count = customChars.size();
+		for (int i = 0; i < totalCharSet; i++) {
+			if (charArray[i] != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 字体纹理占用的内存大小(字节),包括纹理本身和为追加字符而保留的画布
+	 * 
+	 * @return
+	 */
+	public int getMemorySize() {
+		final int size = textureWidth * textureHeight * 4;
+		return _canvas == null ? size : size * 2;
+	}
+
 	@Override
 	public void drawString(GLEx g, String chars, float x, float y, float sx, float sy, float ax, float ay,
 			float rotation, LColor c) {
@@ -385,16 +809,9 @@ public class LSTRFont implements IFont, LRelease {
 			return;
 		}
 		if (displays.size > LSystem.DEFAULT_MAX_CACHE_SIZE) {
-			synchronized (displays) {
-				for (Cache cache : displays.values()) {
-					if (cache != null) {
-						cache.close();
-						cache = null;
-					}
-				}
-			}
-			displays.clear();
+			clearDisplays();
 		}
+		touchChars(chars);
 
 		final float x = mx + _offset.x;
 		final float y = my + _offset.y;
@@ -529,6 +946,7 @@ public class LSTRFont implements IFont, LRelease {
 		if (texture.isClosed()) {
 			return;
 		}
+		touchChars(chars);
 		final float x = mx + _offset.x;
 		final float y = my + _offset.y;
 		this.intObject = null;
@@ -699,6 +1117,7 @@ public class LSTRFont implements IFont, LRelease {
 		if (texture.isClosed()) {
 			return;
 		}
+		_pageUsed = ++_pageClock;
 		GL20 g = LSystem.base().graphics().gl;
 		if (g != null) {
 			int old = GLUtils.getBlendMode();
@@ -1021,6 +1440,17 @@ public class LSTRFont implements IFont, LRelease {
 			customChars.clear();
 			customChars = null;
 		}
+		if (_canvas != null) {
+			_canvas.image.close();
+			_canvas = null;
+		}
+		if (_freeSlots != null) {
+			_freeSlots.clear();
+			_freeSlots = null;
+		}
+		_shelves.clear();
+		_pinnedChars = null;
+		_retainCount = 0;
 		charArray = null;
 		isDrawing = false;
 		_initChars = false;
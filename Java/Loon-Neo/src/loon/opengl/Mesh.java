@@ -35,6 +35,7 @@ import loon.geom.Vector3f;
 import loon.opengl.VertexAttributes.Usage;
 import loon.utils.MathUtils;
 import loon.utils.TArray;
+import loon.utils.timer.FrameProfiler;
 
 public class Mesh implements LRelease {
 
@@ -329,6 +330,7 @@ public class Mesh implements LRelease {
 		if (count == 0) {
 			return;
 		}
+		FrameProfiler.drawCall(count);
 		if (autoBind) {
 
 			bind(shader);
@@ -25,6 +25,7 @@ import loon.geom.Affine2f;
 import loon.geom.Matrix4;
 import loon.utils.GLUtils;
 import loon.utils.MathUtils;
+import loon.utils.timer.FrameProfiler;
 import loon.LSystem;
 
 public class TrilateralBatch extends BaseBatch {
@@ -79,6 +80,7 @@ public class TrilateralBatch extends BaseBatch {
 		if (idx == 0) {
 			return;
 		}
+		final long profile = FrameProfiler.begin();
 		try {
 			int spritesInBatch = idx / 20;
 			if (spritesInBatch > maxSpritesInBatch) {
@@ -101,6 +103,7 @@ public class TrilateralBatch extends BaseBatch {
 			if (expandVertices.expand(this.idx)) {
 				mesh.reset(_batch_name, expandVertices.length());
 			}
+			FrameProfiler.flush(profile);
 			if (!lockSubmit) {
 				idx = 0;
 			}
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.particle;
+
+import loon.LTexture;
+
+/**
+ * 以基本类型数组(结构数组)保存一个发射器的全部粒子,存活的粒子始终紧密排列在[0,count)区间,
+ * 粒子死亡时用最后一个粒子填补它的位置,所以更新与绘制的开销只与存活粒子数量有关,与容量无关.
+ */
+public class ParticleBuffer {
+
+	public float[] x, y, velX, velY, size, life, originalLife, scaleY;
+
+	public float[] r, g, b, a;
+
+	public int[] type, usePoints;
+
+	public boolean[] oriented;
+
+	public LTexture[] images;
+
+	/**
+	 * 逐个粒子更新时(粒子系统使用了自定义的SimpleParticle)与每个位置对应的粒子对象,随粒子一起移动,否则为null
+	 */
+	public SimpleParticle[] particles;
+
+	public int count;
+
+	private final int capacity;
+
+	public ParticleBuffer(int capacity) {
+		this.capacity = capacity;
+		this.x = new float[capacity];
+		this.y = new float[capacity];
+		this.velX = new float[capacity];
+		this.velY = new float[capacity];
+		this.size = new float[capacity];
+		this.life = new float[capacity];
+		this.originalLife = new float[capacity];
+		this.scaleY = new float[capacity];
+		this.r = new float[capacity];
+		this.g = new float[capacity];
+		this.b = new float[capacity];
+		this.a = new float[capacity];
+		this.type = new int[capacity];
+		this.usePoints = new int[capacity];
+		this.oriented = new boolean[capacity];
+		this.images = new LTexture[capacity];
+	}
+
+	/**
+	 * 为每个粒子位置保存一个粒子对象
+	 */
+	public void useParticles() {
+		if (particles == null) {
+			particles = new SimpleParticle[capacity];
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public boolean isFull() {
+		return count >= capacity;
+	}
+
+	/**
+	 * 分配一个新粒子并设为默认状态,缓存已满时返回-1
+	 * 
+	 * @param l
+	 * @return
+	 */
+	public int spawn(float l) {
+		if (count >= capacity) {
+			return -1;
+		}
+		int i = count++;
+		x[i] = 0;
+		y[i] = 0;
+		velX[i] = 0;
+		velY[i] = 0;
+		size[i] = 10;
+		life[i] = originalLife[i] = l;
+		scaleY[i] = 1f;
+		r[i] = g[i] = b[i] = a[i] = 1f;
+		type[i] = 0;
+		usePoints[i] = SimpleParticle.INHERIT_POINTS;
+		oriented[i] = false;
+		images[i] = null;
+		return i;
+	}
+
+	/**
+	 * 移除指定位置的粒子,由最后一个粒子填补空位
+	 * 
+	 * @param i
+	 */
+	public void remove(int i) {
+		int last = --count;
+		if (i != last) {
+			copy(last, i);
+		}
+		images[last] = null;
+		if (particles != null) {
+			particles[last] = null;
+		}
+	}
+
+	private void copy(int from, int to) {
+		x[to] = x[from];
+		y[to] = y[from];
+		velX[to] = velX[from];
+		velY[to] = velY[from];
+		size[to] = size[from];
+		life[to] = life[from];
+		originalLife[to] = originalLife[from];
+		scaleY[to] = scaleY[from];
+		r[to] = r[from];
+		g[to] = g[from];
+		b[to] = b[from];
+		a[to] = a[from];
+		type[to] = type[from];
+		usePoints[to] = usePoints[from];
+		oriented[to] = oriented[from];
+		images[to] = images[from];
+		if (particles != null) {
+			SimpleParticle p = particles[from];
+			particles[to] = p;
+			if (p != null) {
+				p.index = to;
+			}
+		}
+	}
+
+	/**
+	 * 扣除[start,end)区间粒子的生命并按速度移动仍然存活的粒子(死亡的粒子留待compact移除)
+	 * 
+	 * @param start
+	 * @param end
+	 * @param delta
+	 */
+	public void integrate(int start, int end, long delta) {
+		final float[] x = this.x, y = this.y, velX = this.velX, velY = this.velY, life = this.life;
+		for (int i = start; i < end; i++) {
+			float l = life[i] - delta;
+			life[i] = l;
+			if (l > 0) {
+				x[i] += delta * velX[i];
+				y[i] += delta * velY[i];
+			}
+		}
+	}
+
+	/**
+	 * 移除所有生命耗尽的粒子,返回移除的数量
+	 * 
+	 * @return
+	 */
+	public int compact() {
+		final float[] life = this.life;
+		int removed = 0;
+		for (int i = count - 1; i >= 0; i--) {
+			if (life[i] <= 0) {
+				remove(i);
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	public void move(float dx, float dy) {
+		final float[] x = this.x, y = this.y;
+		for (int i = 0; i < count; i++) {
+			x[i] += dx;
+			y[i] += dy;
+		}
+	}
+
+	public void clear() {
+		for (int i = 0; i < count; i++) {
+			images[i] = null;
+			if (particles != null) {
+				particles[i] = null;
+			}
+		}
+		count = 0;
+	}
+
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.particle;
+
+/**
+ * 可以直接按区间处理ParticleBuffer的发射器,实现后粒子系统不再为每个粒子调用updateParticle,
+ * 而是把存活粒子分段交给updateParticles,粒子较多时不同区间可能在多个线程中同时处理.
+ *
+ * updateParticles中只能修改[start,end)区间内的粒子数据,不能产生新粒子,也不应修改发射器自身的状态.
+ */
+public interface SimpleBufferEmitter extends SimpleEmitter {
+
+	public void updateParticles(ParticleBuffer buffer, int start, int end, long delta);
+
+}
@@ -28,7 +28,7 @@ import loon.utils.MathUtils;
 import loon.utils.StringUtils;
 import loon.utils.TArray;
 
-public class SimpleConfigurableEmitter implements SimpleEmitter {
+public class SimpleConfigurableEmitter implements SimpleBufferEmitter {
 
 	private String relativePath = "";
 
@@ -220,6 +220,11 @@ public class SimpleConfigurableEmitter implements SimpleEmitter {
 
 		}
 
+		ParticleBuffer buffer = system.getParticleBuffer(this);
+		if (buffer != null) {
+			particleCount = buffer.count;
+		}
+
 		if ((wrapUp) || ((length.isEnabled()) && (timeout < 0))
 				|| ((emitCount.isEnabled() && (leftToEmit <= 0)))) {
 			if (particleCount == 0) {
@@ -356,6 +361,73 @@ public class SimpleConfigurableEmitter implements SimpleEmitter {
 		}
 	}
 
+	@Override
+	public void updateParticles(ParticleBuffer buffer, int start, int end, long delta) {
+		final float[] px = buffer.x, py = buffer.y, velX = buffer.velX, velY = buffer.velY;
+		final float[] life = buffer.life, originalLife = buffer.originalLife, sizes = buffer.size;
+		final float[] r = buffer.r, g = buffer.g, b = buffer.b, a = buffer.a, scales = buffer.scaleY;
+		final float dvx = windFactor.getValue(0) * 0.00005f * delta;
+		final float dvy = gravityFactor.getValue(0) * 0.00005f * delta;
+		final float grow = delta * growthFactor.getValue(0) * 0.001f;
+		final float startA = startAlpha.getValue(0) / 255.0f;
+		final float endA = endAlpha.getValue(0) / 255.0f;
+		final boolean alphaActive = alpha.isActive();
+		final boolean sizeActive = size.isActive();
+		final boolean velocityActive = velocity.isActive();
+		final boolean scaleActive = scaleY.isActive();
+		final int colorCount = colors.size;
+		for (int i = start; i < end; i++) {
+			px[i] += adjustx;
+			py[i] += adjusty;
+			velX[i] += dvx;
+			velY[i] += dvy;
+
+			float offset = life[i] / originalLife[i];
+			float inv = 1 - offset;
+
+			LColor startColor = null;
+			LColor endColor = null;
+			float colOffset = 0;
+			float colInv = 1;
+			for (int j = 0; j < colorCount - 1; j++) {
+				ColorRecord rec1 = colors.get(j);
+				ColorRecord rec2 = colors.get(j + 1);
+				if ((inv >= rec1.pos) && (inv <= rec2.pos)) {
+					startColor = rec1.col;
+					endColor = rec2.col;
+					colOffset = 1 - (inv - rec1.pos) / (rec2.pos - rec1.pos);
+					colInv = 1 - colOffset;
+				}
+			}
+
+			if (startColor != null) {
+				r[i] = (startColor.r * colOffset) + (endColor.r * colInv);
+				g[i] = (startColor.g * colOffset) + (endColor.g * colInv);
+				b[i] = (startColor.b * colOffset) + (endColor.b * colInv);
+				a[i] = alphaActive ? alpha.getValue(inv) / 255.0f : (startA * offset) + (endA * inv);
+			}
+
+			if (sizeActive) {
+				sizes[i] = size.getValue(inv);
+			} else {
+				float s = sizes[i] + grow;
+				sizes[i] = s > 0 ? s : 0;
+			}
+
+			if (velocityActive) {
+				float vx = velX[i], vy = velY[i];
+				float speed = velocity.getValue(inv);
+				float currentSpeed = MathUtils.sqrt((vx * vx) + (vy * vy));
+				velX[i] = vx * speed / currentSpeed;
+				velY[i] = vy * speed / currentSpeed;
+			}
+
+			if (scaleActive) {
+				scales[i] = scaleY.getValue(inv);
+			}
+		}
+	}
+
 	@Override
 	public boolean completed() {
 		if (engine == null) {
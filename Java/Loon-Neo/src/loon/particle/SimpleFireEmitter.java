@@ -23,7 +23,7 @@ package loon.particle;
 import loon.LTexture;
 import loon.utils.MathUtils;
 
-public class SimpleFireEmitter implements SimpleEmitter {
+public class SimpleFireEmitter implements SimpleBufferEmitter {
 	
 	private int _x;
 
@@ -75,6 +75,21 @@ public class SimpleFireEmitter implements SimpleEmitter {
 		particle.adjustColor(0,-c/2,-c*2,-c/4);
 	}
 
+	@Override
+	public void updateParticles(ParticleBuffer buffer, int start, int end, long delta) {
+		final float[] life = buffer.life, size = buffer.size, g = buffer.g, b = buffer.b, a = buffer.a;
+		final float grow = 0.07f * delta;
+		final float shrink = -0.04f * delta * (_size / 40.0f);
+		final float c = 0.002f * delta;
+		for (int i = start; i < end; i++) {
+			float s = size[i] + (life[i] > 600 ? grow : shrink);
+			size[i] = s > 0 ? s : 0;
+			g[i] -= c / 2;
+			b[i] -= c * 2;
+			a[i] -= c / 4;
+		}
+	}
+
 	@Override
 	public boolean isEnabled() {
 		return true;
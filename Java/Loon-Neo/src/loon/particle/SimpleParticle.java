@@ -63,10 +63,79 @@ public class SimpleParticle {
 
 	protected float scaleY = 1.0f;
 
+	ParticleBuffer buffer;
+
+	int index = -1;
+
 	public SimpleParticle(SimpleParticleSystem engine) {
 		this.engine = engine;
 	}
 
+	/**
+	 * 把ParticleBuffer中指定位置的粒子读入当前对象(供只实现了updateParticle的发射器使用)
+	 * 
+	 * @param emitter
+	 * @param buffer
+	 * @param i
+	 * @return
+	 */
+	SimpleParticle load(SimpleEmitter emitter, ParticleBuffer buffer, int i) {
+		this.emitter = emitter;
+		this.buffer = buffer;
+		this.index = i;
+		x = buffer.x[i];
+		y = buffer.y[i];
+		velx = buffer.velX[i];
+		vely = buffer.velY[i];
+		size = buffer.size[i];
+		life = buffer.life[i];
+		originalLife = buffer.originalLife[i];
+		scaleY = buffer.scaleY[i];
+		type = buffer.type[i];
+		usePoints = buffer.usePoints[i];
+		oriented = buffer.oriented[i];
+		image = buffer.images[i];
+		if (color == LColor.white) {
+			color = new LColor(1f, 1f, 1f, 1f);
+		}
+		color.r = buffer.r[i];
+		color.g = buffer.g[i];
+		color.b = buffer.b[i];
+		color.a = buffer.a[i];
+		return this;
+	}
+
+	/**
+	 * 把当前对象的状态写回load时的位置
+	 */
+	void store() {
+		final ParticleBuffer buffer = this.buffer;
+		final int i = this.index;
+		buffer.x[i] = x;
+		buffer.y[i] = y;
+		buffer.velX[i] = velx;
+		buffer.velY[i] = vely;
+		buffer.size[i] = size;
+		buffer.life[i] = life;
+		buffer.originalLife[i] = originalLife;
+		buffer.scaleY[i] = scaleY;
+		buffer.type[i] = type;
+		buffer.usePoints[i] = usePoints;
+		buffer.oriented[i] = oriented;
+		buffer.images[i] = image;
+		buffer.r[i] = color.r;
+		buffer.g[i] = color.g;
+		buffer.b[i] = color.b;
+		buffer.a[i] = color.a;
+	}
+
+	void unbind() {
+		this.buffer = null;
+		this.index = -1;
+		this.image = null;
+		this.emitter = null;
+	}
+
 	public float getX() {
 		return x;
 	}
@@ -109,7 +178,7 @@ public class SimpleParticle {
 	public SimpleParticle paint(GLEx g) {
 		if ((engine.usePoints() && (usePoints == INHERIT_POINTS))
 				|| (usePoints == USE_POINTS)) {
-			g.drawPoint(velx, scaleY, color.getARGB());
+			g.drawPoint(x, y, color.getARGB());
 		} else {
 			float angle = 0;
 			if (oriented) {
@@ -188,7 +257,7 @@ public class SimpleParticle {
 	}
 
 	public SimpleParticle setColor(float r, float g, float b, float a) {
-		if (color.equals(LColor.white)) {
+		if (color == LColor.white) {
 			color = new LColor(r, g, b, a);
 		} else {
 			color.r = r;
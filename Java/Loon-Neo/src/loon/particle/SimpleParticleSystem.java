@@ -22,17 +22,30 @@ package loon.particle;
 
 import java.util.Iterator;
 
+import loon.LGame;
 import loon.LSystem;
 import loon.LTexture;
+import loon.LTextureBatch;
 import loon.action.sprite.Entity;
 import loon.canvas.LColor;
 import loon.opengl.BlendState;
 import loon.opengl.GLEx;
 import loon.opengl.TextureUtils;
 import loon.utils.GLUtils;
+import loon.utils.MathUtils;
 import loon.utils.ObjectMap;
 import loon.utils.TArray;
 
+/**
+ * 简单的粒子系统,每个发射器的粒子保存在一个ParticleBuffer中(存活粒子紧密排列),更新与绘制只遍历存活的粒子.
+ *
+ * 实现了SimpleBufferEmitter的发射器按区间批量更新粒子,粒子数量达到并行阈值时分段交给多个线程处理;
+ * 只实现SimpleEmitter的发射器仍逐个收到SimpleParticle(由缓存数据临时读出并写回).
+ * 
+ * 如果子类重载createParticle返回了自定义的SimpleParticle,则每个粒子保留自己的对象,更新与绘制仍逐个调用粒子的update与paint.
+ * 
+ * 粒子死亡时由最后一个粒子填补空位,所以粒子的绘制顺序会变化,非叠加(additive)混合的发射器中粒子重叠部分的前后关系可能与加入顺序不同.
+ */
 public class SimpleParticleSystem extends Entity {
 
 	private static final int DEFAULT_PARTICLES = 100;
@@ -41,31 +54,25 @@ public class SimpleParticleSystem extends Entity {
 
 	private TArray<SimpleEmitter> removeMe = new TArray<SimpleEmitter>();
 
-	private static class ParticlePool {
-		public SimpleParticle[] particles;
-		public TArray<SimpleParticle> available;
+	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
+	private static class ParticleBatch implements Runnable {
 
-		public ParticlePool(SimpleParticleSystem system, int maxParticles) {
-			particles = new SimpleParticle[maxParticles];
-			available = new TArray<SimpleParticle>();
+		private SimpleBufferEmitter emitter;
 
-			for (int i = 0; i < particles.length; i++) {
-				particles[i] = system.createParticle(system);
-			}
+		private ParticleBuffer buffer;
 
-			reset(system);
-		}
+		private int from, to;
 
-		public void reset(SimpleParticleSystem system) {
-			available.clear();
+		private long delta;
 
-			for (int i = 0; i < particles.length; i++) {
-				available.add(particles[i]);
-			}
+		@Override
+		public void run() {
+			emitter.updateParticles(buffer, from, to, delta);
+			buffer.integrate(from, to, delta);
 		}
 	}
 
-	protected ObjectMap<SimpleEmitter, ParticlePool> particlesByEmitter = new ObjectMap<SimpleEmitter, ParticlePool>();
+	protected ObjectMap<SimpleEmitter, ParticleBuffer> particlesByEmitter = new ObjectMap<SimpleEmitter, ParticleBuffer>();
 
 	protected int maxParticlesPerEmitter;
 
@@ -73,12 +80,32 @@ public class SimpleParticleSystem extends Entity {
 
 	protected SimpleParticle dummy;
 
+	private final TArray<SimpleEmitter> updating = new TArray<SimpleEmitter>();
+
+	private final TArray<SimpleParticle> spawned = new TArray<SimpleParticle>();
+
+	private final TArray<SimpleParticle> particleCache = new TArray<SimpleParticle>();
+
+	private final LColor tempColor = new LColor(1f, 1f, 1f, 1f);
+
+	private SimpleParticle cursor;
+
+	private ParticleBatch[] batches = new ParticleBatch[0];
+
+	private boolean parallelAllowed = true;
+
+	private int parallelThreshold = 8192;
+
+	private int maxBatches = 8;
+
 	private int pCount;
 
 	private boolean usePoints;
 
 	private boolean removeCompletedEmitters = true;
 
+	private boolean perParticle;
+
 	private LTexture sprite;
 
 	private String defaultImageName;
@@ -95,10 +122,12 @@ public class SimpleParticleSystem extends Entity {
 
 	@Override
 	public void reset() {
-		Iterator<ParticlePool> pools = particlesByEmitter.values().iterator();
-		while (pools.hasNext()) {
-			ParticlePool pool = pools.next();
-			pool.reset(this);
+		flushParticles();
+		Iterator<ParticleBuffer> buffers = particlesByEmitter.values().iterator();
+		while (buffers.hasNext()) {
+			ParticleBuffer buffer = buffers.next();
+			recycleParticles(buffer);
+			buffer.clear();
 		}
 
 		for (int i = 0; i < emitters.size; i++) {
@@ -120,6 +149,27 @@ public class SimpleParticleSystem extends Entity {
 		return usePoints;
 	}
 
+	/**
+	 * 设置是否允许并行更新粒子,以及启用并行所需的最少存活粒子数量与最多分批数量(只对SimpleBufferEmitter生效)
+	 * 
+	 * @param allowed
+	 * @param threshold
+	 * @param batches
+	 */
+	public void setParallel(boolean allowed, int threshold, int batches) {
+		this.parallelAllowed = allowed;
+		this.parallelThreshold = threshold;
+		this.maxBatches = MathUtils.max(1, batches);
+	}
+
+	public boolean isParallelAllowed() {
+		return parallelAllowed;
+	}
+
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
 	public SimpleParticleSystem(String defaultSpriteRef, int maxParticles) {
 		this(defaultSpriteRef, maxParticles, null);
 	}
@@ -130,6 +180,8 @@ public class SimpleParticleSystem extends Entity {
 		this.setRepaint(true);
 		setDefaultImageName(defaultSpriteRef);
 		dummy = createParticle(this);
+		cursor = createParticle(this);
+		perParticle = dummy.getClass() != SimpleParticle.class;
 	}
 
 	public SimpleParticleSystem(LTexture defaultSprite, int maxParticles) {
@@ -137,6 +189,8 @@ public class SimpleParticleSystem extends Entity {
 		this.setRepaint(true);
 		sprite = defaultSprite;
 		dummy = createParticle(this);
+		cursor = createParticle(this);
+		perParticle = dummy.getClass() != SimpleParticle.class;
 	}
 
 	public void setDefaultImageName(String ref) {
@@ -152,6 +206,15 @@ public class SimpleParticleSystem extends Entity {
 		return new SimpleParticle(system);
 	}
 
+	/**
+	 * 是否逐个粒子调用SimpleParticle的update与paint(createParticle返回自定义粒子类时为true)
+	 * 
+	 * @return
+	 */
+	public boolean isPerParticle() {
+		return perParticle;
+	}
+
 	public int getEmitterCount() {
 		return emitters.size;
 	}
@@ -160,14 +223,27 @@ public class SimpleParticleSystem extends Entity {
 		return emitters.get(index);
 	}
 
+	/**
+	 * 返回指定发射器的粒子缓存
+	 * 
+	 * @param emitter
+	 * @return
+	 */
+	public ParticleBuffer getParticleBuffer(SimpleEmitter emitter) {
+		return particlesByEmitter.get(emitter);
+	}
+
 	public void addEmitter(SimpleEmitter emitter) {
 		emitters.add(emitter);
-
-		ParticlePool pool = new ParticlePool(this, maxParticlesPerEmitter);
-		particlesByEmitter.put(emitter, pool);
+		ParticleBuffer buffer = new ParticleBuffer(maxParticlesPerEmitter);
+		if (perParticle) {
+			buffer.useParticles();
+		}
+		particlesByEmitter.put(emitter, buffer);
 	}
 
 	public void removeEmitter(SimpleEmitter emitter) {
+		flushParticles();
 		emitters.remove(emitter);
 		particlesByEmitter.remove(emitter);
 	}
@@ -202,6 +278,8 @@ public class SimpleParticleSystem extends Entity {
 			loadSystemParticleImage();
 		}
 
+		flushParticles();
+
 		for (int emitterIdx = 0; emitterIdx < emitters.size; emitterIdx++) {
 
 			SimpleEmitter emitter = emitters.get(emitterIdx);
@@ -210,6 +288,11 @@ public class SimpleParticleSystem extends Entity {
 				continue;
 			}
 
+			ParticleBuffer buffer = particlesByEmitter.get(emitter);
+			if (buffer == null) {
+				continue;
+			}
+
 			int mode = g.getBlendMode();
 
 			if (emitter.useAdditive()) {
@@ -218,25 +301,31 @@ public class SimpleParticleSystem extends Entity {
 				g.setBlendMode(state);
 			}
 
-			ParticlePool pool = particlesByEmitter.get(emitter);
 			LTexture image = emitter.getImage();
 			if (image == null) {
 				image = this.sprite;
 			}
 
-			if (!emitter.isOriented() && !emitter.usePoints(this)) {
+			final boolean batch = !emitter.isOriented() && !emitter.usePoints(this);
+
+			if (batch) {
 				image.glBegin();
 			}
 			image.getTextureBatch().setLocation(x, y);
 			image.getTextureBatch().setBlendState(BlendState.Null);
 
-			for (int i = 0; i < pool.particles.length; i++) {
-				if (pool.particles[i].inUse()) {
-					pool.particles[i].paint(g);
+			if (buffer.particles != null) {
+				final SimpleParticle[] particles = buffer.particles;
+				for (int i = 0, count = buffer.count; i < count; i++) {
+					if (particles[i] != null && particles[i].inUse()) {
+						particles[i].paint(g);
+					}
 				}
+			} else {
+				paintParticles(g, buffer, image, batch);
 			}
 
-			if (!emitter.isOriented() && !emitter.usePoints(this)) {
+			if (batch) {
 				image.glEnd();
 			}
 
@@ -246,6 +335,65 @@ public class SimpleParticleSystem extends Entity {
 
 	}
 
+	/**
+	 * 绘制一个发射器的全部存活粒子,使用纹理批处理且粒子纹理与批处理相同时直接把四边形写入批处理
+	 * 
+	 * @param g
+	 * @param buffer
+	 * @param image
+	 * @param batch
+	 */
+	protected void paintParticles(GLEx g, ParticleBuffer buffer, LTexture image, boolean batch) {
+		final float[] px = buffer.x, py = buffer.y, size = buffer.size, life = buffer.life;
+		final float[] r = buffer.r, gc = buffer.g, b = buffer.b, a = buffer.a;
+		final int[] points = buffer.usePoints;
+		final boolean[] oriented = buffer.oriented;
+		final LTexture[] images = buffer.images;
+		final int inherit = usePoints ? SimpleParticle.USE_POINTS : SimpleParticle.USE_QUADS;
+		final LTextureBatch textureBatch = batch && image.isBatch() ? image.getTextureBatch() : null;
+		final float texWidth = image.width();
+		final float texHeight = image.height();
+		final float oldColor = textureBatch == null ? 0 : textureBatch.getFloatColor();
+		final LColor color = tempColor;
+		for (int i = 0, count = buffer.count; i < count; i++) {
+			if (life[i] <= 0) {
+				continue;
+			}
+			int pointMode = points[i] == SimpleParticle.INHERIT_POINTS ? inherit : points[i];
+			if (pointMode == SimpleParticle.USE_POINTS) {
+				color.r = r[i];
+				color.g = gc[i];
+				color.b = b[i];
+				color.a = a[i];
+				g.drawPoint(px[i], py[i], color.getARGB());
+				continue;
+			}
+			final float s = size[i];
+			final float half = s / 2;
+			LTexture tex = images[i];
+			if (textureBatch != null && !oriented[i] && (tex == null || tex == image)) {
+				textureBatch.setColor(LColor.toFloatBits(r[i], gc[i], b[i], a[i]));
+				textureBatch.draw((LColor[]) null, px[i] - half, py[i] - half, s, s, 0, 0, texWidth, texHeight);
+				continue;
+			}
+			if (tex == null) {
+				tex = image;
+			}
+			float angle = 0;
+			if (oriented[i]) {
+				angle = MathUtils.atan2(py[i], px[i]) * 180 / MathUtils.PI;
+			}
+			color.r = r[i];
+			color.g = gc[i];
+			color.b = b[i];
+			color.a = a[i];
+			tex.draw(px[i] - half, py[i] - half, s, s, angle, color);
+		}
+		if (textureBatch != null) {
+			textureBatch.setColor(oldColor);
+		}
+	}
+
 	private void loadSystemParticleImage() {
 		try {
 			if (mask != null) {
@@ -265,12 +413,16 @@ public class SimpleParticleSystem extends Entity {
 			loadSystemParticleImage();
 		}
 
+		flushParticles();
+
 		removeMe.clear();
-		TArray<SimpleEmitter> emitters = new TArray<SimpleEmitter>(this.emitters);
-		for (int i = 0; i < emitters.size; i++) {
-			SimpleEmitter emitter = emitters.get(i);
+		updating.clear();
+		updating.addAll(this.emitters);
+		for (int i = 0; i < updating.size; i++) {
+			SimpleEmitter emitter = updating.get(i);
 			if (emitter.isEnabled()) {
 				emitter.update(this, delta);
+				flushParticles();
 				if (removeCompletedEmitters) {
 					if (emitter.completed()) {
 						removeMe.add(emitter);
@@ -279,21 +431,115 @@ public class SimpleParticleSystem extends Entity {
 				}
 			}
 		}
+		updating.clear();
 		this.emitters.removeAll(removeMe);
 
 		pCount = 0;
 
-		if (!particlesByEmitter.isEmpty()) {
-			for (SimpleEmitter emitter : particlesByEmitter.keys()) {
-				if (emitter.isEnabled()) {
-					ParticlePool pool = particlesByEmitter.get(emitter);
-					for (int i = 0; i < pool.particles.length; i++) {
-						if (pool.particles[i].life > 0) {
-							pool.particles[i].update(delta);
-							pCount++;
-						}
+		for (int i = 0; i < emitters.size; i++) {
+			SimpleEmitter emitter = emitters.get(i);
+			if (emitter.isEnabled()) {
+				ParticleBuffer buffer = particlesByEmitter.get(emitter);
+				if (buffer != null && buffer.count > 0) {
+					pCount += buffer.count;
+					updateParticles(emitter, buffer, delta);
+				}
+			}
+		}
+	}
+
+	private void updateParticles(SimpleEmitter emitter, ParticleBuffer buffer, long delta) {
+		final int count = buffer.count;
+		if (buffer.particles != null) {
+			final SimpleParticle[] particles = buffer.particles;
+			for (int i = 0; i < count; i++) {
+				SimpleParticle p = particles[i];
+				if (p.life > 0) {
+					p.update(delta);
+				}
+				p.store();
+				if (p.life <= 0) {
+					// 死亡粒子的对象回收复用,compact会用存活粒子覆盖它的位置
+					p.unbind();
+					particleCache.add(p);
+				}
+			}
+		} else if (emitter instanceof SimpleBufferEmitter) {
+			SimpleBufferEmitter bufferEmitter = (SimpleBufferEmitter) emitter;
+			LGame game = parallelAllowed && maxBatches > 1 && count >= parallelThreshold ? LSystem.base() : null;
+			if (game == null || !game.asyn().isParallelSupported()) {
+				bufferEmitter.updateParticles(buffer, 0, count, delta);
+				buffer.integrate(0, count, delta);
+			} else {
+				int batchCount = MathUtils.min(maxBatches, count);
+				if (batches.length < batchCount) {
+					ParticleBatch[] tmp = new ParticleBatch[batchCount];
+					System.arraycopy(batches, 0, tmp, 0, batches.length);
+					for (int i = batches.length; i < batchCount; i++) {
+						tmp[i] = new ParticleBatch();
 					}
+					batches = tmp;
 				}
+				int step = (count + batchCount - 1) / batchCount;
+				for (int i = 0; i < batchCount; i++) {
+					ParticleBatch batch = batches[i];
+					batch.emitter = bufferEmitter;
+					batch.buffer = buffer;
+					batch.from = i * step;
+					batch.to = MathUtils.min(count, batch.from + step);
+					batch.delta = delta;
+				}
+				game.asyn().invokeAll(batches, batchCount);
+				for (int i = 0; i < batchCount; i++) {
+					batches[i].emitter = null;
+					batches[i].buffer = null;
+				}
+			}
+		} else {
+			final SimpleParticle p = cursor;
+			for (int i = 0; i < count; i++) {
+				p.load(emitter, buffer, i);
+				emitter.updateParticle(p, delta);
+				p.store();
+			}
+			p.unbind();
+			buffer.integrate(0, count, delta);
+		}
+		flushParticles();
+		buffer.compact();
+	}
+
+	/**
+	 * 把通过getNewParticle取得并已由发射器设置好的粒子写回缓存
+	 */
+	private void flushParticles() {
+		if (spawned.size == 0) {
+			return;
+		}
+		for (int i = 0; i < spawned.size; i++) {
+			SimpleParticle p = spawned.get(i);
+			if (p.buffer != null) {
+				p.store();
+				// 逐个粒子更新时对象属于该粒子,直到粒子死亡
+				if (p.buffer.particles != null) {
+					continue;
+				}
+			}
+			p.unbind();
+			particleCache.add(p);
+		}
+		spawned.clear();
+	}
+
+	private void recycleParticles(ParticleBuffer buffer) {
+		if (buffer.particles == null) {
+			return;
+		}
+		for (int i = 0; i < buffer.count; i++) {
+			SimpleParticle p = buffer.particles[i];
+			if (p != null) {
+				p.unbind();
+				particleCache.add(p);
 			}
 		}
 	}
@@ -302,50 +548,64 @@ public class SimpleParticleSystem extends Entity {
 		return pCount;
 	}
 
+	/**
+	 * 为发射器分配一个新粒子,粒子数量已满时返回一个不会被绘制的替身粒子.
+	 * 
+	 * 返回的对象只在发射器本次update期间有效,之后数据写回ParticleBuffer,对象会被回收给其他粒子使用,发射器不应保留它的引用
+	 * (createParticle返回自定义粒子类时例外,此时对象一直属于该粒子,直到粒子死亡).
+	 * 
+	 * @param emitter
+	 * @param life
+	 * @return
+	 */
 	public SimpleParticle getNewParticle(SimpleEmitter emitter, float life) {
-		ParticlePool pool = particlesByEmitter.get(emitter);
-		TArray<SimpleParticle> available = pool.available;
-		if (available.size > 0) {
-			SimpleParticle p = available.removeIndex(available.size - 1);
-			p.init(emitter, life);
-			p.setImage(sprite);
-
-			return p;
+		ParticleBuffer buffer = particlesByEmitter.get(emitter);
+		if (buffer == null) {
+			return dummy;
+		}
+		int index = buffer.spawn(life);
+		if (index == -1) {
+			return dummy;
 		}
-		return dummy;
+		buffer.images[index] = sprite;
+		SimpleParticle p = particleCache.size > 0 ? particleCache.pop() : createParticle(this);
+		p.load(emitter, buffer, index);
+		p.init(emitter, life);
+		p.setImage(sprite);
+		if (buffer.particles != null) {
+			buffer.particles[index] = p;
+		}
+		spawned.add(p);
+		return p;
 	}
 
 	public SimpleParticleSystem release(SimpleParticle particle) {
-		if (particle != dummy) {
-			ParticlePool pool = particlesByEmitter.get(particle.getEmitter());
-			pool.available.add(particle);
+		if (particle != dummy && particle.buffer != null) {
+			particle.setLife(-1);
+			particle.buffer.life[particle.index] = -1;
 		}
 		return this;
 	}
 
 	public SimpleParticleSystem releaseAll(SimpleEmitter emitter) {
-		if (!particlesByEmitter.isEmpty()) {
-			Iterator<ParticlePool> it = particlesByEmitter.values().iterator();
-			while (it.hasNext()) {
-				ParticlePool pool = it.next();
-				for (int i = 0; i < pool.particles.length; i++) {
-					if (pool.particles[i].inUse()) {
-						if (pool.particles[i].getEmitter() == emitter) {
-							pool.particles[i].setLife(-1);
-							release(pool.particles[i]);
-						}
-					}
-				}
-			}
+		flushParticles();
+		ParticleBuffer buffer = particlesByEmitter.get(emitter);
+		if (buffer != null) {
+			recycleParticles(buffer);
+			buffer.clear();
 		}
 		return this;
 	}
 
 	public SimpleParticleSystem moveAll(SimpleEmitter emitter, float x, float y) {
-		ParticlePool pool = particlesByEmitter.get(emitter);
-		for (int i = 0; i < pool.particles.length; i++) {
-			if (pool.particles[i].inUse()) {
-				pool.particles[i].move(x, y);
+		flushParticles();
+		ParticleBuffer buffer = particlesByEmitter.get(emitter);
+		if (buffer != null) {
+			buffer.move(x, y);
+			if (buffer.particles != null) {
+				for (int i = 0; i < buffer.count; i++) {
+					buffer.particles[i].move(x, y);
+				}
 			}
 		}
 		return this;
@@ -57,6 +57,14 @@ public class PBody {
 	
 	protected Object tag;
 
+	protected boolean sleeping;
+
+	protected boolean sleepingAllowed = true;
+
+	protected float sleepTime;
+
+	protected int index = -1;
+
 	public PBody(float angle, boolean fixate, PShape[] ss) {
 		pos = new Vector2f();
 		vel = new Vector2f();
@@ -82,6 +90,7 @@ public class PBody {
 	}
 
 	public void addShape(PShape s) {
+		wakeUp();
 		if (w != null) {
 			w.addShape(s);
 		}
@@ -102,6 +111,7 @@ public class PBody {
 		if (fix) {
 			return;
 		} else {
+			wakeUp();
 			vel.x += fx * invM;
 			vel.y += fy * invM;
 			return;
@@ -112,6 +122,7 @@ public class PBody {
 		if (fix) {
 			return;
 		} else {
+			wakeUp();
 			vel.x += fx * invM;
 			vel.y += fy * invM;
 			px -= pos.x;
@@ -125,6 +136,7 @@ public class PBody {
 		if (fix) {
 			return;
 		} else {
+			wakeUp();
 			angVel += torque * invI;
 			return;
 		}
@@ -239,6 +251,7 @@ public class PBody {
 	}
 
 	public void removeShape(PShape s) {
+		wakeUp();
 		for (int i = 0; i < numShapes; i++) {
 			if (shapes[i] != s) {
 				continue;
@@ -256,6 +269,7 @@ public class PBody {
 	}
 
 	public void setAngularVelocity(float v) {
+		wakeUp();
 		angVel = v;
 	}
 
@@ -264,12 +278,15 @@ public class PBody {
 			return;
 		} else {
 			fix = fixate;
+			sleeping = false;
+			sleepTime = 0f;
 			calcMassData();
 			return;
 		}
 	}
 
 	public void setVelocity(float vx, float vy) {
+		wakeUp();
 		vel.set(vx, vy);
 	}
 
@@ -300,6 +317,57 @@ public class PBody {
 
 	}
 
+	/**
+	 * 是否处于休眠状态(休眠的物体不参与解算,直到被接触,冲量或关节变化唤醒)
+	 * 
+	 * @return
+	 */
+	public boolean isSleeping() {
+		return sleeping;
+	}
+
+	/**
+	 * 唤醒物体,下一次step时它所在的岛(通过接触或关节相连的物体)会一起被唤醒
+	 */
+	public void wakeUp() {
+		if (sleeping) {
+			sleeping = false;
+			sleepTime = 0f;
+		}
+	}
+
+	/**
+	 * 让物体立即进入休眠,它所在的岛只有全部物体都休眠时才会停止解算
+	 */
+	public void sleep() {
+		if (!fix && sleepingAllowed) {
+			sleeping = true;
+			sleepTime = 0f;
+			vel.set(0f, 0f);
+			angVel = 0f;
+		}
+	}
+
+	public boolean isSleepingAllowed() {
+		return sleepingAllowed;
+	}
+
+	/**
+	 * 设置是否允许物体休眠(比如由玩家控制的物体)
+	 * 
+	 * @param allowed
+	 */
+	public void setSleepingAllowed(boolean allowed) {
+		this.sleepingAllowed = allowed;
+		if (!allowed) {
+			wakeUp();
+		}
+	}
+
+	final boolean isActive() {
+		return !fix && !sleeping;
+	}
+
 	public Object getTag() {
 		return tag;
 	}
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.physics;
+
+import loon.geom.AABB;
+import loon.utils.LongMap;
+import loon.utils.TArray;
+
+/**
+ * 宽阶段检测的基础类,持续保存当前AABB互相重叠的形状对,形状对只在开始或结束重叠时增删,
+ * PPhysWorld每帧只需遍历这些形状对进行精确碰撞检测
+ */
+public abstract class PBroadPhase {
+
+	protected PPair[] pairs;
+
+	protected int numPairs;
+
+	protected PBroadPhaseListener listener;
+
+	private final LongMap<PPair> pairIndex = new LongMap<PPair>(256);
+
+	private final TArray<PPair> pairPool = new TArray<PPair>();
+
+	public PBroadPhase() {
+		this.pairs = new PPair[256];
+	}
+
+	abstract void addShape(PShape s);
+
+	abstract void removeShape(PShape s);
+
+	/**
+	 * 形状的AABB更新完毕后调用,刷新重叠的形状对
+	 */
+	abstract void update();
+
+	final static long pairKey(PShape a, PShape b) {
+		if (a._id > b._id) {
+			PShape tmp = a;
+			a = b;
+			b = tmp;
+		}
+		return ((long) a._id << 32) | (b._id & 0xFFFFFFFFL);
+	}
+
+	final static boolean isOverlap(AABB a, AABB b) {
+		return a.minX < b.maxX && b.minX < a.maxX && a.minY < b.maxY && b.minY < a.maxY;
+	}
+
+	protected PPair findPair(PShape a, PShape b) {
+		return pairIndex.get(pairKey(a, b));
+	}
+
+	protected PPair addPair(PShape a, PShape b) {
+		final long key = pairKey(a, b);
+		PPair p = pairIndex.get(key);
+		if (p != null) {
+			return p;
+		}
+		p = pairPool.size > 0 ? pairPool.pop() : new PPair();
+		if (a._id > b._id) {
+			p.s1 = b;
+			p.s2 = a;
+		} else {
+			p.s1 = a;
+			p.s2 = b;
+		}
+		if (numPairs == pairs.length) {
+			PPair[] tmp = new PPair[pairs.length * 2];
+			System.arraycopy(pairs, 0, tmp, 0, numPairs);
+			pairs = tmp;
+		}
+		p.index = numPairs;
+		pairs[numPairs++] = p;
+		p.index1 = link(p.s1, p);
+		p.index2 = link(p.s2, p);
+		pairIndex.put(key, p);
+		if (listener != null) {
+			listener.onPairBegin(p.s1, p.s2);
+		}
+		return p;
+	}
+
+	protected boolean removePair(PShape a, PShape b) {
+		PPair p = pairIndex.remove(pairKey(a, b));
+		if (p == null) {
+			return false;
+		}
+		releasePair(p);
+		return true;
+	}
+
+	protected void removePair(PPair p) {
+		pairIndex.remove(pairKey(p.s1, p.s2));
+		releasePair(p);
+	}
+
+	private final static int link(PShape s, PPair p) {
+		if (s._pairs == null) {
+			s._pairs = new PPair[4];
+		} else if (s._numPairs == s._pairs.length) {
+			PPair[] tmp = new PPair[s._pairs.length * 2];
+			System.arraycopy(s._pairs, 0, tmp, 0, s._numPairs);
+			s._pairs = tmp;
+		}
+		s._pairs[s._numPairs] = p;
+		return s._numPairs++;
+	}
+
+	private final static void unlink(PShape s, int index) {
+		PPair last = s._pairs[--s._numPairs];
+		s._pairs[index] = last;
+		if (last.s1 == s) {
+			last.index1 = index;
+		} else {
+			last.index2 = index;
+		}
+		s._pairs[s._numPairs] = null;
+	}
+
+	private void releasePair(PPair p) {
+		PPair last = pairs[--numPairs];
+		pairs[p.index] = last;
+		last.index = p.index;
+		pairs[numPairs] = null;
+		unlink(p.s1, p.index1);
+		unlink(p.s2, p.index2);
+		if (listener != null) {
+			listener.onPairEnd(p.s1, p.s2);
+		}
+		p.s1 = p.s2 = null;
+		pairPool.add(p);
+	}
+
+	/**
+	 * 删除包含指定形状的全部形状对
+	 * 
+	 * @param s
+	 */
+	protected void removePairs(PShape s) {
+		while (s._numPairs > 0) {
+			removePair(s._pairs[s._numPairs - 1]);
+		}
+	}
+
+	protected void clearPairs() {
+		for (int i = numPairs - 1; i >= 0; i--) {
+			removePair(pairs[i]);
+		}
+	}
+
+	public PPair[] inner_pairs() {
+		return pairs;
+	}
+
+	public int getPairCount() {
+		return numPairs;
+	}
+
+	public PBroadPhaseListener getListener() {
+		return listener;
+	}
+
+	public void setListener(PBroadPhaseListener listener) {
+		this.listener = listener;
+	}
+
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.physics;
+
+/**
+ * 宽阶段检测的形状对事件,AABB开始重叠时调用onPairBegin,不再重叠(或形状被移除)时调用onPairEnd
+ */
+public interface PBroadPhaseListener {
+
+	void onPairBegin(PShape s1, PShape s2);
+
+	void onPairEnd(PShape s1, PShape s2);
+
+}
@@ -17,6 +17,12 @@ package loon.physics;
 
 public class PCollisionChooser implements PCollider {
 
+	private final PPolygonPolygonCollider polygonPolygon = new PPolygonPolygonCollider();
+
+	private final PCirclePolygonCollider circlePolygon = new PCirclePolygonCollider();
+
+	private final PCircleCirlceCollider circleCircle = new PCircleCirlceCollider();
+
 	@Override
 	public int collide(PShape s1, PShape s2, PContact[] cs) {
 		PCollider collider = null;
@@ -27,10 +33,10 @@ public class PCollisionChooser implements PCollider {
 			switch (s2._type) {
 			case BOX_SHAPE:
 			case CONVEX_SHAPE:
-				collider = new PPolygonPolygonCollider();
+				collider = polygonPolygon;
 				break;
 			case CIRCLE_SHAPE:
-				collider = new PCirclePolygonCollider();
+				collider = circlePolygon;
 				flip = true;
 			case CONCAVE_SHAPE:
 			default:
@@ -41,10 +47,10 @@ public class PCollisionChooser implements PCollider {
 			switch (s2._type) {
 			case BOX_SHAPE:
 			case CONVEX_SHAPE:
-				collider = new PCirclePolygonCollider();
+				collider = circlePolygon;
 				break;
 			case CIRCLE_SHAPE:
-				collider = new PCircleCirlceCollider();
+				collider = circleCircle;
 			case CONCAVE_SHAPE:
 			default:
 				break;
@@ -20,6 +20,8 @@ import loon.geom.Vector2f;
 public class PContact {
 
 	protected PContactData data;
+
+	private final PContactData ownData;
 	
 	protected Vector2f localRel1;
 	
@@ -63,7 +65,42 @@ public class PContact {
 		tangent = new Vector2f();
 		relVel = new Vector2f();
 		relPosVel = new Vector2f();
-		data = new PContactData();
+		data = ownData = new PContactData();
+	}
+
+	/**
+	 * 从碰撞结果数组中取出可以重复使用的接触点,没有时新建
+	 */
+	static PContact obtain(PContact[] cs, int index) {
+		PContact c = cs[index];
+		if (c == null) {
+			c = new PContact();
+			cs[index] = c;
+		} else {
+			c.reset();
+		}
+		return c;
+	}
+
+	void reset() {
+		data = ownData;
+		data.set(0, false);
+		corI = 0.0F;
+		massN = 0.0F;
+		massT = 0.0F;
+		norI = 0.0F;
+		overlap = 0.0F;
+		tanI = 0.0F;
+		targetVelocity = 0.0F;
+		rel1.set(0.0F, 0.0F);
+		rel2.set(0.0F, 0.0F);
+		localRel1.set(0.0F, 0.0F);
+		localRel2.set(0.0F, 0.0F);
+		pos.set(0.0F, 0.0F);
+		normal.set(0.0F, 0.0F);
+		tangent.set(0.0F, 0.0F);
+		relVel.set(0.0F, 0.0F);
+		relPosVel.set(0.0F, 0.0F);
 	}
 
 	public Vector2f getNormal() {
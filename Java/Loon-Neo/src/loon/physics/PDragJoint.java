@@ -59,6 +59,14 @@ public class PDragJoint extends PJoint {
 		return relAnchor.cpy();
 	}
 
+	PBody body1() {
+		return bodyObject;
+	}
+
+	PBody body2() {
+		return null;
+	}
+
 	void preSolve(float dt) {
 		relAnchor = bodyObject.mAng.mul(localAnchor);
 		anchor.set(relAnchor.x + bodyObject.pos.x, relAnchor.y + bodyObject.pos.y);
@@ -77,10 +85,12 @@ public class PDragJoint extends PJoint {
 	}
 
 	public void setDragPosition(float px, float py) {
+		wakeBodies();
 		dragPoint.set(px, py);
 	}
 
 	public void setRelativeAnchorPoint(float relx, float rely) {
+		wakeBodies();
 		localAnchor.set(relx, rely);
 		bodyObject.mAng.transpose().mulEqual(localAnchor);
 	}
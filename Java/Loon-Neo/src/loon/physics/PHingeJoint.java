@@ -137,6 +137,14 @@ public class PHingeJoint extends PJoint {
 		return enableMotor;
 	}
 
+	PBody body1() {
+		return b1;
+	}
+
+	PBody body2() {
+		return b2;
+	}
+
 	@Override
 	void preSolve(float dt) {
 		relAnchor1 = b1.mAng.mul(localAnchor1);
@@ -184,49 +192,60 @@ public class PHingeJoint extends PJoint {
 	}
 
 	public void setEnableLimit(boolean enable) {
+		wakeBodies();
 		enableLimit = enable;
 	}
 
 	public void setEnableMotor(boolean enable) {
+		wakeBodies();
 		enableMotor = enable;
 	}
 
 	public void setLimitAngle(float minAngle, float maxAngle) {
+		wakeBodies();
 		this.minAngle = minAngle;
 		this.maxAngle = maxAngle;
 	}
 
 	public void setLimitRestitution(float restitution) {
+		wakeBodies();
 		rest = restitution;
 	}
 
 	public void setMaxAngle(float maxAngle) {
+		wakeBodies();
 		this.maxAngle = maxAngle;
 	}
 
 	public void setMinAngle(float minAngle) {
+		wakeBodies();
 		this.minAngle = minAngle;
 	}
 
 	public void setMotor(float speed, float torque) {
+		wakeBodies();
 		motorSpeed = speed;
 		motorTorque = torque;
 	}
 
 	public void setMotorSpeed(float speed) {
+		wakeBodies();
 		motorSpeed = speed;
 	}
 
 	public void setMotorTorque(float torque) {
+		wakeBodies();
 		motorTorque = torque;
 	}
 
 	public void setRelativeAnchorPoint1(float relx, float rely) {
+		wakeBodies();
 		localAnchor1.set(relx, rely);
 		b1.mAng.transpose().mulEqual(localAnchor1);
 	}
 
 	public void setRelativeAnchorPoint2(float relx, float rely) {
+		wakeBodies();
 		localAnchor2.set(relx, rely);
 		b2.mAng.transpose().mulEqual(localAnchor2);
 	}
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.physics;
+
+import loon.utils.CollectionUtils;
+
+/**
+ * 通过接触或关节相连的一组物体(固定物体不参与连接),不同的岛之间互不影响,可以独立解算或一起休眠
+ */
+public class PIsland {
+
+	protected PBody[] bodies;
+
+	protected PSolver[] solvers;
+
+	protected PJoint[] joints;
+
+	protected int numBodies;
+
+	protected int numSolvers;
+
+	protected int numJoints;
+
+	protected boolean sleeping;
+
+	public PIsland() {
+		this.bodies = new PBody[16];
+		this.solvers = new PSolver[16];
+		this.joints = new PJoint[4];
+	}
+
+	void clear() {
+		for (int i = 0; i < numBodies; i++) {
+			bodies[i] = null;
+		}
+		for (int i = 0; i < numSolvers; i++) {
+			solvers[i] = null;
+		}
+		for (int i = 0; i < numJoints; i++) {
+			joints[i] = null;
+		}
+		numBodies = 0;
+		numSolvers = 0;
+		numJoints = 0;
+		sleeping = true;
+	}
+
+	void addBody(PBody b) {
+		if (numBodies == bodies.length) {
+			bodies = CollectionUtils.copyOf(bodies, bodies.length * 2);
+		}
+		bodies[numBodies++] = b;
+		if (!b.sleeping) {
+			sleeping = false;
+		}
+	}
+
+	void addSolver(PSolver s) {
+		if (numSolvers == solvers.length) {
+			solvers = CollectionUtils.copyOf(solvers, solvers.length * 2);
+		}
+		solvers[numSolvers++] = s;
+	}
+
+	void addJoint(PJoint j) {
+		if (numJoints == joints.length) {
+			joints = CollectionUtils.copyOf(joints, joints.length * 2);
+		}
+		joints[numJoints++] = j;
+	}
+
+	/**
+	 * 唤醒岛中的全部物体
+	 */
+	void wakeUp() {
+		for (int i = 0; i < numBodies; i++) {
+			bodies[i].wakeUp();
+		}
+		sleeping = false;
+	}
+
+	/**
+	 * 解算岛内的全部约束并更新物体位置,执行顺序与逐个世界解算时完全一致,所以结果与线程数量无关
+	 * 
+	 * @param world
+	 * @param dt
+	 */
+	void solve(PPhysWorld world, float dt) {
+		final int iterations = world.iterations;
+		for (int i = 0; i < numSolvers; i++) {
+			solvers[i].preSolve();
+		}
+		for (int i = 0; i < numJoints; i++) {
+			joints[i].preSolve(dt);
+		}
+		for (int j = 0; j < iterations; j++) {
+			for (int i = 0; i < numJoints; i++) {
+				joints[i].solveVelocity(dt);
+			}
+			for (int i = 0; i < numSolvers; i++) {
+				solvers[i].solveVelocity();
+			}
+		}
+		for (int i = 0; i < numBodies; i++) {
+			PBody b = bodies[i];
+			b.correctVel.x = b.vel.x * dt;
+			b.correctVel.y = b.vel.y * dt;
+			b.correctAngVel = b.angVel * dt;
+		}
+		for (int j = 0; j < iterations; j++) {
+			for (int i = 0; i < numJoints; i++) {
+				joints[i].solvePosition();
+			}
+			for (int i = 0; i < numSolvers; i++) {
+				solvers[i].solvePosition();
+			}
+		}
+		for (int i = 0; i < numBodies; i++) {
+			PBody b = bodies[i];
+			b.pos.x += b.correctVel.x;
+			b.pos.y += b.correctVel.y;
+			b.ang += b.correctAngVel;
+			b.update();
+		}
+		if (world.sleepingAllowed) {
+			updateSleep(world, dt);
+		}
+	}
+
+	private void updateSleep(PPhysWorld world, float dt) {
+		final float linear = world.linearSleepTolerance * world.linearSleepTolerance;
+		final float angular = world.angularSleepTolerance * world.angularSleepTolerance;
+		float minSleepTime = Float.MAX_VALUE;
+		for (int i = 0; i < numBodies; i++) {
+			PBody b = bodies[i];
+			if (!b.sleepingAllowed || b.vel.x * b.vel.x + b.vel.y * b.vel.y > linear
+					|| b.angVel * b.angVel > angular) {
+				b.sleepTime = 0f;
+				minSleepTime = 0f;
+			} else {
+				b.sleepTime += dt;
+				if (b.sleepTime < minSleepTime) {
+					minSleepTime = b.sleepTime;
+				}
+			}
+		}
+		if (minSleepTime >= world.timeToSleep) {
+			for (int i = 0; i < numBodies; i++) {
+				PBody b = bodies[i];
+				b.sleeping = true;
+				b.sleepTime = 0f;
+				b.vel.set(0f, 0f);
+				b.angVel = 0f;
+			}
+			sleeping = true;
+		}
+	}
+
+	public boolean isSleeping() {
+		return sleeping;
+	}
+
+	public int getBodyCount() {
+		return numBodies;
+	}
+
+	public int getSolverCount() {
+		return numSolvers;
+	}
+
+	public int getJointCount() {
+		return numJoints;
+	}
+
+	public PBody[] getBodies() {
+		return CollectionUtils.copyOf(bodies, numBodies);
+	}
+
+}
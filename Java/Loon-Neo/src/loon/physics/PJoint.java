@@ -31,7 +31,32 @@ public abstract class PJoint {
 
 	abstract void preSolve(float f);
 
+	/**
+	 * 关节连接的第一个物体
+	 */
+	abstract PBody body1();
+
+	/**
+	 * 关节连接的第二个物体,没有时返回null
+	 */
+	abstract PBody body2();
+
+	/**
+	 * 关节参数变化时唤醒所连接的物体
+	 */
+	protected void wakeBodies() {
+		PBody b = body1();
+		if (b != null) {
+			b.wakeUp();
+		}
+		b = body2();
+		if (b != null) {
+			b.wakeUp();
+		}
+	}
+
 	public void remove() {
+		wakeBodies();
 		rem = true;
 	}
 
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.physics;
+
+/**
+ * 宽阶段检测中AABB互相重叠的一对形状,形状按标识由小到大排列
+ */
+public class PPair {
+
+	protected PShape s1;
+
+	protected PShape s2;
+
+	protected int index;
+
+	// 在s1,s2各自形状对列表中的位置
+	protected int index1;
+
+	protected int index2;
+
+	protected int stamp;
+
+	public PShape getShape1() {
+		return s1;
+	}
+
+	public PShape getShape2() {
+		return s2;
+	}
+
+}
@@ -15,27 +15,69 @@
  */
 package loon.physics;
 
+import loon.LGame;
+import loon.LSystem;
 import loon.geom.Vector2f;
 import loon.utils.CollectionUtils;
+import loon.utils.LongMap;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
 import loon.utils.TimeUtils;
 
 public class PPhysWorld {
 
+	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
+	private static class IslandBatch implements Runnable {
+
+		private PPhysWorld world;
+
+		private int from, to;
+
+		private float dt;
+
+		@Override
+		public void run() {
+			for (int i = from; i < to; i++) {
+				world.activeIslands[i].solve(world, dt);
+			}
+		}
+	}
+
 	private PBody[] bodies;
 	private long collisionDetectionTime;
 	private long collisionSolveTime;
 	private Vector2f gravity;
-	private int iterations;
 	private PJoint[] joints;
 	private int numBodies;
 	private int numJoints;
 	private int numShapes;
 	private int numSolvers;
 	private long positionUpdateTime;
-	private PSweepAndPrune sap;
+	private PBroadPhase broadPhase;
 	private PShape[] shapes;
 	private PSolver[] solvers;
 	private long totalStepTime;
+	private int shapeIds;
+	private PContact[] contactScratch;
+	protected int iterations;
+	protected boolean sleepingAllowed = false;
+	protected float linearSleepTolerance = 2.0F;
+	protected float angularSleepTolerance = 0.05F;
+	protected float timeToSleep = 0.5F;
+	private boolean parallelAllowed = true;
+	private int parallelThreshold = 256;
+	private int maxBatches = 8;
+	private int[] islandParents = new int[1024];
+	private int[] islandIndexes = new int[1024];
+	private PIsland[] islands = new PIsland[0];
+	private int numIslands;
+	private PIsland[] activeIslands = new PIsland[0];
+	private int numActiveIslands;
+	private int numSleepingBodies;
+	private IslandBatch[] batches = new IslandBatch[0];
+	private final LongMap<PSolver> solverIndex = new LongMap<PSolver>(1024);
+	private final TArray<PSolver> solverPool = new TArray<PSolver>();
+	private final TArray<PContact[]> contactPool = new TArray<PContact[]>();
 
 	public PPhysWorld() {
 		this.iterations = 10;
@@ -44,7 +86,8 @@ public class PPhysWorld {
 		this.joints = new PJoint[1024];
 		this.shapes = new PShape[1024];
 		this.solvers = new PSolver[1024];
-		this.sap = new PSweepAndPrune();
+		this.broadPhase = new PSweepAndPrune();
+		this.contactScratch = new PContact[2];
 	}
 
 	public boolean removeBody(PBody b) {
@@ -91,6 +134,7 @@ public class PPhysWorld {
 		}
 		joints[numJoints] = j;
 		numJoints++;
+		j.wakeBodies();
 	}
 
 	void addShape(PShape s) {
@@ -105,8 +149,10 @@ public class PPhysWorld {
 			shapes =  CollectionUtils.copyOf(shapes,
 					shapes.length * 2);
 		}
+		// 每次加入世界时重新分配id,从其他世界移入的形状不会与本世界已有的id冲突
+		s._id = ++shapeIds;
 		shapes[numShapes] = s;
-		s._sapAABB.set(sap, s, s._aabb);
+		broadPhase.addShape(s);
 		numShapes++;
 	}
 
@@ -121,53 +167,58 @@ public class PPhysWorld {
 
 	private PCollisionChooser cc = new PCollisionChooser();
 
+	/**
+	 * 宽阶段检测只在形状对开始或结束重叠时增删形状对,这里只需遍历当前重叠的形状对
+	 */
 	private void collide(long st) {
-		PSortableObject obj[] = sap.sort();
-		if (sap.checkX) {
-			for (int i = 0; i < sap.numObject; i++)
-				if (obj[i].begin) {
-					PSortableObject end = obj[i].aabb.endX;
-					PShape s1 = obj[i].parent;
-					int j = i;
-					do {
-						j++;
-						if (obj[j].begin) {
-							PShape s2 = obj[j].parent;
-							if ((!s1._parent.fix || !s2._parent.fix)
-									&& s1._parent != s2._parent
-									&& s1._aabb.isHit(s2._aabb))
-								collisionShape(s1, s2, cc);
-						}
-					} while (obj[j] != end && j < sap.numObject);
-				}
-
-		} else {
-			for (int i = 0; i < sap.numObject; i++)
-				if (obj[i].begin) {
-					PSortableObject end = obj[i].aabb.endY;
-					PShape s1 = obj[i].parent;
-					int j = i;
-					do {
-						j++;
-						if (obj[j].begin) {
-							PShape s2 = obj[j].parent;
-							if ((!s1._parent.fix || !s2._parent.fix)
-									&& s1._parent != s2._parent
-									&& s1._aabb.isHit(s2._aabb))
-								collisionShape(s1, s2, cc);
-						}
-					} while (obj[j] != end && j < sap.numObject);
-				}
+		broadPhase.update();
+		final PPair[] pairs = broadPhase.pairs;
+		for (int i = 0, size = broadPhase.numPairs; i < size; i++) {
+			PShape s1 = pairs[i].s1;
+			PShape s2 = pairs[i].s2;
+			if ((s1._parent.isActive() || s2._parent.isActive()) && s1._parent != s2._parent
+					&& s1._aabb.isHit(s2._aabb)) {
+				collisionShape(s1, s2, cc);
+			}
 		}
-
 		long en = nanoTime();
 		collisionDetectionTime = en - st;
+		removeSolvers();
+	}
+
+	private final static long pairKey(PShape s1, PShape s2) {
+		return ((long) s1._id << 32) | (s2._id & 0xFFFFFFFFL);
+	}
+
+	private PContact[] obtainContacts() {
+		if (contactPool.size > 0) {
+			return contactPool.pop();
+		}
+		return new PContact[2];
+	}
+
+	/**
+	 * 一次性移除本帧没有再产生接触的解算器,保持原有顺序,解算器与接触点放回池中重复使用.
+	 * 休眠物体之间的接触不会再检测,所以保留它们的解算器;接触消失时唤醒两侧物体
+	 */
+	private void removeSolvers() {
+		int count = 0;
 		for (int i = 0; i < numSolvers; i++) {
-			if (solvers[i].rem) {
-				removeSolver(i);
-				i--;
+			PSolver s = solvers[i];
+			if (s.rem && (s.b1.isActive() || s.b2.isActive() || s.s1._rem || s.s2._rem)) {
+				s.b1.wakeUp();
+				s.b2.wakeUp();
+				solverIndex.remove(pairKey(s.s1, s.s2));
+				contactPool.add(s.release());
+				solverPool.add(s);
+			} else {
+				solvers[count++] = s;
 			}
 		}
+		for (int i = count; i < numSolvers; i++) {
+			solvers[i] = null;
+		}
+		numSolvers = count;
 	}
 	
 	private final static long nanoTime(){
@@ -175,27 +226,51 @@ public class PPhysWorld {
 	}
 
 	private void collisionShape(PShape s1, PShape s2, PCollisionChooser cc) {
-		PContact cs[] = new PContact[2];
+		PContact cs[] = contactScratch;
 		int num = cc.collide(s1, s2, cs);
 		if (num == 0) {
 			return;
 		}
-		boolean found = false;
-		for (int f = 0; f < numSolvers; f++) {
-			if (s1 != solvers[f].s1 || s2 != solvers[f].s2) {
-				continue;
+		final long key = pairKey(s1, s2);
+		PSolver solver = solverIndex.get(key);
+		if (solver != null) {
+			contactScratch = solver.update(cs, num);
+		} else {
+			if (solverPool.size > 0) {
+				solver = solverPool.pop();
+				solver.set(s1, s2, cs, num);
+			} else {
+				solver = new PSolver(s1, s2, cs, num);
 			}
-			solvers[f].update(cs, num);
-			found = true;
-			break;
+			addSolver(solver);
+			solverIndex.put(key, solver);
+			contactScratch = obtainContacts();
 		}
+	}
 
-		if (!found) {
-			PSolver solver = new PSolver(s1, s2, cs, num);
-			addSolver(solver);
+	/**
+	 * 更换宽阶段检测方式(默认为PSweepAndPrune,大量小而快的物体可以改用PUniformGrid)
+	 * 
+	 * @param phase
+	 */
+	public void setBroadPhase(PBroadPhase phase) {
+		if (phase == null || phase == broadPhase) {
+			return;
+		}
+		for (int i = 0; i < numShapes; i++) {
+			broadPhase.removeShape(shapes[i]);
+		}
+		broadPhase.clearPairs();
+		broadPhase = phase;
+		for (int i = 0; i < numShapes; i++) {
+			broadPhase.addShape(shapes[i]);
 		}
 	}
 
+	public PBroadPhase getBroadPhase() {
+		return broadPhase;
+	}
+
 	public PBody[] getBodies() {
 		return  CollectionUtils.copyOf(bodies, numBodies);
 	}
@@ -245,6 +320,7 @@ public class PPhysWorld {
 	}
 
 	private void removeBody(int index) {
+		bodies[index].index = -1;
 		for (int i = 0; i < bodies[index].numShapes; i++) {
 			PShape s = bodies[index].shapes[i];
 			if (s._type == PShapeType.CONCAVE_SHAPE) {
@@ -278,7 +354,7 @@ public class PPhysWorld {
 				c.convexes[i]._rem = true;
 			}
 		}
-		shapes[index]._sapAABB.remove();
+		broadPhase.removeShape(shapes[index]);
 		if (index != numShapes - 1) {
 			System.arraycopy(shapes, index + 1, shapes, index, numShapes
 					- index - 1);
@@ -286,14 +362,6 @@ public class PPhysWorld {
 		numShapes--;
 	}
 
-	private void removeSolver(int index) {
-		if (index != numSolvers - 1) {
-			System.arraycopy(solvers, index + 1, solvers, index, numSolvers
-					- index - 1);
-		}
-		numSolvers--;
-	}
-
 	public void setGravity(float gx, float gy) {
 		gravity.set(gx, gy);
 	}
@@ -302,62 +370,190 @@ public class PPhysWorld {
 		this.iterations = iterations;
 	}
 
-	private void solve(float dt) {
-		long st = nanoTime();
+	private final int findIsland(int index) {
+		final int[] parents = islandParents;
+		while (parents[index] != index) {
+			parents[index] = parents[parents[index]];
+			index = parents[index];
+		}
+		return index;
+	}
+
+	private final void unionIsland(PBody b1, PBody b2) {
+		if (b1 == null || b2 == null || b1.fix || b2.fix || b1.index < 0 || b2.index < 0) {
+			return;
+		}
+		int r1 = findIsland(b1.index);
+		int r2 = findIsland(b2.index);
+		if (r1 < r2) {
+			islandParents[r2] = r1;
+		} else if (r2 < r1) {
+			islandParents[r1] = r2;
+		}
+	}
+
+	private final PIsland islandOf(PBody b1, PBody b2) {
+		PBody b = (b1 == null || b1.fix || b1.index < 0) ? b2 : b1;
+		if (b == null || b.fix || b.index < 0) {
+			return null;
+		}
+		return islands[islandIndexes[b.index]];
+	}
+
+	/**
+	 * 以并查集把通过接触与关节相连的非固定物体分成若干岛,岛的顺序由其中最小的物体索引决定,
+	 * 岛内约束保持在世界中的原有顺序,只要有一个物体醒着整个岛就会被唤醒
+	 */
+	private void buildIslands() {
+		if (islandParents.length < numBodies) {
+			int size = MathUtils.nextPowerOfTwo(numBodies);
+			islandParents = new int[size];
+			islandIndexes = new int[size];
+		}
+		final int[] parents = islandParents;
+		for (int i = 0; i < numBodies; i++) {
+			bodies[i].index = i;
+			parents[i] = i;
+		}
 		for (int i = 0; i < numSolvers; i++) {
-			solvers[i].preSolve();
+			unionIsland(solvers[i].b1, solvers[i].b2);
 		}
 		for (int i = 0; i < numJoints; i++) {
-			joints[i].preSolve(dt);
+			unionIsland(joints[i].body1(), joints[i].body2());
 		}
-		for (int j = 0; j < iterations; j++) {
-			for (int i = 0; i < numJoints; i++) {
-				joints[i].solveVelocity(dt);
+		for (int i = 0; i < numIslands; i++) {
+			islands[i].clear();
+		}
+		numIslands = 0;
+		for (int i = 0; i < numBodies; i++) {
+			PBody b = bodies[i];
+			if (b.fix) {
+				continue;
 			}
-			for (int i = 0; i < numSolvers; i++) {
-				solvers[i].solveVelocity();
+			int root = findIsland(i);
+			int id;
+			if (root == i) {
+				if (numIslands == islands.length) {
+					islands = CollectionUtils.copyOf(islands, MathUtils.max(16, islands.length * 2));
+				}
+				if (islands[numIslands] == null) {
+					islands[numIslands] = new PIsland();
+				} else {
+					islands[numIslands].clear();
+				}
+				id = numIslands++;
+			} else {
+				id = islandIndexes[root];
 			}
+			islandIndexes[i] = id;
+			islands[id].addBody(b);
 		}
-
-		long en = nanoTime();
-		collisionSolveTime = en - st;
-		st = nanoTime();
-		for (int i = 0; i < numBodies; i++)
-			if (!bodies[i].fix) {
-				PBody b = bodies[i];
-				b.correctVel.x = b.vel.x * dt;
-				b.correctVel.y = b.vel.y * dt;
-				b.correctAngVel = b.angVel * dt;
+		for (int i = 0; i < numSolvers; i++) {
+			PSolver s = solvers[i];
+			PIsland island = islandOf(s.b1, s.b2);
+			if (island != null) {
+				island.addSolver(s);
+			}
+		}
+		for (int i = 0; i < numJoints; i++) {
+			PJoint j = joints[i];
+			PIsland island = islandOf(j.body1(), j.body2());
+			if (island != null) {
+				island.addJoint(j);
+			}
+		}
+		if (activeIslands.length < numIslands) {
+			activeIslands = new PIsland[islands.length];
+		}
+		numActiveIslands = 0;
+		numSleepingBodies = 0;
+		for (int i = 0; i < numIslands; i++) {
+			PIsland island = islands[i];
+			if (island.sleeping && sleepingAllowed) {
+				numSleepingBodies += island.numBodies;
+			} else {
+				island.wakeUp();
+				activeIslands[numActiveIslands++] = island;
 			}
+		}
+	}
 
-		en = nanoTime();
-		positionUpdateTime += en - st;
-		st = nanoTime();
-		for (int j = 0; j < iterations; j++) {
-			for (int i = 0; i < numJoints; i++) {
-				joints[i].solvePosition();
+	/**
+	 * 醒着的岛互相独立,约束足够多且平台支持多线程时分批并行解算,否则依次解算
+	 * 
+	 * @param dt
+	 */
+	private void solveIslands(float dt) {
+		int count = numActiveIslands;
+		if (count == 0) {
+			return;
+		}
+		int weight = 0;
+		for (int i = 0; i < count; i++) {
+			PIsland island = activeIslands[i];
+			weight += island.numSolvers + island.numJoints + island.numBodies;
+		}
+		LGame game = parallelAllowed && count > 1 && weight >= parallelThreshold ? LSystem.base() : null;
+		if (game == null || !game.asyn().isParallelSupported()) {
+			for (int i = 0; i < count; i++) {
+				activeIslands[i].solve(this, dt);
 			}
-			for (int i = 0; i < numSolvers; i++) {
-				solvers[i].solvePosition();
+			return;
+		}
+		int batchCount = MathUtils.min(count, maxBatches);
+		if (batches.length < batchCount) {
+			IslandBatch[] tmp = new IslandBatch[batchCount];
+			System.arraycopy(batches, 0, tmp, 0, batches.length);
+			batches = tmp;
+		}
+		int target = (weight + batchCount - 1) / batchCount;
+		int used = 0;
+		int from = 0;
+		int sum = 0;
+		for (int i = 0; i < count && used < batchCount - 1; i++) {
+			PIsland island = activeIslands[i];
+			sum += island.numSolvers + island.numJoints + island.numBodies;
+			if (sum >= target) {
+				setBatch(used++, from, i + 1, dt);
+				from = i + 1;
+				sum = 0;
 			}
 		}
+		if (from < count) {
+			setBatch(used++, from, count, dt);
+		}
+		game.asyn().invokeAll(batches, used);
+	}
 
+	private void setBatch(int index, int from, int to, float dt) {
+		IslandBatch batch = batches[index];
+		if (batch == null) {
+			batch = batches[index] = new IslandBatch();
+			batch.world = this;
+		}
+		batch.from = from;
+		batch.to = to;
+		batch.dt = dt;
+	}
+
+	private void solve(float dt) {
+		long st = nanoTime();
+		buildIslands();
+		long en = nanoTime();
+		positionUpdateTime += en - st;
+		st = en;
+		solveIslands(dt);
 		en = nanoTime();
-		collisionSolveTime += en - st;
-		st = nanoTime();
+		collisionSolveTime = en - st;
+		st = en;
 		for (int i = 0; i < numBodies; i++) {
 			PBody b = bodies[i];
 			if (b.fix) {
 				b.angVel = 0.0F;
 				b.vel.set(0.0F, 0.0F);
-			} else {
-				b.pos.x += b.correctVel.x;
-				b.pos.y += b.correctVel.y;
-				b.ang += b.correctAngVel;
+				b.update();
 			}
-			b.update();
 		}
-
 		for (int i = 0; i < numJoints; i++) {
 			joints[i].update();
 		}
@@ -365,13 +561,74 @@ public class PPhysWorld {
 		positionUpdateTime += en - st;
 	}
 
+	/**
+	 * 是否允许静止的岛进入休眠(默认关闭).开启后,直接修改getPosition,getVelocity返回的向量或调用PShape.setPosition
+	 * 不会唤醒物体,需要在修改后调用PBody.wakeUp
+	 * 
+	 * @param allowed
+	 */
+	public void setSleepingAllowed(boolean allowed) {
+		this.sleepingAllowed = allowed;
+		if (!allowed) {
+			for (int i = 0; i < numBodies; i++) {
+				bodies[i].wakeUp();
+			}
+		}
+	}
+
+	public boolean isSleepingAllowed() {
+		return sleepingAllowed;
+	}
+
+	/**
+	 * 设置休眠阈值,岛内全部物体的线速度与角速度持续低于阈值time秒后整个岛进入休眠
+	 * 
+	 * @param linear
+	 * @param angular
+	 * @param time
+	 */
+	public void setSleepTolerance(float linear, float angular, float time) {
+		this.linearSleepTolerance = linear;
+		this.angularSleepTolerance = angular;
+		this.timeToSleep = time;
+	}
+
+	/**
+	 * 设置是否允许并行解算,以及启用并行所需的最少约束数量与最多分批数量
+	 * 
+	 * @param allowed
+	 * @param threshold
+	 * @param batches
+	 */
+	public void setParallel(boolean allowed, int threshold, int batches) {
+		this.parallelAllowed = allowed;
+		this.parallelThreshold = threshold;
+		this.maxBatches = MathUtils.max(1, batches);
+	}
+
+	public int getIslandCount() {
+		return numIslands;
+	}
+
+	public int getAwakeIslandCount() {
+		return numActiveIslands;
+	}
+
+	public int getSleepingBodyCount() {
+		return numSleepingBodies;
+	}
+
+	public PIsland[] getIslands() {
+		return CollectionUtils.copyOf(islands, numIslands);
+	}
+
 	public void step(float dt) {
 		long st = nanoTime();
 		for (int i = 0; i < numBodies; i++)
 			if (bodies[i].rem) {
 				removeBody(i);
 				i--;
-			} else {
+			} else if (!bodies[i].sleeping) {
 				bodies[i].update();
 				if (!bodies[i].fix) {
 					PBody b = bodies[i];
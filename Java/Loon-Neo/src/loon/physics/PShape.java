@@ -43,10 +43,19 @@ public abstract class PShape {
 	protected Vector2f _pos;
 	
 	protected boolean _rem;
+
+	protected int _id;
 	
 	protected float _rest;
 	
 	protected PSortableAABB _sapAABB;
+
+	protected int _gridIndex = -1;
+
+	// 宽阶段检测中包含此形状的形状对,删除形状时不必遍历全部形状对
+	protected PPair[] _pairs;
+
+	protected int _numPairs;
 	
 	protected PShapeType _type;
 	
@@ -34,6 +34,11 @@ public class PSolver {
 	protected PShape s2;
 
 	public PSolver(PShape shape1, PShape shape2, PContact contacts[], int num) {
+		set(shape1, shape2, contacts, num);
+	}
+
+	void set(PShape shape1, PShape shape2, PContact contacts[], int num) {
+		rem = false;
 		s1 = shape1;
 		s2 = shape2;
 		b1 = s1._parent;
@@ -44,8 +49,8 @@ public class PSolver {
 		numContacts = num;
 		for (int i = 0; i < numContacts; i++) {
 			PContact c = cs[i];
-			c.rel1 = c.pos.sub(b1.pos);
-			c.rel2 = c.pos.sub(b2.pos);
+			c.rel1.set(c.pos.x - b1.pos.x, c.pos.y - b1.pos.y);
+			c.rel2.set(c.pos.x - b2.pos.x, c.pos.y - b2.pos.y);
 			c.massN = PTransformer.calcEffectiveMass(b1, b2, c.rel1, c.rel2,
 					c.normal);
 			c.massT = PTransformer.calcEffectiveMass(b1, b2, c.rel1, c.rel2,
@@ -150,7 +155,10 @@ public class PSolver {
 
 	}
 
-	void update(PContact contacts[], int num) {
+	/**
+	 * 以新的接触点更新解算器,返回被替换下来的接触点数组以便重复使用
+	 */
+	PContact[] update(PContact contacts[], int num) {
 		PContact old[] = cs;
 		int oldNumContacts = numContacts;
 		fric = MathUtils.sqrt(s1._fric * s2._fric);
@@ -159,8 +167,8 @@ public class PSolver {
 		numContacts = num;
 		for (int i = 0; i < numContacts; i++) {
 			PContact c = cs[i];
-			c.rel1 = c.pos.sub(b1.pos);
-			c.rel2 = c.pos.sub(b2.pos);
+			c.rel1.set(c.pos.x - b1.pos.x, c.pos.y - b1.pos.y);
+			c.rel2.set(c.pos.x - b2.pos.x, c.pos.y - b2.pos.y);
 			c.massN = PTransformer.calcEffectiveMass(b1, b2, c.rel1, c.rel2,
 					c.normal);
 			c.massT = PTransformer.calcEffectiveMass(b1, b2, c.rel1, c.rel2,
@@ -183,6 +191,16 @@ public class PSolver {
 		}
 
 		rem = false;
+		return old;
+	}
+
+	PContact[] release() {
+		PContact[] old = cs;
+		cs = null;
+		numContacts = 0;
+		s1 = s2 = null;
+		b1 = b2 = null;
+		return old;
 	}
 
 }
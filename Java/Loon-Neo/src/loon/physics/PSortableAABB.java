@@ -41,6 +41,7 @@ public class PSortableAABB {
 		} else {
 			sap.removeObject(beginX, beginY);
 			sap.removeObject(endX, endY);
+			set = false;
 			return;
 		}
 	}
@@ -21,6 +21,7 @@ public class PSortableObject {
 	protected boolean begin;
 	protected PShape parent;
 	protected float value;
+	protected boolean removed;
 
 	public PSortableObject(PShape s, PSortableAABB aabb, float value,
 			boolean begin) {
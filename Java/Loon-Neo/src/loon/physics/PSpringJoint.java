@@ -90,6 +90,14 @@ public class PSpringJoint extends PJoint {
 		return str;
 	}
 
+	PBody body1() {
+		return b1;
+	}
+
+	PBody body2() {
+		return b2;
+	}
+
 	void preSolve(float dt) {
 		relAnchor1 = b1.mAng.mul(localAnchor1);
 		relAnchor2 = b2.mAng.mul(localAnchor2);
@@ -113,24 +121,29 @@ public class PSpringJoint extends PJoint {
 	}
 
 	public void setDamping(float damping) {
+		wakeBodies();
 		damp = damping;
 	}
 
 	public void setDistance(float distance) {
+		wakeBodies();
 		dist = distance;
 	}
 
 	public void setRelativeAnchorPoint1(float relx, float rely) {
+		wakeBodies();
 		localAnchor1.set(relx, rely);
 		b1.mAng.transpose().mulEqual(localAnchor1);
 	}
 
 	public void setRelativeAnchorPoint2(float relx, float rely) {
+		wakeBodies();
 		localAnchor2.set(relx, rely);
 		b2.mAng.transpose().mulEqual(localAnchor2);
 	}
 
 	public void setStrength(float strength) {
+		wakeBodies();
 		str = strength;
 	}
 
@@ -17,12 +17,17 @@ package loon.physics;
 
 import loon.utils.CollectionUtils;
 
-public class PSweepAndPrune {
+/**
+ * 增量式的扫描与剪除(sweep and prune)宽阶段检测,两个坐标轴上的端点保持有序,每帧以插入排序修正端点位置,
+ * 排序中端点互相越过时产生形状对的开始与结束事件,所以只有重叠状态发生变化的形状对才会被处理.
+ * 移除形状时只做标记,下一次更新时一次性清理.
+ */
+public class PSweepAndPrune extends PBroadPhase {
 
-	protected boolean checkX;
-	
 	protected int numObject;
-	
+
+	private int numRemoved;
+
 	private PSortableObject[] objsX;
 	private PSortableObject[] objsY;
 
@@ -31,6 +36,18 @@ public class PSweepAndPrune {
 		objsY = new PSortableObject[1024];
 	}
 
+	@Override
+	void addShape(PShape s) {
+		s._sapAABB.set(this, s, s._aabb);
+	}
+
+	@Override
+	void removeShape(PShape s) {
+		s._sapAABB.remove();
+		// 端点在下一次更新时才清理,形状对要立即移除,否则在此之前重新加入的形状会保留过期的形状对
+		removePairs(s);
+	}
+
 	void addObject(PSortableObject ox, PSortableObject oy) {
 		if (numObject + 1 >= objsX.length) {
 			objsX =  CollectionUtils.copyOf(objsX,
@@ -44,55 +61,78 @@ public class PSweepAndPrune {
 	}
 
 	void removeObject(PSortableObject ox, PSortableObject oy) {
-		int indexX = -1;
-		int indexY = -1;
-		for (int i = 0; i < numObject; i++) {
-			if (objsX[i] != ox)
-				continue;
-			indexX = i;
-			break;
+		if (!ox.removed) {
+			ox.removed = true;
+			oy.removed = true;
+			numRemoved++;
 		}
+	}
 
-		if (indexX != -1 && indexX != numObject - 1)
-			System.arraycopy(objsX, indexX + 1, objsX, indexX, numObject
-					- indexX - 1);
+	private void compact() {
+		int count = 0;
 		for (int i = 0; i < numObject; i++) {
-			if (objsY[i] != oy)
-				continue;
-			indexY = i;
-			break;
+			if (!objsX[i].removed) {
+				objsX[count++] = objsX[i];
+			}
+		}
+		count = 0;
+		for (int i = 0; i < numObject; i++) {
+			if (!objsY[i].removed) {
+				objsY[count++] = objsY[i];
+			}
+		}
+		for (int i = count; i < numObject; i++) {
+			objsX[i] = null;
+			objsY[i] = null;
+		}
+		numObject = count;
+		numRemoved = 0;
+		for (int i = numPairs - 1; i >= 0; i--) {
+			PPair p = pairs[i];
+			if (!p.s1._sapAABB.set || !p.s2._sapAABB.set) {
+				removePair(p);
+			}
 		}
-
-		if (indexY != -1 && indexY != numObject - 1)
-			System.arraycopy(objsY, indexY + 1, objsY, indexY, numObject
-					- indexY - 1);
-		numObject--;
 	}
 
-	PSortableObject[] sort() {
-		PInsertionSorter.sort(objsX, numObject);
-		PInsertionSorter.sort(objsY, numObject);
-		int stack = 0;
-		int overlapX = 0;
-		int overlapY = 0;
-		for (int i = 0; i < numObject; i++)
-			if (objsX[i].begin) {
-				stack++;
-				overlapX += stack;
-			} else {
-				stack--;
-			}
+	/**
+	 * 数值相同时结束端点排在开始端点之前,保证刚好相接的两个AABB不算重叠(与AABB.isHit一致)
+	 */
+	private final static boolean after(PSortableObject a, PSortableObject b) {
+		return a.value > b.value || (a.value == b.value && a.begin && !b.begin);
+	}
 
-		stack = 0;
-		for (int i = 0; i < numObject; i++)
-			if (objsY[i].begin) {
-				stack++;
-				overlapY += stack;
-			} else {
-				stack--;
+	private void sort(PSortableObject[] objs) {
+		for (int i = 1; i < numObject; i++) {
+			PSortableObject s = objs[i];
+			if (!after(objs[i - 1], s)) {
+				continue;
 			}
+			int j = i;
+			do {
+				PSortableObject o = objs[j - 1];
+				if (s.begin != o.begin && s.parent != o.parent) {
+					if (s.begin) {
+						if (isOverlap(s.parent._aabb, o.parent._aabb)) {
+							addPair(s.parent, o.parent);
+						}
+					} else {
+						removePair(s.parent, o.parent);
+					}
+				}
+				objs[j] = o;
+			} while (--j > 0 && after(objs[j - 1], s));
+			objs[j] = s;
+		}
+	}
 
-		return (checkX = overlapX < overlapY) ? objsX : objsY;
+	@Override
+	void update() {
+		if (numRemoved > 0) {
+			compact();
+		}
+		sort(objsX);
+		sort(objsY);
 	}
 
 }
@@ -0,0 +1,245 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.physics;
+
+import loon.geom.AABB;
+import loon.utils.CollectionUtils;
+import loon.utils.LongMap;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
+
+/**
+ * 均匀网格的宽阶段检测,每帧把形状按AABB放入固定大小的格子,只比较同一格子中的形状,
+ * 与物体的移动速度无关,适合大量体积小且移动快的物体(扫描与剪除在这种场景下排序会频繁失效).
+ * 覆盖格子过多的大形状(比如地面)单独保存,每帧与其它形状逐一比较.
+ */
+public class PUniformGrid extends PBroadPhase {
+
+	private static class Cell {
+
+		long key;
+
+		PShape[] items = new PShape[8];
+
+		int size;
+
+		int stamp;
+
+		void add(PShape s) {
+			if (size == items.length) {
+				PShape[] tmp = new PShape[items.length * 2];
+				System.arraycopy(items, 0, tmp, 0, size);
+				items = tmp;
+			}
+			items[size++] = s;
+		}
+
+		void clear() {
+			for (int i = 0; i < size; i++) {
+				items[i] = null;
+			}
+			size = 0;
+		}
+	}
+
+	private final LongMap<Cell> cells = new LongMap<Cell>(1024);
+
+	// 上一帧与本帧使用中的格子,上一帧使用而本帧未使用的格子已经为空,从cells中删除
+	private Cell[] usedCells = new Cell[256];
+
+	private int numUsedCells;
+
+	private Cell[] touchedCells = new Cell[256];
+
+	private int numTouchedCells;
+
+	private final TArray<Cell> cellPool = new TArray<Cell>();
+
+	private float cellSize;
+
+	private int maxCellsPerShape;
+
+	private PShape[] shapes;
+
+	private int numShapes;
+
+	private PShape[] larges;
+
+	private int numLarges;
+
+	private int stamp;
+
+	public PUniformGrid() {
+		this(32f);
+	}
+
+	public PUniformGrid(float cellSize) {
+		this(cellSize, 64);
+	}
+
+	/**
+	 * @param cellSize
+	 *            格子大小,一般取常见物体尺寸的1到2倍
+	 * @param maxCellsPerShape
+	 *            单个形状最多占用的格子数量,超过时作为大形状单独处理
+	 */
+	public PUniformGrid(float cellSize, int maxCellsPerShape) {
+		this.cellSize = cellSize;
+		this.maxCellsPerShape = MathUtils.max(1, maxCellsPerShape);
+		this.shapes = new PShape[1024];
+		this.larges = new PShape[16];
+	}
+
+	@Override
+	void addShape(PShape s) {
+		if (s._gridIndex >= 0) {
+			return;
+		}
+		if (numShapes == shapes.length) {
+			shapes = CollectionUtils.copyOf(shapes, shapes.length * 2);
+		}
+		s._gridIndex = numShapes;
+		shapes[numShapes++] = s;
+	}
+
+	@Override
+	void removeShape(PShape s) {
+		int index = s._gridIndex;
+		if (index < 0 || index >= numShapes || shapes[index] != s) {
+			return;
+		}
+		PShape last = shapes[--numShapes];
+		shapes[index] = last;
+		last._gridIndex = index;
+		shapes[numShapes] = null;
+		s._gridIndex = -1;
+		removePairs(s);
+	}
+
+	private void touch(PShape a, PShape b) {
+		if (a != b && isOverlap(a._aabb, b._aabb)) {
+			addPair(a, b).stamp = stamp;
+		}
+	}
+
+	@Override
+	void update() {
+		stamp++;
+		numLarges = 0;
+		final float invSize = 1f / cellSize;
+		for (int i = 0; i < numShapes; i++) {
+			PShape s = shapes[i];
+			AABB aabb = s._aabb;
+			int minX = MathUtils.ifloor(aabb.minX * invSize);
+			int minY = MathUtils.ifloor(aabb.minY * invSize);
+			int maxX = MathUtils.ifloor(aabb.maxX * invSize);
+			int maxY = MathUtils.ifloor(aabb.maxY * invSize);
+			if ((long) (maxX - minX + 1) * (maxY - minY + 1) > maxCellsPerShape) {
+				if (numLarges == larges.length) {
+					larges = CollectionUtils.copyOf(larges, larges.length * 2);
+				}
+				larges[numLarges++] = s;
+				continue;
+			}
+			for (int y = minY; y <= maxY; y++) {
+				for (int x = minX; x <= maxX; x++) {
+					long key = ((long) x << 32) | (y & 0xFFFFFFFFL);
+					Cell cell = cells.get(key);
+					if (cell == null) {
+						cell = cellPool.size > 0 ? cellPool.pop() : new Cell();
+						cell.key = key;
+						cells.put(key, cell);
+					}
+					if (cell.stamp != stamp) {
+						cell.clear();
+						cell.stamp = stamp;
+						if (numTouchedCells == touchedCells.length) {
+							Cell[] tmp = new Cell[touchedCells.length * 2];
+							System.arraycopy(touchedCells, 0, tmp, 0, numTouchedCells);
+							touchedCells = tmp;
+						}
+						touchedCells[numTouchedCells++] = cell;
+					}
+					for (int j = 0; j < cell.size; j++) {
+						touch(cell.items[j], s);
+					}
+					cell.add(s);
+				}
+			}
+		}
+		releaseCells();
+		for (int i = 0; i < numLarges; i++) {
+			PShape large = larges[i];
+			for (int j = 0; j < numShapes; j++) {
+				touch(large, shapes[j]);
+			}
+		}
+		for (int i = numPairs - 1; i >= 0; i--) {
+			if (pairs[i].stamp != stamp) {
+				removePair(pairs[i]);
+			}
+		}
+	}
+
+	/**
+	 * 删除本帧没有使用的格子,然后交换两帧的格子列表
+	 */
+	private void releaseCells() {
+		for (int i = 0; i < numUsedCells; i++) {
+			Cell cell = usedCells[i];
+			usedCells[i] = null;
+			if (cell.stamp != stamp) {
+				cells.remove(cell.key);
+				cell.clear();
+				cellPool.add(cell);
+			}
+		}
+		Cell[] tmp = usedCells;
+		usedCells = touchedCells;
+		numUsedCells = numTouchedCells;
+		touchedCells = tmp;
+		numTouchedCells = 0;
+	}
+
+	/**
+	 * 清空格子缓存
+	 */
+	public void clearCells() {
+		cells.clear();
+		for (int i = 0; i < numUsedCells; i++) {
+			usedCells[i] = null;
+		}
+		numUsedCells = 0;
+		cellPool.clear();
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	public void setCellSize(float cellSize) {
+		if (this.cellSize != cellSize) {
+			this.cellSize = cellSize;
+			clearCells();
+		}
+	}
+
+}
@@ -30,6 +30,11 @@ public class ArrayByteOutput extends OutputStream implements LRelease {
 		_buffer.writeByte(b);
 	}
 
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		_buffer.write(b, off, len);
+	}
+
 	@Override
 	public void close() {
 		_buffer.close();
@@ -28,6 +28,7 @@ import loon.component.Actor;
 import loon.component.LComponent;
 import loon.physics.PBody;
 import loon.physics.PConvexPolygonShape;
+import loon.physics.PIsland;
 import loon.physics.PJoint;
 import loon.physics.PShape;
 import loon.physics.PSolver;
@@ -611,6 +612,16 @@ final public class CollectionUtils {
 		return copyOf(data, data.length);
 	}
 
+	public static PIsland[] copyOf(PIsland[] data, int newSize) {
+		PIsland tempArr[] = new PIsland[newSize];
+		System.arraycopy(data, 0, tempArr, 0, MathUtils.min(data.length, newSize));
+		return tempArr;
+	}
+
+	public static PIsland[] copyOf(PIsland[] data) {
+		return copyOf(data, data.length);
+	}
+
 	public static PJoint[] copyOf(PJoint[] data) {
 		return copyOf(data, data.length);
 	}
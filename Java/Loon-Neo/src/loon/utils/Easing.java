@@ -383,6 +383,76 @@ public class Easing {
 		}
 	}
 
+	/**
+	 * 按指定缓动模式计算t时刻(总时长totaltime)在min到max之间的值
+	 * 
+	 * @param mode
+	 * @param t
+	 * @param totaltime
+	 * @param max
+	 * @param min
+	 * @return
+	 */
+	public static float ease(EasingMode mode, float t, float totaltime, float max, float min) {
+		switch (mode) {
+		case InQuad:
+			return inQuad(t, totaltime, max, min);
+		case OutQuad:
+			return outQuad(t, totaltime, max, min);
+		case InOutQuad:
+			return inOutQuad(t, totaltime, max, min);
+		case InCubic:
+			return inCubic(t, totaltime, max, min);
+		case OutCubic:
+			return outCubic(t, totaltime, max, min);
+		case InQuart:
+			return inQuart(t, totaltime, max, min);
+		case OutQuart:
+			return outQuart(t, totaltime, max, min);
+		case InOutQuart:
+			return inOutQuart(t, totaltime, max, min);
+		case InQuint:
+			return inQuint(t, totaltime, max, min);
+		case OutQuint:
+			return outQuint(t, totaltime, max, min);
+		case InOutQuint:
+			return inOutQuint(t, totaltime, max, min);
+		case InSine:
+			return inSine(t, totaltime, max, min);
+		case OutSine:
+			return outSine(t, totaltime, max, min);
+		case InOutSine:
+			return inOutSine(t, totaltime, max, min);
+		case InExp:
+			return inExp(t, totaltime, max, min);
+		case OutExp:
+			return outExp(t, totaltime, max, min);
+		case InOutExp:
+			return inOutExp(t, totaltime, max, min);
+		case InCirc:
+			return inCirc(t, totaltime, max, min);
+		case OutCirc:
+			return outCirc(t, totaltime, max, min);
+		case InOutCirc:
+			return inOutCirc(t, totaltime, max, min);
+		case InBack:
+			return inBack(t, totaltime, max, min, 0.1f);
+		case OutBack:
+			return outBack(t, totaltime, max, min, 0.1f);
+		case InOutBack:
+			return inOutBack(t, totaltime, max, min, 0.1f);
+		case OutBounce:
+			return outBounce(t, totaltime, max, min);
+		case InBounce:
+			return inBounce(t, totaltime, max, min);
+		case InOutBounce:
+			return inOutBounce(t, totaltime, max, min);
+		case Linear:
+		default:
+			return linear(t, totaltime, max, min);
+		}
+	}
+
 	public static float inQuad(float t, float totaltime, float max, float min) {
 		max -= min;
 		t /= totaltime;
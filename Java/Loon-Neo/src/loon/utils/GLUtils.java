@@ -30,6 +30,7 @@ import loon.canvas.Image;
 import loon.canvas.LColor;
 import loon.canvas.Pixmap;
 import loon.opengl.GL20;
+import loon.utils.timer.FrameProfiler;
 
 public class GLUtils {
 	
@@ -321,6 +322,7 @@ public class GLUtils {
 			if (GLUtils.currentHardwareTextureID != hardwareTextureID) {
 				gl.glBindTexture(GL20.GL_TEXTURE_2D, hardwareTextureID);
 				GLUtils.currentHardwareTextureID = hardwareTextureID;
+				FrameProfiler.count(FrameProfiler.TEXTURE_BINDS, 1);
 			}
 		} catch (Throwable e) {
 		}
@@ -421,6 +423,27 @@ public class GLUtils {
 		return buffer;
 	}
 
+	/**
+	 * 读取帧缓存像素到指定数组中(不翻转,行顺序为OpenGL的自下而上),pixels与buffer都由调用者复用,读取过程不产生新对象
+	 * 
+	 * @param gl
+	 * @param pixels
+	 * @param x
+	 * @param y
+	 * @param w
+	 * @param h
+	 * @param alpha
+	 * @param buffer
+	 */
+	public static void readFrameBufferPixels(final GL20 gl, final ByteBuffer pixels, int x, int y, int w, int h,
+			boolean alpha, byte[] buffer) {
+		gl.glPixelStorei(GL20.GL_PACK_ALIGNMENT, 1);
+		pixels.clear();
+		gl.glReadPixels(x, y, w, h, alpha ? GL20.GL_RGBA : GL20.GL_RGB, GL20.GL_UNSIGNED_BYTE, pixels);
+		pixels.clear();
+		pixels.get(buffer, 0, w * h * (alpha ? 4 : 3));
+	}
+
 	public static Image getFrameBufferRGBImage(int x, int y, int w, int h) {
 		return getFrameBuffeImage(LSystem.base().graphics().gl, x, y, w, h, true, false);
 	}
@@ -12,6 +12,9 @@ import loon.geom.RectBox;
 
 /*
  * gif动画解码器，用于解释gif图像数据流到Image
+ * 
+ * readStatus会一次性解码全部帧,readStream则只在首次读取时记录每帧数据的位置,之后按需解码,
+ * 只在一个固定大小的环形缓存中保留最近解码的帧像素并重复使用,所以内存占用与帧数无关
  */
 public class GifDecoder implements LRelease {
 
@@ -81,6 +84,21 @@ public class GifDecoder implements LRelease {
 
 	protected int frameCount;
 
+	protected boolean streaming;
+
+	protected int cacheSize = 4;
+
+	protected int[][] cachePixels;
+
+	protected int[] cacheIndexes;
+
+	protected int lastComposed = -1;
+
+	// 最近一次通过getFramePixels取出(正在显示)的帧
+	protected int lastShown = -1;
+
+	protected int decodedCount;
+
 	static class GifFrame {
 		public GifFrame(Image im, int del) {
 			image = im;
@@ -90,6 +108,13 @@ public class GifDecoder implements LRelease {
 		public Image image;
 
 		public int delay;
+
+		// 流式解码时记录的帧信息
+		int offset, ix, iy, iw, ih, transIndex, lastDispose;
+
+		boolean interlace, transparency;
+
+		int[] act;
 	}
 
 	/**
@@ -130,6 +155,39 @@ public class GifDecoder implements LRelease {
 		return getFrame(0);
 	}
 
+	/**
+	 * 是否为流式解码(使用readStream读取)
+	 * 
+	 * @return
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * 设置流式解码时环形缓存保留的帧数量(最少3帧,需要在readStream之前设置)
+	 * 
+	 * @param size
+	 */
+	public void setCacheSize(int size) {
+		if (cachePixels == null) {
+			this.cacheSize = MathUtils.max(3, size);
+		}
+	}
+
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * 流式解码以来实际解码过的帧数量(包含回溯时重复解码的帧)
+	 * 
+	 * @return
+	 */
+	public int getDecodedCount() {
+		return decodedCount;
+	}
+
 	public int getLoopCount() {
 		return loopCount;
 	}
@@ -163,6 +221,11 @@ public class GifDecoder implements LRelease {
 				}
 			}
 		}
+		drawPixels(dest);
+		image.setPixels(dest, image.getWidth(), image.getHeight());
+	}
+
+	protected void drawPixels(int[] dest) {
 		int pass = 1;
 		int inc = 8;
 		int iline = 0;
@@ -206,17 +269,116 @@ public class GifDecoder implements LRelease {
 				}
 			}
 		}
-		image.setPixels(dest, image.getWidth(), image.getHeight());
 	}
 
+	/**
+	 * 返回指定帧,流式解码时每次返回的都是同一个Image对象(内容会被下一次调用覆盖)
+	 * 
+	 * @param n
+	 * @return
+	 */
 	public Image getFrame(int n) {
 		Image im = null;
 		if ((n >= 0) && (n < frameCount)) {
-			im = ((GifFrame) frames.get(n)).image;
+			if (streaming) {
+				int[] pixels = getFramePixels(n);
+				if (image == null) {
+					image = Image.createImage(width, height);
+				}
+				image.setPixels(pixels, width, height);
+				im = image;
+			} else {
+				im = ((GifFrame) frames.get(n)).image;
+			}
 		}
 		return im;
 	}
 
+	/**
+	 * 以流式解码方式返回指定帧合成后的像素(数组属于环形缓存,会被之后解码的帧重复使用)
+	 * 
+	 * @param n
+	 * @return
+	 */
+	public int[] getFramePixels(int n) {
+		if (!streaming || n < 0 || n >= frameCount) {
+			return null;
+		}
+		final int slot = n % cacheSize;
+		lastShown = n;
+		if (cacheIndexes[slot] == n) {
+			return cachePixels[slot];
+		}
+		int start = lastComposed + 1;
+		if (n < start) {
+			start = 0;
+		}
+		for (int i = start; i <= n && !err(); i++) {
+			composeFrame(i);
+		}
+		return cachePixels[slot];
+	}
+
+	/**
+	 * 预先解码正在显示的帧之后的若干帧(以正在显示的帧为准计算,不会超过环形缓存的大小,也不会覆盖正在显示的帧)
+	 * 
+	 * @param count
+	 */
+	public void prefetch(int count) {
+		if (!streaming) {
+			return;
+		}
+		final int end = MathUtils.min(frameCount - 1, lastShown + MathUtils.min(count, cacheSize - 2));
+		for (int i = lastComposed + 1; i <= end && !err(); i++) {
+			composeFrame(i);
+		}
+	}
+
+	protected void composeFrame(int n) {
+		final GifFrame frame = frames.get(n);
+		final int slot = n % cacheSize;
+		final int size = width * height;
+		int[] dest = cachePixels[slot];
+		if (dest == null) {
+			dest = cachePixels[slot] = new int[size];
+		}
+		int base = -1;
+		if (frame.lastDispose > 0) {
+			if (frame.lastDispose == 3) {
+				base = n > 1 ? n - 2 : -1;
+			} else {
+				base = n - 1;
+			}
+		}
+		if (base >= 0) {
+			System.arraycopy(cachePixels[base % cacheSize], 0, dest, 0, size);
+		} else {
+			for (int i = 0; i < size; i++) {
+				dest[i] = 0;
+			}
+		}
+		ix = frame.ix;
+		iy = frame.iy;
+		iw = frame.iw;
+		ih = frame.ih;
+		interlace = frame.interlace;
+		act = frame.act;
+		int save = 0;
+		if (frame.transparency) {
+			save = act[frame.transIndex];
+			act[frame.transIndex] = 0;
+		}
+		buffer.setPosition(frame.offset);
+		decodeImageData();
+		drawPixels(dest);
+		if (frame.transparency) {
+			act[frame.transIndex] = save;
+		}
+		cacheIndexes[slot] = n;
+		lastComposed = n;
+		decodedCount++;
+	}
+
 	public Dimension getFrameSize() {
 		return new Dimension(width, height);
 	}
@@ -242,6 +404,48 @@ public class GifDecoder implements LRelease {
 		return status;
 	}
 
+	/**
+	 * 以流式方式读取gif数据,只记录每帧的位置与参数而不解码图像,数据对象会被保留到close为止
+	 * 
+	 * @param is
+	 * @return
+	 */
+	public int readStream(ArrayByte is) {
+		init();
+		streaming = true;
+		if (is != null) {
+			buffer = is;
+			readHeader();
+			if (!err()) {
+				readContents();
+				if (frameCount < 0) {
+					status = STATUS_FORMAT_ERROR;
+				}
+			}
+		} else {
+			status = STATUS_OPEN_ERROR;
+		}
+		cachePixels = new int[cacheSize][];
+		cacheIndexes = new int[cacheSize];
+		for (int i = 0; i < cacheSize; i++) {
+			cacheIndexes[i] = -1;
+		}
+		lastComposed = -1;
+		lastShown = -1;
+		decodedCount = 0;
+		return status;
+	}
+
+	public int readStream(String fileName) {
+		ArrayByte buffer = BaseIO.loadArrayByte(fileName);
+		if (buffer != null) {
+			status = readStream(buffer);
+		} else {
+			status = STATUS_OPEN_ERROR;
+		}
+		return status;
+	}
+
 	public int readStatus(String fileName) {
 		status = STATUS_OK;
 		ArrayByte buffer = BaseIO.loadArrayByte(fileName);
@@ -354,6 +558,9 @@ public class GifDecoder implements LRelease {
 
 	protected void init() {
 		status = STATUS_OK;
+		streaming = false;
+		cachePixels = null;
+		cacheIndexes = null;
 		frameCount = 0;
 		frames = new TArray<GifDecoder.GifFrame>();
 		gct = null;
@@ -520,6 +727,14 @@ public class GifDecoder implements LRelease {
 		if (err())
 			return;
 
+		if (streaming) {
+			if (transparency) {
+				act[transIndex] = save;
+			}
+			indexImage();
+			return;
+		}
+
 		decodeImageData();
 		skip();
 
@@ -541,6 +756,34 @@ public class GifDecoder implements LRelease {
 
 	}
 
+	/**
+	 * 流式解码时只记录当前帧的数据位置与参数,然后跳过图像数据
+	 */
+	protected void indexImage() {
+		GifFrame frame = new GifFrame(null, delay);
+		frame.offset = buffer.position();
+		frame.ix = ix;
+		frame.iy = iy;
+		frame.iw = iw;
+		frame.ih = ih;
+		frame.interlace = interlace;
+		frame.act = act;
+		frame.transparency = transparency;
+		frame.transIndex = transIndex;
+		frame.lastDispose = lastDispose;
+		read();
+		skip();
+		if (err())
+			return;
+		frameCount++;
+		frames.add(frame);
+		lastDispose = dispose;
+		dispose = 0;
+		transparency = false;
+		delay = 0;
+		lct = null;
+	}
+
 	protected void readLSD() {
 		width = readShort();
 		height = readShort();
@@ -598,6 +841,8 @@ public class GifDecoder implements LRelease {
 
 	@Override
 	public void close() {
+		cachePixels = null;
+		cacheIndexes = null;
 		if (buffer != null) {
 			buffer.close();
 			buffer = null;
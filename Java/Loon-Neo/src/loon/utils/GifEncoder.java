@@ -33,6 +33,31 @@ import loon.canvas.LColor;
  */
 public class GifEncoder {
 
+	/**
+	 * 已完成颜色量化与LZW压缩的一帧数据,由encodeFrame生成,再交给addFrame按顺序写入
+	 */
+	public static class IndexedFrame {
+
+		public final int width;
+
+		public final int height;
+
+		public final byte[] colorTab;
+
+		public final int transIndex;
+
+		public final byte[] data;
+
+		IndexedFrame(int width, int height, byte[] colorTab, int transIndex, byte[] data) {
+			this.width = width;
+			this.height = height;
+			this.colorTab = colorTab;
+			this.transIndex = transIndex;
+			this.data = data;
+		}
+
+	}
+
 	protected int width; // image size
 
 	protected int height;
@@ -176,11 +201,91 @@ public class GifEncoder {
 		return ok;
 	}
 
+	/**
+	 * 量化并压缩一帧BGR像素(每帧独立生成调色板),不读写编码器的输出状态,所以可以在多个线程中同时调用
+	 * 
+	 * @param bgr
+	 *            BGR排列的像素
+	 * @param w
+	 * @param h
+	 * @return
+	 */
+	public IndexedFrame encodeFrame(byte[] bgr, int w, int h) {
+		final int nPix = w * h;
+		final int len = nPix * 3;
+		NeuQuant nq = new NeuQuant(bgr, len, sample);
+		byte[] tab = nq.process();
+		boolean[] used = new boolean[256];
+		for (int i = 0; i < tab.length; i += 3) {
+			byte temp = tab[i];
+			tab[i] = tab[i + 2];
+			tab[i + 2] = temp;
+		}
+		byte[] indexed = new byte[nPix];
+		int k = 0;
+		for (int i = 0; i < nPix; i++) {
+			int index = nq.map(bgr[k++] & 0xff, bgr[k++] & 0xff, bgr[k++] & 0xff);
+			used[index] = true;
+			indexed[i] = (byte) index;
+		}
+		int trans = 0;
+		LColor c = transparent;
+		if (c != null) {
+			trans = findClosest(tab, used, c);
+		}
+		ArrayByteOutput out = new ArrayByteOutput(MathUtils.max(1024, nPix / 2));
+		try {
+			new LZWEncoder(w, h, indexed, 8).encode(out);
+		} catch (IOException e) {
+			return null;
+		}
+		return new IndexedFrame(w, h, tab, trans, out.toByteArray());
+	}
+
+	/**
+	 * 写入一帧已由encodeFrame处理好的数据(需要按播放顺序调用)
+	 * 
+	 * @param frame
+	 * @return
+	 */
+	public synchronized boolean addFrame(IndexedFrame frame) {
+		if ((frame == null) || !started) {
+			return false;
+		}
+		boolean ok = true;
+		try {
+			if (!sizeSet) {
+				setSize(frame.width, frame.height);
+			}
+			colorTab = frame.colorTab;
+			transIndex = frame.transIndex;
+			colorDepth = 8;
+			palSize = 7;
+			if (firstFrame) {
+				writeLSD();
+				writePalette();
+				if (repeat >= 0) {
+					writeNetscapeExt();
+				}
+			}
+			writeGraphicCtrlExt();
+			writeImageDesc();
+			if (!firstFrame) {
+				writePalette();
+			}
+			output.write(frame.data, 0, frame.data.length);
+			firstFrame = false;
+		} catch (IOException e) {
+			ok = false;
+		}
+		return ok;
+	}
+
 	/**
 	 * Flushes any pending data and closes output file. If writing to an
 	 * OutputStream, the stream is not closed.
 	 */
-	public boolean finish() {
+	public synchronized boolean finish() {
 		if (!started)
 			return false;
 		boolean ok = true;
@@ -329,6 +434,10 @@ public class GifEncoder {
 	 *
 	 */
 	protected int findClosest(LColor c) {
+		return findClosest(colorTab, usedEntry, c);
+	}
+
+	private static int findClosest(byte[] colorTab, boolean[] usedEntry, LColor c) {
 		if (colorTab == null)
 			return -1;
 		int r = c.getRed();
@@ -0,0 +1,512 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.utils;
+
+import java.nio.ByteBuffer;
+
+import loon.LGame;
+import loon.LSystem;
+import loon.event.Updateable;
+import loon.opengl.GL20;
+import loon.utils.processes.RealtimeProcess;
+import loon.utils.processes.RealtimeProcessManager;
+import loon.utils.timer.LTimerContext;
+
+/**
+ * 流水线式的屏幕录像器,渲染线程中只读取帧缓存像素到复用的缓存中并放入有界队列(队列已满时直接丢弃当前帧),
+ * 像素转换,缩放,颜色量化与LZW压缩都在后台执行(支持invokeAsync的平台上由多个worker同时处理不同的帧,每帧独立生成调色板),
+ * 处理完成的帧按拍摄顺序写入GifEncoder的输出流.
+ * 
+ * 不支持异步的平台上改为在RealtimeProcess中每次刷新处理一帧,至少不再占用渲染过程.
+ */
+public class GifRecorder {
+
+	private final static GifEncoder.IndexedFrame SKIP_FRAME = new GifEncoder.IndexedFrame(0, 0, null, 0, null);
+
+	private static class CaptureFrame {
+
+		int seq;
+
+		int width, height;
+
+		boolean alpha;
+
+		byte[] pixels;
+
+	}
+
+	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
+	private static class RecorderWorker implements Runnable {
+
+		private final GifRecorder recorder;
+
+		RecorderWorker(GifRecorder recorder) {
+			this.recorder = recorder;
+		}
+
+		@Override
+		public void run() {
+			byte[] bgr = null;
+			for (CaptureFrame frame; (frame = recorder.nextWorkerFrame()) != null;) {
+				bgr = recorder.encode(frame, bgr);
+			}
+		}
+	}
+
+	/** 为了语法转换到C#和C++，只能忍痛放弃匿名构造类了…… **/
+	private static class RecorderProcess extends RealtimeProcess {
+
+		private final GifRecorder recorder;
+
+		private byte[] bgr;
+
+		RecorderProcess(GifRecorder recorder) {
+			super("GifRecorderProcess", 0);
+			this.recorder = recorder;
+		}
+
+		@Override
+		public void run(LTimerContext time) {
+			CaptureFrame frame = recorder.nextProcessFrame(this);
+			if (frame != null) {
+				bgr = recorder.encode(frame, bgr);
+			}
+		}
+	}
+
+	private final GifEncoder encoder;
+
+	private final Object writeLock = new Object();
+
+	private final TArray<CaptureFrame> freeFrames = new TArray<CaptureFrame>();
+
+	private final IntMap<GifEncoder.IndexedFrame> encodedFrames = new IntMap<GifEncoder.IndexedFrame>();
+
+	private CaptureFrame[] queue;
+
+	private int queueHead, queueSize;
+
+	private ByteBuffer readBuffer;
+
+	private RecorderProcess recorderProcess;
+
+	private float scale;
+
+	private int targetWidth, targetHeight;
+
+	private int maxWorkers;
+
+	private int activeWorkers;
+
+	private int captureSeq, writeSeq;
+
+	private int droppedCount, encodedCount, maxQueueDepth;
+
+	private boolean running, stopping, finishing, finished;
+
+	private Updateable finishListener;
+
+	public GifRecorder(GifEncoder encoder) {
+		this(encoder, 4, 2);
+	}
+
+	public GifRecorder(GifEncoder encoder, int queueCapacity, int maxWorkers) {
+		this.encoder = encoder;
+		this.queue = new CaptureFrame[MathUtils.max(1, queueCapacity)];
+		this.maxWorkers = MathUtils.max(1, maxWorkers);
+		// 因为内存和速度关系,考虑到全平台录制,因此非桌面环境默认只录屏幕大小的一半
+		this.scale = LSystem.isDesktop() ? 1f : 0.5f;
+		this.running = true;
+	}
+
+	/**
+	 * 设置录像相对于屏幕像素的缩放比例(需要在第一帧之前设置)
+	 * 
+	 * @param s
+	 * @return
+	 */
+	public synchronized GifRecorder setScale(float s) {
+		if (captureSeq == 0) {
+			this.scale = MathUtils.clamp(s, 0.01f, 1f);
+		}
+		return this;
+	}
+
+	public float getScale() {
+		return scale;
+	}
+
+	public synchronized GifRecorder setMaxWorkers(int workers) {
+		this.maxWorkers = MathUtils.max(1, workers);
+		return this;
+	}
+
+	public int getMaxWorkers() {
+		return maxWorkers;
+	}
+
+	public int getQueueCapacity() {
+		return queue.length;
+	}
+
+	public GifEncoder getEncoder() {
+		return encoder;
+	}
+
+	/**
+	 * 拍摄当前整个屏幕
+	 * 
+	 * @return 队列已满而丢弃此帧时返回false
+	 */
+	public boolean capture() {
+		return capture(0, 0, (int) (LSystem.viewSize.width * LSystem.getScaleWidth()),
+				(int) (LSystem.viewSize.height * LSystem.getScaleHeight()));
+	}
+
+	/**
+	 * 拍摄屏幕中的指定区域,在渲染线程中调用,只读取像素而不做任何编码
+	 * 
+	 * @param x
+	 * @param y
+	 * @param w
+	 * @param h
+	 * @return 队列已满而丢弃此帧时返回false
+	 */
+	public boolean capture(int x, int y, int w, int h) {
+		final boolean alpha = !LSystem.isDesktop();
+		CaptureFrame frame = obtainFrame(w, h, alpha);
+		if (frame == null) {
+			return false;
+		}
+		final int size = w * h * (alpha ? 4 : 3);
+		if (readBuffer == null || readBuffer.capacity() < size) {
+			readBuffer = LSystem.base().support().newByteBuffer(size);
+		}
+		GLUtils.readFrameBufferPixels(LSystem.base().graphics().gl, readBuffer, x, y, w, h, alpha, frame.pixels);
+		submitFrame(frame);
+		return true;
+	}
+
+	synchronized CaptureFrame obtainFrame(int w, int h, boolean alpha) {
+		if (!running || w <= 0 || h <= 0) {
+			return null;
+		}
+		if (queueSize >= queue.length) {
+			droppedCount++;
+			return null;
+		}
+		final int size = w * h * (alpha ? 4 : 3);
+		CaptureFrame frame = freeFrames.size > 0 ? freeFrames.pop() : new CaptureFrame();
+		if (frame.pixels == null || frame.pixels.length < size) {
+			frame.pixels = new byte[size];
+		}
+		frame.width = w;
+		frame.height = h;
+		frame.alpha = alpha;
+		return frame;
+	}
+
+	void submitFrame(CaptureFrame frame) {
+		synchronized (this) {
+			if (targetWidth == 0) {
+				targetWidth = MathUtils.max(1, (int) (frame.width * scale));
+				targetHeight = MathUtils.max(1, (int) (frame.height * scale));
+			}
+			frame.seq = captureSeq++;
+			queue[(queueHead + queueSize) % queue.length] = frame;
+			queueSize++;
+			if (queueSize > maxQueueDepth) {
+				maxQueueDepth = queueSize;
+			}
+		}
+		dispatch();
+	}
+
+	private final static boolean isAsyncSupported() {
+		LGame game = LSystem.base();
+		return game != null && game.isAsyncSupported();
+	}
+
+	private void dispatch() {
+		if (isAsyncSupported()) {
+			for (;;) {
+				synchronized (this) {
+					if (activeWorkers >= maxWorkers || activeWorkers >= queueSize) {
+						return;
+					}
+					activeWorkers++;
+				}
+				LSystem.base().invokeAsync(new RecorderWorker(this));
+			}
+		} else {
+			synchronized (this) {
+				if (recorderProcess != null) {
+					return;
+				}
+				recorderProcess = new RecorderProcess(this);
+			}
+			RealtimeProcessManager.get().addProcess(recorderProcess);
+		}
+	}
+
+	private CaptureFrame pollFrame() {
+		if (queueSize == 0) {
+			return null;
+		}
+		CaptureFrame frame = queue[queueHead];
+		queue[queueHead] = null;
+		queueHead = (queueHead + 1) % queue.length;
+		queueSize--;
+		return frame;
+	}
+
+	private synchronized CaptureFrame nextWorkerFrame() {
+		CaptureFrame frame = pollFrame();
+		if (frame == null) {
+			activeWorkers--;
+		}
+		return frame;
+	}
+
+	private synchronized CaptureFrame nextProcessFrame(RecorderProcess process) {
+		CaptureFrame frame = pollFrame();
+		if (frame == null) {
+			process.kill();
+			if (recorderProcess == process) {
+				recorderProcess = null;
+			}
+		}
+		return frame;
+	}
+
+	private byte[] encode(CaptureFrame frame, byte[] bgr) {
+		final int tw, th;
+		synchronized (this) {
+			tw = targetWidth;
+			th = targetHeight;
+		}
+		final int size = tw * th * 3;
+		if (bgr == null || bgr.length < size) {
+			bgr = new byte[size];
+		}
+		convertPixels(frame, bgr, tw, th);
+		final int seq = frame.seq;
+		synchronized (this) {
+			freeFrames.add(frame);
+		}
+		GifEncoder.IndexedFrame result = null;
+		try {
+			result = encoder.encodeFrame(bgr, tw, th);
+		} catch (Throwable cause) {
+			LSystem.error("GifRecorder encode failure", cause);
+		}
+		synchronized (this) {
+			encodedFrames.put(seq, result == null ? SKIP_FRAME : result);
+			encodedCount++;
+		}
+		writeFrames();
+		return bgr;
+	}
+
+	/**
+	 * 把OpenGL的RGB(A)像素(自下而上)转为自上而下的BGR像素,尺寸不同时按最近点缩放
+	 */
+	private final static void convertPixels(CaptureFrame frame, byte[] bgr, int tw, int th) {
+		final byte[] src = frame.pixels;
+		final int w = frame.width;
+		final int h = frame.height;
+		final int bits = frame.alpha ? 4 : 3;
+		final int line = w * bits;
+		int idx = 0;
+		for (int ty = 0; ty < th; ty++) {
+			final int sy = h - 1 - (int) ((long) ty * h / th);
+			final int rowOffset = sy * line;
+			for (int tx = 0; tx < tw; tx++) {
+				final int si = rowOffset + (int) ((long) tx * w / tw) * bits;
+				bgr[idx++] = src[si + 2];
+				bgr[idx++] = src[si + 1];
+				bgr[idx++] = src[si];
+			}
+		}
+	}
+
+	private void writeFrames() {
+		synchronized (writeLock) {
+			for (;;) {
+				GifEncoder.IndexedFrame frame;
+				synchronized (this) {
+					frame = encodedFrames.remove(writeSeq);
+					if (frame == null) {
+						break;
+					}
+					writeSeq++;
+				}
+				if (frame != SKIP_FRAME) {
+					encoder.addFrame(frame);
+				}
+			}
+			final boolean done;
+			synchronized (this) {
+				done = stopping && !finishing && writeSeq == captureSeq;
+				if (done) {
+					finishing = true;
+				}
+			}
+			if (done) {
+				encoder.finish();
+				final Updateable listener;
+				synchronized (this) {
+					finished = true;
+					listener = finishListener;
+					finishListener = null;
+				}
+				notifyFinished(listener);
+			}
+		}
+	}
+
+	/**
+	 * 停止录像,已进入队列的帧会继续编码,全部写入后自动结束GifEncoder(不支持异步的平台上会在此处立即处理完剩余的帧)
+	 */
+	public void stop() {
+		synchronized (this) {
+			if (stopping) {
+				return;
+			}
+			running = false;
+			stopping = true;
+		}
+		if (!isAsyncSupported()) {
+			byte[] bgr = null;
+			for (CaptureFrame frame; (frame = nextStopFrame()) != null;) {
+				bgr = encode(frame, bgr);
+			}
+		}
+		writeFrames();
+	}
+
+	/**
+	 * 停止录像,并在录像完全写入输出流(包括GIF结束标记)之后于游戏线程中调用listener
+	 * 
+	 * @param listener
+	 */
+	public void stop(Updateable listener) {
+		boolean done;
+		synchronized (this) {
+			done = finished;
+			if (!done) {
+				finishListener = listener;
+			}
+		}
+		if (done) {
+			notifyFinished(listener);
+		} else {
+			stop();
+		}
+	}
+
+	private void notifyFinished(Updateable listener) {
+		if (listener == null) {
+			return;
+		}
+		if (LSystem.getProcess() != null) {
+			LSystem.load(listener);
+		} else {
+			listener.action(null);
+		}
+	}
+
+	private synchronized CaptureFrame nextStopFrame() {
+		CaptureFrame frame = pollFrame();
+		if (frame == null && recorderProcess != null) {
+			recorderProcess.kill();
+			recorderProcess = null;
+		}
+		return frame;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * 录像是否已经完全写入输出流(包括GIF结束标记)
+	 * 
+	 * @return
+	 */
+	public synchronized boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * 当前等待编码的帧数量
+	 * 
+	 * @return
+	 */
+	public synchronized int getQueueDepth() {
+		return queueSize;
+	}
+
+	public synchronized int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * 因为队列已满而丢弃的帧数量
+	 * 
+	 * @return
+	 */
+	public synchronized int getDroppedFrames() {
+		return droppedCount;
+	}
+
+	public synchronized int getCapturedFrames() {
+		return captureSeq;
+	}
+
+	public synchronized int getEncodedFrames() {
+		return encodedCount;
+	}
+
+	public synchronized int getWrittenFrames() {
+		return writeSeq;
+	}
+
+	public synchronized int getActiveWorkers() {
+		return activeWorkers;
+	}
+
+	@Override
+	public String toString() {
+		StringKeyValue builder = new StringKeyValue("GifRecorder");
+		builder.kv("captured", getCapturedFrames())
+		.comma()
+		.kv("written", getWrittenFrames())
+		.comma()
+		.kv("dropped", getDroppedFrames())
+		.comma()
+		.kv("queue", getQueueDepth())
+		.comma()
+		.kv("workers", getActiveWorkers());
+		return builder.toString();
+	}
+
+}
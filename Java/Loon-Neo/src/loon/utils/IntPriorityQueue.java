@@ -0,0 +1,160 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.utils;
+
+/**
+ * 基于二叉堆的int优先队列,按float优先级由小到大弹出,优先级相同时按插入顺序(先进先出)弹出,
+ * 内部只使用基本类型数组,清空后可重复使用而不产生新的对象
+ */
+public class IntPriorityQueue implements IArray {
+
+	private int[] values;
+
+	private float[] priorities;
+
+	private int[] sequences;
+
+	private int sequence;
+
+	public int size;
+
+	public IntPriorityQueue() {
+		this(CollectionUtils.INITIAL_CAPACITY);
+	}
+
+	public IntPriorityQueue(int capacity) {
+		capacity = MathUtils.max(8, capacity);
+		this.values = new int[capacity];
+		this.priorities = new float[capacity];
+		this.sequences = new int[capacity];
+	}
+
+	public void add(int value, float priority) {
+		if (size == values.length) {
+			relength(MathUtils.max(8, (int) (size * 1.75f)));
+		}
+		int index = size++;
+		values[index] = value;
+		priorities[index] = priority;
+		sequences[index] = sequence++;
+		up(index);
+	}
+
+	public int peek() {
+		return values[0];
+	}
+
+	public float peekPriority() {
+		return priorities[0];
+	}
+
+	public int pop() {
+		int result = values[0];
+		size--;
+		if (size > 0) {
+			values[0] = values[size];
+			priorities[0] = priorities[size];
+			sequences[0] = sequences[size];
+			down(0);
+		}
+		return result;
+	}
+
+	private final boolean less(int a, int b) {
+		float pa = priorities[a];
+		float pb = priorities[b];
+		if (pa < pb) {
+			return true;
+		}
+		if (pa > pb) {
+			return false;
+		}
+		return sequences[a] < sequences[b];
+	}
+
+	private final void swap(int a, int b) {
+		int v = values[a];
+		values[a] = values[b];
+		values[b] = v;
+		float p = priorities[a];
+		priorities[a] = priorities[b];
+		priorities[b] = p;
+		int s = sequences[a];
+		sequences[a] = sequences[b];
+		sequences[b] = s;
+	}
+
+	private void up(int index) {
+		while (index > 0) {
+			int parent = (index - 1) >> 1;
+			if (!less(index, parent)) {
+				break;
+			}
+			swap(index, parent);
+			index = parent;
+		}
+	}
+
+	private void down(int index) {
+		for (;;) {
+			int left = (index << 1) + 1;
+			if (left >= size) {
+				break;
+			}
+			int right = left + 1;
+			int child = (right < size && less(right, left)) ? right : left;
+			if (!less(child, index)) {
+				break;
+			}
+			swap(index, child);
+			index = child;
+		}
+	}
+
+	protected void relength(int newlength) {
+		values = CollectionUtils.copyOf(values, newlength);
+		priorities = CollectionUtils.copyOf(priorities, newlength);
+		sequences = CollectionUtils.copyOf(sequences, newlength);
+	}
+
+	public void ensureCapacity(int capacity) {
+		if (capacity > values.length) {
+			relength(capacity);
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+		sequence = 0;
+	}
+
+}
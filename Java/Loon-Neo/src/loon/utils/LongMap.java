@@ -0,0 +1,206 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.utils;
+
+/**
+ * 以long为键的开放寻址哈希表,查询,插入,删除都不产生新的对象(扩容除外)
+ */
+public class LongMap<T> implements IArray {
+
+	private long[] keysTable;
+
+	private T[] valuesTable;
+
+	private boolean hasZeroValue;
+
+	private T zeroValue;
+
+	private int capacity, mask, threshold;
+
+	private final float loaderFactor;
+
+	public int size;
+
+	public LongMap() {
+		this(CollectionUtils.INITIAL_CAPACITY);
+	}
+
+	public LongMap(int capacity) {
+		this(capacity, 0.75f);
+	}
+
+	public LongMap(int capacity, float factor) {
+		this.loaderFactor = factor;
+		this.resize(MathUtils.nextPowerOfTwo(MathUtils.max(8, (int) (capacity / factor) + 1)));
+	}
+
+	private final int place(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	public T get(long key) {
+		if (key == 0) {
+			return hasZeroValue ? zeroValue : null;
+		}
+		for (int i = place(key);; i = (i + 1) & mask) {
+			long k = keysTable[i];
+			if (k == 0) {
+				return null;
+			}
+			if (k == key) {
+				return valuesTable[i];
+			}
+		}
+	}
+
+	public boolean containsKey(long key) {
+		if (key == 0) {
+			return hasZeroValue;
+		}
+		for (int i = place(key);; i = (i + 1) & mask) {
+			long k = keysTable[i];
+			if (k == 0) {
+				return false;
+			}
+			if (k == key) {
+				return true;
+			}
+		}
+	}
+
+	public T put(long key, T value) {
+		if (key == 0) {
+			T old = zeroValue;
+			zeroValue = value;
+			if (!hasZeroValue) {
+				hasZeroValue = true;
+				size++;
+			}
+			return old;
+		}
+		int i = place(key);
+		for (;; i = (i + 1) & mask) {
+			long k = keysTable[i];
+			if (k == 0) {
+				break;
+			}
+			if (k == key) {
+				T old = valuesTable[i];
+				valuesTable[i] = value;
+				return old;
+			}
+		}
+		keysTable[i] = key;
+		valuesTable[i] = value;
+		if (++size >= threshold) {
+			resize(capacity << 1);
+		}
+		return null;
+	}
+
+	public T remove(long key) {
+		if (key == 0) {
+			if (!hasZeroValue) {
+				return null;
+			}
+			T old = zeroValue;
+			zeroValue = null;
+			hasZeroValue = false;
+			size--;
+			return old;
+		}
+		int i = place(key);
+		for (;; i = (i + 1) & mask) {
+			long k = keysTable[i];
+			if (k == 0) {
+				return null;
+			}
+			if (k == key) {
+				break;
+			}
+		}
+		T old = valuesTable[i];
+		// 向后移动同一探测链上的元素,保证查询不被空位中断
+		for (int j = (i + 1) & mask;; j = (j + 1) & mask) {
+			long k = keysTable[j];
+			if (k == 0) {
+				break;
+			}
+			int slot = place(k);
+			if ((j > i && (slot <= i || slot > j)) || (j < i && (slot <= i && slot > j))) {
+				keysTable[i] = k;
+				valuesTable[i] = valuesTable[j];
+				i = j;
+			}
+		}
+		keysTable[i] = 0;
+		valuesTable[i] = null;
+		size--;
+		return old;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void resize(int newCapacity) {
+		final long[] oldKeys = keysTable;
+		final T[] oldValues = valuesTable;
+		capacity = newCapacity;
+		mask = newCapacity - 1;
+		threshold = (int) (newCapacity * loaderFactor);
+		keysTable = new long[newCapacity];
+		valuesTable = (T[]) new Object[newCapacity];
+		if (oldKeys != null) {
+			for (int i = 0; i < oldKeys.length; i++) {
+				long k = oldKeys[i];
+				if (k != 0) {
+					int idx = place(k);
+					while (keysTable[idx] != 0) {
+						idx = (idx + 1) & mask;
+					}
+					keysTable[idx] = k;
+					valuesTable[idx] = oldValues[i];
+				}
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < capacity; i++) {
+			keysTable[i] = 0;
+			valuesTable[i] = null;
+		}
+		zeroValue = null;
+		hasZeroValue = false;
+		size = 0;
+	}
+
+}
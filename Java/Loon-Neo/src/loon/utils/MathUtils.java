@@ -640,6 +640,10 @@ public class MathUtils {
 		return (n < 0) ? -n : n;
 	}
 
+	public static final int sign(int n) {
+		return (n > 0) ? 1 : ((n < 0) ? -1 : 0);
+	}
+
 	public static final float sq(float a) {
 		return a * a;
 	}
@@ -86,6 +86,7 @@ public class CacheObjectManager {
 			}
 		};
 		process.setDelay(delay);
+		process.setParkable(true);
 	}
 
 	public void subimit() {
@@ -41,6 +41,14 @@ public abstract class RealtimeProcess implements GameProcess, LRelease {
 
 	private SortedList<GameProcess> processesToFireWhenFinished;
 
+	boolean _baseTicked;
+
+	boolean _parkable;
+
+	long _parkedAt;
+
+	RealtimeProcessManager _scheduler;
+
 	public RealtimeProcess() {
 		this("Process" + TimeUtils.millis());
 	}
@@ -74,17 +82,66 @@ public abstract class RealtimeProcess implements GameProcess, LRelease {
 
 	@Override
 	public void tick(LTimerContext time) {
+		_baseTicked = true;
 		if (timer.action(time)) {
 			run(time);
 		}
 	}
 
+	/**
+	 * 离下次触发还需要经过的时间,计时器未启动或变速时返回-1(此时进程必须逐帧刷新)
+	 * 
+	 * @return
+	 */
+	long getParkTime() {
+		if (!timer.isActive() || timer.getSpeedFactor() != 1f) {
+			return -1;
+		}
+		return timer.getDelay() - timer.getCurrentTick();
+	}
+
+	/**
+	 * 允许进程在离下次触发还很久时暂停逐帧刷新(放入RealtimeProcessManager的时间轮),默认关闭.
+	 * 
+	 * 只应由没有重写tick的进程开启,重写了tick并在其中执行逐帧逻辑的进程暂停期间tick不会被调用.
+	 * 
+	 * @param parkable
+	 * @return
+	 */
+	public RealtimeProcess setParkable(boolean parkable) {
+		if (!parkable) {
+			wake();
+		}
+		this._parkable = parkable;
+		return this;
+	}
+
+	public boolean isParkable() {
+		return _parkable;
+	}
+
+	void addParkedTime(long elapsed) {
+		timer.addPercentage(elapsed);
+	}
+
+	/**
+	 * 如果进程正在时间轮中暂停刷新,则立即唤醒它
+	 */
+	private void wake() {
+		RealtimeProcessManager scheduler = _scheduler;
+		if (scheduler != null) {
+			scheduler.wakeProcess(this);
+		}
+	}
+
 	public RealtimeProcess sleep(long delay) {
+		wake();
 		timer.setDelay(delay);
 		return this;
 	}
 
 	public RealtimeProcess setDelay(long delay) {
+		wake();
 		timer.setDelay(delay);
 		return this;
 	}
@@ -94,20 +151,27 @@ public abstract class RealtimeProcess implements GameProcess, LRelease {
 	}
 
 	public long getCurrentTick() {
+		RealtimeProcessManager scheduler = _scheduler;
+		if (scheduler != null) {
+			return timer.getCurrentTick() + scheduler.getParkedTime(this);
+		}
 		return timer.getCurrentTick();
 	}
 
 	public RealtimeProcess interrupt() {
+		wake();
 		timer.stop();
 		return this;
 	}
 
 	public RealtimeProcess stop() {
+		wake();
 		timer.stop();
 		return this;
 	}
 
 	public RealtimeProcess start() {
+		wake();
 		timer.start();
 		return this;
 	}
@@ -121,6 +185,7 @@ public abstract class RealtimeProcess implements GameProcess, LRelease {
 	@Override
 	public void kill() {
 		this.isDead = true;
+		wake();
 	}
 
 	@Override
@@ -21,19 +21,89 @@
  */
 package loon.utils.processes;
 
+import loon.LGame;
 import loon.LRelease;
 import loon.LSystem;
+import loon.utils.CollectionUtils;
 import loon.utils.IArray;
-import loon.utils.LIterator;
-import loon.utils.SortedList;
-import loon.utils.TArray;
+import loon.utils.ObjectMap;
+import loon.utils.TimeUtils;
 import loon.utils.timer.LTimerContext;
 
+/**
+ * 游戏进程管理器.
+ * 
+ * 进程按加入顺序保存在数组中,添加与删除都是O(1)(删除只留下空位,在每帧刷新结束时统一压缩),并以进程和进程id建立索引,
+ * 刷新时不再复制整个进程列表,也不再产生新的对象.
+ * 
+ * 调用过setParkable(true)的RealtimeProcess(比如每隔数秒执行一次的缓存清理)离下次触发还很久时会被放入时间轮中暂停刷新,到期前一帧再放回刷新列表,
+ * 期间经过的时间会在放回时补给进程的计时器,所以进程的触发时刻与逐帧刷新时完全一致.
+ * 暂停期间调用进程的setDelay,stop,start,kill等方法会立即唤醒进程.未开启setParkable的进程始终逐帧刷新,与旧版行为相同.
+ */
 public class RealtimeProcessManager implements RealtimeProcessEvent, IArray, LRelease {
 
+	private static class ProcessEntry {
+
+		GameProcess process;
+
+		RealtimeProcess realtime;
+
+		String id;
+
+		ProcessEntry idNext;
+
+		int index = -1;
+
+		boolean removed;
+
+		long due;
+
+		ProcessEntry wheelPrev, wheelNext;
+
+		int wheelSlot = -1;
+
+		long runTime;
+
+		int runCount;
+	}
+
+	private final static int WHEEL_SIZE = 256;
+
+	private final static int WHEEL_MASK = WHEEL_SIZE - 1;
+
 	private static RealtimeProcessManager instance;
 
-	private SortedList<GameProcess> processes;
+	private final ObjectMap<GameProcess, ProcessEntry> entries = new ObjectMap<GameProcess, ProcessEntry>();
+
+	private final ObjectMap<String, ProcessEntry> ids = new ObjectMap<String, ProcessEntry>();
+
+	private final ProcessEntry[] wheel = new ProcessEntry[WHEEL_SIZE];
+
+	private ProcessEntry[] actives = new ProcessEntry[CollectionUtils.INITIAL_CAPACITY];
+
+	private int activeCount;
+
+	private ProcessEntry[] deads = new ProcessEntry[CollectionUtils.INITIAL_CAPACITY];
+
+	private int size;
+
+	private int parkedCount;
+
+	private long now;
+
+	private long wheelCursor;
+
+	private long wheelResolution = 16;
+
+	private long minParkTime = 100;
+
+	private boolean wheelEnabled = true;
+
+	private boolean profiling = false;
+
+	private long lastTickTime;
+
+	private long totalRunTime;
 
 	public static final RealtimeProcessManager get() {
 		if (instance == null) {
@@ -47,127 +117,480 @@ public class RealtimeProcessManager implements RealtimeProcessEvent, IArray, LRe
 	}
 
 	private RealtimeProcessManager() {
-		this.processes = new SortedList<GameProcess>();
 	}
 
 	public static RealtimeProcessManager newProcess() {
 		return new RealtimeProcessManager();
 	}
 
+	private void pushActive(ProcessEntry e) {
+		if (activeCount == actives.length) {
+			ProcessEntry[] tmp = new ProcessEntry[actives.length * 2];
+			System.arraycopy(actives, 0, tmp, 0, activeCount);
+			actives = tmp;
+		}
+		e.index = activeCount;
+		actives[activeCount++] = e;
+	}
+
 	@Override
-	public void addProcess(GameProcess realtimeProcess) {
-		synchronized (this.processes) {
-			this.processes.add(realtimeProcess);
+	public synchronized void addProcess(GameProcess realtimeProcess) {
+		if (realtimeProcess == null || entries.containsKey(realtimeProcess)) {
+			return;
+		}
+		ProcessEntry e = new ProcessEntry();
+		e.process = realtimeProcess;
+		e.realtime = (realtimeProcess instanceof RealtimeProcess) ? (RealtimeProcess) realtimeProcess : null;
+		e.id = realtimeProcess.getId();
+		if (e.id != null) {
+			e.idNext = ids.get(e.id);
+			ids.put(e.id, e);
 		}
+		entries.put(realtimeProcess, e);
+		pushActive(e);
+		size++;
 	}
 
 	@Override
-	public boolean containsProcess(GameProcess realtimeProcess) {
-		synchronized (this.processes) {
-			return this.processes.contains(realtimeProcess);
+	public synchronized boolean containsProcess(GameProcess realtimeProcess) {
+		if (realtimeProcess == null) {
+			return false;
 		}
+		return entries.containsKey(realtimeProcess);
+	}
+
+	private void unlinkId(ProcessEntry e) {
+		if (e.id == null) {
+			return;
+		}
+		ProcessEntry head = ids.get(e.id);
+		if (head == e) {
+			if (e.idNext == null) {
+				ids.remove(e.id);
+			} else {
+				ids.put(e.id, e.idNext);
+			}
+		} else {
+			for (ProcessEntry c = head; c != null; c = c.idNext) {
+				if (c.idNext == e) {
+					c.idNext = e.idNext;
+					break;
+				}
+			}
+		}
+		e.idNext = null;
+	}
+
+	private void removeEntry(ProcessEntry e) {
+		if (e.removed) {
+			return;
+		}
+		e.removed = true;
+		if (e.wheelSlot >= 0) {
+			unlinkWheel(e);
+			if (e.realtime != null) {
+				e.realtime._scheduler = null;
+			}
+		} else if (e.index >= 0 && e.index < activeCount && actives[e.index] == e) {
+			actives[e.index] = null;
+		}
+		entries.remove(e.process);
+		unlinkId(e);
+		size--;
+	}
+
+	private void linkWheel(ProcessEntry e) {
+		int slot = (int) ((e.due / wheelResolution) & WHEEL_MASK);
+		e.wheelSlot = slot;
+		e.wheelPrev = null;
+		e.wheelNext = wheel[slot];
+		if (e.wheelNext != null) {
+			e.wheelNext.wheelPrev = e;
+		}
+		wheel[slot] = e;
+		parkedCount++;
+	}
+
+	private void unlinkWheel(ProcessEntry e) {
+		if (e.wheelPrev == null) {
+			wheel[e.wheelSlot] = e.wheelNext;
+		} else {
+			e.wheelPrev.wheelNext = e.wheelNext;
+		}
+		if (e.wheelNext != null) {
+			e.wheelNext.wheelPrev = e.wheelPrev;
+		}
+		e.wheelPrev = e.wheelNext = null;
+		e.wheelSlot = -1;
+		parkedCount--;
+	}
+
+	/**
+	 * 把暂停的进程放回刷新列表,并补上暂停期间经过的时间
+	 */
+	private void unpark(ProcessEntry e, long time) {
+		unlinkWheel(e);
+		RealtimeProcess rp = e.realtime;
+		rp.addParkedTime(time - rp._parkedAt);
+		rp._scheduler = null;
+		pushActive(e);
+	}
+
+	synchronized void wakeProcess(RealtimeProcess process) {
+		ProcessEntry e = entries.get(process);
+		if (e != null && e.wheelSlot >= 0) {
+			unpark(e, now);
+		}
+	}
+
+	synchronized long getParkedTime(RealtimeProcess process) {
+		return process._scheduler == this ? now - process._parkedAt : 0;
+	}
+
+	private boolean park(ProcessEntry e) {
+		RealtimeProcess rp = e.realtime;
+		if (!wheelEnabled || rp == null || !rp._parkable || !rp._baseTicked || rp.isDead()) {
+			return false;
+		}
+		long wait = rp.getParkTime();
+		if (wait < minParkTime) {
+			return false;
+		}
+		e.index = -1;
+		e.due = now + wait;
+		rp._parkedAt = now;
+		rp._scheduler = this;
+		linkWheel(e);
+		return true;
+	}
+
+	private void advanceWheel(long elapsed) {
+		if (parkedCount == 0) {
+			wheelCursor = now / wheelResolution;
+			return;
+		}
+		final long target = now / wheelResolution;
+		long slot = wheelCursor;
+		if (target - slot >= WHEEL_SIZE) {
+			slot = target - WHEEL_SIZE + 1;
+		}
+		final long start = now - elapsed;
+		for (; slot <= target; slot++) {
+			ProcessEntry e = wheel[(int) (slot & WHEEL_MASK)];
+			while (e != null) {
+				ProcessEntry next = e.wheelNext;
+				if (e.due <= now) {
+					unpark(e, start);
+				}
+				e = next;
+			}
+		}
+		wheelCursor = target;
+	}
+
+	private void compact() {
+		int w = 0;
+		for (int r = 0; r < activeCount; r++) {
+			ProcessEntry e = actives[r];
+			actives[r] = null;
+			if (e == null || e.removed) {
+				continue;
+			}
+			if (park(e)) {
+				continue;
+			}
+			e.index = w;
+			actives[w++] = e;
+		}
+		activeCount = w;
+	}
+
+	private final static long nanoTime() {
+		final LGame game = LSystem.base();
+		return game == null ? TimeUtils.nanoTime() : game.nanoTime();
 	}
 
 	@Override
 	public void tick(LTimerContext time) {
-		if (processes.size > 0) {
-			final SortedList<GameProcess> toBeUpdated;
-			synchronized (this.processes) {
-				toBeUpdated = new SortedList<GameProcess>(this.processes);
+		if (size == 0) {
+			return;
+		}
+		final long tickStart = profiling ? nanoTime() : 0;
+		final int count;
+		synchronized (this) {
+			now += time.timeSinceLastUpdate;
+			advanceWheel(time.timeSinceLastUpdate);
+			count = activeCount;
+		}
+		int numDeads = 0;
+		for (int i = 0; i < count; i++) {
+			final ProcessEntry e = actives[i];
+			if (e == null || e.removed) {
+				continue;
 			}
-			final SortedList<GameProcess> deadProcesses = new SortedList<GameProcess>();
+			final GameProcess realtimeProcess = e.process;
 			try {
-				for (LIterator<GameProcess> it = toBeUpdated.listIterator(); it.hasNext();) {
-					GameProcess realtimeProcess = it.next();
-					if (realtimeProcess != null) {
-						synchronized (realtimeProcess) {
-							realtimeProcess.tick(time);
-							if (realtimeProcess.isDead()) {
-								deadProcesses.add(realtimeProcess);
-							}
-						}
-					}
+				if (e.realtime != null) {
+					e.realtime._baseTicked = false;
 				}
-				if (deadProcesses.size > 0) {
-					for (LIterator<GameProcess> it = deadProcesses.listIterator(); it.hasNext();) {
-						GameProcess realtimeProcess = it.next();
-						if (realtimeProcess != null) {
-							synchronized (realtimeProcess) {
-								realtimeProcess.finish();
-							}
-						}
-					}
-					synchronized (this.processes) {
-						this.processes.removeAll(deadProcesses);
+				if (profiling) {
+					long start = nanoTime();
+					realtimeProcess.tick(time);
+					e.runTime += nanoTime() - start;
+				} else {
+					realtimeProcess.tick(time);
+				}
+				e.runCount++;
+				if (realtimeProcess.isDead()) {
+					if (numDeads == deads.length) {
+						ProcessEntry[] tmp = new ProcessEntry[deads.length * 2];
+						System.arraycopy(deads, 0, tmp, 0, numDeads);
+						deads = tmp;
 					}
+					deads[numDeads++] = e;
 				}
 			} catch (Throwable cause) {
 				LSystem.error("Process dispatch failure", cause);
 			}
 		}
-	}
-
-	public GameProcess find(String id) {
-		if (processes != null && processes.size > 0) {
-			synchronized (this.processes) {
-				for (LIterator<GameProcess> it = processes.listIterator(); it.hasNext();) {
-					GameProcess p = it.next();
-					if (p.getId() == id || p.getId().equals(id)) {
-						return p;
-					}
+		for (int i = 0; i < numDeads; i++) {
+			try {
+				deads[i].process.finish();
+			} catch (Throwable cause) {
+				LSystem.error("Process dispatch failure", cause);
+			}
+		}
+		synchronized (this) {
+			for (int i = 0; i < numDeads; i++) {
+				ProcessEntry e = deads[i];
+				deads[i] = null;
+				if (!e.removed) {
+					removeEntry(e);
 				}
 			}
+			compact();
+			if (profiling) {
+				lastTickTime = nanoTime() - tickStart;
+				totalRunTime += lastTickTime;
+			}
 		}
-		return null;
 	}
 
-	public void delete(String id) {
-		if (processes != null && processes.size > 0) {
-			synchronized (this.processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(processes);
-				for (int i = 0; i < ps.size; i++) {
-					GameProcess p = ps.get(i);
-					if (p != null) {
-						if (p.getId() == id || p.getId().equals(id)) {
-							p.kill();
-							processes.remove(p);
-						}
-					}
-				}
-			}
+	public synchronized GameProcess find(String id) {
+		if (id == null) {
+			return null;
+		}
+		ProcessEntry e = ids.get(id);
+		if (e == null) {
+			return null;
 		}
+		while (e.idNext != null) {
+			e = e.idNext;
+		}
+		return e.process;
 	}
 
-	public void deleteIndex(String id) {
-		if (processes != null && processes.size > 0) {
-			synchronized (this.processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(processes);
-				for (int i = 0; i < ps.size; i++) {
-					GameProcess p = ps.get(i);
-					if (p != null) {
-						if (p.getId() == id || p.getId().indexOf(id) != -1) {
-							p.kill();
-							processes.remove(p);
-						}
-					}
+	public synchronized void delete(String id) {
+		if (id == null) {
+			return;
+		}
+		ProcessEntry e = ids.get(id);
+		while (e != null) {
+			ProcessEntry next = e.idNext;
+			GameProcess p = e.process;
+			removeEntry(e);
+			p.kill();
+			e = next;
+		}
+	}
+
+	public synchronized void deleteIndex(String id) {
+		if (id == null || size == 0) {
+			return;
+		}
+		for (int i = 0; i < activeCount; i++) {
+			ProcessEntry e = actives[i];
+			if (e != null && !e.removed && e.id != null && (e.id == id || e.id.indexOf(id) != -1)) {
+				GameProcess p = e.process;
+				removeEntry(e);
+				p.kill();
+			}
+		}
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			for (ProcessEntry e = wheel[i]; e != null;) {
+				ProcessEntry next = e.wheelNext;
+				if (e.id != null && (e.id == id || e.id.indexOf(id) != -1)) {
+					GameProcess p = e.process;
+					removeEntry(e);
+					p.kill();
 				}
+				e = next;
 			}
 		}
 	}
 
+	/**
+	 * 删除指定进程(不调用进程的finish)
+	 * 
+	 * @param process
+	 * @return
+	 */
+	public synchronized boolean removeProcess(GameProcess process) {
+		if (process == null) {
+			return false;
+		}
+		ProcessEntry e = entries.get(process);
+		if (e == null) {
+			return false;
+		}
+		removeEntry(e);
+		return true;
+	}
+
+	/**
+	 * 指定进程累计的刷新耗时(纳秒)
+	 * 
+	 * @param process
+	 * @return
+	 */
+	public synchronized long getRunTime(GameProcess process) {
+		ProcessEntry e = entries.get(process);
+		return e == null ? 0 : e.runTime;
+	}
+
+	/**
+	 * 指定进程被刷新的次数(在时间轮中暂停的帧不计算在内)
+	 * 
+	 * @param process
+	 * @return
+	 */
+	public synchronized int getRunCount(GameProcess process) {
+		ProcessEntry e = entries.get(process);
+		return e == null ? 0 : e.runCount;
+	}
+
+	/**
+	 * 最近一帧刷新全部进程的耗时(纳秒)
+	 * 
+	 * @return
+	 */
+	public long getLastTickTime() {
+		return lastTickTime;
+	}
+
+	/**
+	 * 累计刷新全部进程的耗时(纳秒)
+	 * 
+	 * @return
+	 */
+	public long getTotalRunTime() {
+		return totalRunTime;
+	}
+
+	public boolean isProfiling() {
+		return profiling;
+	}
+
+	/**
+	 * 是否统计进程的刷新耗时(默认关闭,计时使用LGame.nanoTime)
+	 * 
+	 * @param profiling
+	 */
+	public void setProfiling(boolean profiling) {
+		this.profiling = profiling;
+	}
+
+	public boolean isWheelEnabled() {
+		return wheelEnabled;
+	}
+
+	/**
+	 * 是否允许把离下次触发还很久的RealtimeProcess放入时间轮暂停刷新(关闭后已暂停的进程会在到期时正常放回)
+	 * 
+	 * @param wheelEnabled
+	 */
+	public void setWheelEnabled(boolean wheelEnabled) {
+		this.wheelEnabled = wheelEnabled;
+	}
+
+	public long getMinParkTime() {
+		return minParkTime;
+	}
+
+	/**
+	 * 设定进程离下次触发至少还有多久时才放入时间轮
+	 * 
+	 * @param minParkTime
+	 */
+	public void setMinParkTime(long minParkTime) {
+		this.minParkTime = minParkTime;
+	}
+
+	/**
+	 * 当前逐帧刷新的进程数量
+	 * 
+	 * @return
+	 */
+	public int getActiveCount() {
+		return size - parkedCount;
+	}
+
+	/**
+	 * 当前在时间轮中暂停的进程数量
+	 * 
+	 * @return
+	 */
+	public int getParkedCount() {
+		return parkedCount;
+	}
+
 	@Override
 	public int size() {
-		return processes.size;
+		return size;
+	}
+
+	private void clearEntries(boolean finish) {
+		final ProcessEntry[] list = actives;
+		final int count = activeCount;
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			for (ProcessEntry e = wheel[i]; e != null; e = e.wheelNext) {
+				e.realtime._scheduler = null;
+			}
+		}
+		if (finish) {
+			for (int i = 0; i < count; i++) {
+				ProcessEntry e = list[i];
+				if (e != null && !e.removed) {
+					e.process.finish();
+				}
+			}
+			for (int i = 0; i < WHEEL_SIZE; i++) {
+				for (ProcessEntry e = wheel[i]; e != null; e = e.wheelNext) {
+					e.process.finish();
+				}
+			}
+		}
+		for (int i = 0; i < activeCount; i++) {
+			actives[i] = null;
+		}
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			wheel[i] = null;
+		}
+		activeCount = 0;
+		parkedCount = 0;
+		entries.clear();
+		ids.clear();
+		size = 0;
 	}
 
 	@Override
-	public void clear() {
-		processes.clear();
+	public synchronized void clear() {
+		clearEntries(false);
 	}
 
 	@Override
 	public boolean isEmpty() {
-		return processes.size == 0;
+		return size == 0;
 	}
 
 	public void dispose() {
@@ -175,21 +598,10 @@ public class RealtimeProcessManager implements RealtimeProcessEvent, IArray, LRe
 	}
 
 	@Override
-	public void close() {
-		if (processes != null && processes.size > 0) {
-			synchronized (this.processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(processes);
-				for (int i = 0; i < ps.size; i++) {
-					GameProcess p = ps.get(i);
-					if (p != null) {
-						synchronized (p) {
-							p.finish();
-						}
-					}
-				}
-				processes.clear();
-			}
+	public synchronized void close() {
+		if (size > 0) {
+			clearEntries(true);
 		}
 	}
 
-}
\ No newline at end of file
+}
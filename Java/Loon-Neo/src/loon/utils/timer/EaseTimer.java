@@ -95,90 +95,8 @@ public class EaseTimer {
 			this._timer = this._duration;
 			this._finished = true;
 		}
-		switch (this._mode) {
-		case InQuad:
-			this._progress = Easing.inQuad(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case OutQuad:
-			this._progress = Easing.outQuad(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InOutQuad:
-			this._progress = Easing.inOutQuad(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InCubic:
-			this._progress = Easing.inCubic(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case OutCubic:
-			this._progress = Easing.outCubic(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InQuart:
-			this._progress = Easing.inQuart(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case OutQuart:
-			this._progress = Easing.outQuart(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InOutQuart:
-			this._progress = Easing.inOutQuart(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InQuint:
-			this._progress = Easing.inQuint(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case OutQuint:
-			this._progress = Easing.outQuint(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InOutQuint:
-			this._progress = Easing.inOutQuint(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InSine:
-			this._progress = Easing.inSine(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case OutSine:
-			this._progress = Easing.outSine(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InOutSine:
-			this._progress = Easing.inOutSine(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InExp:
-			this._progress = Easing.inExp(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case OutExp:
-			this._progress = Easing.outExp(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InOutExp:
-			this._progress = Easing.inOutExp(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InCirc:
-			this._progress = Easing.inCirc(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case OutCirc:
-			this._progress = Easing.outCirc(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InOutCirc:
-			this._progress = Easing.inOutCirc(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InBack:
-			this._progress = Easing.inBack(this._timer, this._duration, this._ease_value_max,this._ease_value_min , 0.1f);
-			break;
-		case OutBack:
-			this._progress = Easing.outBack(this._timer, this._duration, this._ease_value_max,this._ease_value_min , 0.1f);
-			break;
-		case InOutBack:
-			this._progress = Easing.inOutBack(this._timer, this._duration, this._ease_value_max,this._ease_value_min , 0.1f);
-			break;
-		case OutBounce:
-			this._progress = Easing.outBounce(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InBounce:
-			this._progress = Easing.inBounce(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case InOutBounce:
-			this._progress = Easing.inOutBounce(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		case Linear:
-		default:
-			this._progress = Easing.linear(this._timer, this._duration, this._ease_value_max,this._ease_value_min );
-			break;
-		}
+		this._progress = Easing.ease(this._mode, this._timer, this._duration, this._ease_value_max,
+				this._ease_value_min);
 	}
 
 	public void reset() {
@@ -0,0 +1,464 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.utils.timer;
+
+import java.util.Arrays;
+
+import loon.LGame;
+import loon.LSystem;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
+import loon.utils.TimeUtils;
+
+/**
+ * 逐帧性能统计器,记录每帧各阶段的纳秒耗时(进程刷新,缓动,LProcess.runTimer,LProcess.draw,批处理提交)以及
+ * 批处理提交次数,纹理绑定次数,绘制调用次数与提交的顶点(索引)数量,数据保存于固定大小的环形缓存中,可以获得百分位统计,
+ * 导出CSV/JSON或通过监听器逐帧获取.
+ * 
+ * 未启用时所有埋点只会读取一个静态布尔值,不调用计时函数也不产生对象,所以可以一直保留在发布版本中.计时使用LGame.nanoTime,
+ * 在不支持高精度计时的平台上只有毫秒精度.
+ * 
+ * 埋点是全局的,所以统计器只有一个共享实例(通过get获得),启用状态也通过静态的setEnabled与isEnabled控制.
+ */
+public class FrameProfiler {
+
+	public final static int PROCESS_TICK = 0;
+
+	public final static int ACTION_CALL = 1;
+
+	public final static int RUN_TIMER = 2;
+
+	public final static int PROCESS_DRAW = 3;
+
+	public final static int BATCH_FLUSH = 4;
+
+	public final static int FRAME = 5;
+
+	public final static int PHASE_COUNT = 6;
+
+	public final static int FLUSH_COUNT = 0;
+
+	public final static int TEXTURE_BINDS = 1;
+
+	public final static int DRAW_CALLS = 2;
+
+	public final static int VERTICES = 3;
+
+	public final static int COUNTER_COUNT = 4;
+
+	private final static String[] PHASE_NAMES = { "tick", "action", "timer", "draw", "flush", "frame" };
+
+	private final static String[] COUNTER_NAMES = { "flushes", "binds", "drawCalls", "vertices" };
+
+	private static boolean _enabled;
+
+	private static FrameProfiler _instance;
+
+	public final static FrameProfiler get() {
+		if (_instance == null) {
+			synchronized (FrameProfiler.class) {
+				if (_instance == null) {
+					_instance = new FrameProfiler(240);
+				}
+			}
+		}
+		return _instance;
+	}
+
+	private final static long now() {
+		final LGame game = LSystem.base();
+		return game == null ? TimeUtils.nanoTime() : game.nanoTime();
+	}
+
+	public final static boolean isEnabled() {
+		return _enabled;
+	}
+
+	/**
+	 * 启用或停止全局的逐帧统计
+	 * 
+	 * @param enabled
+	 */
+	public final static void setEnabled(boolean enabled) {
+		if (_enabled != enabled) {
+			get().clearCurrent();
+			_enabled = enabled;
+		}
+	}
+
+	/**
+	 * 开始计时,未启用时返回0
+	 * 
+	 * @return
+	 */
+	public final static long begin() {
+		return _enabled ? now() : 0L;
+	}
+
+	/**
+	 * 结束计时,并将耗时累加到当前帧的指定阶段中
+	 * 
+	 * @param phase
+	 * @param start
+	 */
+	public final static void end(int phase, long start) {
+		if (_enabled && start != 0L) {
+			get()._phases[phase] += now() - start;
+		}
+	}
+
+	/**
+	 * 累加当前帧的指定计数
+	 * 
+	 * @param counter
+	 * @param value
+	 */
+	public final static void count(int counter, int value) {
+		if (_enabled) {
+			get()._counters[counter] += value;
+		}
+	}
+
+	/**
+	 * 结束一次批处理提交的计时,累加提交耗时与提交次数
+	 * 
+	 * @param start
+	 */
+	public final static void flush(long start) {
+		if (_enabled && start != 0L) {
+			final FrameProfiler profiler = get();
+			profiler._phases[BATCH_FLUSH] += now() - start;
+			profiler._counters[FLUSH_COUNT]++;
+		}
+	}
+
+	/**
+	 * 记录一次绘制调用
+	 * 
+	 * @param vertices
+	 */
+	public final static void drawCall(int vertices) {
+		if (_enabled) {
+			final long[] counters = get()._counters;
+			counters[DRAW_CALLS]++;
+			counters[VERTICES] += vertices;
+		}
+	}
+
+	/**
+	 * 结束一帧,将当前帧数据写入环形缓存并通知监听器
+	 * 
+	 * @param start
+	 */
+	public final static void endFrame(long start) {
+		if (_enabled && start != 0L) {
+			get().commit(now() - start);
+		}
+	}
+
+	private final long[] _phases = new long[PHASE_COUNT];
+
+	private final long[] _counters = new long[COUNTER_COUNT];
+
+	private final TArray<FrameProfilerListener> _listeners = new TArray<FrameProfilerListener>();
+
+	private long[] _phaseSamples;
+
+	private long[] _counterSamples;
+
+	private long[] _sortBuffer;
+
+	private int _capacity;
+
+	private int _head;
+
+	private int _size;
+
+	private long _frames;
+
+	private FrameProfiler(int capacity) {
+		setCapacity(capacity);
+	}
+
+	/**
+	 * 修改环形缓存能保存的帧数量(会清空已有数据)
+	 * 
+	 * @param capacity
+	 * @return
+	 */
+	public synchronized FrameProfiler setCapacity(int capacity) {
+		this._capacity = MathUtils.max(1, capacity);
+		this._phaseSamples = new long[_capacity * PHASE_COUNT];
+		this._counterSamples = new long[_capacity * COUNTER_COUNT];
+		this._sortBuffer = new long[_capacity];
+		this._head = 0;
+		this._size = 0;
+		return this;
+	}
+
+	public int getCapacity() {
+		return _capacity;
+	}
+
+	private void clearCurrent() {
+		for (int i = 0; i < PHASE_COUNT; i++) {
+			_phases[i] = 0;
+		}
+		for (int i = 0; i < COUNTER_COUNT; i++) {
+			_counters[i] = 0;
+		}
+	}
+
+	private void commit(long frameTime) {
+		_phases[FRAME] = frameTime;
+		final long frame;
+		synchronized (this) {
+			final int slot = _head;
+			System.arraycopy(_phases, 0, _phaseSamples, slot * PHASE_COUNT, PHASE_COUNT);
+			System.arraycopy(_counters, 0, _counterSamples, slot * COUNTER_COUNT, COUNTER_COUNT);
+			_head = (slot + 1) % _capacity;
+			if (_size < _capacity) {
+				_size++;
+			}
+			frame = _frames++;
+		}
+		clearCurrent();
+		for (int i = 0, size = _listeners.size; i < size; i++) {
+			FrameProfilerListener listener = _listeners.get(i);
+			if (listener != null) {
+				listener.onFrame(this, frame);
+			}
+		}
+	}
+
+	public FrameProfiler addListener(FrameProfilerListener listener) {
+		if (listener != null && !_listeners.contains(listener)) {
+			_listeners.add(listener);
+		}
+		return this;
+	}
+
+	public FrameProfiler removeListener(FrameProfilerListener listener) {
+		_listeners.remove(listener);
+		return this;
+	}
+
+	public FrameProfiler clearListener() {
+		_listeners.clear();
+		return this;
+	}
+
+	/**
+	 * 当前缓存中的帧数量
+	 * 
+	 * @return
+	 */
+	public int getSampleCount() {
+		return _size;
+	}
+
+	/**
+	 * 启用以来统计过的总帧数
+	 * 
+	 * @return
+	 */
+	public long getFrameCount() {
+		return _frames;
+	}
+
+	private int slotOf(int index) {
+		return (_head - _size + index + _capacity) % _capacity;
+	}
+
+	/**
+	 * 获得缓存中指定帧(0为最早的一帧)指定阶段的纳秒耗时
+	 * 
+	 * @param phase
+	 * @param index
+	 * @return
+	 */
+	public synchronized long getSample(int phase, int index) {
+		if (index < 0 || index >= _size) {
+			return 0;
+		}
+		return _phaseSamples[slotOf(index) * PHASE_COUNT + phase];
+	}
+
+	public synchronized long getCounterSample(int counter, int index) {
+		if (index < 0 || index >= _size) {
+			return 0;
+		}
+		return _counterSamples[slotOf(index) * COUNTER_COUNT + counter];
+	}
+
+	public long getLast(int phase) {
+		return getSample(phase, _size - 1);
+	}
+
+	public long getLastCounter(int counter) {
+		return getCounterSample(counter, _size - 1);
+	}
+
+	private long percentile(long[] samples, int stride, int column, float percent) {
+		if (_size == 0) {
+			return 0;
+		}
+		for (int i = 0; i < _size; i++) {
+			_sortBuffer[i] = samples[slotOf(i) * stride + column];
+		}
+		Arrays.sort(_sortBuffer, 0, _size);
+		int rank = MathUtils.ceil(MathUtils.clamp(percent, 0f, 100f) / 100f * _size) - 1;
+		return _sortBuffer[MathUtils.clamp(rank, 0, _size - 1)];
+	}
+
+	private long average(long[] samples, int stride, int column) {
+		if (_size == 0) {
+			return 0;
+		}
+		long total = 0;
+		for (int i = 0; i < _size; i++) {
+			total += samples[slotOf(i) * stride + column];
+		}
+		return total / _size;
+	}
+
+	/**
+	 * 获得缓存中指定阶段耗时的百分位值(纳秒,percent取值0-100)
+	 * 
+	 * @param phase
+	 * @param percent
+	 * @return
+	 */
+	public synchronized long getPercentile(int phase, float percent) {
+		return percentile(_phaseSamples, PHASE_COUNT, phase, percent);
+	}
+
+	public synchronized long getCounterPercentile(int counter, float percent) {
+		return percentile(_counterSamples, COUNTER_COUNT, counter, percent);
+	}
+
+	public synchronized long getAverage(int phase) {
+		return average(_phaseSamples, PHASE_COUNT, phase);
+	}
+
+	public synchronized long getCounterAverage(int counter) {
+		return average(_counterSamples, COUNTER_COUNT, counter);
+	}
+
+	public long getMax(int phase) {
+		return getPercentile(phase, 100f);
+	}
+
+	public long getCounterMax(int counter) {
+		return getCounterPercentile(counter, 100f);
+	}
+
+	public static String getPhaseName(int phase) {
+		return PHASE_NAMES[phase];
+	}
+
+	public static String getCounterName(int counter) {
+		return COUNTER_NAMES[counter];
+	}
+
+	/**
+	 * 以CSV格式导出缓存中的全部帧(时间单位为纳秒,由旧到新排列)
+	 * 
+	 * @return
+	 */
+	public synchronized String toCSV() {
+		StringBuilder sbr = new StringBuilder((_size + 1) * 64);
+		sbr.append("frame");
+		for (int i = 0; i < PHASE_COUNT; i++) {
+			sbr.append(',').append(PHASE_NAMES[i]);
+		}
+		for (int i = 0; i < COUNTER_COUNT; i++) {
+			sbr.append(',').append(COUNTER_NAMES[i]);
+		}
+		sbr.append('\n');
+		final long first = _frames - _size;
+		for (int j = 0; j < _size; j++) {
+			final int slot = slotOf(j);
+			sbr.append(first + j);
+			for (int i = 0; i < PHASE_COUNT; i++) {
+				sbr.append(',').append(_phaseSamples[slot * PHASE_COUNT + i]);
+			}
+			for (int i = 0; i < COUNTER_COUNT; i++) {
+				sbr.append(',').append(_counterSamples[slot * COUNTER_COUNT + i]);
+			}
+			sbr.append('\n');
+		}
+		return sbr.toString();
+	}
+
+	private void appendSummary(StringBuilder sbr, String name, long[] samples, int stride, int column) {
+		sbr.append('"').append(name).append("\":{");
+		sbr.append("\"avg\":").append(average(samples, stride, column));
+		sbr.append(",\"p50\":").append(percentile(samples, stride, column, 50f));
+		sbr.append(",\"p95\":").append(percentile(samples, stride, column, 95f));
+		sbr.append(",\"p99\":").append(percentile(samples, stride, column, 99f));
+		sbr.append(",\"max\":").append(percentile(samples, stride, column, 100f));
+		sbr.append('}');
+	}
+
+	/**
+	 * 以JSON格式导出缓存中各阶段与计数的统计值(avg,p50,p95,p99,max,时间单位为纳秒)
+	 * 
+	 * @return
+	 */
+	public synchronized String toJSON() {
+		StringBuilder sbr = new StringBuilder(512);
+		sbr.append("{\"frames\":").append(_frames);
+		sbr.append(",\"samples\":").append(_size);
+		sbr.append(",\"phases\":{");
+		for (int i = 0; i < PHASE_COUNT; i++) {
+			if (i > 0) {
+				sbr.append(',');
+			}
+			appendSummary(sbr, PHASE_NAMES[i], _phaseSamples, PHASE_COUNT, i);
+		}
+		sbr.append("},\"counters\":{");
+		for (int i = 0; i < COUNTER_COUNT; i++) {
+			if (i > 0) {
+				sbr.append(',');
+			}
+			appendSummary(sbr, COUNTER_NAMES[i], _counterSamples, COUNTER_COUNT, i);
+		}
+		sbr.append("}}");
+		return sbr.toString();
+	}
+
+	/**
+	 * 清空已统计的数据
+	 */
+	public synchronized void reset() {
+		clearCurrent();
+		_head = 0;
+		_size = 0;
+		_frames = 0;
+	}
+
+	@Override
+	public String toString() {
+		return toJSON();
+	}
+
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.utils.timer;
+
+/**
+ * FrameProfiler每完成一帧统计时的回调接口
+ */
+public interface FrameProfilerListener {
+
+	/**
+	 * 一帧数据写入环形缓存后触发,可通过profiler.getLast系列函数获得本帧数据
+	 * 
+	 * @param profiler
+	 * @param frame
+	 *            帧序号(从0开始累加)
+	 */
+	void onFrame(FrameProfiler profiler, long frame);
+
+}